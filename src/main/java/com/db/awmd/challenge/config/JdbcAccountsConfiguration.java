@@ -0,0 +1,47 @@
+package com.db.awmd.challenge.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+
+/**
+ * Pooled DataSource and transaction manager for {@code accounts.store=jdbc}. The pool caches
+ * prepared statements per connection so the fixed repository statements are parsed once.
+ */
+@Configuration
+@ConditionalOnProperty(name = "accounts.store", havingValue = "jdbc")
+public class JdbcAccountsConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public org.apache.tomcat.jdbc.pool.DataSource accountsDataSource(
+            @Value("${accounts.jdbc.url:jdbc:h2:file:./data/accounts;LOCK_TIMEOUT=10000}") String url,
+            @Value("${accounts.jdbc.pool-size:16}") int poolSize,
+            @Value("${accounts.jdbc.statement-cache-size:32}") int statementCacheSize) {
+        return createDataSource(url, poolSize, statementCacheSize);
+    }
+
+    @Bean
+    public PlatformTransactionManager transactionManager(DataSource dataSource) {
+        return new DataSourceTransactionManager(dataSource);
+    }
+
+    public static org.apache.tomcat.jdbc.pool.DataSource createDataSource(String url, int poolSize, int statementCacheSize) {
+        org.apache.tomcat.jdbc.pool.DataSource dataSource = new org.apache.tomcat.jdbc.pool.DataSource();
+        dataSource.setDriverClassName("org.h2.Driver");
+        dataSource.setUrl(url);
+        dataSource.setInitialSize(poolSize);
+        dataSource.setMaxActive(poolSize);
+        dataSource.setMaxIdle(poolSize);
+        dataSource.setMinIdle(poolSize);
+        dataSource.setDefaultAutoCommit(true);
+        dataSource.setJdbcInterceptors(
+                "org.apache.tomcat.jdbc.pool.interceptor.StatementCache(prepared=true,callable=false,max="
+                        + statementCacheSize + ")");
+        return dataSource;
+    }
+}
@@ -2,39 +2,320 @@ package com.db.awmd.challenge.domain;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 import org.hibernate.validator.constraints.NotEmpty;
 
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
 import java.math.BigDecimal;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Data
 public class Account {
+    private static final AtomicLongFieldUpdater<Account> JOURNAL_SEQUENCE =
+            AtomicLongFieldUpdater.newUpdater(Account.class, "journalSequence");
+    private static final AtomicLongFieldUpdater<Account> CHANGE_SEQUENCE =
+            AtomicLongFieldUpdater.newUpdater(Account.class, "changeSequence");
+    /**
+     * Random per process, so entity tags handed out before a restart are never repeated after it.
+     */
+    private static final String BOOT_ID = Long.toHexString(new SecureRandom().nextLong());
+    private static final AtomicLong INSTANCES = new AtomicLong();
+
     @NotNull
     @NotEmpty
     private final String accountId;
 
     @NotNull
     @Min(value = 0, message = "Initial balance must be positive.")
-    private BigDecimal balance;
+    private volatile BigDecimal balance;
+
+    /**
+     * ISO 4217 code, null for the base currency.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Pattern(regexp = "[A-Z]{3}", message = "Currency must be an ISO 4217 code.")
+    private final String currency;
 
     @JsonIgnore
     private Long sortId;
 
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final ReentrantLock lock = new ReentrantLock();
+
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private volatile long journalSequence;
+
+    /**
+     * Unique among the accounts created by this process.
+     */
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    private final long instanceId = INSTANCES.incrementAndGet();
+
+    /**
+     * Counts balance changes, moved forward after every change is applied.
+     */
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    @Setter(AccessLevel.NONE)
+    private volatile long changeSequence;
+
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile StripedBalance stripedBalance;
+
+    /**
+     * Credits of a split account begun without the lock and not yet published.
+     */
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final AtomicInteger stripedCreditsInFlight = new AtomicInteger();
+
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile boolean stripedCreditsHeld;
+
+    /**
+     * Orders the balance change notifications of the account, which split credits send without the lock.
+     */
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    @Setter(AccessLevel.NONE)
+    private final Object changeMonitor = new Object();
+
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    @Setter(AccessLevel.NONE)
+    private volatile long lastAccessMillis = System.currentTimeMillis();
+
+    /**
+     * Set once the account moved to the cold tier; a newer instance then holds the balance.
+     */
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    @Setter(AccessLevel.NONE)
+    private volatile boolean archived;
+
     public Account(String accountId) {
-        this.accountId = accountId;
-        this.balance = BigDecimal.ZERO;
-        this.sortId = Long.valueOf(accountId.hashCode());
+        this(accountId, BigDecimal.ZERO);
+    }
+
+    public Account(String accountId, BigDecimal balance) {
+        this(accountId, balance, null);
     }
 
     @JsonCreator
     public Account(@JsonProperty("accountId") String accountId,
-                   @JsonProperty("balance") BigDecimal balance) {
+                   @JsonProperty("balance") BigDecimal balance,
+                   @JsonProperty("currency") String currency) {
         this.accountId = accountId;
         this.balance = balance;
+        this.currency = currency;
         this.sortId = Long.valueOf(accountId.hashCode());
    }
 
+    public BigDecimal getBalance() {
+        while (true) {
+            StripedBalance striped = stripedBalance;
+            if (striped == null) {
+                return balance;
+            }
+            BigDecimal sum = striped.sum();
+            if (sum != null) {
+                return sum;
+            }
+            // being merged, the plain balance is published next
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Callers hold the account lock. On a split account credits landing after the balance was
+     * last read are kept.
+     */
+    public void setBalance(BigDecimal balance) {
+        StripedBalance striped = stripedBalance;
+        if (striped == null) {
+            this.balance = balance;
+            CHANGE_SEQUENCE.incrementAndGet(this);
+        } else {
+            addToBalance(balance.subtract(getBalance()));
+        }
+    }
+
+    /**
+     * Applies a delta under the account lock, drawing debits from the stripes of a split account.
+     */
+    public void addToBalance(BigDecimal delta) {
+        StripedBalance striped = stripedBalance;
+        if (striped == null) {
+            balance = balance.add(delta);
+        } else if (delta.signum() < 0) {
+            striped.debit(delta.negate());
+        } else if (!striped.tryCredit(delta)) {
+            balance = balance.add(delta);
+        }
+        CHANGE_SEQUENCE.incrementAndGet(this);
+    }
+
+    /**
+     * Credits a split account without its lock.
+     *
+     * @return false if the account is not split and the caller must credit it under the lock
+     */
+    public boolean tryStripedCredit(BigDecimal amount) {
+        StripedBalance striped = stripedBalance;
+        if (striped == null || !striped.tryCredit(amount)) {
+            return false;
+        }
+        CHANGE_SEQUENCE.incrementAndGet(this);
+        return true;
+    }
+
+    /**
+     * Registers a credit about to be applied to the stripes without the account lock, to be closed
+     * by {@link #endStripedCredit()} once it is published.
+     *
+     * @return false if the account is not split or a lock holder is holding striped credits; the
+     * caller then credits under the lock
+     */
+    public boolean beginStripedCredit() {
+        if (stripedBalance == null || stripedCreditsHeld) {
+            return false;
+        }
+        stripedCreditsInFlight.incrementAndGet();
+        if (stripedCreditsHeld) {
+            stripedCreditsInFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public void endStripedCredit() {
+        stripedCreditsInFlight.decrementAndGet();
+    }
+
+    /**
+     * Sends further credits through the account lock and waits for the striped credits already
+     * begun to be published, so the balance and journal sequence read next agree. Callers hold
+     * the account lock and call {@link #releaseStripedCredits()} before unlocking.
+     */
+    public void holdStripedCredits() {
+        stripedCreditsHeld = true;
+        while (stripedCreditsInFlight.get() > 0) {
+            Thread.yield();
+        }
+    }
+
+    public void releaseStripedCredits() {
+        stripedCreditsHeld = false;
+    }
+
+    /**
+     * Entity tag of the balance, made of the process, this account instance and its change
+     * sequence so neither an account recreated under the same id nor a restart repeats a tag. The
+     * sequence moves only after a change is applied, so a balance read after the tag is never
+     * older than the tag.
+     */
+    @JsonIgnore
+    public String getEntityTag() {
+        return "\"" + BOOT_ID + "-" + Long.toHexString(instanceId) + "-" + changeSequence + "\"";
+    }
+
+    @JsonIgnore
+    public boolean isSplit() {
+        return stripedBalance != null;
+    }
+
+    @JsonIgnore
+    public int getStripeCount() {
+        StripedBalance striped = stripedBalance;
+        return striped == null ? 1 : striped.getStripeCount();
+    }
+
+    /**
+     * Spreads the balance over {@code stripes} sub-balances. Callers hold the account lock.
+     */
+    public void split(int stripes) {
+        if (stripedBalance == null) {
+            stripedBalance = new StripedBalance(balance, stripes);
+        }
+    }
+
+    /**
+     * Folds the sub-balances back into one balance once the striped credits in flight are
+     * published. Callers hold the account lock.
+     */
+    public void merge() {
+        StripedBalance striped = stripedBalance;
+        if (striped != null) {
+            holdStripedCredits();
+            try {
+                balance = striped.seal();
+                stripedBalance = null;
+            } finally {
+                releaseStripedCredits();
+            }
+        }
+    }
+
+    /**
+     * Records an access, writing at most once per {@code resolutionMillis} so hot accounts do not
+     * contend on the field.
+     */
+    public void touch(long nowMillis, long resolutionMillis) {
+        if (nowMillis - lastAccessMillis >= resolutionMillis) {
+            lastAccessMillis = nowMillis;
+        }
+    }
+
+    /**
+     * Marks the account as moved to the cold tier. Callers hold the account lock.
+     */
+    public void archive() {
+        archived = true;
+    }
+
+    /**
+     * Moves the journal sequence forward only, as lock free credits of a split account may finish out of order.
+     */
+    public void advanceJournalSequence(long sequence) {
+        long current;
+        do {
+            current = journalSequence;
+        } while (current < sequence && !JOURNAL_SEQUENCE.compareAndSet(this, current, sequence));
+    }
+
 }
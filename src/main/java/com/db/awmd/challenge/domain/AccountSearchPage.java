@@ -0,0 +1,16 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class AccountSearchPage {
+
+    private final List<String> accountIds;
+
+    /**
+     * Cursor for the next page, null on the last one.
+     */
+    private final String next;
+}
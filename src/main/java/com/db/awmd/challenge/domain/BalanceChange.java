@@ -0,0 +1,61 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * One movement on a single account: the signed amount applied by a journal entry and the
+ * balance it left behind.
+ */
+@Data
+public class BalanceChange {
+
+    private final String accountId;
+
+    private final long sequence;
+
+    private final long timestamp;
+
+    private final JournalEntry.Type type;
+
+    private final String counterpartyId;
+
+    private final BigDecimal amount;
+
+    private final BigDecimal balance;
+
+    @JsonCreator
+    public BalanceChange(@JsonProperty("accountId") String accountId,
+                         @JsonProperty("sequence") long sequence,
+                         @JsonProperty("timestamp") long timestamp,
+                         @JsonProperty("type") JournalEntry.Type type,
+                         @JsonProperty("counterpartyId") String counterpartyId,
+                         @JsonProperty("amount") BigDecimal amount,
+                         @JsonProperty("balance") BigDecimal balance) {
+        this.accountId = accountId;
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.counterpartyId = counterpartyId;
+        this.amount = amount;
+        this.balance = balance;
+    }
+
+    public static BalanceChange of(JournalEntry entry, Account account) {
+        String accountId = account.getAccountId();
+        String counterpartyId;
+        if (accountId.equals(entry.getAccountToId())) {
+            counterpartyId = entry.getAccountFromId();
+        } else if (accountId.equals(entry.getAccountFromId())) {
+            counterpartyId = entry.getAccountToId();
+        } else {
+            // a leg of a fan-out or fan-in
+            counterpartyId = entry.getAccountFromId() != null ? entry.getAccountFromId() : entry.getAccountToId();
+        }
+        return new BalanceChange(accountId, entry.getSequence(), entry.getTimestamp(), entry.getType(), counterpartyId,
+                entry.deltaFor(accountId), account.getBalance());
+    }
+}
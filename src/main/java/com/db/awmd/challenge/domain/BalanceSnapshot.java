@@ -0,0 +1,17 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+@Data
+public class BalanceSnapshot {
+    private final long epoch;
+
+    private final long timestamp;
+
+    private final Map<String, BigDecimal> balances;
+
+    private final BigDecimal total;
+}
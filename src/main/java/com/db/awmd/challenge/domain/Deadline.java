@@ -0,0 +1,35 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.util.concurrent.TimeUnit;
+
+@EqualsAndHashCode
+@ToString
+public final class Deadline {
+
+    /**
+     * Longest timeout kept, so that {@code System.nanoTime()} plus it and later additions to the
+     * remaining time cannot overflow.
+     */
+    private static final long MAX_TIMEOUT_NANOS = Long.MAX_VALUE / 4;
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static Deadline after(long timeout, TimeUnit unit) {
+        return new Deadline(System.nanoTime() + Math.min(unit.toNanos(timeout), MAX_TIMEOUT_NANOS));
+    }
+
+    public long remainingNanos() {
+        return Math.max(0L, deadlineNanos - System.nanoTime());
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0L;
+    }
+}
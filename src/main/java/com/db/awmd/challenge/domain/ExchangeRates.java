@@ -0,0 +1,21 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+@Data
+public class ExchangeRates {
+
+    private final String baseCurrency;
+
+    private final long version;
+
+    private final long updatedAt;
+
+    /**
+     * Units of each currency bought by one unit of the base currency.
+     */
+    private final Map<String, BigDecimal> rates;
+}
@@ -0,0 +1,29 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import java.util.List;
+
+@Data
+public class FanInTransfer {
+    @NotNull
+    @NotEmpty
+    private final String accountToId;
+
+    @NotNull
+    @NotEmpty
+    @Valid
+    private final List<TransferLeg> legs;
+
+    @JsonCreator
+    public FanInTransfer(@JsonProperty("accountToId") String accountToId,
+                         @JsonProperty("legs") List<TransferLeg> legs) {
+        this.accountToId = accountToId;
+        this.legs = legs;
+    }
+}
@@ -0,0 +1,123 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+@Data
+public class JournalEntry {
+    public enum Type {
+        OPEN, TRANSFER, CREDIT, DEBIT, CLEAR,
+        /**
+         * Debits {@code accountFromId} by {@code amount} and credits each leg.
+         */
+        FAN_OUT,
+        /**
+         * Debits each leg and credits {@code accountToId} by {@code amount}.
+         */
+        FAN_IN
+    }
+
+    private final long sequence;
+
+    private final long timestamp;
+
+    private final Type type;
+
+    private final String accountFromId;
+
+    private final String accountToId;
+
+    private final BigDecimal amount;
+
+    /**
+     * Amount credited to {@code accountToId} when it differs from the debited amount, as for a
+     * transfer between currencies; null otherwise.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final BigDecimal creditAmount;
+
+    /**
+     * Accounts on the other side of a {@link Type#FAN_OUT} or {@link Type#FAN_IN}, whose amounts
+     * add up to {@code amount}; null for other entries.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final List<TransferLeg> legs;
+
+    public JournalEntry(long sequence, long timestamp, Type type, String accountFromId, String accountToId, BigDecimal amount) {
+        this(sequence, timestamp, type, accountFromId, accountToId, amount, null);
+    }
+
+    public JournalEntry(long sequence, long timestamp, Type type, String accountFromId, String accountToId,
+                        BigDecimal amount, BigDecimal creditAmount) {
+        this(sequence, timestamp, type, accountFromId, accountToId, amount, creditAmount, null);
+    }
+
+    @JsonCreator
+    public JournalEntry(@JsonProperty("sequence") long sequence,
+                        @JsonProperty("timestamp") long timestamp,
+                        @JsonProperty("type") Type type,
+                        @JsonProperty("accountFromId") String accountFromId,
+                        @JsonProperty("accountToId") String accountToId,
+                        @JsonProperty("amount") BigDecimal amount,
+                        @JsonProperty("creditAmount") BigDecimal creditAmount,
+                        @JsonProperty("legs") List<TransferLeg> legs) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.type = type == null ? Type.TRANSFER : type;
+        this.accountFromId = accountFromId;
+        this.accountToId = accountToId;
+        this.amount = amount;
+        this.creditAmount = creditAmount;
+        this.legs = legs;
+    }
+
+    /**
+     * @return every account whose balance this entry changes
+     */
+    @JsonIgnore
+    public Set<String> getAccountIds() {
+        Set<String> accountIds = new LinkedHashSet<>();
+        if (accountFromId != null) {
+            accountIds.add(accountFromId);
+        }
+        if (accountToId != null) {
+            accountIds.add(accountToId);
+        }
+        if (legs != null) {
+            for (TransferLeg leg : legs) {
+                accountIds.add(leg.getAccountId());
+            }
+        }
+        return accountIds;
+    }
+
+    /**
+     * @return how this entry changed the balance of {@code accountId}
+     */
+    public BigDecimal deltaFor(String accountId) {
+        if (legs != null && !accountId.equals(accountFromId) && !accountId.equals(accountToId)) {
+            BigDecimal legAmount = BigDecimal.ZERO;
+            for (TransferLeg leg : legs) {
+                if (accountId.equals(leg.getAccountId())) {
+                    legAmount = legAmount.add(leg.getAmount());
+                }
+            }
+            return type == Type.FAN_IN ? legAmount.negate() : legAmount;
+        }
+        if (accountId.equals(accountToId)) {
+            return creditAmount == null ? amount : creditAmount;
+        }
+        if (accountId.equals(accountFromId)) {
+            return amount.negate();
+        }
+        return BigDecimal.ZERO;
+    }
+}
@@ -0,0 +1,16 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+@Data
+public class ReconciliationDiff {
+    private final String accountId;
+
+    private final BigDecimal journalBalance;
+
+    private final BigDecimal storedBalance;
+
+    private final long journalSequence;
+}
@@ -0,0 +1,34 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ReconciliationReport {
+    public enum Status {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    private final String id;
+
+    private final Status status;
+
+    private final long startedAt;
+
+    private final Long finishedAt;
+
+    private final long journalEntries;
+
+    private final long accountsTotal;
+
+    private final long accountsChecked;
+
+    private final int partitionsTotal;
+
+    private final int partitionsCompleted;
+
+    private final List<ReconciliationDiff> mismatches;
+
+    private final String message;
+}
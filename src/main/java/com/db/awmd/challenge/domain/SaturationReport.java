@@ -0,0 +1,39 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Request thread figures are -1 when the application does not run in an embedded Tomcat. Heap
+ * figures are those of the old generation after its last collection.
+ */
+@Data
+public class SaturationReport {
+
+    private final int requestThreadsActive;
+
+    private final int requestThreadsMax;
+
+    private final int requestsQueued;
+
+    private final int requestsInFlight;
+
+    private final int transfersInFlight;
+
+    private final int lockWaiters;
+
+    private final long longestLockWaitMs;
+
+    private final int notificationsInFlight;
+
+    private final long heapUsedBytes;
+
+    private final long heapMaxBytes;
+
+    private final double heapHeadroom;
+
+    private final boolean overloaded;
+
+    private final List<String> overloadReasons;
+}
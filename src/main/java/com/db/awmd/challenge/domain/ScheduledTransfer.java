@@ -0,0 +1,68 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
+
+@Data
+public class ScheduledTransfer {
+    private final String id;
+
+    @NotNull
+    @NotEmpty
+    private final String accountFromId;
+
+    @NotNull
+    @NotEmpty
+    private final String accountToId;
+
+    @NotNull
+    @Min(value = 0, message = "Amount must be positive.")
+    private final BigDecimal amount;
+
+    @NotNull
+    private final Long executeAt;
+
+    @Min(value = 1, message = "Interval must be positive.")
+    private final Long intervalMs;
+
+    @JsonCreator
+    public ScheduledTransfer(@JsonProperty("id") String id,
+                             @JsonProperty("accountFromId") String accountFromId,
+                             @JsonProperty("accountToId") String accountToId,
+                             @JsonProperty("amount") BigDecimal amount,
+                             @JsonProperty("executeAt") Long executeAt,
+                             @JsonProperty("intervalMs") Long intervalMs) {
+        this.id = id;
+        this.accountFromId = accountFromId;
+        this.accountToId = accountToId;
+        this.amount = amount;
+        this.executeAt = executeAt;
+        this.intervalMs = intervalMs;
+    }
+
+    @JsonIgnore
+    public boolean isRecurring() {
+        return intervalMs != null;
+    }
+
+    public ScheduledTransfer withId(String id) {
+        return new ScheduledTransfer(id, accountFromId, accountToId, amount, executeAt, intervalMs);
+    }
+
+    public ScheduledTransfer nextOccurrenceAfter(long timeMs) {
+        long periodsMissed = Math.max(0L, (timeMs - executeAt) / intervalMs);
+        long nextExecuteAt = executeAt + (periodsMissed + 1) * intervalMs;
+        return new ScheduledTransfer(id, accountFromId, accountToId, amount, nextExecuteAt, intervalMs);
+    }
+
+    public Transfer toTransfer() {
+        return new Transfer(accountFromId, accountToId, amount);
+    }
+}
@@ -0,0 +1,56 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+/**
+ * One change to the stored schedule, appended to the scheduled transfer log and replayed in
+ * order at start.
+ */
+@Data
+public class ScheduledTransferRecord {
+    public enum Type {
+        /**
+         * Adds or replaces the schedule entry.
+         */
+        SCHEDULED,
+        /**
+         * Drops the schedule entry and its occurrences not handed over yet.
+         */
+        CANCELLED,
+        /**
+         * Stores the occurrence as due and drops it from the schedule.
+         */
+        FIRED,
+        /**
+         * Drops the due occurrence once it goes to the transfer scheduler.
+         */
+        HANDED_OVER
+    }
+
+    private final Type type;
+
+    private final String scheduledTransferId;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final ScheduledTransfer scheduledTransfer;
+
+    @JsonCreator
+    public ScheduledTransferRecord(@JsonProperty("type") Type type,
+                                   @JsonProperty("scheduledTransferId") String scheduledTransferId,
+                                   @JsonProperty("scheduledTransfer") ScheduledTransfer scheduledTransfer) {
+        this.type = type;
+        this.scheduledTransferId = scheduledTransferId;
+        this.scheduledTransfer = scheduledTransfer;
+    }
+
+    public static ScheduledTransferRecord of(Type type, ScheduledTransfer scheduledTransfer) {
+        return new ScheduledTransferRecord(type, scheduledTransfer.getId(), scheduledTransfer);
+    }
+
+    public static ScheduledTransferRecord cancelled(String scheduledTransferId) {
+        return new ScheduledTransferRecord(Type.CANCELLED, scheduledTransferId, null);
+    }
+}
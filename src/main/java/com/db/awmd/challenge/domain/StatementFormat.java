@@ -0,0 +1,16 @@
+package com.db.awmd.challenge.domain;
+
+public enum StatementFormat {
+    NDJSON("application/x-ndjson"),
+    CSV("text/csv");
+
+    private final String contentType;
+
+    StatementFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+}
@@ -0,0 +1,131 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Balance of a split account, spread over a fixed number of sub-balances like a
+ * {@link java.util.concurrent.atomic.LongAdder}. Credits add to the stripe picked by the calling
+ * thread and move to the next stripe when they lose a race, so concurrent credits rarely touch the
+ * same cache line. The balance is the sum of the stripes.
+ * Debits must hold the account lock: they check the sum and then drain stripes in index order, never
+ * taking more than a stripe holds. Credits only ever add, so the sum checked stays available.
+ * {@link #seal()} closes every stripe; a credit that finds its stripe closed fails and the caller
+ * applies it to the merged balance instead.
+ */
+public final class StripedBalance {
+
+    private final Stripe[] stripes;
+
+    public StripedBalance(BigDecimal balance, int stripeCount) {
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("Stripe count must be positive");
+        }
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(i == 0 ? balance : BigDecimal.ZERO);
+        }
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * @return false if the stripes were sealed and nothing was added
+     */
+    public boolean tryCredit(BigDecimal amount) {
+        int index = (int) (Thread.currentThread().getId() % stripes.length);
+        while (true) {
+            Stripe stripe = stripes[index];
+            BigDecimal value = stripe.value;
+            if (value == null) {
+                return false;
+            }
+            if (Stripe.VALUE.compareAndSet(stripe, value, value.add(amount))) {
+                return true;
+            }
+            index = index + 1 == stripes.length ? 0 : index + 1;
+        }
+    }
+
+    /**
+     * Takes {@code amount} from the stripes. The caller holds the account lock and has checked that
+     * {@link #sum()} covers it; a shortfall is charged to the first stripe so the sum stays exact.
+     */
+    public void debit(BigDecimal amount) {
+        BigDecimal remaining = amount;
+        for (int i = 0; i < stripes.length && remaining.signum() > 0; i++) {
+            Stripe stripe = stripes[i];
+            while (true) {
+                BigDecimal value = stripe.value;
+                if (value == null || value.signum() <= 0) {
+                    break;
+                }
+                BigDecimal taken = value.min(remaining);
+                if (Stripe.VALUE.compareAndSet(stripe, value, value.subtract(taken))) {
+                    remaining = remaining.subtract(taken);
+                    break;
+                }
+            }
+        }
+        if (remaining.signum() > 0) {
+            stripes[0].add(remaining.negate());
+        }
+    }
+
+    /**
+     * @return the sum of the stripes, or null if they are being sealed
+     */
+    public BigDecimal sum() {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (Stripe stripe : stripes) {
+            BigDecimal value = stripe.value;
+            if (value == null) {
+                return null;
+            }
+            sum = sum.add(value);
+        }
+        return sum;
+    }
+
+    /**
+     * Closes every stripe to further credits.
+     *
+     * @return the final sum
+     */
+    public BigDecimal seal() {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (Stripe stripe : stripes) {
+            BigDecimal value = Stripe.VALUE.getAndSet(stripe, null);
+            if (value != null) {
+                sum = sum.add(value);
+            }
+        }
+        return sum;
+    }
+
+    @SuppressWarnings("unused")
+    private static final class Stripe {
+        private static final AtomicReferenceFieldUpdater<Stripe, BigDecimal> VALUE =
+                AtomicReferenceFieldUpdater.newUpdater(Stripe.class, BigDecimal.class, "value");
+
+        // keeps neighbouring stripes on separate cache lines
+        private long p1, p2, p3, p4, p5, p6, p7;
+        private volatile BigDecimal value;
+        private long q1, q2, q3, q4, q5, q6, q7;
+
+        private Stripe(BigDecimal value) {
+            this.value = value;
+        }
+
+        private void add(BigDecimal delta) {
+            while (true) {
+                BigDecimal current = value;
+                if (current == null || VALUE.compareAndSet(this, current, current.add(delta))) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+/**
+ * Start is relative to the start of the request; depth counts enclosing spans of the same thread.
+ */
+@Data
+public class TraceSpan {
+
+    private final String name;
+
+    private final String thread;
+
+    private final int depth;
+
+    private final long startMicros;
+
+    private final long durationMicros;
+}
@@ -0,0 +1,23 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class TracedRequest {
+
+    private final String requestId;
+
+    private final String method;
+
+    private final String uri;
+
+    private final int status;
+
+    private final long startedAt;
+
+    private final long durationMicros;
+
+    private final List<TraceSpan> spans;
+}
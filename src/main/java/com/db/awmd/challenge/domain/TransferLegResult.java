@@ -0,0 +1,28 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+@Data
+public class TransferLegResult {
+    public enum Status {
+        COMPLETED, FAILED
+    }
+
+    private final String accountId;
+
+    private final BigDecimal amount;
+
+    private final Status status;
+
+    private final String message;
+
+    public static TransferLegResult completed(TransferLeg leg) {
+        return new TransferLegResult(leg.getAccountId(), leg.getAmount(), Status.COMPLETED, null);
+    }
+
+    public static TransferLegResult failed(TransferLeg leg, String message) {
+        return new TransferLegResult(leg.getAccountId(), leg.getAmount(), Status.FAILED, message);
+    }
+}
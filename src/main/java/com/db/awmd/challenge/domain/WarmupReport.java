@@ -0,0 +1,24 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+@Data
+public class WarmupReport {
+    public enum Status {
+        PENDING, RUNNING, COMPLETED, SKIPPED, FAILED
+    }
+
+    private final Status status;
+
+    private final boolean ready;
+
+    private final int iterations;
+
+    private final int iterationsCompleted;
+
+    private final Long startedAt;
+
+    private final Long finishedAt;
+
+    private final String message;
+}
@@ -0,0 +1,7 @@
+package com.db.awmd.challenge.exception;
+
+public class TransferQueueFullException extends RuntimeException {
+    public TransferQueueFullException(String message) {
+        super(message);
+    }
+}
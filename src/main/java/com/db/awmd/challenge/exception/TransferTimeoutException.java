@@ -0,0 +1,7 @@
+package com.db.awmd.challenge.exception;
+
+public class TransferTimeoutException extends RuntimeException {
+    public TransferTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.db.awmd.challenge.exception;
+
+public class VelocityLimitExceededException extends RuntimeException {
+    public VelocityLimitExceededException(String message) {
+        super(message);
+    }
+}
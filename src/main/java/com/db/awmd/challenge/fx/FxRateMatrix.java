@@ -0,0 +1,106 @@
+package com.db.awmd.challenge.fx;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable matrix of exchange rates between every pair of known currencies. Cross rates are
+ * derived from the rates against the base currency once, when the matrix is built, so a
+ * conversion is two map lookups, an array read and one multiplication.
+ */
+public final class FxRateMatrix {
+
+    private static final MathContext CROSS_RATE_PRECISION = MathContext.DECIMAL64;
+
+    private final long version;
+
+    private final long updatedAt;
+
+    private final String baseCurrency;
+
+    private final int scale;
+
+    private final Map<String, Integer> indexes;
+
+    private final Map<String, BigDecimal> ratesPerBase;
+
+    private final BigDecimal[] rates;
+
+    /**
+     * @param ratesPerBase units of each currency bought by one unit of {@code baseCurrency}
+     */
+    public FxRateMatrix(long version, long updatedAt, String baseCurrency, int scale, Map<String, BigDecimal> ratesPerBase) {
+        Map<String, BigDecimal> perBase = new TreeMap<>(ratesPerBase);
+        perBase.put(baseCurrency, BigDecimal.ONE);
+        for (Map.Entry<String, BigDecimal> rate : perBase.entrySet()) {
+            if (rate.getKey() == null || !rate.getKey().matches("[A-Z]{3}")) {
+                throw new IllegalArgumentException("Currency " + rate.getKey() + " is not an ISO 4217 code");
+            }
+            if (rate.getValue() == null || rate.getValue().signum() <= 0) {
+                throw new IllegalArgumentException("Rate of " + rate.getKey() + " must be positive");
+            }
+        }
+        this.version = version;
+        this.updatedAt = updatedAt;
+        this.baseCurrency = baseCurrency;
+        this.scale = scale;
+        this.ratesPerBase = Collections.unmodifiableMap(perBase);
+        Map<String, Integer> currencyIndexes = new HashMap<>();
+        BigDecimal[] perBaseByIndex = new BigDecimal[perBase.size()];
+        for (Map.Entry<String, BigDecimal> rate : perBase.entrySet()) {
+            perBaseByIndex[currencyIndexes.size()] = rate.getValue();
+            currencyIndexes.put(rate.getKey(), currencyIndexes.size());
+        }
+        this.indexes = Collections.unmodifiableMap(currencyIndexes);
+        int size = perBaseByIndex.length;
+        this.rates = new BigDecimal[size * size];
+        for (int from = 0; from < size; from++) {
+            for (int to = 0; to < size; to++) {
+                rates[from * size + to] = from == to ? BigDecimal.ONE
+                        : perBaseByIndex[to].divide(perBaseByIndex[from], CROSS_RATE_PRECISION);
+            }
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    public Map<String, BigDecimal> getRatesPerBase() {
+        return ratesPerBase;
+    }
+
+    /**
+     * @return units of {@code to} bought by one unit of {@code from}, or null if either currency is unknown
+     */
+    public BigDecimal rate(String from, String to) {
+        Integer fromIndex = indexes.get(from);
+        Integer toIndex = indexes.get(to);
+        if (fromIndex == null || toIndex == null) {
+            return null;
+        }
+        return rates[fromIndex * indexes.size() + toIndex];
+    }
+
+    /**
+     * @return {@code amount} of {@code from} in {@code to}, rounded half even to the matrix scale,
+     * or null if either currency is unknown
+     */
+    public BigDecimal convert(BigDecimal amount, String from, String to) {
+        BigDecimal rate = rate(from, to);
+        return rate == null ? null : amount.multiply(rate).setScale(scale, RoundingMode.HALF_EVEN);
+    }
+}
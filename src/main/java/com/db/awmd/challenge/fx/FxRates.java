@@ -0,0 +1,98 @@
+package com.db.awmd.challenge.fx;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ExchangeRates;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds the current {@link FxRateMatrix}. Transfers read it with one volatile load and convert
+ * with that matrix throughout, so they never lock and never see half an update. A refresh
+ * builds a complete new matrix aside and publishes it with one volatile write; transfers already
+ * holding the old matrix finish with it.
+ * Accounts without a currency hold the base currency.
+ */
+@Component
+@Slf4j
+public class FxRates {
+
+    private final String baseCurrency;
+
+    private final int scale;
+
+    private final Object updateMonitor = new Object();
+
+    private volatile FxRateMatrix matrix;
+
+    public FxRates() {
+        this("EUR", 2, "");
+    }
+
+    /**
+     * @param rates initial rates as {@code CUR=units per base unit} pairs separated by commas
+     */
+    @Autowired
+    public FxRates(@Value("${fx.base-currency:EUR}") String baseCurrency,
+                   @Value("${fx.scale:2}") int scale,
+                   @Value("${fx.rates:}") String rates) {
+        this.baseCurrency = baseCurrency;
+        this.scale = scale;
+        this.matrix = new FxRateMatrix(0L, System.currentTimeMillis(), baseCurrency, scale, parse(rates));
+    }
+
+    public FxRateMatrix current() {
+        return matrix;
+    }
+
+    public String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    public String currencyOf(Account account) {
+        return account.getCurrency() == null ? baseCurrency : account.getCurrency();
+    }
+
+    /**
+     * Replaces every rate at once.
+     *
+     * @param ratesPerBase units of each currency bought by one unit of the base currency
+     */
+    public FxRateMatrix update(Map<String, BigDecimal> ratesPerBase) {
+        synchronized (updateMonitor) {
+            FxRateMatrix updated = new FxRateMatrix(matrix.getVersion() + 1, System.currentTimeMillis(), baseCurrency,
+                    scale, ratesPerBase);
+            matrix = updated;
+            log.info("Exchange rates updated to version " + updated.getVersion() + " with " + updated.getRatesPerBase().size()
+                    + " currencies");
+            return updated;
+        }
+    }
+
+    public ExchangeRates getExchangeRates() {
+        FxRateMatrix current = matrix;
+        return new ExchangeRates(current.getBaseCurrency(), current.getVersion(), current.getUpdatedAt(),
+                current.getRatesPerBase());
+    }
+
+    private static Map<String, BigDecimal> parse(String rates) {
+        if (rates == null || rates.trim().isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, BigDecimal> parsed = new HashMap<>();
+        for (String pair : rates.split(",")) {
+            String[] currencyAndRate = pair.split("=");
+            if (currencyAndRate.length != 2) {
+                throw new IllegalArgumentException("Exchange rate " + pair + " is not CUR=rate");
+            }
+            parsed.put(currencyAndRate[0].trim(), new BigDecimal(currencyAndRate[1].trim()));
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,76 @@
+package com.db.awmd.challenge.health;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.catalina.connector.Connector;
+import org.springframework.boot.context.embedded.EmbeddedServletContainerInitializedEvent;
+import org.springframework.boot.context.embedded.tomcat.TomcatEmbeddedServletContainer;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts requests inside the filter chain and, once the embedded Tomcat is up, exposes the
+ * connector's worker pool so active and queued request threads can be read.
+ */
+@Component
+@Slf4j
+public class RequestLoadMonitor extends OncePerRequestFilter
+        implements ApplicationListener<EmbeddedServletContainerInitializedEvent> {
+
+    private final AtomicInteger requestsInFlight = new AtomicInteger();
+
+    private volatile ThreadPoolExecutor requestThreads;
+
+    @Override
+    public void onApplicationEvent(EmbeddedServletContainerInitializedEvent event) {
+        if (!(event.getEmbeddedServletContainer() instanceof TomcatEmbeddedServletContainer)) {
+            return;
+        }
+        Connector connector = ((TomcatEmbeddedServletContainer) event.getEmbeddedServletContainer()).getTomcat().getConnector();
+        Executor executor = connector.getProtocolHandler().getExecutor();
+        if (executor instanceof ThreadPoolExecutor) {
+            requestThreads = (ThreadPoolExecutor) executor;
+        } else {
+            log.warn("Request thread pool of connector " + connector + " cannot be monitored");
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        requestsInFlight.incrementAndGet();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            requestsInFlight.decrementAndGet();
+        }
+    }
+
+    public int getRequestsInFlight() {
+        return requestsInFlight.get();
+    }
+
+    public int getRequestThreadsActive() {
+        ThreadPoolExecutor pool = requestThreads;
+        return pool == null ? -1 : pool.getActiveCount();
+    }
+
+    public int getRequestThreadsMax() {
+        ThreadPoolExecutor pool = requestThreads;
+        return pool == null ? -1 : pool.getMaximumPoolSize();
+    }
+
+    public int getRequestsQueued() {
+        ThreadPoolExecutor pool = requestThreads;
+        return pool == null ? -1 : pool.getQueue().size();
+    }
+}
@@ -0,0 +1,125 @@
+package com.db.awmd.challenge.health;
+
+import com.db.awmd.challenge.domain.SaturationReport;
+import com.db.awmd.challenge.service.TransferScheduler;
+import com.db.awmd.challenge.service.TransferService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the live saturation signals and compares them with configured limits. Any signal
+ * over its limit marks the instance overloaded, so a load balancer polling the endpoint can
+ * move traffic away while requests still complete in time rather than once they stop.
+ * <p>
+ * Heap headroom is taken from the old generation as it was left by its last collection, so
+ * garbage that the next collection frees does not count; only when the JVM exposes no such
+ * pool the current heap usage is used.
+ */
+@Component
+public class SaturationMonitor {
+
+    private final RequestLoadMonitor requestLoadMonitor;
+
+    private final TransferScheduler transferScheduler;
+
+    private final TransferService transferService;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    private final MemoryPoolMXBean oldGeneration = findOldGeneration();
+
+    private final double maxRequestThreadUtilization;
+
+    private final int maxQueuedRequests;
+
+    private final int maxTransfersInFlight;
+
+    private final long maxLockWaitMs;
+
+    private final int maxNotificationsInFlight;
+
+    private final double minHeapHeadroom;
+
+    @Autowired
+    public SaturationMonitor(RequestLoadMonitor requestLoadMonitor,
+                             TransferScheduler transferScheduler,
+                             TransferService transferService,
+                             @Value("${health.saturation.max-request-thread-utilization:0.9}") double maxRequestThreadUtilization,
+                             @Value("${health.saturation.max-queued-requests:50}") int maxQueuedRequests,
+                             @Value("${health.saturation.max-transfers-in-flight:1000}") int maxTransfersInFlight,
+                             @Value("${health.saturation.max-lock-wait-ms:500}") long maxLockWaitMs,
+                             @Value("${health.saturation.max-notifications-in-flight:100}") int maxNotificationsInFlight,
+                             @Value("${health.saturation.min-heap-headroom:0.1}") double minHeapHeadroom) {
+        this.requestLoadMonitor = requestLoadMonitor;
+        this.transferScheduler = transferScheduler;
+        this.transferService = transferService;
+        this.maxRequestThreadUtilization = maxRequestThreadUtilization;
+        this.maxQueuedRequests = maxQueuedRequests;
+        this.maxTransfersInFlight = maxTransfersInFlight;
+        this.maxLockWaitMs = maxLockWaitMs;
+        this.maxNotificationsInFlight = maxNotificationsInFlight;
+        this.minHeapHeadroom = minHeapHeadroom;
+    }
+
+    public SaturationReport check() {
+        int requestThreadsActive = requestLoadMonitor.getRequestThreadsActive();
+        int requestThreadsMax = requestLoadMonitor.getRequestThreadsMax();
+        int requestsQueued = requestLoadMonitor.getRequestsQueued();
+        int transfersInFlight = transferScheduler.getPendingTransfers();
+        long longestLockWaitMs = TimeUnit.NANOSECONDS.toMillis(transferService.getLongestLockWaitNanos());
+        int notificationsInFlight = transferService.getNotificationsInFlight();
+        MemoryUsage heap = oldGeneration == null ? null : oldGeneration.getCollectionUsage();
+        if (heap == null) {
+            heap = memory.getHeapMemoryUsage();
+        }
+        long heapMax = heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+        double heapHeadroom = heapMax > 0 ? (double) (heapMax - heap.getUsed()) / heapMax : 1.0;
+
+        List<String> reasons = new ArrayList<>();
+        if (requestThreadsMax > 0 && requestThreadsActive >= maxRequestThreadUtilization * requestThreadsMax) {
+            reasons.add("request threads " + requestThreadsActive + "/" + requestThreadsMax + " busy");
+        }
+        if (requestsQueued > maxQueuedRequests) {
+            reasons.add(requestsQueued + " requests queued");
+        }
+        if (transfersInFlight > maxTransfersInFlight) {
+            reasons.add(transfersInFlight + " transfers in flight");
+        }
+        if (longestLockWaitMs > maxLockWaitMs) {
+            reasons.add("lock wait " + longestLockWaitMs + " ms");
+        }
+        if (notificationsInFlight > maxNotificationsInFlight) {
+            reasons.add(notificationsInFlight + " notifications in flight");
+        }
+        if (heapHeadroom < minHeapHeadroom) {
+            reasons.add(String.format("heap headroom %.3f", heapHeadroom));
+        }
+        return new SaturationReport(requestThreadsActive, requestThreadsMax, requestsQueued,
+                requestLoadMonitor.getRequestsInFlight(), transfersInFlight, transferService.getLockWaiters(),
+                longestLockWaitMs, notificationsInFlight, heap.getUsed(), heapMax, heapHeadroom,
+                !reasons.isEmpty(), reasons);
+    }
+
+    /**
+     * @return the heap pool objects are tenured to; of the heap pools only it supports a usage threshold
+     */
+    private static MemoryPoolMXBean findOldGeneration() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported()
+                    && pool.isCollectionUsageThresholdSupported()) {
+                return pool;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,262 @@
+package com.db.awmd.challenge.index;
+
+import com.db.awmd.challenge.domain.AccountSearchPage;
+import com.db.awmd.challenge.domain.BalanceChange;
+import com.db.awmd.challenge.domain.JournalEntry;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.BalanceChangeListener;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Radix trie over account ids. Edges carry whole strings, so a chain of single children is
+ * one node, and children are kept in arrays sorted by first character. Writers are serialized
+ * and never change a node readers can see in place: labels are final, and child arrays and
+ * split nodes are built aside and published with one volatile write. Readers therefore walk
+ * the trie without locking, and a search touches only the subtree under the prefix, lazily,
+ * in id order.
+ */
+@Component
+@Slf4j
+public class AccountIdTrie implements BalanceChangeListener {
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final AccountsRepository accountsRepository;
+
+    private final Object writeMonitor = new Object();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private volatile Node root = new Node("", false, NO_CHILDREN);
+
+    @Autowired
+    public AccountIdTrie(AccountsRepository accountsRepository) {
+        this.accountsRepository = accountsRepository;
+    }
+
+    @PostConstruct
+    public void load() {
+        accountsRepository.forEachAccount(account -> add(account.getAccountId()));
+        log.info("Account id trie loaded with " + size.get() + " accounts");
+    }
+
+    @Override
+    public void onBalanceChange(BalanceChange change) {
+        if (change.getType() == JournalEntry.Type.OPEN) {
+            add(change.getAccountId());
+        }
+    }
+
+    @Override
+    public void onAccountsCleared() {
+        synchronized (writeMonitor) {
+            root = new Node("", false, NO_CHILDREN);
+            size.set(0);
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public void add(String accountId) {
+        synchronized (writeMonitor) {
+            Node node = root;
+            int position = 0;
+            while (true) {
+                if (position == accountId.length()) {
+                    if (!node.terminal) {
+                        node.terminal = true;
+                        size.incrementAndGet();
+                    }
+                    return;
+                }
+                Node[] children = node.children;
+                int index = indexOf(children, accountId.charAt(position));
+                if (index < 0) {
+                    node.children = insert(children, -index - 1,
+                            new Node(accountId.substring(position), true, NO_CHILDREN));
+                    size.incrementAndGet();
+                    return;
+                }
+                Node child = children[index];
+                int common = commonPrefixLength(child.label, accountId, position);
+                if (common == child.label.length()) {
+                    node = child;
+                    position += common;
+                    continue;
+                }
+                Node tail = new Node(child.label.substring(common), child.terminal, child.children);
+                boolean terminal = position + common == accountId.length();
+                Node split = new Node(child.label.substring(0, common), terminal,
+                        terminal ? new Node[]{tail} : NO_CHILDREN);
+                if (!terminal) {
+                    Node leaf = new Node(accountId.substring(position + common), true, NO_CHILDREN);
+                    split.children = leaf.label.charAt(0) < tail.label.charAt(0)
+                            ? new Node[]{leaf, tail} : new Node[]{tail, leaf};
+                }
+                Node[] replaced = children.clone();
+                replaced[index] = split;
+                node.children = replaced;
+                size.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return up to {@code limit} ids starting with {@code prefix} and greater than {@code after}, in id
+     * order, with the cursor to pass as {@code after} for the next page, null on the last page
+     */
+    public AccountSearchPage search(String prefix, String after, int limit) {
+        List<String> accountIds = new ArrayList<>(Math.min(limit, 1024));
+        Iterator<String> matches = iterate(prefix, after);
+        while (accountIds.size() < limit && matches.hasNext()) {
+            accountIds.add(matches.next());
+        }
+        String next = matches.hasNext() && !accountIds.isEmpty() ? accountIds.get(accountIds.size() - 1) : null;
+        return new AccountSearchPage(accountIds, next);
+    }
+
+    /**
+     * Lazily walks the ids starting with {@code prefix} that sort after {@code after}.
+     */
+    public Iterator<String> iterate(String prefix, String after) {
+        Node node = root;
+        StringBuilder path = new StringBuilder();
+        int position = 0;
+        while (position < prefix.length()) {
+            Node[] children = node.children;
+            int index = indexOf(children, prefix.charAt(position));
+            if (index < 0) {
+                return new SubtreeIterator(null, null, after);
+            }
+            Node child = children[index];
+            int common = commonPrefixLength(child.label, prefix, position);
+            if (common < child.label.length() && position + common < prefix.length()) {
+                return new SubtreeIterator(null, null, after);
+            }
+            path.append(child.label);
+            position += common;
+            node = child;
+        }
+        return new SubtreeIterator(node, path.toString(), after);
+    }
+
+    private static int indexOf(Node[] children, char first) {
+        int low = 0;
+        int high = children.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char candidate = children[middle].label.charAt(0);
+            if (candidate < first) {
+                low = middle + 1;
+            } else if (candidate > first) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static Node[] insert(Node[] children, int index, Node child) {
+        Node[] inserted = Arrays.copyOf(children, children.length + 1);
+        System.arraycopy(children, index, inserted, index + 1, children.length - index);
+        inserted[index] = child;
+        return inserted;
+    }
+
+    private static int commonPrefixLength(String label, String key, int offset) {
+        int max = Math.min(label.length(), key.length() - offset);
+        int length = 0;
+        while (length < max && label.charAt(length) == key.charAt(offset + length)) {
+            length++;
+        }
+        return length;
+    }
+
+    private static final class Node {
+        private final String label;
+        private volatile boolean terminal;
+        private volatile Node[] children;
+
+        private Node(String label, boolean terminal, Node[] children) {
+            this.label = label;
+            this.terminal = terminal;
+            this.children = children;
+        }
+    }
+
+    /**
+     * Depth first walk that skips whole subtrees sorting before {@code after}.
+     */
+    private static final class SubtreeIterator implements Iterator<String> {
+        private final Deque<Node> nodes = new ArrayDeque<>();
+        private final Deque<String> paths = new ArrayDeque<>();
+        private final String after;
+        private String next;
+
+        private SubtreeIterator(Node start, String path, String after) {
+            this.after = after;
+            if (start != null) {
+                nodes.push(start);
+                paths.push(path);
+            }
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            String current = next;
+            advance();
+            return current;
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null && !nodes.isEmpty()) {
+                Node node = nodes.pop();
+                String path = paths.pop();
+                Node[] children = node.children;
+                for (int i = children.length - 1; i >= 0; i--) {
+                    String childPath = path + children[i].label;
+                    if (after == null || !skipped(childPath)) {
+                        nodes.push(children[i]);
+                        paths.push(childPath);
+                    }
+                }
+                if (node.terminal && (after == null || path.compareTo(after) > 0)) {
+                    next = path;
+                }
+            }
+        }
+
+        /**
+         * A subtree is skipped if every id in it sorts before or equal to {@code after}.
+         */
+        private boolean skipped(String path) {
+            return path.compareTo(after) < 0 && !after.startsWith(path);
+        }
+    }
+}
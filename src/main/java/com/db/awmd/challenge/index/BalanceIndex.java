@@ -0,0 +1,140 @@
+package com.db.awmd.challenge.index;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceChange;
+import com.db.awmd.challenge.metrics.Histogram;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.BalanceChangeListener;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Accounts ordered by balance, then account id, in a concurrent skip list, so top-N and
+ * balance range queries cost O(log n + k) instead of a sort of all accounts. Each balance
+ * change inserts the new entry before removing the old one, so a reader racing an update
+ * never misses the account; the stale copy is skipped when results are collected.
+ */
+@Component
+@Slf4j
+public class BalanceIndex implements BalanceChangeListener {
+
+    private static final Comparator<Entry> ORDER = Comparator
+            .comparing((Entry entry) -> entry.balance)
+            .thenComparingInt(entry -> entry.bound)
+            .thenComparing(entry -> entry.accountId);
+
+    private final AccountsRepository accountsRepository;
+
+    private final ConcurrentSkipListSet<Entry> entries = new ConcurrentSkipListSet<>(ORDER);
+
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+    private final Histogram updateHistogram;
+
+    @Autowired
+    public BalanceIndex(AccountsRepository accountsRepository, MetricsRegistry metricsRegistry) {
+        this.accountsRepository = accountsRepository;
+        this.updateHistogram = metricsRegistry.histogram("balance.index.update.nanos");
+        metricsRegistry.gauge("balance.index.size", current::size);
+    }
+
+    @PostConstruct
+    public void load() {
+        accountsRepository.forEachAccount(account -> update(account.getAccountId(), account.getBalance()));
+        log.info("Balance index loaded with " + current.size() + " accounts");
+    }
+
+    @Override
+    public void onBalanceChange(BalanceChange change) {
+        long start = System.nanoTime();
+        update(change.getAccountId(), change.getBalance());
+        updateHistogram.record(System.nanoTime() - start);
+    }
+
+    @Override
+    public void onAccountsCleared() {
+        current.clear();
+        entries.clear();
+    }
+
+    /**
+     * @return the {@code n} accounts with the highest balances, highest first
+     */
+    public List<Account> top(int n) {
+        return collect(entries.descendingSet(), n);
+    }
+
+    /**
+     * @return accounts with {@code min <= balance <= max}, lowest first; a null bound is open
+     */
+    public List<Account> range(BigDecimal min, BigDecimal max, int limit) {
+        NavigableSet<Entry> range;
+        if (min == null && max == null) {
+            range = entries;
+        } else if (min == null) {
+            range = entries.headSet(Entry.highest(max), false);
+        } else if (max == null) {
+            range = entries.tailSet(Entry.lowest(min), false);
+        } else {
+            range = entries.subSet(Entry.lowest(min), false, Entry.highest(max), false);
+        }
+        return collect(range, limit);
+    }
+
+    private void update(String accountId, BigDecimal balance) {
+        Entry updated = new Entry(balance, 0, accountId);
+        entries.add(updated);
+        Entry previous = current.put(accountId, updated);
+        if (previous != null && ORDER.compare(previous, updated) != 0) {
+            entries.remove(previous);
+        }
+    }
+
+    private List<Account> collect(NavigableSet<Entry> range, int limit) {
+        List<Account> accounts = new ArrayList<>(Math.min(limit, 1024));
+        Set<String> collected = new HashSet<>();
+        Iterator<Entry> iterator = range.iterator();
+        while (accounts.size() < limit && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (collected.add(entry.accountId)) {
+                accounts.add(new Account(entry.accountId, entry.balance));
+            }
+        }
+        return accounts;
+    }
+
+    private static final class Entry {
+        private final BigDecimal balance;
+        private final int bound;
+        private final String accountId;
+
+        private Entry(BigDecimal balance, int bound, String accountId) {
+            this.balance = balance;
+            this.bound = bound;
+            this.accountId = accountId;
+        }
+
+        private static Entry lowest(BigDecimal balance) {
+            return new Entry(balance, -1, "");
+        }
+
+        private static Entry highest(BigDecimal balance) {
+            return new Entry(balance, 1, "");
+        }
+    }
+}
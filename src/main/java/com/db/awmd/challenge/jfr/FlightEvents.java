@@ -0,0 +1,244 @@
+package com.db.awmd.challenge.jfr;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Custom Java Flight Recorder events of the transfer lifecycle, under the category
+ * {@code Account Transfers}. The service targets Java 8, whose API has no {@code jdk.jfr}, so the
+ * event types are defined at runtime with {@code jdk.jfr.EventFactory} once {@link #enable} is
+ * called on a JVM with Flight Recorder. Until then, and on JVMs without it, every call is a
+ * volatile read and nothing else; after it, an event is only created while a recording has its
+ * type enabled. Stack traces are not recorded.
+ */
+@Slf4j
+public final class FlightEvents {
+
+    public enum Type {
+        TRANSFER("Transfer", "Transfer between two accounts, from its checks until it is applied or refused",
+                "accountFromId", "accountToId", "amount", "outcome"),
+        LOCK_ACQUIRED("Account Lock Acquired", "Wait for and acquisition of an account lock", "accountId"),
+        OVERDRAFT_REJECTED("Overdraft Rejected", "Debit refused for lack of funds", "accountId", "amount", "balance"),
+        TRANSFER_ROLLBACK("Transfer Rollback", "Balance changes of a transfer undone after a store or journal failure",
+                "accountFromId", "accountToId", "amount", "reason"),
+        NOTIFICATION_SENT("Notification Sent", "Transfer notification to an account holder", "accountId", "message");
+
+        private final String label;
+
+        private final String description;
+
+        private final String[] fields;
+
+        Type(String label, String description, String... fields) {
+            this.label = label;
+            this.description = description;
+            this.fields = fields;
+        }
+    }
+
+    /**
+     * A duration event from {@link #begin} until committed.
+     */
+    public interface Timed {
+        void commit(Object... values);
+    }
+
+    private static final String CATEGORY = "Account Transfers";
+
+    private static final String NAME_PREFIX = "com.db.awmd.challenge.";
+
+    private static final Timed NOOP = values -> { };
+
+    private static volatile Definitions definitions;
+
+    private FlightEvents() {
+    }
+
+    /**
+     * Registers the event types with Flight Recorder.
+     *
+     * @return false if the JVM has no Flight Recorder
+     */
+    public static synchronized boolean enable() {
+        if (definitions == null) {
+            try {
+                definitions = new Definitions();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                log.warn("Flight Recorder events not available on this JVM: " + e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static synchronized void disable() {
+        definitions = null;
+    }
+
+    public static boolean isEnabled(Type type) {
+        Definitions current = definitions;
+        return current != null && current.isEnabled(type);
+    }
+
+    /**
+     * @return a running event of {@code type}, or a no-op if no recording has the type enabled
+     */
+    public static Timed begin(Type type) {
+        Definitions current = definitions;
+        if (current == null || !current.isEnabled(type)) {
+            return NOOP;
+        }
+        Object event = current.newEvent(type);
+        if (event == null) {
+            return NOOP;
+        }
+        current.begin(event);
+        return values -> current.commit(type, event, true, values);
+    }
+
+    /**
+     * Commits an event of {@code type} without duration.
+     */
+    public static void instant(Type type, Object... values) {
+        Definitions current = definitions;
+        if (current == null || !current.isEnabled(type)) {
+            return;
+        }
+        Object event = current.newEvent(type);
+        if (event != null) {
+            current.commit(type, event, false, values);
+        }
+    }
+
+    /**
+     * Event factories and the handles used to fill and commit their events, looked up once.
+     */
+    private static final class Definitions {
+
+        private final Object[] factories = new Object[Type.values().length];
+
+        private final Object[] eventTypes = new Object[Type.values().length];
+
+        private final MethodHandle newEvent;
+
+        private final MethodHandle isEnabled;
+
+        private final MethodHandle set;
+
+        private final MethodHandle begin;
+
+        private final MethodHandle end;
+
+        private final MethodHandle commit;
+
+        private Definitions() throws ReflectiveOperationException {
+            ClassLoader loader = ClassLoader.getSystemClassLoader();
+            Class<?> eventClass = Class.forName("jdk.jfr.Event", false, loader);
+            Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory", false, loader);
+            Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType", false, loader);
+            Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement", false, loader);
+            Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor", false, loader);
+            Class<?> nameClass = Class.forName("jdk.jfr.Name", false, loader);
+            Class<?> labelClass = Class.forName("jdk.jfr.Label", false, loader);
+            Class<?> descriptionClass = Class.forName("jdk.jfr.Description", false, loader);
+            Class<?> categoryClass = Class.forName("jdk.jfr.Category", false, loader);
+            Class<?> stackTraceClass = Class.forName("jdk.jfr.StackTrace", false, loader);
+
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            MethodHandle annotation = lookup.findConstructor(annotationElementClass,
+                    MethodType.methodType(void.class, Class.class, Object.class));
+            MethodHandle valueDescriptor = lookup.findConstructor(valueDescriptorClass,
+                    MethodType.methodType(void.class, Class.class, String.class, List.class));
+            MethodHandle create = lookup.findStatic(factoryClass, "create",
+                    MethodType.methodType(factoryClass, List.class, List.class));
+            MethodHandle getEventType = lookup.findVirtual(factoryClass, "getEventType", MethodType.methodType(eventTypeClass));
+            newEvent = lookup.findVirtual(factoryClass, "newEvent", MethodType.methodType(eventClass))
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            isEnabled = lookup.findVirtual(eventTypeClass, "isEnabled", MethodType.methodType(boolean.class))
+                    .asType(MethodType.methodType(boolean.class, Object.class));
+            set = lookup.findVirtual(eventClass, "set", MethodType.methodType(void.class, int.class, Object.class))
+                    .asType(MethodType.methodType(void.class, Object.class, int.class, Object.class));
+            begin = voidHandle(lookup, eventClass, "begin");
+            end = voidHandle(lookup, eventClass, "end");
+            commit = voidHandle(lookup, eventClass, "commit");
+
+            try {
+                for (Type type : Type.values()) {
+                    List<Object> annotations = Arrays.asList(
+                            annotation.invoke(nameClass, NAME_PREFIX + toName(type)),
+                            annotation.invoke(labelClass, type.label),
+                            annotation.invoke(descriptionClass, type.description),
+                            annotation.invoke(categoryClass, new String[]{CATEGORY}),
+                            annotation.invoke(stackTraceClass, false));
+                    List<Object> fields = new ArrayList<>();
+                    for (String field : type.fields) {
+                        fields.add(valueDescriptor.invoke(String.class, field, new ArrayList<>()));
+                    }
+                    factories[type.ordinal()] = create.invoke(annotations, fields);
+                    eventTypes[type.ordinal()] = getEventType.invoke(factories[type.ordinal()]);
+                }
+            } catch (Throwable e) {
+                throw new ReflectiveOperationException("Cannot define Flight Recorder events", e);
+            }
+        }
+
+        private boolean isEnabled(Type type) {
+            try {
+                return (boolean) isEnabled.invokeExact(eventTypes[type.ordinal()]);
+            } catch (Throwable e) {
+                return false;
+            }
+        }
+
+        private Object newEvent(Type type) {
+            try {
+                return (Object) newEvent.invokeExact(factories[type.ordinal()]);
+            } catch (Throwable e) {
+                log.warn("Cannot create Flight Recorder event " + type, e);
+                return null;
+            }
+        }
+
+        private void begin(Object event) {
+            try {
+                begin.invokeExact(event);
+            } catch (Throwable e) {
+                log.warn("Cannot begin Flight Recorder event", e);
+            }
+        }
+
+        private void commit(Type type, Object event, boolean timed, Object[] values) {
+            try {
+                if (timed) {
+                    end.invokeExact(event);
+                }
+                for (int i = 0; i < type.fields.length && i < values.length; i++) {
+                    set.invokeExact(event, i, (Object) (values[i] == null ? null : values[i].toString()));
+                }
+                commit.invokeExact(event);
+            } catch (Throwable e) {
+                log.warn("Cannot commit Flight Recorder event " + type, e);
+            }
+        }
+
+        private static MethodHandle voidHandle(MethodHandles.Lookup lookup, Class<?> eventClass, String name)
+                throws ReflectiveOperationException {
+            return lookup.findVirtual(eventClass, name, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(void.class, Object.class));
+        }
+
+        private static String toName(Type type) {
+            StringBuilder name = new StringBuilder();
+            for (String word : type.name().split("_")) {
+                name.append(word.charAt(0)).append(word.substring(1).toLowerCase());
+            }
+            return name.toString();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.db.awmd.challenge.jfr;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Registers the {@link FlightEvents} types on startup when {@code jfr.events.enabled=true}.
+ */
+@Component
+@Slf4j
+public class FlightEventsRegistrar {
+
+    private final boolean enabled;
+
+    @Autowired
+    public FlightEventsRegistrar(@Value("${jfr.events.enabled:false}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    public void register() {
+        if (enabled && FlightEvents.enable()) {
+            log.info("Flight Recorder transfer events registered");
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.db.awmd.challenge.limits;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Transfer count and amount of one account over a sliding window, kept in a ring of time
+ * buckets plus running totals of the ring, so a check reads two totals whatever the window
+ * length. The ring has one bucket more than the window spans: a transfer is counted for at
+ * least the whole window and at most one bucket longer, never shorter.
+ * <p>
+ * The totals are raised first and lowered again if they went over the limit, so concurrent
+ * transfers can never be admitted together past it. A bucket is credited only once its totals
+ * were kept, and the thread moving the ring forward subtracts whatever expiring buckets held,
+ * so the totals always cover the buckets.
+ */
+class SlidingWindowCounter {
+
+    private final long bucketMillis;
+
+    private final int ringSize;
+
+    private final AtomicLongArray bucketCounts;
+
+    private final AtomicLongArray bucketAmounts;
+
+    private final AtomicLong head;
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong amount = new AtomicLong();
+
+    SlidingWindowCounter(long bucketMillis, int buckets, long nowMillis) {
+        this.bucketMillis = bucketMillis;
+        this.ringSize = buckets + 1;
+        this.bucketCounts = new AtomicLongArray(ringSize);
+        this.bucketAmounts = new AtomicLongArray(ringSize);
+        this.head = new AtomicLong(nowMillis / bucketMillis);
+    }
+
+    /**
+     * @return false, with nothing counted, if one more transfer of {@code units} would exceed a limit
+     */
+    boolean tryReserve(long nowMillis, long maxCount, long maxAmount, long units) {
+        advance(nowMillis);
+        if (count.incrementAndGet() > maxCount) {
+            count.decrementAndGet();
+            return false;
+        }
+        if (amount.addAndGet(units) > maxAmount) {
+            cancel(units);
+            return false;
+        }
+        return true;
+    }
+
+    void cancel(long units) {
+        count.decrementAndGet();
+        amount.addAndGet(-units);
+    }
+
+    void commit(long units) {
+        int slot = (int) (head.get() % ringSize);
+        bucketCounts.incrementAndGet(slot);
+        bucketAmounts.addAndGet(slot, units);
+    }
+
+    long getCount(long nowMillis) {
+        advance(nowMillis);
+        return count.get();
+    }
+
+    long getAmount(long nowMillis) {
+        advance(nowMillis);
+        return amount.get();
+    }
+
+    private void advance(long nowMillis) {
+        long epoch = nowMillis / bucketMillis;
+        long current = head.get();
+        while (epoch > current) {
+            if (head.compareAndSet(current, epoch)) {
+                // the slots of the new epochs still hold the oldest ones
+                long expired = Math.min(epoch - current, ringSize);
+                for (long e = current + 1; e <= current + expired; e++) {
+                    int slot = (int) (e % ringSize);
+                    count.addAndGet(-bucketCounts.getAndSet(slot, 0));
+                    amount.addAndGet(-bucketAmounts.getAndSet(slot, 0));
+                }
+                return;
+            }
+            current = head.get();
+        }
+    }
+}
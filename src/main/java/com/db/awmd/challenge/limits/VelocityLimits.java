@@ -0,0 +1,307 @@
+package com.db.awmd.challenge.limits;
+
+import com.db.awmd.challenge.exception.VelocityLimitExceededException;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Caps the number and the total amount of transfers debited from an account per minute, hour
+ * and day, with limits set per account class. The class of an account is the first configured
+ * id prefix it starts with, {@code default} otherwise. A check costs one map lookup and a few
+ * atomic additions per limited window and takes no lock, so transfers run it before locking any
+ * account. Every transfer admitted counts, whether or not it completes afterwards.
+ * <p>
+ * Counters exist only for accounts of limited classes that transferred recently: a sweep every
+ * {@code sweep-interval-ms} drops those unused for longer than a day, as they count nothing any more.
+ */
+@Component
+@Slf4j
+public class VelocityLimits {
+
+    public enum Window {
+        MINUTE(TimeUnit.MINUTES.toMillis(1), 12),
+        HOUR(TimeUnit.HOURS.toMillis(1), 12),
+        DAY(TimeUnit.DAYS.toMillis(1), 24);
+
+        private final long millis;
+
+        private final int buckets;
+
+        Window(long millis, int buckets) {
+            this.millis = millis;
+            this.buckets = buckets;
+        }
+    }
+
+    private static final String DEFAULT_CLASS = "default";
+
+    private static final long UNLIMITED = Long.MAX_VALUE;
+
+    private static final Window[] WINDOWS = Window.values();
+
+    private final boolean enabled;
+
+    private final int amountScale;
+
+    private final Map<String, String> classPrefixes;
+
+    private final Map<String, ClassLimits> classLimits;
+
+    private final LongSupplier clockMillis;
+
+    private final ConcurrentMap<String, AccountCounters> counters = new ConcurrentHashMap<>();
+
+    private final AtomicLong rejections = new AtomicLong();
+
+    private final ScheduledExecutorService sweeper;
+
+    public VelocityLimits() {
+        this(false, "", "", 2, 0L, new MetricsRegistry(), System::currentTimeMillis);
+    }
+
+    /**
+     * @param classPrefixes account id prefixes as {@code prefix=class} pairs separated by commas
+     * @param limits        limits as {@code class.window=maxCount/maxAmount} pairs separated by commas,
+     *                      either side of the slash may be {@code *} for no limit
+     */
+    @Autowired
+    public VelocityLimits(@Value("${transfer.velocity.enabled:false}") boolean enabled,
+                          @Value("${transfer.velocity.class-prefixes:}") String classPrefixes,
+                          @Value("${transfer.velocity.limits:}") String limits,
+                          @Value("${transfer.velocity.amount-scale:2}") int amountScale,
+                          @Value("${transfer.velocity.sweep-interval-ms:600000}") long sweepIntervalMs,
+                          MetricsRegistry metricsRegistry) {
+        this(enabled, classPrefixes, limits, amountScale, sweepIntervalMs, metricsRegistry, System::currentTimeMillis);
+    }
+
+    public VelocityLimits(boolean enabled, String classPrefixes, String limits, int amountScale, long sweepIntervalMs,
+                          MetricsRegistry metricsRegistry, LongSupplier clockMillis) {
+        this.enabled = enabled;
+        this.amountScale = amountScale;
+        this.classPrefixes = parsePrefixes(classPrefixes);
+        this.classLimits = parseLimits(limits, amountScale);
+        this.clockMillis = clockMillis;
+        metricsRegistry.gauge("transfer.velocity.rejections", rejections::get);
+        metricsRegistry.gauge("transfer.velocity.accounts", counters::size);
+        if (enabled && sweepIntervalMs > 0) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("velocity-limits-"));
+            sweeper.scheduleWithFixedDelay(this::sweepQuietly, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            sweeper = null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * Counts a transfer of {@code amount} debited from {@code accountId} in every window.
+     *
+     * @throws VelocityLimitExceededException if a window of the account's class would go over its
+     *                                        limit; nothing is counted then
+     */
+    public void acquire(String accountId, BigDecimal amount) throws VelocityLimitExceededException {
+        if (!enabled) {
+            return;
+        }
+        ClassLimits limits = limitsOf(accountId);
+        if (limits == null) {
+            return;
+        }
+        long now = clockMillis.getAsLong();
+        AccountCounters account = counters.compute(accountId, (id, existing) -> {
+            AccountCounters touched = existing != null ? existing : new AccountCounters(limits, now);
+            // under the map's bin lock, so the sweep never drops counters about to be used
+            touched.lastUsedMillis = now;
+            return touched;
+        });
+        long units = toUnits(amount);
+        for (int i = 0; i < WINDOWS.length; i++) {
+            SlidingWindowCounter window = account.windows[i];
+            if (window == null) {
+                continue;
+            }
+            long windowUnits = limits.maxAmount[i] == UNLIMITED ? 0L : units;
+            if (units > limits.maxAmount[i]
+                    || !window.tryReserve(now, limits.maxCount[i], limits.maxAmount[i], windowUnits)) {
+                for (int j = 0; j < i; j++) {
+                    if (account.windows[j] != null) {
+                        account.windows[j].cancel(limits.maxAmount[j] == UNLIMITED ? 0L : units);
+                    }
+                }
+                rejections.incrementAndGet();
+                log.warn("Transfer of " + amount + " from account " + accountId + " over its " + limits.name + " "
+                        + WINDOWS[i].name().toLowerCase() + " limit");
+                throw new VelocityLimitExceededException("Account " + accountId + " reached its transfer limit per "
+                        + WINDOWS[i].name().toLowerCase());
+            }
+        }
+        for (int i = 0; i < WINDOWS.length; i++) {
+            if (account.windows[i] != null) {
+                account.windows[i].commit(limits.maxAmount[i] == UNLIMITED ? 0L : units);
+            }
+        }
+    }
+
+    /**
+     * @return transfers counted for the account in the window, 0 if it is not tracked
+     */
+    public long getCount(String accountId, Window window) {
+        AccountCounters account = counters.get(accountId);
+        if (account == null || account.windows[window.ordinal()] == null) {
+            return 0L;
+        }
+        return account.windows[window.ordinal()].getCount(clockMillis.getAsLong());
+    }
+
+    public int getTrackedAccounts() {
+        return counters.size();
+    }
+
+    /**
+     * Drops the counters of accounts without transfers for longer than the longest window.
+     *
+     * @return the number of accounts dropped
+     */
+    public int sweep() {
+        long idleBefore = clockMillis.getAsLong() - Window.DAY.millis - Window.DAY.millis / Window.DAY.buckets;
+        int dropped = 0;
+        for (String accountId : counters.keySet()) {
+            boolean[] removed = new boolean[1];
+            counters.computeIfPresent(accountId, (id, account) -> {
+                removed[0] = account.lastUsedMillis < idleBefore;
+                return removed[0] ? null : account;
+            });
+            if (removed[0]) {
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    private ClassLimits limitsOf(String accountId) {
+        for (Map.Entry<String, String> prefix : classPrefixes.entrySet()) {
+            if (accountId.startsWith(prefix.getKey())) {
+                return classLimits.get(prefix.getValue());
+            }
+        }
+        return classLimits.get(DEFAULT_CLASS);
+    }
+
+    private long toUnits(BigDecimal amount) {
+        BigDecimal units = amount.setScale(amountScale, RoundingMode.CEILING);
+        return units.unscaledValue().bitLength() > 62 ? UNLIMITED : units.unscaledValue().longValue();
+    }
+
+    private void sweepQuietly() {
+        try {
+            int dropped = sweep();
+            if (dropped > 0) {
+                log.info("Dropped velocity counters of " + dropped + " idle accounts, " + counters.size() + " remain");
+            }
+        } catch (RuntimeException e) {
+            log.error("Velocity counter sweep failed", e);
+        }
+    }
+
+    private static Map<String, String> parsePrefixes(String classPrefixes) {
+        if (classPrefixes == null || classPrefixes.trim().isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> parsed = new LinkedHashMap<>();
+        for (String pair : classPrefixes.split(",")) {
+            String[] prefixAndClass = pair.split("=");
+            if (prefixAndClass.length != 2) {
+                throw new IllegalArgumentException("Account class prefix " + pair + " is not prefix=class");
+            }
+            parsed.put(prefixAndClass[0].trim(), prefixAndClass[1].trim());
+        }
+        return parsed;
+    }
+
+    private static Map<String, ClassLimits> parseLimits(String limits, int amountScale) {
+        Map<String, ClassLimits> parsed = new HashMap<>();
+        if (limits == null || limits.trim().isEmpty()) {
+            return parsed;
+        }
+        for (String pair : limits.split(",")) {
+            String[] keyAndLimit = pair.split("=");
+            String[] classAndWindow = keyAndLimit[0].trim().split("\\.");
+            String[] countAndAmount = keyAndLimit.length == 2 ? keyAndLimit[1].trim().split("/") : new String[0];
+            if (classAndWindow.length != 2 || countAndAmount.length != 2) {
+                throw new IllegalArgumentException("Velocity limit " + pair + " is not class.window=maxCount/maxAmount");
+            }
+            int window = Window.valueOf(classAndWindow[1].toUpperCase()).ordinal();
+            ClassLimits classLimits = parsed.computeIfAbsent(classAndWindow[0], ClassLimits::new);
+            classLimits.maxCount[window] = parseLimit(countAndAmount[0], 0);
+            classLimits.maxAmount[window] = parseLimit(countAndAmount[1], amountScale);
+        }
+        return parsed;
+    }
+
+    private static long parseLimit(String limit, int scale) {
+        if ("*".equals(limit.trim())) {
+            return UNLIMITED;
+        }
+        BigDecimal units = new BigDecimal(limit.trim()).setScale(scale, RoundingMode.FLOOR);
+        // totals may briefly exceed a limit by one transfer of at most the limit
+        if (units.signum() < 0 || units.unscaledValue().bitLength() > 61) {
+            throw new IllegalArgumentException("Velocity limit " + limit + " out of range");
+        }
+        return units.unscaledValue().longValue();
+    }
+
+    private static class ClassLimits {
+        private final String name;
+        private final long[] maxCount = new long[WINDOWS.length];
+        private final long[] maxAmount = new long[WINDOWS.length];
+
+        private ClassLimits(String name) {
+            this.name = name;
+            Arrays.fill(maxCount, UNLIMITED);
+            Arrays.fill(maxAmount, UNLIMITED);
+        }
+
+        private boolean limits(int window) {
+            return maxCount[window] != UNLIMITED || maxAmount[window] != UNLIMITED;
+        }
+    }
+
+    private static class AccountCounters {
+        private final SlidingWindowCounter[] windows = new SlidingWindowCounter[WINDOWS.length];
+        private volatile long lastUsedMillis;
+
+        private AccountCounters(ClassLimits limits, long nowMillis) {
+            for (int i = 0; i < WINDOWS.length; i++) {
+                if (limits.limits(i)) {
+                    windows[i] = new SlidingWindowCounter(WINDOWS[i].millis / WINDOWS[i].buckets, WINDOWS[i].buckets,
+                            nowMillis);
+                }
+            }
+        }
+    }
+}
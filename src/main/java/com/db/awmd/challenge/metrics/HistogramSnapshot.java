@@ -0,0 +1,20 @@
+package com.db.awmd.challenge.metrics;
+
+import lombok.Data;
+
+@Data
+public class HistogramSnapshot {
+    private final long count;
+
+    private final double mean;
+
+    private final long max;
+
+    private final long p50;
+
+    private final long p90;
+
+    private final long p99;
+
+    private final long p999;
+}
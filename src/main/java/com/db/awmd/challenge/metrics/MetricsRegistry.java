@@ -0,0 +1,36 @@
+package com.db.awmd.challenge.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+@Component
+public class MetricsRegistry {
+
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    private final Map<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    public void gauge(String name, Supplier<? extends Number> value) {
+        gauges.put(name, value);
+    }
+
+    public Map<String, HistogramSnapshot> snapshot() {
+        Map<String, HistogramSnapshot> snapshot = new TreeMap<>();
+        histograms.forEach((name, histogram) -> snapshot.put(name, histogram.snapshot()));
+        return snapshot;
+    }
+
+    public Map<String, Number> gaugeValues() {
+        Map<String, Number> values = new TreeMap<>();
+        gauges.forEach((name, value) -> values.put(name, value.get()));
+        return values;
+    }
+}
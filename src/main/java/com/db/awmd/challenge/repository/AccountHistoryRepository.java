@@ -0,0 +1,28 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.BalanceChange;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+public interface AccountHistoryRepository {
+
+    void append(BalanceChange change);
+
+    /**
+     * Hands {@code visitor} the balance at {@code from}, every movement with
+     * {@code from <= timestamp < to} in order and then the balance at {@code to}.
+     */
+    void readRange(String accountId, long from, long to, HistoryVisitor visitor) throws IOException;
+
+    void clear();
+
+    interface HistoryVisitor {
+
+        void opening(BigDecimal balance) throws IOException;
+
+        void movement(BalanceChange change) throws IOException;
+
+        void closing(BigDecimal balance) throws IOException;
+    }
+}
@@ -0,0 +1,528 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.BalanceChange;
+import com.db.awmd.challenge.service.BalanceChangeListener;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.FileSystemUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per account movement history, one JSON line per {@link BalanceChange}. Every account has its own
+ * directory of segment files, each covering {@code segment-ms} of time and named after its start.
+ * Next to each segment a sparse index keeps the timestamp and byte offset of every
+ * {@code index-interval}-th record, so a range read floors the first segment, seeks to the closest
+ * indexed offset before {@code from} and reads sequentially from there. Indexes live in memory and
+ * are rebuilt from the segment files the first time an account is touched after a restart.
+ * <p>
+ * Changes are queued by the caller, which holds the account locks, and appended by a single
+ * writer thread to segment channels that stay open, at most {@code max-open-segments} of them.
+ * A range read first waits for the changes queued before it. An account whose change could not
+ * be written is marked broken on disk and its range reads fail until the history is cleared,
+ * so a gap never shows up as a wrong balance.
+ */
+@Repository
+@Slf4j
+public class AccountHistoryRepositoryFile implements AccountHistoryRepository, BalanceChangeListener {
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final String ACCOUNT_DIRECTORY_PREFIX = "a-";
+
+    private static final String BROKEN_MARKER = "BROKEN";
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final int WRITE_BATCH_SIZE = 1024;
+
+    private static final long POLL_INTERVAL_MS = 100L;
+
+    private static final long READ_WAIT_MS = 5000L;
+
+    private final ObjectMapper objectMapper;
+
+    private final Path directory;
+
+    private final long segmentMillis;
+
+    private final int indexInterval;
+
+    private final ConcurrentMap<String, AccountHistory> histories = new ConcurrentHashMap<>();
+
+    private final BlockingQueue<BalanceChange> pendingChanges = new LinkedBlockingQueue<>();
+
+    /**
+     * Segments with an open append channel, least recently written first; touched by the writer only.
+     */
+    private final LinkedHashMap<Segment, FileChannel> openSegments;
+
+    private final Object writtenMonitor = new Object();
+
+    private long queued;
+
+    private long written;
+
+    private Thread writer;
+
+    private volatile boolean running;
+
+    public AccountHistoryRepositoryFile(ObjectMapper objectMapper, String directory, long segmentMillis, int indexInterval) {
+        this(objectMapper, directory, segmentMillis, indexInterval, 256);
+    }
+
+    @Autowired
+    public AccountHistoryRepositoryFile(ObjectMapper objectMapper,
+                                        @Value("${statement.directory:data/history}") String directory,
+                                        @Value("${statement.segment-ms:86400000}") long segmentMillis,
+                                        @Value("${statement.index-interval:64}") int indexInterval,
+                                        @Value("${statement.max-open-segments:256}") int maxOpenSegments) {
+        if (segmentMillis < 1 || indexInterval < 1 || maxOpenSegments < 1) {
+            throw new IllegalArgumentException("Segment length, index interval and open segments must be positive");
+        }
+        this.objectMapper = objectMapper;
+        this.directory = Paths.get(directory);
+        this.segmentMillis = segmentMillis;
+        this.indexInterval = indexInterval;
+        this.openSegments = new LinkedHashMap<Segment, FileChannel>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Segment, FileChannel> eldest) {
+                if (size() <= maxOpenSegments) {
+                    return false;
+                }
+                close(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = new Thread(this::writeChanges, "account-history-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writer.join();
+        synchronized (this) {
+            closeSegments();
+        }
+    }
+
+    @Override
+    public void onBalanceChange(BalanceChange change) {
+        append(change);
+    }
+
+    @Override
+    public void onAccountsCleared() {
+        clear();
+    }
+
+    @Override
+    public void append(BalanceChange change) {
+        synchronized (writtenMonitor) {
+            queued++;
+        }
+        pendingChanges.add(change);
+    }
+
+    @Override
+    public void readRange(String accountId, long from, long to, HistoryVisitor visitor) throws IOException {
+        awaitQueuedChanges();
+        AccountHistory history = history(accountId);
+        List<SegmentRange> ranges = new ArrayList<>();
+        BigDecimal balance;
+        synchronized (history) {
+            history.load();
+            if (history.broken) {
+                throw new IOException("History of accountId:" + accountId + " has gaps, changes could not be written");
+            }
+            long firstSegment = segmentStartOf(from);
+            Map.Entry<Long, Segment> before = history.segments.lowerEntry(firstSegment);
+            balance = before == null ? BigDecimal.ZERO : before.getValue().lastBalance;
+            if (to > firstSegment) {
+                for (Segment segment : history.segments.subMap(firstSegment, true, to, false).values()) {
+                    long offset = ranges.isEmpty() ? segment.seekOffset(from) : 0L;
+                    ranges.add(new SegmentRange(segment.file, offset, segment.size));
+                }
+            }
+        }
+        RangeReader reader = new RangeReader(from, to, balance, visitor);
+        for (SegmentRange range : ranges) {
+            if (!readLines(range.file, range.offset, range.end, reader)) {
+                break;
+            }
+        }
+        reader.finish();
+    }
+
+    @Override
+    public synchronized void clear() {
+        List<BalanceChange> dropped = new ArrayList<>();
+        pendingChanges.drainTo(dropped);
+        markWritten(dropped.size());
+        closeSegments();
+        histories.clear();
+        FileSystemUtils.deleteRecursively(directory.toFile());
+    }
+
+    private void writeChanges() {
+        List<BalanceChange> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+        while (running || !pendingChanges.isEmpty()) {
+            try {
+                BalanceChange first = pendingChanges.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                pendingChanges.drainTo(batch, WRITE_BATCH_SIZE - 1);
+            } catch (InterruptedException e) {
+                // queued changes must still reach the segments, so the writer runs until shutdown
+                log.warn("Account history writer interrupted, interrupt ignored");
+            }
+            synchronized (this) {
+                for (BalanceChange change : batch) {
+                    write(change);
+                }
+            }
+            markWritten(batch.size());
+            batch.clear();
+        }
+    }
+
+    private void write(BalanceChange change) {
+        AccountHistory history = history(change.getAccountId());
+        synchronized (history) {
+            try {
+                history.load();
+                if (history.broken) {
+                    return;
+                }
+                byte[] line = toLine(change);
+                long segmentStart = segmentStartOf(change.getTimestamp());
+                if (!history.segments.isEmpty() && history.segments.lastKey() > segmentStart) {
+                    // clock went backwards, keep the files in append order
+                    segmentStart = history.segments.lastKey();
+                }
+                Segment segment = history.segments.get(segmentStart);
+                if (segment == null) {
+                    if (!history.segments.isEmpty()) {
+                        Segment previous = history.segments.lastEntry().getValue();
+                        FileChannel channel = openSegments.remove(previous);
+                        if (channel != null) {
+                            close(previous, channel);
+                        }
+                    }
+                    Files.createDirectories(history.directory);
+                    segment = new Segment(history.directory.resolve(segmentStart + SEGMENT_SUFFIX));
+                    history.segments.put(segmentStart, segment);
+                }
+                FileChannel channel = openSegments.get(segment);
+                if (channel == null) {
+                    channel = FileChannel.open(segment.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.APPEND);
+                    openSegments.put(segment, channel);
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(line);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                segment.add(change.getTimestamp(), line.length, change.getBalance());
+            } catch (IOException e) {
+                log.error("Cannot append history of accountId:" + change.getAccountId() + ", marking it broken", e);
+                history.markBroken();
+            }
+        }
+    }
+
+    private void awaitQueuedChanges() throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(READ_WAIT_MS);
+        synchronized (writtenMonitor) {
+            long target = queued;
+            while (written < target) {
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMs <= 0) {
+                    throw new IOException("History writer is " + (target - written) + " changes behind");
+                }
+                try {
+                    writtenMonitor.wait(remainingMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for history writer", e);
+                }
+            }
+        }
+    }
+
+    private void markWritten(int changes) {
+        synchronized (writtenMonitor) {
+            written += changes;
+            writtenMonitor.notifyAll();
+        }
+    }
+
+    private void closeSegments() {
+        for (Map.Entry<Segment, FileChannel> open : openSegments.entrySet()) {
+            close(open.getKey(), open.getValue());
+        }
+        openSegments.clear();
+    }
+
+    private static void close(Segment segment, FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Cannot close history segment " + segment.file, e);
+        }
+    }
+
+    private AccountHistory history(String accountId) {
+        return histories.computeIfAbsent(accountId, id -> new AccountHistory(directory.resolve(directoryNameOf(id))));
+    }
+
+    private long segmentStartOf(long timestamp) {
+        return timestamp - Math.floorMod(timestamp, segmentMillis);
+    }
+
+    private byte[] toLine(BalanceChange change) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(change);
+        byte[] line = Arrays.copyOf(json, json.length + 1);
+        line[json.length] = '\n';
+        return line;
+    }
+
+    private static String directoryNameOf(String accountId) {
+        try {
+            return ACCOUNT_DIRECTORY_PREFIX + URLEncoder.encode(accountId, "UTF-8");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Hands every complete line between {@code offset} and {@code end} to {@code handler}.
+     *
+     * @return false if the handler stopped the read
+     */
+    private static boolean readLines(Path file, long offset, long end, LineHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(offset);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel), READ_BUFFER_SIZE);
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            long position = offset;
+            int next;
+            while (position < end && (next = in.read()) != -1) {
+                position++;
+                if (next != '\n') {
+                    line.write(next);
+                    continue;
+                }
+                if (!handler.line(line.toByteArray(), position)) {
+                    return false;
+                }
+                line.reset();
+            }
+            return true;
+        }
+    }
+
+    private interface LineHandler {
+        boolean line(byte[] line, long endOffset) throws IOException;
+    }
+
+    private class AccountHistory {
+        private final Path directory;
+        private final TreeMap<Long, Segment> segments = new TreeMap<>();
+        private boolean loaded;
+        private boolean broken;
+
+        private AccountHistory(Path directory) {
+            this.directory = directory;
+        }
+
+        private void load() throws IOException {
+            if (loaded) {
+                return;
+            }
+            if (Files.isDirectory(directory)) {
+                broken = Files.exists(directory.resolve(BROKEN_MARKER));
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+                    for (Path file : files) {
+                        String name = file.getFileName().toString();
+                        segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), new Segment(file));
+                    }
+                }
+                for (Segment segment : segments.values()) {
+                    segment.rebuild();
+                }
+            }
+            loaded = true;
+        }
+
+        private void markBroken() {
+            broken = true;
+            try {
+                Files.createDirectories(directory);
+                Files.write(directory.resolve(BROKEN_MARKER), new byte[0]);
+            } catch (IOException e) {
+                log.error("Cannot mark history " + directory + " broken, the gap is only known until restart", e);
+            }
+        }
+    }
+
+    private class Segment {
+        private final Path file;
+        private long size;
+        private long records;
+        private BigDecimal lastBalance = BigDecimal.ZERO;
+        private long[] indexTimestamps = new long[8];
+        private long[] indexOffsets = new long[8];
+        private int indexSize;
+
+        private Segment(Path file) {
+            this.file = file;
+        }
+
+        private void add(long timestamp, int length, BigDecimal balance) {
+            if (records % indexInterval == 0) {
+                if (indexSize == indexTimestamps.length) {
+                    indexTimestamps = Arrays.copyOf(indexTimestamps, indexSize * 2);
+                    indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+                }
+                indexTimestamps[indexSize] = timestamp;
+                indexOffsets[indexSize] = size;
+                indexSize++;
+            }
+            records++;
+            size += length;
+            lastBalance = balance;
+        }
+
+        /**
+         * @return offset of the last indexed record older than {@code from}, so no record at or after it is skipped
+         */
+        private long seekOffset(long from) {
+            int low = 0;
+            int high = indexSize - 1;
+            long offset = 0L;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (indexTimestamps[middle] < from) {
+                    offset = indexOffsets[middle];
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return offset;
+        }
+
+        private void rebuild() throws IOException {
+            readLines(file, 0L, Long.MAX_VALUE, (line, endOffset) -> {
+                BalanceChange change = objectMapper.readValue(line, BalanceChange.class);
+                add(change.getTimestamp(), line.length + 1, change.getBalance());
+                return true;
+            });
+            if (Files.size(file) > size) {
+                log.warn("Dropping incomplete last record of history segment " + file);
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(size);
+                }
+            }
+        }
+    }
+
+    private static class SegmentRange {
+        private final Path file;
+        private final long offset;
+        private final long end;
+
+        private SegmentRange(Path file, long offset, long end) {
+            this.file = file;
+            this.offset = offset;
+            this.end = end;
+        }
+    }
+
+    private class RangeReader implements LineHandler {
+        private final long from;
+        private final long to;
+        private final HistoryVisitor visitor;
+        private BigDecimal balance;
+        private boolean started;
+        private boolean opened;
+
+        private RangeReader(long from, long to, BigDecimal balance, HistoryVisitor visitor) {
+            this.from = from;
+            this.to = to;
+            this.balance = balance;
+            this.visitor = visitor;
+        }
+
+        @Override
+        public boolean line(byte[] line, long endOffset) throws IOException {
+            BalanceChange change = objectMapper.readValue(line, BalanceChange.class);
+            if (!started) {
+                balance = change.getBalance().subtract(change.getAmount());
+                started = true;
+            }
+            if (change.getTimestamp() >= to) {
+                return false;
+            }
+            if (change.getTimestamp() >= from) {
+                open();
+                visitor.movement(change);
+            }
+            balance = change.getBalance();
+            return true;
+        }
+
+        private void open() throws IOException {
+            if (!opened) {
+                visitor.opening(balance);
+                opened = true;
+            }
+        }
+
+        private void finish() throws IOException {
+            open();
+            visitor.closing(balance);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.db.awmd.challenge.exception.AccountNotExistException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface AccountsRepository {
 
@@ -12,9 +13,60 @@ public interface AccountsRepository {
 
     void updateAccount(Account account) throws AccountNotExistException;
 
+    void updateAccounts(List<Account> accounts) throws AccountNotExistException;
+
     Account getAccount(String accountId) throws AccountNotExistException;
 
+    /**
+     * Collects every account into one list; {@link #forEachAccount} visits them without it.
+     */
     List<Account> getAllAccount();
 
+    /**
+     * Hands every account to {@code action} without collecting them first, so a store holding
+     * accounts off the heap loads only a part of them at a time.
+     */
+    default void forEachAccount(Consumer<Account> action) {
+        getAllAccount().forEach(action);
+    }
+
+    default boolean hasAccounts() {
+        return !getAllAccount().isEmpty();
+    }
+
     void clearAccounts();
+
+    /**
+     * @return true if the stored accounts are the live objects, so balance changes made on them need no write back
+     */
+    default boolean storesLiveAccounts() {
+        return false;
+    }
+
+    /**
+     * @return true if the stored accounts outlive a restart of the service
+     */
+    default boolean survivesRestart() {
+        return true;
+    }
+
+    /**
+     * Stores balances read under the account locks, each together with the journal sequence of
+     * the last entry it includes, so {@link #recoverFromJournal} can bring them up to date later.
+     */
+    default void updateJournaledAccounts(List<Account> accounts) throws AccountNotExistException {
+        updateAccounts(accounts);
+    }
+
+    /**
+     * Records that every journal entry up to {@code sequence} is included in the stored balances.
+     */
+    default void saveJournalCheckpoint(long sequence) {
+    }
+
+    /**
+     * Applies the journal entries the stored balances do not include yet.
+     */
+    default void recoverFromJournal(TransferJournal transferJournal) {
+    }
 }
@@ -3,16 +3,19 @@ package com.db.awmd.challenge.repository;
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.AccountNotExistException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 @Repository
+@ConditionalOnProperty(name = "accounts.store", havingValue = "memory", matchIfMissing = true)
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
     private final Integer INITIAL_CAPACITY = 32;
@@ -38,7 +41,16 @@ public class AccountsRepositoryInMemory implements AccountsRepository {
             throw new AccountNotExistException(
                     "Account id " + account.getAccountId() + " already exists!");
         }
-        accounts.put(account.getAccountId(), account);
+        if (accounts.replace(account.getAccountId(), account) == null) {
+            throw new AccountNotExistException("Account with id " + account.getAccountId() + " does not exists");
+        }
+    }
+
+    @Override
+    public void updateAccounts(List<Account> accounts) throws AccountNotExistException {
+        for (Account account : accounts) {
+            updateAccount(account);
+        }
     }
 
     @Override
@@ -51,9 +63,40 @@ public class AccountsRepositoryInMemory implements AccountsRepository {
         return new ArrayList<>(this.accounts.values());
     }
 
+    @Override
+    public void forEachAccount(Consumer<Account> action) {
+        accounts.values().forEach(action);
+    }
+
+    @Override
+    public boolean hasAccounts() {
+        return !accounts.isEmpty();
+    }
+
     @Override
     public void clearAccounts() {
         accounts.clear();
     }
 
+    @Override
+    public boolean storesLiveAccounts() {
+        return true;
+    }
+
+    @Override
+    public boolean survivesRestart() {
+        return false;
+    }
+
+    /**
+     * @return false if {@code account} is no longer the stored instance
+     */
+    public boolean removeAccount(Account account) {
+        return accounts.remove(account.getAccountId(), account);
+    }
+
+    public int size() {
+        return accounts.size();
+    }
+
 }
@@ -0,0 +1,257 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.JournalEntry;
+import com.db.awmd.challenge.exception.AccountNotExistException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Accounts stored in an embedded database. Every write runs in a transaction and a transfer
+ * pair goes out as one JDBC batch after its rows are locked with SELECT ... FOR UPDATE in
+ * account id order, so concurrent writers cannot deadlock on the rows.
+ * Reads are served from an identity map loaded at startup: transfers lock the Account
+ * instances themselves, so each id must always resolve to the same object.
+ * <p>
+ * Each row carries the journal sequence of the last entry its balance includes. Plain updates
+ * are written before their entry is journaled, so they store {@link #UNKNOWN_SEQUENCE};
+ * {@link #updateJournaledAccounts} stores the sequence read with the balance. Together with the
+ * checkpoint row, up to which every entry is included in every row, this lets
+ * {@link #recoverFromJournal} apply only the entries a row misses. A row of unknown sequence is
+ * rebuilt from the OPEN entry of its account, which needs a read of the whole journal.
+ */
+@Repository
+@ConditionalOnProperty(name = "accounts.store", havingValue = "jdbc")
+@Slf4j
+public class AccountsRepositoryJdbc implements AccountsRepository {
+
+    private static final long UNKNOWN_SEQUENCE = -1L;
+
+    private static final String CREATE_TABLE =
+            "CREATE TABLE IF NOT EXISTS account (account_id VARCHAR(255) PRIMARY KEY, balance DECIMAL NOT NULL)";
+    private static final String ADD_CURRENCY = "ALTER TABLE account ADD COLUMN IF NOT EXISTS currency VARCHAR(3)";
+    private static final String ADD_JOURNAL_SEQUENCE =
+            "ALTER TABLE account ADD COLUMN IF NOT EXISTS journal_sequence BIGINT DEFAULT " + UNKNOWN_SEQUENCE + " NOT NULL";
+    private static final String CREATE_CHECKPOINT_TABLE =
+            "CREATE TABLE IF NOT EXISTS account_journal_checkpoint (id INT PRIMARY KEY, journal_sequence BIGINT NOT NULL)";
+    private static final String SELECT_ALL = "SELECT account_id, balance, currency, journal_sequence FROM account";
+    private static final String SELECT_FOR_UPDATE = "SELECT account_id FROM account WHERE account_id = ? FOR UPDATE";
+    private static final String INSERT =
+            "INSERT INTO account (account_id, balance, currency, journal_sequence) VALUES (?, ?, ?, 0)";
+    private static final String UPDATE = "UPDATE account SET balance = ?, journal_sequence = ? WHERE account_id = ?";
+    private static final String DELETE_ALL = "DELETE FROM account";
+    private static final String SELECT_CHECKPOINT = "SELECT journal_sequence FROM account_journal_checkpoint WHERE id = 1";
+    private static final String MERGE_CHECKPOINT =
+            "MERGE INTO account_journal_checkpoint (id, journal_sequence) KEY (id) VALUES (1, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+
+    /**
+     * Ids of the rows loaded with an unknown journal sequence, until they are recovered.
+     */
+    private final Set<String> unknownSequenceIds = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public AccountsRepositoryJdbc(DataSource dataSource, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void load() {
+        jdbcTemplate.execute(CREATE_TABLE);
+        jdbcTemplate.execute(ADD_CURRENCY);
+        jdbcTemplate.execute(ADD_JOURNAL_SEQUENCE);
+        jdbcTemplate.execute(CREATE_CHECKPOINT_TABLE);
+        jdbcTemplate.query(SELECT_ALL, resultSet -> {
+            Account account = new Account(resultSet.getString("account_id"), resultSet.getBigDecimal("balance"),
+                    resultSet.getString("currency"));
+            long journalSequence = resultSet.getLong("journal_sequence");
+            if (journalSequence < 0) {
+                unknownSequenceIds.add(account.getAccountId());
+            } else {
+                account.setJournalSequence(journalSequence);
+            }
+            accounts.put(account.getAccountId(), account);
+        });
+        log.info("Loaded " + accounts.size() + " accounts from database");
+    }
+
+    @Override
+    public void createAccount(Account account) throws DuplicateAccountIdException {
+        if (accounts.putIfAbsent(account.getAccountId(), account) != null) {
+            throw new DuplicateAccountIdException(
+                    "Account id " + account.getAccountId() + " already exists!");
+        }
+        try {
+            jdbcTemplate.update(INSERT, account.getAccountId(), account.getBalance(), account.getCurrency());
+        } catch (DuplicateKeyException e) {
+            accounts.remove(account.getAccountId(), account);
+            throw new DuplicateAccountIdException(
+                    "Account id " + account.getAccountId() + " already exists!");
+        } catch (RuntimeException e) {
+            accounts.remove(account.getAccountId(), account);
+            throw e;
+        }
+    }
+
+    @Override
+    public void updateAccount(Account account) throws AccountNotExistException {
+        if (jdbcTemplate.update(UPDATE, account.getBalance(), UNKNOWN_SEQUENCE, account.getAccountId()) == 0) {
+            throw new AccountNotExistException("Account with id " + account.getAccountId() + " does not exists");
+        }
+        accounts.put(account.getAccountId(), account);
+    }
+
+    @Override
+    public void updateAccounts(List<Account> accounts) throws AccountNotExistException {
+        update(accounts, false);
+    }
+
+    @Override
+    public void updateJournaledAccounts(List<Account> accounts) throws AccountNotExistException {
+        update(accounts, true);
+    }
+
+    private void update(List<Account> accounts, boolean journaled) {
+        List<Account> ordered = new ArrayList<>(accounts);
+        ordered.sort(Comparator.comparing(Account::getAccountId));
+        transactionTemplate.execute(status -> {
+            for (Account account : ordered) {
+                if (jdbcTemplate.queryForList(SELECT_FOR_UPDATE, String.class, account.getAccountId()).isEmpty()) {
+                    throw new AccountNotExistException("Account with id " + account.getAccountId() + " does not exists");
+                }
+            }
+            List<Object[]> batch = new ArrayList<>(ordered.size());
+            for (Account account : ordered) {
+                batch.add(new Object[]{account.getBalance(),
+                        journaled ? account.getJournalSequence() : UNKNOWN_SEQUENCE, account.getAccountId()});
+            }
+            jdbcTemplate.batchUpdate(UPDATE, batch);
+            return null;
+        });
+        for (Account account : ordered) {
+            this.accounts.put(account.getAccountId(), account);
+        }
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+        return accounts.get(accountId);
+    }
+
+    @Override
+    public List<Account> getAllAccount() {
+        return new ArrayList<>(accounts.values());
+    }
+
+    @Override
+    public void forEachAccount(Consumer<Account> action) {
+        accounts.values().forEach(action);
+    }
+
+    @Override
+    public boolean hasAccounts() {
+        return !accounts.isEmpty();
+    }
+
+    @Override
+    public void clearAccounts() {
+        jdbcTemplate.update(DELETE_ALL);
+        accounts.clear();
+        unknownSequenceIds.clear();
+    }
+
+    @Override
+    public void saveJournalCheckpoint(long sequence) {
+        jdbcTemplate.update(MERGE_CHECKPOINT, sequence);
+    }
+
+    /**
+     * Reads the journal from the checkpoint, or from its start if a row has an unknown sequence,
+     * and applies to each row the entries after its own sequence. An OPEN entry sets the balance;
+     * a CLEAR drops what was collected before it, as the rows loaded were all created after it.
+     * Called at startup before the accounts are used.
+     */
+    @Override
+    public void recoverFromJournal(TransferJournal transferJournal) {
+        long checkpoint = unknownSequenceIds.isEmpty() ? readCheckpoint() : 0L;
+        Map<String, BigDecimal> recovered = new HashMap<>();
+        Map<String, Long> lastApplied = new HashMap<>();
+        Set<String> opened = new HashSet<>();
+        transferJournal.forEachEntry(checkpoint, entry -> {
+            if (entry.getType() == JournalEntry.Type.CLEAR) {
+                recovered.clear();
+                lastApplied.clear();
+                opened.clear();
+                return;
+            }
+            for (String accountId : entry.getAccountIds()) {
+                Account account = accounts.get(accountId);
+                if (account == null) {
+                    continue;
+                }
+                boolean unknown = unknownSequenceIds.contains(accountId);
+                if (!unknown && entry.getSequence() <= account.getJournalSequence()) {
+                    continue;
+                }
+                if (entry.getType() == JournalEntry.Type.OPEN) {
+                    recovered.put(accountId, entry.getAmount());
+                    opened.add(accountId);
+                } else if (unknown && !opened.contains(accountId)) {
+                    continue;
+                } else {
+                    recovered.put(accountId, recovered.getOrDefault(accountId, account.getBalance())
+                            .add(entry.deltaFor(accountId)));
+                }
+                lastApplied.put(accountId, entry.getSequence());
+            }
+        });
+        List<Account> changed = new ArrayList<>();
+        for (Map.Entry<String, BigDecimal> balance : recovered.entrySet()) {
+            Account account = accounts.get(balance.getKey());
+            account.setBalance(balance.getValue());
+            account.setJournalSequence(lastApplied.get(balance.getKey()));
+            unknownSequenceIds.remove(balance.getKey());
+            changed.add(account);
+        }
+        if (!changed.isEmpty()) {
+            updateJournaledAccounts(changed);
+        }
+        if (!unknownSequenceIds.isEmpty()) {
+            log.warn(unknownSequenceIds.size() + " stored accounts have no OPEN entry in the journal, kept as stored");
+        }
+        saveJournalCheckpoint(transferJournal.getLastSequence());
+        log.info("Recovered " + changed.size() + " accounts from transfer journal entries after " + checkpoint);
+    }
+
+    private long readCheckpoint() {
+        List<Long> checkpoint = jdbcTemplate.queryForList(SELECT_CHECKPOINT, Long.class);
+        return checkpoint.isEmpty() ? 0L : checkpoint.get(0);
+    }
+
+}
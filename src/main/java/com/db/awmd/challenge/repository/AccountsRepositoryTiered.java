@@ -0,0 +1,307 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.AccountNotExistException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.index.MembershipFilter;
+import com.db.awmd.challenge.metrics.Histogram;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PreDestroy;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Two tier store over the in-memory repository for {@code accounts.cold-tier.enabled=true}. A
+ * sweep every {@code sweep-interval-ms} moves accounts not looked up for {@code idle-ms} from the
+ * heap map to a {@link ColdAccountStore} and adds their ids to a {@link MembershipFilter}. A
+ * lookup that misses the heap map asks the filter first, so an unknown id costs no disk read
+ * except for the filter's false positives; a cold account is faulted back in as a new instance.
+ * <p>
+ * An account is archived under its lock and marked so: holders of the old instance see the mark
+ * once they lock it and look the account up again, and writes of a marked instance are refused
+ * like writes of a removed account. Split accounts stay hot. {@link #forEachAccount} visits cold
+ * accounts as marked copies without faulting them in, reading one bucket at a time;
+ * {@link #getAllAccount} collects them all onto the heap at once. The filter is rebuilt by the
+ * sweep once more than half of the ids added to it have been faulted back in.
+ * <p>
+ * Moving an account to the cold tier frees its {@link Account} instance, with its lock and
+ * bookkeeping, and its entry in the hot map. The account keeps its entries in the other
+ * per-account structures: its balance version in the balance snapshots, its entry in the
+ * balance index, its node in the account id trie, plus a few bits in the filter. The heap
+ * therefore still grows with the number of accounts, only more slowly per cold account.
+ */
+@Repository
+@Primary
+@ConditionalOnExpression("'${accounts.store:memory}' == 'memory' && ${accounts.cold-tier.enabled:false}")
+@Slf4j
+public class AccountsRepositoryTiered implements AccountsRepository {
+
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private final AccountsRepositoryInMemory hot;
+
+    private final ColdAccountStore cold;
+
+    private final long idleMillis;
+
+    private final long expectedColdAccounts;
+
+    private final long touchResolutionMillis;
+
+    private final ScheduledExecutorService sweeper =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("accounts-cold-tier-"));
+
+    private final Object filterMonitor = new Object();
+
+    private volatile MembershipFilter coldFilter;
+
+    private final AtomicLong coldAccounts = new AtomicLong();
+
+    private final AtomicLong filterStaleIds = new AtomicLong();
+
+    private final AtomicLong promotions = new AtomicLong();
+
+    private final AtomicLong demotions = new AtomicLong();
+
+    private final AtomicLong filterFalsePositives = new AtomicLong();
+
+    private final Histogram faultInHistogram;
+
+    @Autowired
+    public AccountsRepositoryTiered(AccountsRepositoryInMemory hot, MetricsRegistry metricsRegistry,
+                                    @Value("${accounts.cold-tier.directory:data/cold}") String directory,
+                                    @Value("${accounts.cold-tier.buckets:4096}") int buckets,
+                                    @Value("${accounts.cold-tier.idle-ms:2592000000}") long idleMillis,
+                                    @Value("${accounts.cold-tier.sweep-interval-ms:60000}") long sweepIntervalMs,
+                                    @Value("${accounts.cold-tier.expected-accounts:1000000}") long expectedColdAccounts) {
+        this(hot, new ColdAccountStore(Paths.get(directory), buckets), metricsRegistry, idleMillis, sweepIntervalMs,
+                expectedColdAccounts);
+    }
+
+    public AccountsRepositoryTiered(AccountsRepositoryInMemory hot, ColdAccountStore cold, MetricsRegistry metricsRegistry,
+                                    long idleMillis, long sweepIntervalMs, long expectedColdAccounts) {
+        if (idleMillis < 1 || sweepIntervalMs < 1) {
+            throw new IllegalArgumentException("Idle time and sweep interval must be positive");
+        }
+        this.hot = hot;
+        this.cold = cold;
+        this.idleMillis = idleMillis;
+        this.expectedColdAccounts = expectedColdAccounts;
+        this.touchResolutionMillis = Math.max(1L, Math.min(1000L, idleMillis / 10));
+        this.coldFilter = new MembershipFilter(expectedColdAccounts, FALSE_POSITIVE_PROBABILITY);
+        this.faultInHistogram = metricsRegistry.histogram("accounts.tier.fault-in.micros");
+        metricsRegistry.gauge("accounts.tier.hot.size", hot::size);
+        metricsRegistry.gauge("accounts.tier.cold.size", coldAccounts::get);
+        metricsRegistry.gauge("accounts.tier.promotions", promotions::get);
+        metricsRegistry.gauge("accounts.tier.demotions", demotions::get);
+        metricsRegistry.gauge("accounts.tier.filter.false-positives", filterFalsePositives::get);
+        sweeper.scheduleWithFixedDelay(this::sweepQuietly, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    @Override
+    public void createAccount(Account account) throws DuplicateAccountIdException {
+        synchronized (cold.lockFor(account.getAccountId())) {
+            if (coldFilter.mightContain(account.getAccountId()) && cold.read(account.getAccountId()) != null) {
+                throw new DuplicateAccountIdException("Account id " + account.getAccountId() + " already exists!");
+            }
+            hot.createAccount(account);
+        }
+    }
+
+    @Override
+    public void updateAccount(Account account) throws AccountNotExistException {
+        if (account.isArchived()) {
+            throw new AccountNotExistException("Account with id " + account.getAccountId() + " was archived");
+        }
+        hot.updateAccount(account);
+    }
+
+    @Override
+    public void updateAccounts(List<Account> accounts) throws AccountNotExistException {
+        for (Account account : accounts) {
+            updateAccount(account);
+        }
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+        Account account = hot.getAccount(accountId);
+        if (account == null) {
+            if (!coldFilter.mightContain(accountId)) {
+                return null;
+            }
+            account = faultIn(accountId);
+            if (account == null) {
+                return null;
+            }
+        }
+        account.touch(System.currentTimeMillis(), touchResolutionMillis);
+        return account;
+    }
+
+    @Override
+    public List<Account> getAllAccount() {
+        List<Account> accounts = hot.getAllAccount();
+        cold.forEach(account -> {
+            account.archive();
+            accounts.add(account);
+        });
+        return accounts;
+    }
+
+    @Override
+    public void forEachAccount(Consumer<Account> action) {
+        hot.forEachAccount(action);
+        cold.forEach(account -> {
+            account.archive();
+            action.accept(account);
+        });
+    }
+
+    @Override
+    public boolean hasAccounts() {
+        return hot.hasAccounts() || coldAccounts.get() > 0;
+    }
+
+    @Override
+    public void clearAccounts() {
+        synchronized (filterMonitor) {
+            hot.clearAccounts();
+            cold.clear();
+            coldFilter = new MembershipFilter(expectedColdAccounts, FALSE_POSITIVE_PROBABILITY);
+            coldAccounts.set(0);
+            filterStaleIds.set(0);
+        }
+    }
+
+    @Override
+    public boolean storesLiveAccounts() {
+        return true;
+    }
+
+    @Override
+    public boolean survivesRestart() {
+        return false;
+    }
+
+    /**
+     * Moves every account idle for longer than {@code idle-ms} to the cold tier.
+     *
+     * @return the number of accounts moved
+     */
+    public int sweep() {
+        long idleBefore = System.currentTimeMillis() - idleMillis;
+        int demoted = 0;
+        for (Account account : hot.getAllAccount()) {
+            if (account.getLastAccessMillis() < idleBefore && !account.isSplit() && demote(account, idleBefore)) {
+                demoted++;
+            }
+        }
+        if (filterStaleIds.get() > coldAccounts.get()) {
+            rebuildFilter();
+        }
+        if (demoted > 0) {
+            log.info("Moved " + demoted + " idle accounts to the cold tier, " + hot.size() + " remain hot");
+        }
+        return demoted;
+    }
+
+    public int getHotSize() {
+        return hot.size();
+    }
+
+    public long getColdSize() {
+        return coldAccounts.get();
+    }
+
+    private boolean demote(Account account, long idleBefore) {
+        if (!account.getLock().tryLock()) {
+            return false;
+        }
+        try {
+            // demotion, filter rebuild and clearing are serialized so the filter never misses a cold id
+            synchronized (filterMonitor) {
+                synchronized (cold.lockFor(account.getAccountId())) {
+                    // looked up or split since the sweep listed it, or already replaced
+                    if (account.getLastAccessMillis() >= idleBefore || account.isSplit() || account.isArchived()
+                            || hot.getAccount(account.getAccountId()) != account) {
+                        return false;
+                    }
+                    cold.write(account);
+                    coldFilter.add(account.getAccountId());
+                    account.archive();
+                    hot.removeAccount(account);
+                }
+            }
+        } finally {
+            account.getLock().unlock();
+        }
+        coldAccounts.incrementAndGet();
+        demotions.incrementAndGet();
+        return true;
+    }
+
+    private Account faultIn(String accountId) {
+        long start = System.nanoTime();
+        Account account;
+        synchronized (cold.lockFor(accountId)) {
+            Account faulted = hot.getAccount(accountId);
+            if (faulted != null) {
+                return faulted;
+            }
+            account = cold.read(accountId);
+            if (account == null) {
+                filterFalsePositives.incrementAndGet();
+                return null;
+            }
+            // out of the cold tier first: once in the hot tier the instance may be handed out and changed
+            cold.remove(accountId);
+            try {
+                hot.createAccount(account);
+            } catch (RuntimeException e) {
+                cold.write(account);
+                throw e;
+            }
+        }
+        coldAccounts.decrementAndGet();
+        filterStaleIds.incrementAndGet();
+        promotions.incrementAndGet();
+        faultInHistogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        return account;
+    }
+
+    private void rebuildFilter() {
+        synchronized (filterMonitor) {
+            MembershipFilter rebuilt = new MembershipFilter(expectedColdAccounts, FALSE_POSITIVE_PROBABILITY);
+            cold.forEach(account -> rebuilt.add(account.getAccountId()));
+            coldFilter = rebuilt;
+            filterStaleIds.set(0);
+        }
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        } catch (RuntimeException e) {
+            log.error("Cold tier sweep failed", e);
+        }
+    }
+}
@@ -0,0 +1,503 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.AccountNotExistException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.metrics.Histogram;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind layer over the JDBC store for {@code accounts.write-behind.enabled=true}. Balance
+ * updates only mark the account dirty; a background flusher writes the latest balance of every
+ * dirty account in batches every {@code flush-interval-ms}, or sooner once {@code batch-size}
+ * accounts are dirty, so repeated updates of an account between flushes cost one write.
+ * <p>
+ * Accounts changed by one {@code updateAccounts} call are linked, and linked accounts are
+ * written in the same batch, so the store never holds one side of a transfer without the other.
+ * The flusher takes the locks of a group of linked accounts with {@code tryLock} before it
+ * unmarks and writes them, so no transfer is half applied to the balances it reads; a group
+ * with a lock in use stays dirty for the next flush. Dirty accounts and accounts being written
+ * together number at most {@code max-dirty}: an update that would go past that waits for a flush up to
+ * {@code backpressure-timeout-ms} and then writes its accounts through in one batch. Account
+ * creation and clearing go straight to the store, and everything still dirty is flushed on shutdown.
+ * <p>
+ * The stored balances trail memory by up to one flush interval, but every balance change is
+ * journaled before its transfer returns. A flush stores each balance with the journal sequence
+ * of the last entry it includes, and once a flush wrote every account dirty when it began, it
+ * records the journal sequence read before it as the checkpoint of the store. At startup the
+ * store applies the journal entries after the checkpoint that each row misses, so a crash
+ * loses no journaled update; see {@link AccountsRepositoryJdbc#recoverFromJournal}.
+ */
+@Repository
+@Primary
+@ConditionalOnExpression("'${accounts.store:memory}' == 'jdbc' && ${accounts.write-behind.enabled:false}")
+@Slf4j
+public class AccountsRepositoryWriteBehind implements AccountsRepository {
+
+    private final AccountsRepository delegate;
+
+    private final TransferJournal transferJournal;
+
+    private final int batchSize;
+
+    private final int maxDirty;
+
+    private final long backpressureTimeoutMs;
+
+    private final ConcurrentMap<String, Long> dirtySince = new ConcurrentHashMap<>();
+
+    /**
+     * Dirty accounts to the accounts they were updated together with; guarded by itself.
+     */
+    private final Map<String, Set<String>> links = new HashMap<>();
+
+    private final ScheduledExecutorService flusher =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("accounts-write-behind-"));
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final Object flushMonitor = new Object();
+
+    private final Object capacityMonitor = new Object();
+
+    private final AtomicInteger flushing = new AtomicInteger();
+
+    private final AtomicLong accountsFlushed = new AtomicLong();
+
+    private final AtomicLong writesThrough = new AtomicLong();
+
+    private final AtomicLong flushFailures = new AtomicLong();
+
+    private final Histogram flushLagHistogram;
+
+    private final Histogram flushBatchHistogram;
+
+    @Autowired
+    public AccountsRepositoryWriteBehind(AccountsRepositoryJdbc delegate, TransferJournal transferJournal,
+                                         MetricsRegistry metricsRegistry,
+                                         @Value("${accounts.write-behind.flush-interval-ms:100}") long flushIntervalMs,
+                                         @Value("${accounts.write-behind.batch-size:256}") int batchSize,
+                                         @Value("${accounts.write-behind.max-dirty:10000}") int maxDirty,
+                                         @Value("${accounts.write-behind.backpressure-timeout-ms:1000}") long backpressureTimeoutMs) {
+        this((AccountsRepository) delegate, transferJournal, metricsRegistry, flushIntervalMs, batchSize, maxDirty,
+                backpressureTimeoutMs);
+    }
+
+    public AccountsRepositoryWriteBehind(AccountsRepository delegate, MetricsRegistry metricsRegistry,
+                                         long flushIntervalMs, int batchSize, int maxDirty, long backpressureTimeoutMs) {
+        this(delegate, TransferJournal.NONE, metricsRegistry, flushIntervalMs, batchSize, maxDirty, backpressureTimeoutMs);
+    }
+
+    public AccountsRepositoryWriteBehind(AccountsRepository delegate, TransferJournal transferJournal,
+                                         MetricsRegistry metricsRegistry, long flushIntervalMs, int batchSize,
+                                         int maxDirty, long backpressureTimeoutMs) {
+        if (flushIntervalMs < 1 || batchSize < 1 || maxDirty < 1) {
+            throw new IllegalArgumentException("Flush interval, batch size and dirty limit must be positive");
+        }
+        this.delegate = delegate;
+        this.transferJournal = transferJournal;
+        this.batchSize = batchSize;
+        this.maxDirty = maxDirty;
+        this.backpressureTimeoutMs = backpressureTimeoutMs;
+        this.flushLagHistogram = metricsRegistry.histogram("accounts.write-behind.flush.lag.nanos");
+        this.flushBatchHistogram = metricsRegistry.histogram("accounts.write-behind.flush.batch.size");
+        metricsRegistry.gauge("accounts.write-behind.dirty", dirtySince::size);
+        metricsRegistry.gauge("accounts.write-behind.flushed", accountsFlushed::get);
+        metricsRegistry.gauge("accounts.write-behind.writes-through", writesThrough::get);
+        metricsRegistry.gauge("accounts.write-behind.flush.failures", flushFailures::get);
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Brings the stored balances up to date with the journal before any account is read.
+     */
+    @PostConstruct
+    public void start() {
+        delegate.recoverFromJournal(transferJournal);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(backpressureTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        log.info("Write-behind flushed on shutdown, " + dirtySince.size() + " accounts left dirty");
+    }
+
+    @Override
+    public void createAccount(Account account) throws DuplicateAccountIdException {
+        delegate.createAccount(account);
+    }
+
+    @Override
+    public void updateAccount(Account account) throws AccountNotExistException {
+        checkExists(account);
+        if (!awaitCapacity(account.getAccountId())) {
+            writesThrough.incrementAndGet();
+            delegate.updateAccount(account);
+            return;
+        }
+        dirtySince.putIfAbsent(account.getAccountId(), System.nanoTime());
+        if (dirtySince.size() >= batchSize) {
+            requestFlush();
+        }
+    }
+
+    @Override
+    public void updateAccounts(List<Account> accounts) throws AccountNotExistException {
+        if (accounts.size() == 1) {
+            updateAccount(accounts.get(0));
+            return;
+        }
+        Set<String> accountIds = new TreeSet<>();
+        for (Account account : accounts) {
+            checkExists(account);
+            accountIds.add(account.getAccountId());
+        }
+        for (String accountId : accountIds) {
+            if (!awaitCapacity(accountId)) {
+                writesThrough.addAndGet(accounts.size());
+                delegate.updateAccounts(accounts);
+                return;
+            }
+        }
+        long now = System.nanoTime();
+        synchronized (links) {
+            for (String accountId : accountIds) {
+                dirtySince.putIfAbsent(accountId, now);
+                link(accountId, accountIds);
+            }
+        }
+        if (dirtySince.size() >= batchSize) {
+            requestFlush();
+        }
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+        return delegate.getAccount(accountId);
+    }
+
+    @Override
+    public List<Account> getAllAccount() {
+        return delegate.getAllAccount();
+    }
+
+    @Override
+    public void forEachAccount(Consumer<Account> action) {
+        delegate.forEachAccount(action);
+    }
+
+    @Override
+    public boolean hasAccounts() {
+        return delegate.hasAccounts();
+    }
+
+    @Override
+    public void clearAccounts() {
+        synchronized (flushMonitor) {
+            synchronized (links) {
+                dirtySince.clear();
+                links.clear();
+            }
+            delegate.clearAccounts();
+        }
+        signalCapacity();
+    }
+
+    public int getDirtyCount() {
+        return dirtySince.size();
+    }
+
+    /**
+     * Writes every account dirty at the time of the call, in batches of about {@code batch-size}
+     * that never split a group of linked accounts. Groups with a lock in use are left dirty. If
+     * none was, the journal sequence read first becomes the checkpoint: the service stores a
+     * balance before it journals the change, so every entry up to it had its accounts marked
+     * dirty by then.
+     */
+    public void flush() {
+        synchronized (flushMonitor) {
+            flushRequested.set(false);
+            long journaled = transferJournal.getLastSequence();
+            boolean complete = true;
+            Set<String> seen = new HashSet<>();
+            List<Set<String>> groups = new ArrayList<>();
+            int grouped = 0;
+            for (String accountId : new ArrayList<>(dirtySince.keySet())) {
+                if (seen.contains(accountId)) {
+                    continue;
+                }
+                Set<String> group = groupOf(accountId);
+                seen.addAll(group);
+                groups.add(group);
+                grouped += group.size();
+                if (grouped >= batchSize) {
+                    complete &= flushBatch(groups);
+                    signalCapacity();
+                    groups.clear();
+                    grouped = 0;
+                }
+            }
+            if (!groups.isEmpty()) {
+                complete &= flushBatch(groups);
+                signalCapacity();
+            }
+            if (complete) {
+                delegate.saveJournalCheckpoint(journaled);
+            }
+        }
+    }
+
+    /**
+     * @return false if a group was left dirty
+     */
+    private boolean flushBatch(List<Set<String>> groups) {
+        long oldest = System.nanoTime();
+        List<Account> locked = new ArrayList<>();
+        Map<String, Long> unmarked = new HashMap<>();
+        Map<String, Set<String>> groupsById = new HashMap<>();
+        List<Account> batch = new ArrayList<>();
+        boolean complete = true;
+        try {
+            for (Set<String> candidate : groups) {
+                Set<String> group = lockGroup(candidate, locked);
+                if (group == null) {
+                    complete = false;
+                    continue;
+                }
+                synchronized (links) {
+                    for (String accountId : group) {
+                        // counted as in flight before it leaves the dirty set, so backpressure never undercounts
+                        flushing.incrementAndGet();
+                        Long since = dirtySince.remove(accountId);
+                        links.remove(accountId);
+                        Account account = since == null ? null : delegate.getAccount(accountId);
+                        if (account == null) {
+                            flushing.decrementAndGet();
+                            continue;
+                        }
+                        unmarked.put(accountId, since);
+                        groupsById.put(accountId, group);
+                        batch.add(account);
+                        oldest = Math.min(oldest, since);
+                    }
+                }
+            }
+            return writeBatch(batch, unmarked, groupsById, oldest) && complete;
+        } finally {
+            for (Account account : locked) {
+                account.getLock().unlock();
+            }
+            flushing.addAndGet(-unmarked.size());
+        }
+    }
+
+    /**
+     * Locks every account linked to {@code candidate}, following links made before the locks
+     * were taken; none can be added once they are held.
+     *
+     * @return the locked group, or null if a lock was in use, in which case none is held
+     */
+    private Set<String> lockGroup(Set<String> candidate, List<Account> locked) {
+        List<Account> taken = new ArrayList<>();
+        Set<String> group = new TreeSet<>();
+        Set<String> toLock = new TreeSet<>(candidate);
+        while (!toLock.isEmpty()) {
+            for (String accountId : toLock) {
+                Account account = delegate.getAccount(accountId);
+                if (account != null && !account.getLock().tryLock()) {
+                    for (Account held : taken) {
+                        held.getLock().unlock();
+                    }
+                    return null;
+                }
+                if (account != null) {
+                    taken.add(account);
+                }
+                group.add(accountId);
+            }
+            toLock.clear();
+            for (String accountId : groupOf(group.iterator().next())) {
+                if (!group.contains(accountId)) {
+                    toLock.add(accountId);
+                }
+            }
+        }
+        locked.addAll(taken);
+        return group;
+    }
+
+    private Set<String> groupOf(String accountId) {
+        Set<String> group = new TreeSet<>();
+        Deque<String> next = new ArrayDeque<>();
+        next.add(accountId);
+        synchronized (links) {
+            while (!next.isEmpty()) {
+                String current = next.poll();
+                if (group.add(current)) {
+                    next.addAll(links.getOrDefault(current, Collections.emptySet()));
+                }
+            }
+        }
+        return group;
+    }
+
+    private void link(String accountId, Set<String> accountIds) {
+        Set<String> linked = links.computeIfAbsent(accountId, id -> new HashSet<>());
+        for (String other : accountIds) {
+            if (!other.equals(accountId)) {
+                linked.add(other);
+            }
+        }
+    }
+
+    private void checkExists(Account account) {
+        if (delegate.getAccount(account.getAccountId()) == null) {
+            throw new AccountNotExistException("Account with id " + account.getAccountId() + " does not exists");
+        }
+    }
+
+    /**
+     * Stores the balances, read under the account locks, with their journal sequences.
+     *
+     * @return false if an account failed and was marked dirty again
+     */
+    private boolean writeBatch(List<Account> batch, Map<String, Long> unmarked, Map<String, Set<String>> groupsById,
+                               long oldest) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        boolean complete = true;
+        try {
+            delegate.updateJournaledAccounts(batch);
+        } catch (AccountNotExistException e) {
+            // some were cleared meanwhile, write the rest one by one
+            for (Iterator<Account> accounts = batch.iterator(); accounts.hasNext(); ) {
+                Account account = accounts.next();
+                try {
+                    delegate.updateJournaledAccounts(Collections.singletonList(account));
+                } catch (AccountNotExistException gone) {
+                    accounts.remove();
+                } catch (RuntimeException failure) {
+                    accounts.remove();
+                    complete = false;
+                    markFailed(account.getAccountId(), unmarked.get(account.getAccountId()),
+                            groupsById.get(account.getAccountId()), failure);
+                }
+            }
+        } catch (RuntimeException e) {
+            for (Account account : batch) {
+                markFailed(account.getAccountId(), unmarked.get(account.getAccountId()),
+                        groupsById.get(account.getAccountId()), e);
+            }
+            return false;
+        }
+        if (batch.isEmpty()) {
+            return complete;
+        }
+        accountsFlushed.addAndGet(batch.size());
+        flushBatchHistogram.record(batch.size());
+        flushLagHistogram.record(System.nanoTime() - oldest);
+        return complete;
+    }
+
+    private void markFailed(String accountId, Long since, Set<String> group, RuntimeException failure) {
+        flushFailures.incrementAndGet();
+        log.error("Write-behind flush of accountId:" + accountId + " failed, will retry", failure);
+        synchronized (links) {
+            dirtySince.putIfAbsent(accountId, since);
+            if (group.size() > 1) {
+                link(accountId, group);
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Write-behind flush failed", e);
+        }
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flushQuietly);
+            } catch (RuntimeException e) {
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * @return false if the dirty set stayed full for the whole backpressure timeout
+     */
+    private boolean awaitCapacity(String accountId) {
+        if (!full(accountId)) {
+            return true;
+        }
+        requestFlush();
+        long deadline = System.currentTimeMillis() + backpressureTimeoutMs;
+        synchronized (capacityMonitor) {
+            while (full(accountId)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    capacityMonitor.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean full(String accountId) {
+        return dirtySince.size() + flushing.get() >= maxDirty && !dirtySince.containsKey(accountId);
+    }
+
+    private void signalCapacity() {
+        synchronized (capacityMonitor) {
+            capacityMonitor.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Dormant accounts on disk, spread by id hash over {@code buckets} files of binary records
+ * (id, balance, currency, journal sequence). A lookup reads one small bucket; removing an
+ * account rewrites its bucket aside and moves it into place, and a record whose append fails
+ * is cut off again. Nothing is kept in memory, and callers serialize access to a bucket with
+ * {@link #lockFor}. The tier extends the heap, so it is not made durable and starts empty:
+ * bucket files live in a {@code buckets} subdirectory of the configured directory, and only
+ * those are deleted.
+ */
+public class ColdAccountStore {
+
+    private static final String BUCKET_DIRECTORY = "buckets";
+
+    private static final String BUCKET_SUFFIX = ".cold";
+
+    private static final String REWRITE_SUFFIX = ".tmp";
+
+    private final Path directory;
+
+    private final Object[] bucketLocks;
+
+    public ColdAccountStore(Path directory, int buckets) {
+        if (buckets < 1) {
+            throw new IllegalArgumentException("Bucket count must be positive: " + buckets);
+        }
+        this.directory = directory.resolve(BUCKET_DIRECTORY);
+        this.bucketLocks = new Object[buckets];
+        for (int i = 0; i < buckets; i++) {
+            bucketLocks[i] = new Object();
+        }
+        clear();
+    }
+
+    public Object lockFor(String accountId) {
+        return bucketLocks[bucketOf(accountId)];
+    }
+
+    /**
+     * Caller holds {@link #lockFor} of the account.
+     */
+    public void write(Account account) {
+        Path bucket = bucketFile(account.getAccountId());
+        try (FileChannel channel = FileChannel.open(bucket, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(record)) {
+                writeRecord(out, account);
+            }
+            long end = channel.size();
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(record.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, end + buffer.position());
+                }
+            } catch (IOException e) {
+                channel.truncate(end);
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot archive account " + account.getAccountId(), e);
+        }
+    }
+
+    /**
+     * Caller holds {@link #lockFor} of the account.
+     *
+     * @return a new instance with the archived state, or null if the account is not archived
+     */
+    public Account read(String accountId) {
+        for (Account account : readBucket(bucketFile(accountId))) {
+            if (account.getAccountId().equals(accountId)) {
+                return account;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Caller holds {@link #lockFor} of the account.
+     */
+    public void remove(String accountId) {
+        Path bucket = bucketFile(accountId);
+        List<Account> kept = new ArrayList<>();
+        for (Account account : readBucket(bucket)) {
+            if (!account.getAccountId().equals(accountId)) {
+                kept.add(account);
+            }
+        }
+        try {
+            if (kept.isEmpty()) {
+                Files.deleteIfExists(bucket);
+                return;
+            }
+            Path rewritten = bucket.resolveSibling(bucket.getFileName() + REWRITE_SUFFIX);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(rewritten)))) {
+                for (Account account : kept) {
+                    writeRecord(out, account);
+                }
+            }
+            Files.move(rewritten, bucket, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot remove account " + accountId + " from the cold tier", e);
+        }
+    }
+
+    /**
+     * Visits every archived account, one bucket at a time under its lock.
+     */
+    public void forEach(Consumer<Account> visitor) {
+        for (int i = 0; i < bucketLocks.length; i++) {
+            List<Account> accounts;
+            synchronized (bucketLocks[i]) {
+                accounts = readBucket(directory.resolve(i + BUCKET_SUFFIX));
+            }
+            accounts.forEach(visitor);
+        }
+    }
+
+    public void clear() {
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> buckets = Files.newDirectoryStream(directory,
+                    "*{" + BUCKET_SUFFIX + "," + BUCKET_SUFFIX + REWRITE_SUFFIX + "}")) {
+                for (Path bucket : buckets) {
+                    Files.delete(bucket);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot prepare cold tier directory " + directory, e);
+        }
+    }
+
+    private List<Account> readBucket(Path bucket) {
+        List<Account> accounts = new ArrayList<>();
+        if (!Files.exists(bucket)) {
+            return accounts;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(bucket)))) {
+            while (true) {
+                String accountId;
+                try {
+                    accountId = in.readUTF();
+                } catch (EOFException e) {
+                    return accounts;
+                }
+                BigDecimal balance = new BigDecimal(in.readUTF());
+                String currency = in.readUTF();
+                Account account = new Account(accountId, balance, currency.isEmpty() ? null : currency);
+                account.setJournalSequence(in.readLong());
+                accounts.add(account);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read cold tier bucket " + bucket, e);
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, Account account) throws IOException {
+        out.writeUTF(account.getAccountId());
+        out.writeUTF(account.getBalance().toString());
+        out.writeUTF(account.getCurrency() == null ? "" : account.getCurrency());
+        out.writeLong(account.getJournalSequence());
+    }
+
+    private Path bucketFile(String accountId) {
+        return directory.resolve(bucketOf(accountId) + BUCKET_SUFFIX);
+    }
+
+    private int bucketOf(String accountId) {
+        return (accountId.hashCode() & Integer.MAX_VALUE) % bucketLocks.length;
+    }
+}
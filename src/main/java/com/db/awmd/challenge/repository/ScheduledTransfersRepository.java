@@ -0,0 +1,27 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.domain.ScheduledTransferRecord;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ScheduledTransfersRepository {
+
+    List<ScheduledTransfer> loadAll();
+
+    /**
+     * @return occurrences that fired but were not handed to the transfer scheduler yet
+     */
+    List<ScheduledTransfer> loadDue();
+
+    /**
+     * Stores the records in order, all of them or none.
+     */
+    void append(List<ScheduledTransferRecord> records);
+
+    /**
+     * Replaces the stored schedule and due occurrences together.
+     */
+    void saveAll(Collection<ScheduledTransfer> scheduledTransfers, Collection<ScheduledTransfer> dueTransfers);
+}
@@ -0,0 +1,330 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.domain.ScheduledTransferRecord;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores the schedule as an append-only log of {@link ScheduledTransferRecord}s, one JSON line
+ * each, so registering, cancelling or firing a transfer writes only its own records. The log is
+ * replayed into memory on first use and compacted into one record per live entry once more
+ * records were appended since the last compaction than entries are live, at least
+ * {@code compact-after-records}. An incomplete last line, left by a crash in the middle of a write,
+ * is cut off at load.
+ * <p>
+ * A file holding a JSON object of schedule and due occurrences, or a bare array of the schedule,
+ * as written before the log, is read once and compacted into a log.
+ */
+@Repository
+@Slf4j
+public class ScheduledTransfersRepositoryFile implements ScheduledTransfersRepository {
+
+    private static final TypeReference<List<ScheduledTransfer>> SCHEDULED_TRANSFERS_TYPE =
+            new TypeReference<List<ScheduledTransfer>>() {
+            };
+
+    private static final String SCHEDULED = "scheduled";
+
+    private static final String DUE = "due";
+
+    private final ObjectMapper objectMapper;
+
+    private final Path storeFile;
+
+    private final long compactAfterRecords;
+
+    private final Map<String, ScheduledTransfer> scheduledTransfers = new LinkedHashMap<>();
+
+    /**
+     * By occurrence, see {@link #occurrenceKey}.
+     */
+    private final Map<String, ScheduledTransfer> dueTransfers = new LinkedHashMap<>();
+
+    private FileChannel channel;
+
+    private long recordsSinceCompaction;
+
+    /**
+     * Set once failed records could not be cut off; every later append fails with it.
+     */
+    private IOException broken;
+
+    public ScheduledTransfersRepositoryFile(ObjectMapper objectMapper, String storeFile) {
+        this(objectMapper, storeFile, 10000L);
+    }
+
+    @Autowired
+    public ScheduledTransfersRepositoryFile(ObjectMapper objectMapper,
+                                            @Value("${transfer.scheduled.store-file:data/scheduled-transfers.json}") String storeFile,
+                                            @Value("${transfer.scheduled.compact-after-records:10000}") long compactAfterRecords) {
+        this.objectMapper = objectMapper;
+        this.storeFile = Paths.get(storeFile);
+        this.compactAfterRecords = compactAfterRecords;
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    @Override
+    public synchronized List<ScheduledTransfer> loadAll() {
+        open();
+        return new ArrayList<>(scheduledTransfers.values());
+    }
+
+    @Override
+    public synchronized List<ScheduledTransfer> loadDue() {
+        open();
+        return new ArrayList<>(dueTransfers.values());
+    }
+
+    @Override
+    public synchronized void append(List<ScheduledTransferRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        open();
+        if (broken != null) {
+            throw new UncheckedIOException("Scheduled transfer log " + storeFile + " is broken", broken);
+        }
+        long validLength = -1L;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (ScheduledTransferRecord record : records) {
+                out.write(objectMapper.writeValueAsBytes(record));
+                out.write('\n');
+            }
+            validLength = channel.size();
+            ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+            long position = validLength;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            log.error("Cannot append scheduled transfer records to " + storeFile, e);
+            cutOff(validLength);
+            throw new UncheckedIOException(e);
+        }
+        for (ScheduledTransferRecord record : records) {
+            apply(record);
+        }
+        recordsSinceCompaction += records.size();
+        if (recordsSinceCompaction > Math.max(compactAfterRecords, scheduledTransfers.size() + dueTransfers.size())) {
+            try {
+                compact();
+            } catch (IOException e) {
+                log.error("Cannot compact scheduled transfer log " + storeFile + ", appending to it further", e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void saveAll(Collection<ScheduledTransfer> scheduledTransfers,
+                                     Collection<ScheduledTransfer> dueTransfers) {
+        open();
+        this.scheduledTransfers.clear();
+        this.dueTransfers.clear();
+        for (ScheduledTransfer scheduledTransfer : scheduledTransfers) {
+            this.scheduledTransfers.put(scheduledTransfer.getId(), scheduledTransfer);
+        }
+        for (ScheduledTransfer dueTransfer : dueTransfers) {
+            this.dueTransfers.put(occurrenceKey(dueTransfer), dueTransfer);
+        }
+        try {
+            compact();
+            broken = null;
+        } catch (IOException e) {
+            log.error("Cannot write scheduled transfers to " + storeFile, e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void apply(ScheduledTransferRecord record) {
+        ScheduledTransfer scheduledTransfer = record.getScheduledTransfer();
+        switch (record.getType()) {
+            case SCHEDULED:
+                scheduledTransfers.put(scheduledTransfer.getId(), scheduledTransfer);
+                break;
+            case CANCELLED:
+                scheduledTransfers.remove(record.getScheduledTransferId());
+                dueTransfers.values().removeIf(due -> due.getId().equals(record.getScheduledTransferId()));
+                break;
+            case FIRED:
+                scheduledTransfers.remove(scheduledTransfer.getId(), scheduledTransfer);
+                dueTransfers.put(occurrenceKey(scheduledTransfer), scheduledTransfer);
+                break;
+            case HANDED_OVER:
+                dueTransfers.remove(occurrenceKey(scheduledTransfer));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown scheduled transfer record " + record.getType());
+        }
+    }
+
+    /**
+     * Rewrites the log as one record per live entry and swaps it in atomically.
+     */
+    private void compact() throws IOException {
+        Path directory = storeFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tempFile = Files.createTempFile(directory, storeFile.getFileName().toString(), ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile.toFile())) {
+            for (ScheduledTransfer scheduledTransfer : scheduledTransfers.values()) {
+                writeLine(out, ScheduledTransferRecord.of(ScheduledTransferRecord.Type.SCHEDULED, scheduledTransfer));
+            }
+            for (ScheduledTransfer dueTransfer : dueTransfers.values()) {
+                writeLine(out, ScheduledTransferRecord.of(ScheduledTransferRecord.Type.FIRED, dueTransfer));
+            }
+            out.getFD().sync();
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        Files.move(tempFile, storeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(storeFile, StandardOpenOption.WRITE);
+        recordsSinceCompaction = 0L;
+    }
+
+    private void writeLine(FileOutputStream out, ScheduledTransferRecord record) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(record));
+        out.write('\n');
+    }
+
+    /**
+     * Replays the log on first use.
+     */
+    private void open() {
+        if (channel != null) {
+            return;
+        }
+        try {
+            Files.createDirectories(storeFile.toAbsolutePath().getParent());
+            boolean legacy = false;
+            long validLength = 0L;
+            if (Files.exists(storeFile)) {
+                byte[] content = Files.readAllBytes(storeFile);
+                JsonNode legacyStore = readLegacyStore(content);
+                if (legacyStore != null) {
+                    loadLegacyStore(legacyStore);
+                    legacy = true;
+                } else {
+                    validLength = replay(content);
+                }
+            }
+            if (legacy) {
+                log.info("Converting scheduled transfers in " + storeFile + " to a log");
+                compact();
+                return;
+            }
+            channel = FileChannel.open(storeFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (channel.size() > validLength) {
+                log.warn("Cutting incomplete last record off scheduled transfer log " + storeFile + " at byte " + validLength);
+                channel.truncate(validLength);
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            log.error("Cannot read scheduled transfers from " + storeFile, e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the length of the complete lines
+     */
+    private long replay(byte[] content) throws IOException {
+        int lineStart = 0;
+        for (int i = 0; i < content.length; i++) {
+            if (content[i] != '\n') {
+                continue;
+            }
+            if (i > lineStart) {
+                apply(objectMapper.readValue(content, lineStart, i - lineStart, ScheduledTransferRecord.class));
+                recordsSinceCompaction++;
+            }
+            lineStart = i + 1;
+        }
+        return lineStart;
+    }
+
+    /**
+     * @return the store as written before the log, or null if {@code content} is a log
+     */
+    private JsonNode readLegacyStore(byte[] content) throws IOException {
+        String text = new String(content, StandardCharsets.UTF_8).trim();
+        if (text.startsWith("[")) {
+            return objectMapper.readTree(text);
+        }
+        if (!text.startsWith("{") || text.indexOf('\n') >= 0) {
+            return null;
+        }
+        JsonNode store = objectMapper.readTree(text);
+        return store.has(SCHEDULED) || store.has(DUE) ? store : null;
+    }
+
+    private void loadLegacyStore(JsonNode store) {
+        for (ScheduledTransfer scheduledTransfer : toList(store.isArray() ? store : store.get(SCHEDULED))) {
+            scheduledTransfers.put(scheduledTransfer.getId(), scheduledTransfer);
+        }
+        for (ScheduledTransfer dueTransfer : toList(store.isObject() ? store.get(DUE) : null)) {
+            dueTransfers.put(occurrenceKey(dueTransfer), dueTransfer);
+        }
+    }
+
+    private void cutOff(long validLength) {
+        if (validLength < 0) {
+            return;
+        }
+        try {
+            channel.truncate(validLength);
+            channel.force(false);
+        } catch (IOException e) {
+            log.error("Cannot cut failed records off scheduled transfer log " + storeFile, e);
+            broken = e;
+        }
+    }
+
+    private List<ScheduledTransfer> toList(JsonNode scheduledTransfers) {
+        if (scheduledTransfers == null || scheduledTransfers.isNull()) {
+            return new ArrayList<>();
+        }
+        return objectMapper.convertValue(scheduledTransfers, SCHEDULED_TRANSFERS_TYPE);
+    }
+
+    private static String occurrenceKey(ScheduledTransfer scheduledTransfer) {
+        return scheduledTransfer.getId() + "@" + scheduledTransfer.getExecuteAt();
+    }
+}
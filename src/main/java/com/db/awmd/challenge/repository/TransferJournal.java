@@ -0,0 +1,76 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.JournalEntry;
+import com.db.awmd.challenge.domain.TransferLeg;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface TransferJournal {
+
+    TransferJournal NONE = new TransferJournal() {
+        @Override
+        public JournalEntry append(JournalEntry.Type type, String accountFromId, String accountToId, BigDecimal amount,
+                                   BigDecimal creditAmount) {
+            return new JournalEntry(0L, System.currentTimeMillis(), type, accountFromId, accountToId, amount, creditAmount);
+        }
+
+        @Override
+        public JournalEntry appendWithLegs(JournalEntry.Type type, String accountFromId, String accountToId,
+                                           BigDecimal amount, List<TransferLeg> legs) {
+            return new JournalEntry(0L, System.currentTimeMillis(), type, accountFromId, accountToId, amount, null, legs);
+        }
+
+        @Override
+        public List<JournalEntry> readEntries() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public long getLastSequence() {
+            return 0L;
+        }
+    };
+
+    /**
+     * Returns once the entry is durable.
+     */
+    default JournalEntry append(JournalEntry.Type type, String accountFromId, String accountToId, BigDecimal amount) {
+        return append(type, accountFromId, accountToId, amount, null);
+    }
+
+    /**
+     * Journals a movement that may credit a different amount than it debits. Returns once the entry is durable.
+     *
+     * @param creditAmount amount credited to {@code accountToId}, null if it equals {@code amount}
+     */
+    JournalEntry append(JournalEntry.Type type, String accountFromId, String accountToId, BigDecimal amount,
+                        BigDecimal creditAmount);
+
+    /**
+     * Journals a fan-out or fan-in as one entry, so it is replayed with all of its legs or not at
+     * all. Returns once the entry is durable.
+     */
+    default JournalEntry appendWithLegs(JournalEntry.Type type, String accountFromId, String accountToId,
+                                        BigDecimal amount, List<TransferLeg> legs) {
+        throw new UnsupportedOperationException("Journal " + getClass().getName() + " does not take entries with legs");
+    }
+
+    List<JournalEntry> readEntries();
+
+    /**
+     * Hands the entries after {@code afterSequence} to {@code action} in journal order.
+     */
+    default void forEachEntry(long afterSequence, Consumer<JournalEntry> action) {
+        for (JournalEntry entry : readEntries()) {
+            if (entry.getSequence() > afterSequence) {
+                action.accept(entry);
+            }
+        }
+    }
+
+    long getLastSequence();
+
+}
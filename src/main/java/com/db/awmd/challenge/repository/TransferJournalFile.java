@@ -0,0 +1,472 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.JournalEntry;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.metrics.Histogram;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Append-only journal of balance movements, one JSON line per entry, made durable by group commit.
+ * Callers enqueue their entry and block; a single writer thread collects everything that
+ * queued up while the previous fsync was running, waiting at most {@code max-group-wait-micros}
+ * for stragglers and taking at most {@code max-group-size} entries, then writes the group
+ * and covers it with one fsync before releasing its callers.
+ * <p>
+ * A group that fails to be written or synced is cut off the file again before its callers are
+ * failed, so the journal never holds entries of rolled back transfers. An incomplete last line,
+ * left by a crash in the middle of a write, is ignored when reading and cut off at start.
+ * <p>
+ * Once a segment grows past {@code max-segment-bytes} the writer continues in a new one. The
+ * first segment is the configured file, later ones carry the sequence of their first entry as
+ * a suffix, so a reader starting after a sequence skips whole segments. Start scans only the end
+ * of the last segment for its last complete entry.
+ */
+@Repository
+@Slf4j
+public class TransferJournalFile implements TransferJournal {
+
+    private static final long POLL_INTERVAL_MS = 100L;
+
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+
+    private final ObjectMapper objectMapper;
+
+    private final Path journalFile;
+
+    private final long maxGroupWaitNanos;
+
+    private final int maxGroupSize;
+
+    private final long maxSegmentBytes;
+
+    private final Histogram groupSizeHistogram;
+
+    private final Histogram fsyncLatencyHistogram;
+
+    private final BlockingQueue<PendingEntry> pendingEntries = new LinkedBlockingQueue<>();
+
+    private final Object appendMonitor = new Object();
+
+    private long lastSequence;
+
+    private FileChannel channel;
+
+    /**
+     * Segments by the sequence their entries start after; written by the writer, read by readers.
+     */
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+
+    private Thread writer;
+
+    private volatile boolean running;
+
+    /**
+     * Set once a failed group could not be cut off; every later group fails with it.
+     */
+    private volatile IOException broken;
+
+    public TransferJournalFile(ObjectMapper objectMapper, MetricsRegistry metricsRegistry, String journalFile,
+                               long maxGroupWaitMicros, int maxGroupSize) {
+        this(objectMapper, metricsRegistry, journalFile, maxGroupWaitMicros, maxGroupSize, 64L * 1024 * 1024);
+    }
+
+    @Autowired
+    public TransferJournalFile(ObjectMapper objectMapper,
+                               MetricsRegistry metricsRegistry,
+                               @Value("${transfer.journal.file:data/transfers.journal}") String journalFile,
+                               @Value("${transfer.journal.max-group-wait-micros:200}") long maxGroupWaitMicros,
+                               @Value("${transfer.journal.max-group-size:256}") int maxGroupSize,
+                               @Value("${transfer.journal.max-segment-bytes:67108864}") long maxSegmentBytes) {
+        if (maxGroupSize < 1) {
+            throw new IllegalArgumentException("Group size must be positive: " + maxGroupSize);
+        }
+        this.objectMapper = objectMapper;
+        this.journalFile = Paths.get(journalFile);
+        this.maxGroupWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxGroupWaitMicros);
+        this.maxGroupSize = maxGroupSize;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.groupSizeHistogram = metricsRegistry.histogram("journal.commit.group.size");
+        this.fsyncLatencyHistogram = metricsRegistry.histogram("journal.fsync.latency.micros");
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(journalFile.toAbsolutePath().getParent());
+        findSegments();
+        Map.Entry<Long, Path> last = segments.lastEntry();
+        JournalEntry lastEntry;
+        try (FileChannel segment = FileChannel.open(last.getValue(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            lastEntry = scanTail(segment, last.getValue());
+        }
+        channel = FileChannel.open(last.getValue(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        lastSequence = lastEntry == null ? last.getKey() : lastEntry.getSequence();
+        running = true;
+        writer = new Thread(this::writeGroups, "transfer-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Transfer journal " + journalFile + " opened at sequence " + lastSequence);
+    }
+
+    /**
+     * Stops taking entries, lets the writer commit those queued and fails any left behind, so no
+     * caller stays blocked on an entry that will never be written.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException, IOException {
+        synchronized (appendMonitor) {
+            running = false;
+        }
+        writer.join();
+        List<PendingEntry> left = new ArrayList<>();
+        pendingEntries.drainTo(left);
+        fail(left, new IOException("Transfer journal closed"));
+        channel.close();
+    }
+
+    @Override
+    public JournalEntry append(JournalEntry.Type type, String accountFromId, String accountToId, BigDecimal amount,
+                               BigDecimal creditAmount) {
+        return append(type, accountFromId, accountToId, amount, creditAmount, null);
+    }
+
+    @Override
+    public JournalEntry appendWithLegs(JournalEntry.Type type, String accountFromId, String accountToId,
+                                       BigDecimal amount, List<TransferLeg> legs) {
+        return append(type, accountFromId, accountToId, amount, null, legs);
+    }
+
+    private JournalEntry append(JournalEntry.Type type, String accountFromId, String accountToId, BigDecimal amount,
+                                BigDecimal creditAmount, List<TransferLeg> legs) {
+        PendingEntry pending;
+        synchronized (appendMonitor) {
+            if (!running) {
+                throw new IllegalStateException("Transfer journal is closed");
+            }
+            pending = new PendingEntry(new JournalEntry(++lastSequence, System.currentTimeMillis(), type,
+                    accountFromId, accountToId, amount, creditAmount, legs));
+            pendingEntries.add(pending);
+        }
+        try {
+            pending.durable.join();
+        } catch (CompletionException e) {
+            throw new UncheckedIOException("Cannot journal transfer " + pending.entry.getSequence(),
+                    (IOException) e.getCause());
+        }
+        return pending.entry;
+    }
+
+    @Override
+    public long getLastSequence() {
+        synchronized (appendMonitor) {
+            return lastSequence;
+        }
+    }
+
+    @Override
+    public List<JournalEntry> readEntries() {
+        List<JournalEntry> entries = new ArrayList<>();
+        forEachEntry(0L, entries::add);
+        return entries;
+    }
+
+    /**
+     * Streams the entries segment by segment, skipping segments that end at or before
+     * {@code afterSequence}.
+     */
+    @Override
+    public void forEachEntry(long afterSequence, Consumer<JournalEntry> action) {
+        List<Path> paths;
+        synchronized (segments) {
+            if (segments.isEmpty()) {
+                return;
+            }
+            Long first = segments.floorKey(afterSequence);
+            paths = new ArrayList<>(segments.tailMap(first == null ? segments.firstKey() : first, true).values());
+        }
+        for (Path path : paths) {
+            try {
+                readSegment(path, entry -> {
+                    if (entry.getSequence() > afterSequence) {
+                        action.accept(entry);
+                    }
+                });
+            } catch (IOException e) {
+                log.error("Cannot read transfer journal " + path, e);
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Reads every newline terminated entry; trailing bytes without a newline are a write cut
+     * short and are skipped.
+     */
+    private void readSegment(Path path, Consumer<JournalEntry> action) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        byte[] buffer = new byte[READ_BUFFER_BYTES];
+        int filled = 0;
+        try (InputStream in = Files.newInputStream(path)) {
+            int read;
+            while ((read = in.read(buffer, filled, buffer.length - filled)) != -1) {
+                filled += read;
+                int lineStart = 0;
+                for (int i = 0; i < filled; i++) {
+                    if (buffer[i] == '\n') {
+                        if (i > lineStart) {
+                            action.accept(objectMapper.readValue(buffer, lineStart, i - lineStart, JournalEntry.class));
+                        }
+                        lineStart = i + 1;
+                    }
+                }
+                filled -= lineStart;
+                System.arraycopy(buffer, lineStart, buffer, 0, filled);
+                if (filled == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lists the segments, the configured file first; it is created if there are none.
+     */
+    private void findSegments() throws IOException {
+        String prefix = journalFile.getFileName() + ".";
+        synchronized (segments) {
+            segments.clear();
+            try (DirectoryStream<Path> paths = Files.newDirectoryStream(journalFile.toAbsolutePath().getParent(), prefix + "*")) {
+                for (Path path : paths) {
+                    String suffix = path.getFileName().toString().substring(prefix.length());
+                    if (suffix.matches("[0-9]+")) {
+                        segments.put(Long.parseLong(suffix) - 1, path);
+                    }
+                }
+            }
+            if (segments.isEmpty() || Files.exists(journalFile)) {
+                segments.put(0L, journalFile);
+            }
+        }
+    }
+
+    /**
+     * Finds the last complete entry of the segment by reading back from its end, and cuts off
+     * an incomplete line after it.
+     *
+     * @return null if the segment holds no complete entry
+     */
+    private JournalEntry scanTail(FileChannel segment, Path path) throws IOException {
+        long size = segment.size();
+        long validLength = 0L;
+        ByteArrayOutputStream reversedLine = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        long position = size;
+        boolean inLastLine = false;
+        JournalEntry lastEntry = null;
+        scan:
+        while (position > 0) {
+            int length = (int) Math.min(buffer.capacity(), position);
+            position -= length;
+            buffer.clear().limit(length);
+            while (buffer.hasRemaining()) {
+                if (segment.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Transfer journal " + path + " shrank while starting");
+                }
+            }
+            for (int i = length - 1; i >= 0; i--) {
+                byte next = buffer.get(i);
+                if (next != '\n') {
+                    if (inLastLine) {
+                        reversedLine.write(next);
+                    }
+                    continue;
+                }
+                if (!inLastLine) {
+                    validLength = position + i + 1;
+                    inLastLine = true;
+                } else if (reversedLine.size() > 0) {
+                    break scan;
+                }
+            }
+        }
+        if (reversedLine.size() > 0) {
+            byte[] line = reversedLine.toByteArray();
+            for (int i = 0, j = line.length - 1; i < j; i++, j--) {
+                byte swapped = line[i];
+                line[i] = line[j];
+                line[j] = swapped;
+            }
+            lastEntry = objectMapper.readValue(line, JournalEntry.class);
+        }
+        if (size > validLength) {
+            log.warn("Cutting incomplete last record off transfer journal " + path + " at byte " + validLength);
+            segment.truncate(validLength);
+            segment.force(false);
+        }
+        return lastEntry;
+    }
+
+    /**
+     * Continues in a new segment after {@code lastWritten}. A failure leaves the writer in the
+     * current segment and is retried after the next group.
+     */
+    private void rotate(long lastWritten) {
+        Path next = journalFile.resolveSibling(journalFile.getFileName() + "." + String.format("%020d", lastWritten + 1));
+        try {
+            FileChannel nextChannel = FileChannel.open(next, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            syncDirectory();
+            channel.close();
+            channel = nextChannel;
+            synchronized (segments) {
+                segments.put(lastWritten, next);
+            }
+            log.info("Transfer journal continues in " + next);
+        } catch (IOException e) {
+            log.error("Cannot start transfer journal segment " + next, e);
+        }
+    }
+
+    private void syncDirectory() {
+        try (FileChannel directory = FileChannel.open(journalFile.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // not every platform can sync a directory
+            log.debug("Cannot sync directory of transfer journal " + journalFile, e);
+        }
+    }
+
+    private void writeGroups() {
+        List<PendingEntry> group = new ArrayList<>(maxGroupSize);
+        while (running || !pendingEntries.isEmpty()) {
+            try {
+                PendingEntry first = pendingEntries.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                collectGroup(group);
+            } catch (InterruptedException e) {
+                // callers stay blocked until their group is written, so the writer runs until shutdown
+                log.warn("Transfer journal writer interrupted, interrupt ignored");
+            }
+            commit(group);
+            group.clear();
+        }
+    }
+
+    private void collectGroup(List<PendingEntry> group) throws InterruptedException {
+        long groupDeadline = System.nanoTime() + maxGroupWaitNanos;
+        while (group.size() < maxGroupSize) {
+            pendingEntries.drainTo(group, maxGroupSize - group.size());
+            long remainingNanos = groupDeadline - System.nanoTime();
+            if (group.size() >= maxGroupSize || remainingNanos <= 0) {
+                return;
+            }
+            PendingEntry next = pendingEntries.poll(remainingNanos, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            group.add(next);
+        }
+    }
+
+    private void commit(List<PendingEntry> group) {
+        if (group.isEmpty()) {
+            return;
+        }
+        if (broken != null) {
+            fail(group, broken);
+            return;
+        }
+        long groupStart = -1L;
+        try {
+            groupStart = channel.position();
+            ByteArrayOutputStream lines = new ByteArrayOutputStream();
+            for (PendingEntry pending : group) {
+                lines.write(objectMapper.writeValueAsBytes(pending.entry));
+                lines.write('\n');
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            long fsyncStart = System.nanoTime();
+            channel.force(false);
+            fsyncLatencyHistogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - fsyncStart));
+            groupSizeHistogram.record(group.size());
+            for (PendingEntry pending : group) {
+                pending.durable.complete(null);
+            }
+            if (channel.size() >= maxSegmentBytes) {
+                rotate(group.get(group.size() - 1).entry.getSequence());
+            }
+        } catch (IOException e) {
+            log.error("Cannot write " + group.size() + " entries to transfer journal " + journalFile, e);
+            cutOff(groupStart, e);
+            fail(group, e);
+        }
+    }
+
+    private void cutOff(long groupStart, IOException cause) {
+        if (groupStart < 0L) {
+            broken = cause;
+            return;
+        }
+        try {
+            channel.truncate(groupStart);
+            channel.force(false);
+        } catch (IOException e) {
+            log.error("Cannot cut failed group off transfer journal " + journalFile + ", refusing further entries", e);
+            broken = e;
+        }
+    }
+
+    private static void fail(List<PendingEntry> group, IOException cause) {
+        for (PendingEntry pending : group) {
+            pending.durable.completeExceptionally(cause);
+        }
+    }
+
+    private static class PendingEntry {
+        private final JournalEntry entry;
+        private final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        private PendingEntry(JournalEntry entry) {
+            this.entry = entry;
+        }
+    }
+}
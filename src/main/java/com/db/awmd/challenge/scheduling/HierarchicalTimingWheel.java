@@ -0,0 +1,108 @@
+package com.db.awmd.challenge.scheduling;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel in the style of Varghese and Lauck. Each level is a ring of
+ * {@code wheelSize} buckets covering {@code tickMs * wheelSize}; timeouts beyond that go to a
+ * coarser overflow level created on demand and cascade down as the clock reaches them.
+ * Insertion is O(1) at any distance; advancing costs one step per elapsed tick per level.
+ * Not thread safe, callers serialize access.
+ */
+public class HierarchicalTimingWheel<T> {
+
+    private final long tickMs;
+
+    private final int wheelSize;
+
+    private final long interval;
+
+    private final Deque<Entry<T>>[] buckets;
+
+    private long currentTime;
+
+    private HierarchicalTimingWheel<T> overflowWheel;
+
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public HierarchicalTimingWheel(long tickMs, int wheelSize, long startMs) {
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.interval = tickMs * wheelSize;
+        this.currentTime = startMs - (startMs % tickMs);
+        this.buckets = (Deque<Entry<T>>[]) new Deque<?>[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * @return false if the expiration is already due, in which case the item is not stored
+     */
+    public boolean add(long expirationMs, T item) {
+        if (!addEntry(new Entry<>(expirationMs, item))) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Moves the clock to {@code timeMs} and hands every item that became due to {@code expired}.
+     */
+    public void advance(long timeMs, Consumer<T> expired) {
+        advance(timeMs, this, expired);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private boolean addEntry(Entry<T> entry) {
+        if (entry.expirationMs < currentTime + tickMs) {
+            return false;
+        }
+        if (entry.expirationMs < currentTime + interval) {
+            buckets[bucketIndex(entry.expirationMs)].addLast(entry);
+            return true;
+        }
+        if (overflowWheel == null) {
+            overflowWheel = new HierarchicalTimingWheel<>(interval, wheelSize, currentTime);
+        }
+        return overflowWheel.addEntry(entry);
+    }
+
+    private void advance(long timeMs, HierarchicalTimingWheel<T> root, Consumer<T> expired) {
+        while (timeMs >= currentTime + tickMs) {
+            currentTime += tickMs;
+            Deque<Entry<T>> bucket = buckets[bucketIndex(currentTime)];
+            while (!bucket.isEmpty()) {
+                Entry<T> entry = bucket.pollFirst();
+                if (!root.addEntry(entry)) {
+                    root.size--;
+                    expired.accept(entry.item);
+                }
+            }
+        }
+        if (overflowWheel != null) {
+            overflowWheel.advance(timeMs, root, expired);
+        }
+    }
+
+    private int bucketIndex(long timeMs) {
+        return (int) ((timeMs / tickMs) % wheelSize);
+    }
+
+    private static class Entry<T> {
+        private final long expirationMs;
+        private final T item;
+
+        private Entry(long expirationMs, T item) {
+            this.expirationMs = expirationMs;
+            this.item = item;
+        }
+    }
+}
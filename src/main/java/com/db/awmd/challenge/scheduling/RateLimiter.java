@@ -0,0 +1,33 @@
+package com.db.awmd.challenge.scheduling;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces permits evenly at a fixed rate without allowing bursts.
+ */
+public class RateLimiter {
+
+    private final long intervalNanos;
+
+    private long nextPermitNanos = System.nanoTime();
+
+    public RateLimiter(double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive: " + permitsPerSecond);
+        }
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+    }
+
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long permitAt = Math.max(now, nextPermitNanos);
+            nextPermitNanos = permitAt + intervalNanos;
+            waitNanos = permitAt - now;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
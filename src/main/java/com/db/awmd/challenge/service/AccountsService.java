@@ -1,12 +1,16 @@
 package com.db.awmd.challenge.service;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.domain.TransferLeg;
 import com.db.awmd.challenge.exception.AccountNotExistException;
 import com.db.awmd.challenge.exception.AccountNotProcessedExeption;
 import com.db.awmd.challenge.exception.OverDraftException;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 
 public interface AccountsService {
@@ -18,6 +22,13 @@ public interface AccountsService {
 
     List<Account> getAllAccount();
 
+    /**
+     * Hands every account to {@code action} without collecting them into a list first.
+     */
+    void forEachAccount(Consumer<Account> action);
+
+    boolean hasAccounts();
+
     void creditBalanceAccount(Account account, BigDecimal amount) throws AccountNotExistException, AccountNotProcessedExeption;
 
     void debitBalanceAccount(Account account, BigDecimal amount) throws AccountNotExistException, AccountNotProcessedExeption, OverDraftException;
@@ -26,8 +37,34 @@ public interface AccountsService {
 
     void clearAccounts();
 
+    BalanceSnapshot getBalanceSnapshot();
+
+    BalanceSnapshot getBalanceSnapshot(Collection<String> accountIds);
+
     void makeTransfer(Account accountFromId, Account accountToId, BigDecimal amount) throws AccountNotExistException, AccountNotProcessedExeption, OverDraftException;
 
+    /**
+     * Transfers between accounts held in different currencies, debiting {@code debitAmount} and
+     * crediting {@code creditAmount} already converted by the caller.
+     */
+    void makeTransfer(Account accountFromId, Account accountToId, BigDecimal debitAmount, BigDecimal creditAmount) throws AccountNotExistException, AccountNotProcessedExeption, OverDraftException;
+
+    /**
+     * Debits {@code accountFrom} by the sum of the legs and credits each leg account, journaled as
+     * one entry. Callers hold the locks of every account involved.
+     */
+    void makeFanOutTransfer(Account accountFrom, List<TransferLeg> legs) throws AccountNotExistException, AccountNotProcessedExeption, OverDraftException;
+
+    /**
+     * Debits each leg account and credits {@code accountTo} by the sum of the legs, journaled as
+     * one entry. Callers hold the locks of every account involved.
+     */
+    void makeFanInTransfer(Account accountTo, List<TransferLeg> legs) throws AccountNotExistException, AccountNotProcessedExeption, OverDraftException;
+
+    void splitAccount(String accountId, int stripes) throws AccountNotExistException, AccountNotProcessedExeption;
+
+    void mergeAccount(String accountId) throws AccountNotExistException;
+
 }
 
 
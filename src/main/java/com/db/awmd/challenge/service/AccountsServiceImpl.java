@@ -1,47 +1,150 @@
 package com.db.awmd.challenge.service;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceChange;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.domain.JournalEntry;
+import com.db.awmd.challenge.domain.TransferLeg;
 import com.db.awmd.challenge.exception.AccountNotExistException;
 import com.db.awmd.challenge.exception.AccountNotProcessedExeption;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import com.db.awmd.challenge.exception.OverDraftException;
+import com.db.awmd.challenge.jfr.FlightEvents;
 import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.TransferJournal;
+import com.db.awmd.challenge.snapshot.BalanceSnapshots;
+import com.db.awmd.challenge.tracing.Tracing;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
+
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
+@SuppressWarnings("try")
 public class AccountsServiceImpl implements AccountsService {
 
     @Getter
     private final AccountsRepository accountsRepository;
 
-    @Autowired
+    private final TransferJournal transferJournal;
+
+    private final BalanceSnapshots balanceSnapshots;
+
+    private final List<BalanceChangeListener> balanceChangeListeners;
+
     public AccountsServiceImpl(AccountsRepository accountsRepository) throws AccountNotExistException {
+        this(accountsRepository, TransferJournal.NONE);
+    }
+
+    public AccountsServiceImpl(AccountsRepository accountsRepository, TransferJournal transferJournal) {
+        this(accountsRepository, transferJournal, new BalanceSnapshots());
+    }
+
+    public AccountsServiceImpl(AccountsRepository accountsRepository, TransferJournal transferJournal,
+                               BalanceSnapshots balanceSnapshots) {
+        this(accountsRepository, transferJournal, balanceSnapshots, Collections.emptyList());
+    }
+
+    @Autowired
+    public AccountsServiceImpl(AccountsRepository accountsRepository, TransferJournal transferJournal,
+                               BalanceSnapshots balanceSnapshots, List<BalanceChangeListener> balanceChangeListeners) {
         this.accountsRepository = accountsRepository;
+        this.transferJournal = transferJournal;
+        this.balanceSnapshots = balanceSnapshots;
+        this.balanceChangeListeners = balanceChangeListeners;
+    }
+
+    /**
+     * Journals a CLEAR when the store starts empty, so that the history of accounts lost with
+     * the previous run is not replayed onto accounts created again with the same ids.
+     */
+    @PostConstruct
+    public void start() {
+        if (!accountsRepository.survivesRestart()) {
+            transferJournal.append(JournalEntry.Type.CLEAR, null, null, BigDecimal.ZERO);
+        }
+        publishStoredBalances();
     }
+
+    private void publishStoredBalances() {
+        long epoch = balanceSnapshots.beginWrite();
+        try {
+            BigDecimal[] total = {BigDecimal.ZERO};
+            accountsRepository.forEachAccount(account -> {
+                BigDecimal balance = account.getBalance();
+                balanceSnapshots.record(account, balance, epoch);
+                total[0] = total[0].add(balance);
+            });
+            balanceSnapshots.recordTotalDelta(total[0], epoch);
+        } finally {
+            balanceSnapshots.endWrite(epoch);
+        }
+    }
+
     @Override
     public void createAccount(Account account) throws DuplicateAccountIdException {
         this.accountsRepository.createAccount(account);
+        JournalEntry entry = transferJournal.append(JournalEntry.Type.OPEN, null, account.getAccountId(), account.getBalance());
+        account.setJournalSequence(entry.getSequence());
+        publishBalance(account, account.getBalance());
+        notifyBalanceChanged(entry, account);
     }
     @Override
     public List<Account> getAllAccount() {
         return this.accountsRepository.getAllAccount();
     }
 
+    @Override
+    public void forEachAccount(Consumer<Account> action) {
+        accountsRepository.forEachAccount(action);
+    }
+
+    @Override
+    public boolean hasAccounts() {
+        return accountsRepository.hasAccounts();
+    }
+
     @Override
     public Account getAccount(String accountId) {
         return accountsRepository.getAccount(accountId);
     }
 
     public void clearAccounts() {
-        accountsRepository.clearAccounts();
+        long epoch = balanceSnapshots.beginWrite();
+        try {
+            accountsRepository.clearAccounts();
+            transferJournal.append(JournalEntry.Type.CLEAR, null, null, BigDecimal.ZERO);
+            balanceSnapshots.clear();
+            for (BalanceChangeListener listener : balanceChangeListeners) {
+                listener.onAccountsCleared();
+            }
+        } finally {
+            balanceSnapshots.endWrite(epoch);
+        }
+    }
+
+    @Override
+    public BalanceSnapshot getBalanceSnapshot() {
+        return balanceSnapshots.takeSnapshot();
+    }
+
+    @Override
+    public BalanceSnapshot getBalanceSnapshot(Collection<String> accountIds) {
+        return balanceSnapshots.takeSnapshot(accountIds);
     }
 
 
@@ -57,14 +160,34 @@ public class AccountsServiceImpl implements AccountsService {
     @Transactional
     public void updateAccount(Account account) throws AccountNotExistException {
         accountsRepository.updateAccount(account);
+        publishBalance(account, BigDecimal.ZERO);
     }
 
     @Transactional
     public void creditBalanceAccount(Account account, BigDecimal amount) throws AccountNotExistException ,AccountNotProcessedExeption{
         try {
-            Account accountCredit = findAccountById(account.getAccountId());
-            accountCredit.setBalance(accountCredit.getBalance().add(amount));
-            accountsRepository.updateAccount(accountCredit);
+            Account found = findAccountById(account.getAccountId());
+            if (found.beginStripedCredit()) {
+                try {
+                    creditSplitAccount(found, amount);
+                } finally {
+                    found.endStripedCredit();
+                }
+                return;
+            }
+            Account accountCredit = lockLiveAccount(account.getAccountId());
+            try {
+                BigDecimal previousBalance = accountCredit.getBalance();
+                accountCredit.addToBalance(amount);
+                storeBalance(accountCredit, previousBalance, amount);
+                JournalEntry entry = appendToJournal(JournalEntry.Type.CREDIT, null, accountCredit.getAccountId(), amount,
+                        () -> restoreBalance(accountCredit, previousBalance, amount));
+                accountCredit.advanceJournalSequence(entry.getSequence());
+                publishBalance(accountCredit, amount);
+                notifyBalanceChanged(entry, accountCredit);
+            } finally {
+                accountCredit.getLock().unlock();
+            }
         } catch(AccountNotExistException e) {
             log.error("Cannot process credit operation for accountId:"+account.getAccountId());
             throw e;
@@ -74,20 +197,27 @@ public class AccountsServiceImpl implements AccountsService {
         }
     }
 
-    private  void rollbackDebitOperation(Account account, BigDecimal amount)
-            throws AccountNotExistException ,AccountNotProcessedExeption {
-        creditBalanceAccount(account,amount);
-    }
-
         @Transactional
     public void debitBalanceAccount(Account account, BigDecimal amount) throws AccountNotExistException,AccountNotProcessedExeption, OverDraftException {
         try {
-            Account accountDebit = findAccountById(account.getAccountId());
-            if (accountDebit.getBalance().compareTo(amount) < 0) {
-                throw new OverDraftException("Account with id:"+account.getAccountId()+" does not have enough monney for withdraw.");
+            Account accountDebit = lockLiveAccount(account.getAccountId());
+            try {
+                if (accountDebit.getBalance().compareTo(amount) < 0) {
+                    FlightEvents.instant(FlightEvents.Type.OVERDRAFT_REJECTED, accountDebit.getAccountId(), amount,
+                            accountDebit.getBalance());
+                    throw new OverDraftException("Account with id:"+account.getAccountId()+" does not have enough monney for withdraw.");
+                }
+                BigDecimal previousBalance = accountDebit.getBalance();
+                accountDebit.addToBalance(amount.negate());
+                storeBalance(accountDebit, previousBalance, amount.negate());
+                JournalEntry entry = appendToJournal(JournalEntry.Type.DEBIT, accountDebit.getAccountId(), null, amount,
+                        () -> restoreBalance(accountDebit, previousBalance, amount.negate()));
+                accountDebit.advanceJournalSequence(entry.getSequence());
+                publishBalance(accountDebit, amount.negate());
+                notifyBalanceChanged(entry, accountDebit);
+            } finally {
+                accountDebit.getLock().unlock();
             }
-            accountDebit.setBalance(accountDebit.getBalance().subtract(amount));
-            accountsRepository.updateAccount(accountDebit);
         } catch(AccountNotExistException | OverDraftException e) {
             log.error("Cannot process debit operation for accountId:"+account.getAccountId());
             throw e;
@@ -101,15 +231,46 @@ public class AccountsServiceImpl implements AccountsService {
     @Transactional
     public void makeTransfer(Account accountFrom,Account accountTo, BigDecimal amount) throws
             AccountNotExistException,AccountNotProcessedExeption, OverDraftException {
-        try {
-            debitBalanceAccount(accountFrom,amount);
-            try {
-                creditBalanceAccount(accountTo, amount);
+        makeTransfer(accountFrom, accountTo, amount, amount);
+    }
+
+    @Transactional
+    public void makeTransfer(Account accountFrom, Account accountTo, BigDecimal amount, BigDecimal creditAmount) throws
+            AccountNotExistException,AccountNotProcessedExeption, OverDraftException {
+        try (Tracing.Span span = Tracing.span("service.makeTransfer")) {
+            Account accountDebit = findAccountById(accountFrom.getAccountId());
+            Account accountCredit = findAccountById(accountTo.getAccountId());
+            if (accountDebit.getBalance().compareTo(amount) < 0) {
+                FlightEvents.instant(FlightEvents.Type.OVERDRAFT_REJECTED, accountDebit.getAccountId(), amount,
+                        accountDebit.getBalance());
+                throw new OverDraftException("Account with id:"+accountFrom.getAccountId()+" does not have enough monney for withdraw.");
+            }
+            BigDecimal debitBalance = accountDebit.getBalance();
+            BigDecimal creditBalance = accountCredit.getBalance();
+            accountDebit.addToBalance(amount.negate());
+            accountCredit.addToBalance(creditAmount);
+            try (Tracing.Span store = Tracing.span("repository.updateAccounts")) {
+                accountsRepository.updateAccounts(Arrays.asList(accountDebit, accountCredit));
             } catch (Exception e) {
-                log.error("Cannot process credit operation for account.Transfer canceled.");
-                rollbackDebitOperation(accountFrom, amount);
+                log.error("Cannot store transfer between accounts.Transfer canceled.");
+                undoBalanceChange(accountDebit, debitBalance, amount.negate());
+                undoBalanceChange(accountCredit, creditBalance, creditAmount);
+                FlightEvents.instant(FlightEvents.Type.TRANSFER_ROLLBACK, accountDebit.getAccountId(),
+                        accountCredit.getAccountId(), amount, "store failed");
                 throw e;
             }
+            JournalEntry entry = appendToJournal(accountDebit.getAccountId(), accountCredit.getAccountId(), amount, creditAmount,
+                    () -> {
+                        undoBalanceChange(accountDebit, debitBalance, amount.negate());
+                        undoBalanceChange(accountCredit, creditBalance, creditAmount);
+                        accountsRepository.updateAccounts(Arrays.asList(accountDebit, accountCredit));
+                        FlightEvents.instant(FlightEvents.Type.TRANSFER_ROLLBACK, accountDebit.getAccountId(),
+                                accountCredit.getAccountId(), amount, "journal failed");
+                    });
+            accountDebit.advanceJournalSequence(entry.getSequence());
+            accountCredit.advanceJournalSequence(entry.getSequence());
+            publishTransfer(accountDebit, amount, accountCredit, creditAmount);
+            notifyBalanceChanged(entry, accountDebit, accountCredit);
 
         } catch(AccountNotExistException | OverDraftException e) {
             log.error("Cannot process debit operation for accountId:"+accountFrom.getAccountId());
@@ -121,4 +282,256 @@ public class AccountsServiceImpl implements AccountsService {
 
     }
 
+    @Transactional
+    public void makeFanOutTransfer(Account accountFrom, List<TransferLeg> legs) throws
+            AccountNotExistException, AccountNotProcessedExeption, OverDraftException {
+        makeFanTransfer(JournalEntry.Type.FAN_OUT, accountFrom, legs);
+    }
+
+    @Transactional
+    public void makeFanInTransfer(Account accountTo, List<TransferLeg> legs) throws
+            AccountNotExistException, AccountNotProcessedExeption, OverDraftException {
+        makeFanTransfer(JournalEntry.Type.FAN_IN, accountTo, legs);
+    }
+
+    /**
+     * Applies every leg of a fan-out or fan-in, stores the accounts in one update and journals one
+     * entry, so a crash never leaves the hub debited without the legs credited or the other way round.
+     */
+    private void makeFanTransfer(JournalEntry.Type type, Account hub, List<TransferLeg> legs) {
+        String hubId = hub.getAccountId();
+        try (Tracing.Span span = Tracing.span("service.makeFanTransfer")) {
+            Map<String, Account> accounts = new LinkedHashMap<>();
+            Map<String, BigDecimal> deltas = new LinkedHashMap<>();
+            accounts.put(hubId, findAccountById(hubId));
+            BigDecimal total = BigDecimal.ZERO;
+            for (TransferLeg leg : legs) {
+                accounts.computeIfAbsent(leg.getAccountId(), this::findAccountById);
+                BigDecimal legDelta = type == JournalEntry.Type.FAN_OUT ? leg.getAmount() : leg.getAmount().negate();
+                deltas.merge(leg.getAccountId(), legDelta, BigDecimal::add);
+                total = total.add(leg.getAmount());
+            }
+            deltas.put(hubId, type == JournalEntry.Type.FAN_OUT ? total.negate() : total);
+            for (Map.Entry<String, BigDecimal> delta : deltas.entrySet()) {
+                Account account = accounts.get(delta.getKey());
+                if (account.getBalance().add(delta.getValue()).signum() < 0) {
+                    FlightEvents.instant(FlightEvents.Type.OVERDRAFT_REJECTED, account.getAccountId(),
+                            delta.getValue().negate(), account.getBalance());
+                    throw new OverDraftException("Account with id:" + account.getAccountId() + " does not have enough monney for withdraw.");
+                }
+            }
+            Map<String, BigDecimal> previousBalances = new LinkedHashMap<>();
+            for (Account account : accounts.values()) {
+                previousBalances.put(account.getAccountId(), account.getBalance());
+                account.addToBalance(deltas.get(account.getAccountId()));
+            }
+            List<Account> changed = new ArrayList<>(accounts.values());
+            try (Tracing.Span store = Tracing.span("repository.updateAccounts")) {
+                accountsRepository.updateAccounts(changed);
+            } catch (Exception e) {
+                log.error("Cannot store " + type + " of account " + hubId + ".Transfer canceled.");
+                undoBalanceChanges(changed, previousBalances, deltas);
+                throw e;
+            }
+            JournalEntry entry;
+            try (Tracing.Span journal = Tracing.span("journal.append")) {
+                entry = type == JournalEntry.Type.FAN_OUT
+                        ? transferJournal.appendWithLegs(type, hubId, null, total, legs)
+                        : transferJournal.appendWithLegs(type, null, hubId, total, legs);
+            } catch (RuntimeException e) {
+                log.error("Cannot journal " + type + " operation.Operation canceled.");
+                undoBalanceChanges(changed, previousBalances, deltas);
+                accountsRepository.updateAccounts(changed);
+                throw e;
+            }
+            for (Account account : changed) {
+                account.advanceJournalSequence(entry.getSequence());
+            }
+            publishChanges(changed, deltas);
+            notifyBalanceChanged(entry, changed.toArray(new Account[0]));
+        } catch (AccountNotExistException | OverDraftException e) {
+            log.error("Cannot process " + type + " operation for accountId:" + hubId);
+            throw e;
+        } catch (Exception e) {
+            log.error("Cannot process " + type + " operation for accountId:" + hubId);
+            throw new AccountNotProcessedExeption("Cannot process payment");
+        }
+    }
+
+    private static void undoBalanceChanges(List<Account> accounts, Map<String, BigDecimal> previousBalances,
+                                           Map<String, BigDecimal> deltas) {
+        for (Account account : accounts) {
+            undoBalanceChange(account, previousBalances.get(account.getAccountId()), deltas.get(account.getAccountId()));
+        }
+    }
+
+    private JournalEntry appendToJournal(String accountFromId, String accountToId, BigDecimal amount, BigDecimal creditAmount,
+                                         Runnable rollback) {
+        if (creditAmount.compareTo(amount) == 0) {
+            return appendToJournal(JournalEntry.Type.TRANSFER, accountFromId, accountToId, amount, rollback);
+        }
+        try (Tracing.Span span = Tracing.span("journal.append")) {
+            return transferJournal.append(JournalEntry.Type.TRANSFER, accountFromId, accountToId, amount, creditAmount);
+        } catch (RuntimeException e) {
+            log.error("Cannot journal " + JournalEntry.Type.TRANSFER + " operation.Operation canceled.");
+            rollback.run();
+            throw e;
+        }
+    }
+
+    private JournalEntry appendToJournal(JournalEntry.Type type, String accountFromId, String accountToId, BigDecimal amount,
+                                         Runnable rollback) {
+        try (Tracing.Span span = Tracing.span("journal.append")) {
+            return transferJournal.append(type, accountFromId, accountToId, amount);
+        } catch (RuntimeException e) {
+            log.error("Cannot journal " + type + " operation.Operation canceled.");
+            rollback.run();
+            throw e;
+        }
+    }
+
+    /**
+     * Credits a split account without taking its lock: the amount goes to one of its stripes and
+     * the journal is written first, so nothing has to be rolled back once the balance changed.
+     * The caller registered the credit with {@link Account#beginStripedCredit()}, which keeps the
+     * stripes from being merged and lets lock holders wait for it to be published. The snapshot
+     * version moves by the amount alone, in step with the total, even if concurrent credits
+     * already reached the stripes.
+     */
+    private void creditSplitAccount(Account account, BigDecimal amount) {
+        if (accountsRepository.getAccount(account.getAccountId()) != account) {
+            throw new AccountNotExistException("Account with id " + account.getAccountId() + " does not exists");
+        }
+        JournalEntry entry = appendToJournal(JournalEntry.Type.CREDIT, null, account.getAccountId(), amount, () -> { });
+        if (!account.tryStripedCredit(amount)) {
+            throw new IllegalStateException("Stripes of account " + account.getAccountId() + " sealed during a credit");
+        }
+        account.advanceJournalSequence(entry.getSequence());
+        publishBalance(account, amount);
+        notifyBalanceChanged(entry, account);
+    }
+
+    @Override
+    public void splitAccount(String accountId, int stripes) throws AccountNotExistException, AccountNotProcessedExeption {
+        if (stripes < 2) {
+            throw new AccountNotProcessedExeption("A split account needs at least 2 stripes");
+        }
+        if (!accountsRepository.storesLiveAccounts()) {
+            throw new AccountNotProcessedExeption("Accounts can be split only with the in-memory store");
+        }
+        Account account = lockLiveAccount(accountId);
+        try {
+            account.split(stripes);
+        } finally {
+            account.getLock().unlock();
+        }
+        log.info("Account " + accountId + " split into " + account.getStripeCount() + " stripes");
+    }
+
+    @Override
+    public void mergeAccount(String accountId) throws AccountNotExistException {
+        Account account = lockLiveAccount(accountId);
+        try {
+            account.merge();
+        } finally {
+            account.getLock().unlock();
+        }
+        log.info("Account " + accountId + " merged");
+    }
+
+    /**
+     * Finds and locks an account, looking it up again if it moved to the cold tier before it was locked.
+     */
+    private Account lockLiveAccount(String accountId) throws AccountNotExistException {
+        while (true) {
+            Account account = findAccountById(accountId);
+            account.getLock().lock();
+            if (!account.isArchived()) {
+                return account;
+            }
+            account.getLock().unlock();
+        }
+    }
+
+    private void storeBalance(Account account, BigDecimal previousBalance, BigDecimal delta) {
+        try (Tracing.Span span = Tracing.span("repository.updateAccount")) {
+            accountsRepository.updateAccount(account);
+        } catch (RuntimeException e) {
+            undoBalanceChange(account, previousBalance, delta);
+            throw e;
+        }
+    }
+
+    private void restoreBalance(Account account, BigDecimal previousBalance, BigDecimal delta) {
+        undoBalanceChange(account, previousBalance, delta);
+        accountsRepository.updateAccount(account);
+    }
+
+    /**
+     * A split account may have taken lock free credits since {@code previousBalance} was read, so
+     * only the delta is reverted there.
+     */
+    private static void undoBalanceChange(Account account, BigDecimal previousBalance, BigDecimal delta) {
+        if (account.isSplit()) {
+            account.addToBalance(delta.negate());
+        } else {
+            account.setBalance(previousBalance);
+        }
+    }
+
+    private void publishBalance(Account account, BigDecimal delta) {
+        long epoch = balanceSnapshots.beginWrite();
+        try {
+            balanceSnapshots.record(account, delta, epoch);
+            balanceSnapshots.recordTotalDelta(delta, epoch);
+        } finally {
+            balanceSnapshots.endWrite(epoch);
+        }
+    }
+
+    private void publishTransfer(Account accountDebit, BigDecimal amount, Account accountCredit, BigDecimal creditAmount) {
+        long epoch = balanceSnapshots.beginWrite();
+        try {
+            balanceSnapshots.record(accountDebit, amount.negate(), epoch);
+            balanceSnapshots.record(accountCredit, creditAmount, epoch);
+            balanceSnapshots.recordTotalDelta(creditAmount.subtract(amount), epoch);
+        } finally {
+            balanceSnapshots.endWrite(epoch);
+        }
+    }
+
+    private void publishChanges(List<Account> accounts, Map<String, BigDecimal> deltas) {
+        long epoch = balanceSnapshots.beginWrite();
+        try {
+            BigDecimal total = BigDecimal.ZERO;
+            for (Account account : accounts) {
+                BigDecimal delta = deltas.get(account.getAccountId());
+                balanceSnapshots.record(account, delta, epoch);
+                total = total.add(delta);
+            }
+            balanceSnapshots.recordTotalDelta(total, epoch);
+        } finally {
+            balanceSnapshots.endWrite(epoch);
+        }
+    }
+
+    /**
+     * Reads each balance and hands it to the listeners under the change monitor of its account,
+     * so listeners see the changes of a split account in the order its balance was read.
+     */
+    private void notifyBalanceChanged(JournalEntry entry, Account... accounts) {
+        for (Account account : accounts) {
+            synchronized (account.getChangeMonitor()) {
+                BalanceChange change = BalanceChange.of(entry, account);
+                for (BalanceChangeListener listener : balanceChangeListeners) {
+                    try {
+                        listener.onBalanceChange(change);
+                    } catch (RuntimeException e) {
+                        log.error("Balance change listener failed for accountId:" + account.getAccountId(), e);
+                    }
+                }
+            }
+        }
+    }
+
 }
@@ -0,0 +1,17 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.BalanceChange;
+
+/**
+ * Told about every journaled balance change, in journal order per account, while the account
+ * lock is still held. Lock free credits of split accounts are the exception: they are reported
+ * without the lock and may arrive out of order. Implementations must be quick and must not take
+ * other account locks.
+ */
+public interface BalanceChangeListener {
+
+    void onBalanceChange(BalanceChange change);
+
+    default void onAccountsCleared() {
+    }
+}
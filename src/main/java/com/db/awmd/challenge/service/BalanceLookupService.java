@@ -0,0 +1,22 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+public interface BalanceLookupService {
+
+    /**
+     * Streams one JSON line per id, in request order, with the live balance of the account or
+     * {@code "missing":true} if there is none.
+     */
+    void writeBalances(List<String> accountIds, OutputStream out) throws IOException;
+
+    /**
+     * Streams the balances of {@code snapshot} like {@link #writeBalances(List, OutputStream)}.
+     */
+    void writeBalances(List<String> accountIds, BalanceSnapshot snapshot, OutputStream out) throws IOException;
+
+}
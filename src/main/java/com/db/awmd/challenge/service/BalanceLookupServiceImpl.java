@@ -0,0 +1,132 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Resolves live balances in chunks of {@code chunk-size} ids on a small pool while the lines
+ * of earlier chunks are written, in request order. At most two chunks per worker are resolved
+ * ahead of the writer, so memory stays bounded by the chunk size rather than the request.
+ */
+@Service
+@Slf4j
+public class BalanceLookupServiceImpl implements BalanceLookupService {
+
+    private static final int CHUNKS_AHEAD_PER_WORKER = 2;
+
+    private final AccountsRepository accountsRepository;
+
+    private final ObjectMapper objectMapper;
+
+    private final int chunkSize;
+
+    private final int chunksAhead;
+
+    private final ExecutorService lookupPool;
+
+    @Autowired
+    public BalanceLookupServiceImpl(AccountsRepository accountsRepository, ObjectMapper objectMapper,
+                                    @Value("${accounts.batch-get.parallelism:4}") int parallelism,
+                                    @Value("${accounts.batch-get.chunk-size:512}") int chunkSize) {
+        if (parallelism < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("Parallelism and chunk size must be positive");
+        }
+        this.accountsRepository = accountsRepository;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+        this.chunksAhead = parallelism * CHUNKS_AHEAD_PER_WORKER;
+        this.lookupPool = Executors.newFixedThreadPool(parallelism, new CustomizableThreadFactory("balance-batch-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lookupPool.shutdownNow();
+    }
+
+    @Override
+    public void writeBalances(List<String> accountIds, OutputStream out) throws IOException {
+        JsonGenerator generator = createGenerator(out);
+        Deque<CompletableFuture<BigDecimal[]>> resolving = new ArrayDeque<>();
+        int submitted = 0;
+        int written = 0;
+        try {
+            while (written < accountIds.size()) {
+                while (submitted < accountIds.size() && resolving.size() < chunksAhead) {
+                    List<String> chunk = accountIds.subList(submitted, Math.min(submitted + chunkSize, accountIds.size()));
+                    resolving.add(CompletableFuture.supplyAsync(() -> resolve(chunk), lookupPool));
+                    submitted += chunk.size();
+                }
+                for (BigDecimal balance : resolving.poll().join()) {
+                    writeLine(generator, accountIds.get(written++), balance);
+                }
+                // lines of a chunk leave together, so a slow reader holds back at most the chunks ahead
+                generator.flush();
+            }
+        } finally {
+            // left over only if the client went away or a lookup failed
+            for (CompletableFuture<BigDecimal[]> future : resolving) {
+                future.cancel(false);
+            }
+        }
+        generator.close();
+    }
+
+    @Override
+    public void writeBalances(List<String> accountIds, BalanceSnapshot snapshot, OutputStream out) throws IOException {
+        JsonGenerator generator = createGenerator(out);
+        Map<String, BigDecimal> balances = snapshot.getBalances();
+        for (String accountId : accountIds) {
+            writeLine(generator, accountId, balances.get(accountId));
+        }
+        generator.close();
+    }
+
+    private BigDecimal[] resolve(List<String> chunk) {
+        BigDecimal[] balances = new BigDecimal[chunk.size()];
+        for (int i = 0; i < balances.length; i++) {
+            Account account = accountsRepository.getAccount(chunk.get(i));
+            balances[i] = account == null ? null : account.getBalance();
+        }
+        return balances;
+    }
+
+    private JsonGenerator createGenerator(OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+        return generator;
+    }
+
+    private static void writeLine(JsonGenerator generator, String accountId, BigDecimal balance) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("accountId", accountId);
+        if (balance == null) {
+            generator.writeBooleanField("missing", true);
+        } else {
+            generator.writeNumberField("balance", balance);
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+}
@@ -0,0 +1,246 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Deadline;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.TransferQueueFullException;
+import com.db.awmd.challenge.exception.TransferTimeoutException;
+import com.db.awmd.challenge.tracing.Tracing;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Queues transfers per account id instead of letting them block on account monitors.
+ * A transfer is dispatched to the worker pool only when it is at the head of the queue
+ * of every account it touches, so each account has at most one transfer in flight and
+ * the worker queue interleaves accounts round-robin: a hot account cannot hold more
+ * than one worker while cold accounts wait. Transfers whose deadline passed while
+ * queued are failed without being run, so the backlog drains at dispatch speed.
+ * <p>
+ * Cancelling the future of a transfer succeeds only until a worker starts it; a cancelled
+ * transfer is never run and leaves its queues when it reaches their heads.
+ * <p>
+ * An account queues at most {@code max-queued-per-account} transfers; more are refused with
+ * {@link TransferQueueFullException} instead of growing the heap. Once the worker pool is shut
+ * down, every transfer still waiting is failed.
+ */
+@Service
+@Slf4j
+@SuppressWarnings("try")
+public class FairTransferScheduler implements TransferScheduler {
+
+    private static final int DEFAULT_MAX_QUEUED_PER_ACCOUNT = 1000;
+
+    private final TransferService transferService;
+
+    private final ExecutorService workers;
+
+    private final int maxQueuedPerAccount;
+
+    private final Object queuesMonitor = new Object();
+
+    private final Map<String, Deque<QueuedTransfer>> queues = new HashMap<>();
+
+    private int pendingTransfers;
+
+    @Autowired
+    public FairTransferScheduler(TransferService transferService,
+                                 @Value("${transfer.scheduler.workers:8}") int workers,
+                                 @Value("${transfer.scheduler.max-queued-per-account:1000}") int maxQueuedPerAccount) {
+        this(transferService, workers, maxQueuedPerAccount, "transfer-worker-");
+    }
+
+    public FairTransferScheduler(TransferService transferService, int workers) {
+        this(transferService, workers, DEFAULT_MAX_QUEUED_PER_ACCOUNT, "transfer-worker-");
+    }
+
+    public FairTransferScheduler(TransferService transferService, int workers, String threadNamePrefix) {
+        this(transferService, workers, DEFAULT_MAX_QUEUED_PER_ACCOUNT, threadNamePrefix);
+    }
+
+    public FairTransferScheduler(TransferService transferService, int workers, int maxQueuedPerAccount,
+                                 String threadNamePrefix) {
+        this.transferService = transferService;
+        this.maxQueuedPerAccount = maxQueuedPerAccount;
+        this.workers = Executors.newFixedThreadPool(workers, new CustomizableThreadFactory(threadNamePrefix));
+    }
+
+    @Override
+    public CompletableFuture<Void> schedule(Transfer transfer, Deadline deadline) {
+        QueuedTransfer queuedTransfer = new QueuedTransfer(transfer, deadline);
+        synchronized (queuesMonitor) {
+            for (String accountId : queuedTransfer.accountIds) {
+                Deque<QueuedTransfer> queue = queues.get(accountId);
+                if (queue != null && queue.size() >= maxQueuedPerAccount) {
+                    throw new TransferQueueFullException("Account " + accountId + " has " + queue.size()
+                            + " transfers queued");
+                }
+            }
+            for (String accountId : queuedTransfer.accountIds) {
+                queues.computeIfAbsent(accountId, key -> new ArrayDeque<>()).addLast(queuedTransfer);
+            }
+            pendingTransfers++;
+            dispatchIfRunnable(queuedTransfer);
+        }
+        return queuedTransfer.result;
+    }
+
+    @Override
+    public int getPendingTransfers() {
+        synchronized (queuesMonitor) {
+            return pendingTransfers;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    private void run(QueuedTransfer queuedTransfer) {
+        Exception failure = null;
+        try (Tracing.Scope scope = queuedTransfer.context.attach()) {
+            Tracing.recordSince("scheduler.queued", queuedTransfer.queuedAtNanos);
+            if (queuedTransfer.deadline.isExpired()) {
+                throw new TransferTimeoutException("Deadline passed while transfer from "
+                        + queuedTransfer.transfer.getAccountFromId() + " to "
+                        + queuedTransfer.transfer.getAccountToId() + " was queued");
+            }
+            if (!queuedTransfer.result.start()) {
+                return;
+            }
+            transferService.transferMoneyLock(queuedTransfer.transfer, queuedTransfer.deadline);
+        } catch (Exception e) {
+            failure = e;
+        } finally {
+            release(queuedTransfer);
+        }
+        if (queuedTransfer.result.isCancelled()) {
+            return;
+        }
+        if (failure == null) {
+            queuedTransfer.result.complete(null);
+        } else {
+            queuedTransfer.result.completeExceptionally(failure);
+        }
+    }
+
+    private void release(QueuedTransfer queuedTransfer) {
+        List<QueuedTransfer> successors = new ArrayList<>();
+        synchronized (queuesMonitor) {
+            pendingTransfers--;
+            for (String accountId : queuedTransfer.accountIds) {
+                Deque<QueuedTransfer> queue = queues.get(accountId);
+                queue.pollFirst();
+                if (queue.isEmpty()) {
+                    queues.remove(accountId);
+                } else {
+                    successors.add(queue.peekFirst());
+                }
+            }
+            for (QueuedTransfer successor : successors) {
+                dispatchIfRunnable(successor);
+            }
+        }
+    }
+
+    private void dispatchIfRunnable(QueuedTransfer queuedTransfer) {
+        if (queuedTransfer.dispatched) {
+            return;
+        }
+        for (String accountId : queuedTransfer.accountIds) {
+            // rejected transfers were taken out of their queues
+            Deque<QueuedTransfer> queue = queues.get(accountId);
+            if (queue == null || queue.peekFirst() != queuedTransfer) {
+                return;
+            }
+        }
+        queuedTransfer.dispatched = true;
+        try {
+            workers.execute(() -> run(queuedTransfer));
+        } catch (RejectedExecutionException e) {
+            queuedTransfer.dispatched = false;
+            rejectQueued(e);
+        }
+    }
+
+    /**
+     * Fails every transfer not handed to a worker yet. Those running keep their queue heads
+     * and release them as usual.
+     */
+    private void rejectQueued(RejectedExecutionException cause) {
+        Set<QueuedTransfer> rejected = new LinkedHashSet<>();
+        for (Iterator<Deque<QueuedTransfer>> queueIterator = queues.values().iterator(); queueIterator.hasNext(); ) {
+            Deque<QueuedTransfer> queue = queueIterator.next();
+            for (Iterator<QueuedTransfer> iterator = queue.iterator(); iterator.hasNext(); ) {
+                QueuedTransfer queued = iterator.next();
+                if (!queued.dispatched) {
+                    iterator.remove();
+                    rejected.add(queued);
+                }
+            }
+            if (queue.isEmpty()) {
+                queueIterator.remove();
+            }
+        }
+        log.error("Transfer scheduler is shut down, " + rejected.size() + " queued transfers rejected");
+        pendingTransfers -= rejected.size();
+        for (QueuedTransfer queued : rejected) {
+            queued.result.completeExceptionally(cause);
+        }
+    }
+
+    private static class QueuedTransfer {
+        private final Transfer transfer;
+        private final Deadline deadline;
+        private final Set<String> accountIds = new LinkedHashSet<>();
+        private final TransferResult result = new TransferResult();
+        private final Tracing.Context context = Tracing.capture();
+        private final long queuedAtNanos = System.nanoTime();
+        private boolean dispatched;
+
+        private QueuedTransfer(Transfer transfer, Deadline deadline) {
+            this.transfer = transfer;
+            this.deadline = deadline;
+            accountIds.add(transfer.getAccountFromId());
+            accountIds.add(transfer.getAccountToId());
+        }
+    }
+
+    /**
+     * Refuses cancellation once the transfer started.
+     */
+    private static class TransferResult extends CompletableFuture<Void> {
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        /**
+         * @return false if the transfer was cancelled and must not run
+         */
+        private boolean start() {
+            return started.compareAndSet(false, true);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return started.compareAndSet(false, true) && super.cancel(mayInterruptIfRunning);
+        }
+    }
+}
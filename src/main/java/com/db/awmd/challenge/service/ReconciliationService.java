@@ -0,0 +1,11 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.ReconciliationReport;
+
+public interface ReconciliationService {
+
+    ReconciliationReport startReconciliation();
+
+    ReconciliationReport getReport();
+
+}
@@ -0,0 +1,336 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.JournalEntry;
+import com.db.awmd.challenge.domain.ReconciliationDiff;
+import com.db.awmd.challenge.domain.ReconciliationReport;
+import com.db.awmd.challenge.exception.AccountNotProcessedExeption;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.TransferJournal;
+import com.db.awmd.challenge.scheduling.RateLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Re-derives every balance from the journal and compares it with the repository. Work is split
+ * by account id into partitions processed in parallel on a dedicated fork-join pool. First each
+ * account's balance is captured under its lock together with the last journal entry applied to
+ * it, in batches of the accounts visited and at a rate limited pace so live latency is not hurt.
+ * Then the journal is read once, keeping the entries since the last CLEAR, and every partition
+ * is replayed up to each account's captured entry, so transfers running meanwhile do not show up
+ * as false mismatches. Accounts without a captured entry are replayed up to the last entry
+ * journaled when the capture started. The replay is paced by the same rate limit as the
+ * capture. A store that starts empty journals a CLEAR at startup, so history from before a
+ * restart is not replayed.
+ */
+@Service
+@Slf4j
+public class ReconciliationServiceImpl implements ReconciliationService {
+
+    private static final int PARTITIONS_PER_WORKER = 4;
+
+    private static final int CAPTURE_BATCH_SIZE = 4096;
+
+    private final AccountsRepository accountsRepository;
+
+    private final TransferJournal transferJournal;
+
+    private final ForkJoinPool replayPool;
+
+    private final int partitions;
+
+    private final RateLimiter rateLimiter;
+
+    private final ExecutorService runner =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("reconciliation-"));
+
+    private volatile Job currentJob;
+
+    @Autowired
+    public ReconciliationServiceImpl(AccountsRepository accountsRepository,
+                                     TransferJournal transferJournal,
+                                     @Value("${reconciliation.parallelism:2}") int parallelism,
+                                     @Value("${reconciliation.max-accounts-per-second:5000}") double maxAccountsPerSecond) {
+        this.accountsRepository = accountsRepository;
+        this.transferJournal = transferJournal;
+        this.replayPool = new ForkJoinPool(parallelism);
+        this.partitions = parallelism * PARTITIONS_PER_WORKER;
+        this.rateLimiter = new RateLimiter(maxAccountsPerSecond);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+        replayPool.shutdownNow();
+    }
+
+    @Override
+    public synchronized ReconciliationReport startReconciliation() {
+        if (currentJob != null && currentJob.status == ReconciliationReport.Status.RUNNING) {
+            return currentJob.report();
+        }
+        Job job = new Job();
+        currentJob = job;
+        runner.execute(() -> run(job));
+        return job.report();
+    }
+
+    @Override
+    public ReconciliationReport getReport() {
+        Job job = currentJob;
+        return job == null ? null : job.report();
+    }
+
+    private void run(Job job) {
+        try {
+            long capturedAtSequence = transferJournal.getLastSequence();
+            List<Map<String, StoredState>> storedStates = new ArrayList<>(partitions);
+            for (int i = 0; i < partitions; i++) {
+                storedStates.add(new HashMap<>());
+            }
+            List<Account> batch = new ArrayList<>(CAPTURE_BATCH_SIZE);
+            accountsRepository.forEachAccount(account -> {
+                batch.add(account);
+                if (batch.size() == CAPTURE_BATCH_SIZE) {
+                    capture(batch, storedStates);
+                    batch.clear();
+                }
+            });
+            capture(batch, storedStates);
+
+            long replayedUpTo = capturedAtSequence;
+            for (Map<String, StoredState> partition : storedStates) {
+                for (StoredState stored : partition.values()) {
+                    replayedUpTo = Math.max(replayedUpTo, stored.journalSequence);
+                }
+            }
+            List<Map<String, List<JournalEntry>>> histories = partitionJournal(job, replayedUpTo);
+            List<ReplayTask> replayTasks = new ArrayList<>(partitions);
+            for (int i = 0; i < partitions; i++) {
+                Set<String> accountIds = new TreeSet<>(storedStates.get(i).keySet());
+                for (Map.Entry<String, List<JournalEntry>> history : histories.get(i).entrySet()) {
+                    if (history.getValue().get(0).getSequence() <= capturedAtSequence) {
+                        accountIds.add(history.getKey());
+                    }
+                }
+                job.accountsTotal.addAndGet(accountIds.size());
+                replayTasks.add(new ReplayTask(job, histories.get(i), storedStates.get(i), accountIds,
+                        capturedAtSequence));
+            }
+            invokeAll(replayTasks);
+            job.finish(ReconciliationReport.Status.COMPLETED, null);
+            log.info("Reconciliation " + job.id + " checked " + job.accountsChecked.get() + " accounts, found "
+                    + job.mismatches.size() + " mismatches");
+        } catch (Exception e) {
+            log.error("Reconciliation " + job.id + " failed", e);
+            job.finish(ReconciliationReport.Status.FAILED, e.getMessage());
+        }
+    }
+
+    /**
+     * Captures a batch of the accounts visited, so a store keeping accounts off the heap never
+     * has them all loaded at once.
+     */
+    private void capture(List<Account> batch, List<Map<String, StoredState>> storedStates) {
+        List<List<Account>> accounts = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            accounts.add(new ArrayList<>());
+        }
+        for (Account account : batch) {
+            accounts.get(partitionOf(account.getAccountId())).add(account);
+        }
+        List<CaptureTask> captureTasks = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            if (!accounts.get(i).isEmpty()) {
+                captureTasks.add(new CaptureTask(accounts.get(i), storedStates.get(i)));
+            }
+        }
+        invokeAll(captureTasks);
+    }
+
+    private void invokeAll(List<? extends RecursiveAction> tasks) {
+        replayPool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        });
+    }
+
+    /**
+     * Reads the journal once into per-partition histories, dropping what was collected at each
+     * CLEAR so only the entries since the last one are kept, and none after {@code replayedUpTo},
+     * the last entry any account is replayed up to.
+     */
+    private List<Map<String, List<JournalEntry>>> partitionJournal(Job job, long replayedUpTo) {
+        List<Map<String, List<JournalEntry>>> histories = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            histories.add(new HashMap<>());
+        }
+        transferJournal.forEachEntry(0L, entry -> {
+            job.journalEntries.incrementAndGet();
+            if (entry.getSequence() > replayedUpTo) {
+                return;
+            }
+            if (entry.getType() == JournalEntry.Type.CLEAR) {
+                for (Map<String, List<JournalEntry>> history : histories) {
+                    history.clear();
+                }
+                return;
+            }
+            for (String accountId : entry.getAccountIds()) {
+                addToHistory(histories, accountId, entry);
+            }
+        });
+        return histories;
+    }
+
+    private void addToHistory(List<Map<String, List<JournalEntry>>> histories, String accountId, JournalEntry entry) {
+        histories.get(partitionOf(accountId)).computeIfAbsent(accountId, key -> new ArrayList<>()).add(entry);
+    }
+
+    private int partitionOf(String accountId) {
+        return Math.floorMod(accountId.hashCode(), partitions);
+    }
+
+    /**
+     * Paces capture and replay alike, so neither takes more than its share of CPU from live traffic.
+     */
+    private void throttle() {
+        try {
+            rateLimiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AccountNotProcessedExeption("Reconciliation interrupted");
+        }
+    }
+
+    private class CaptureTask extends RecursiveAction {
+        private final List<Account> accounts;
+        private final Map<String, StoredState> storedStates;
+
+        private CaptureTask(List<Account> accounts, Map<String, StoredState> storedStates) {
+            this.accounts = accounts;
+            this.storedStates = storedStates;
+        }
+
+        @Override
+        protected void compute() {
+            for (Account account : accounts) {
+                throttle();
+                account.getLock().lock();
+                // split credits skip the lock, so wait for those journaled but not yet applied
+                account.holdStripedCredits();
+                try {
+                    storedStates.put(account.getAccountId(), new StoredState(account.getBalance(), account.getJournalSequence()));
+                } finally {
+                    account.releaseStripedCredits();
+                    account.getLock().unlock();
+                }
+            }
+        }
+    }
+
+    private class ReplayTask extends RecursiveAction {
+        private final Job job;
+        private final Map<String, List<JournalEntry>> history;
+        private final Map<String, StoredState> storedStates;
+        private final Set<String> accountIds;
+        private final long capturedAtSequence;
+
+        private ReplayTask(Job job, Map<String, List<JournalEntry>> history, Map<String, StoredState> storedStates,
+                           Set<String> accountIds, long capturedAtSequence) {
+            this.job = job;
+            this.history = history;
+            this.storedStates = storedStates;
+            this.accountIds = accountIds;
+            this.capturedAtSequence = capturedAtSequence;
+        }
+
+        @Override
+        protected void compute() {
+            for (String accountId : accountIds) {
+                throttle();
+                reconcile(accountId);
+                job.accountsChecked.incrementAndGet();
+            }
+            job.partitionsCompleted.incrementAndGet();
+        }
+
+        private void reconcile(String accountId) {
+            StoredState stored = storedStates.get(accountId);
+            long journalSequence = stored == null ? 0L : stored.journalSequence;
+            // without a captured entry, entries appended after the capture started are not reflected
+            long lastApplied = journalSequence > 0 ? journalSequence : capturedAtSequence;
+            BigDecimal journalBalance = BigDecimal.ZERO;
+            for (JournalEntry entry : history.getOrDefault(accountId, Collections.emptyList())) {
+                if (entry.getSequence() > lastApplied) {
+                    break;
+                }
+                journalBalance = journalBalance.add(entry.deltaFor(accountId));
+            }
+            BigDecimal storedBalance = stored == null ? null : stored.balance;
+            if (storedBalance == null || storedBalance.compareTo(journalBalance) != 0) {
+                job.mismatches.add(new ReconciliationDiff(accountId, journalBalance, storedBalance, journalSequence));
+            }
+        }
+    }
+
+    private static class StoredState {
+        private final BigDecimal balance;
+        private final long journalSequence;
+
+        private StoredState(BigDecimal balance, long journalSequence) {
+            this.balance = balance;
+            this.journalSequence = journalSequence;
+        }
+    }
+
+    private class Job {
+        private final String id = UUID.randomUUID().toString();
+        private final long startedAt = System.currentTimeMillis();
+        private final AtomicLong journalEntries = new AtomicLong();
+        private final AtomicLong accountsTotal = new AtomicLong();
+        private final AtomicLong accountsChecked = new AtomicLong();
+        private final AtomicInteger partitionsCompleted = new AtomicInteger();
+        private final ConcurrentLinkedQueue<ReconciliationDiff> mismatches = new ConcurrentLinkedQueue<>();
+        private volatile ReconciliationReport.Status status = ReconciliationReport.Status.RUNNING;
+        private volatile Long finishedAt;
+        private volatile String message;
+
+        private void finish(ReconciliationReport.Status status, String message) {
+            this.finishedAt = System.currentTimeMillis();
+            this.message = message;
+            this.status = status;
+        }
+
+        private ReconciliationReport report() {
+            List<ReconciliationDiff> diffs = new ArrayList<>(mismatches);
+            diffs.sort((left, right) -> left.getAccountId().compareTo(right.getAccountId()));
+            return new ReconciliationReport(id, status, startedAt, finishedAt, journalEntries.get(),
+                    accountsTotal.get(), accountsChecked.get(), partitions, partitionsCompleted.get(), diffs, message);
+        }
+    }
+}
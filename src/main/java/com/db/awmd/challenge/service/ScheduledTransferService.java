@@ -0,0 +1,16 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.exception.WrongFormatException;
+
+import java.util.List;
+
+public interface ScheduledTransferService {
+
+    ScheduledTransfer register(ScheduledTransfer scheduledTransfer) throws WrongFormatException;
+
+    boolean cancel(String scheduledTransferId);
+
+    List<ScheduledTransfer> getScheduledTransfers();
+
+}
@@ -0,0 +1,329 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Deadline;
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.domain.ScheduledTransferRecord;
+import com.db.awmd.challenge.exception.WrongFormatException;
+import com.db.awmd.challenge.repository.ScheduledTransfersRepository;
+import com.db.awmd.challenge.scheduling.HierarchicalTimingWheel;
+import com.db.awmd.challenge.scheduling.RateLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps future-dated and recurring transfers in a hierarchical timing wheel. A ticker thread
+ * advances the wheel and records each firing in the store before releasing it, so a restart
+ * never repeats an execution. Due transfers are handed to the {@link TransferScheduler} by a
+ * single dispatcher at a fixed rate, which spreads top-of-the-hour bursts over time.
+ * <p>
+ * Every change to the schedule queues a {@link ScheduledTransferRecord} under the timing wheel
+ * lock, in the order of the changes; the queue is appended to the store outside that lock. A
+ * fired occurrence goes to the dispatcher, and a handed over one to the transfer scheduler,
+ * only once its record is stored. Records that fail to be stored stay queued and are retried on
+ * every tick, so a store failure delays fired occurrences but never drops them. A registration
+ * or cancellation whose records could not be stored fails, but stays in effect and is stored
+ * by that retry.
+ * <p>
+ * Fired occurrences stay in the store until the dispatcher hands them over, so those still
+ * waiting at a crash or shutdown are handed over after the restart. Shutdown first drains the
+ * dispatcher for up to the transfer timeout. Cancelling a transfer also drops its occurrences
+ * that fired but were not handed over yet.
+ */
+@Service
+@Slf4j
+public class ScheduledTransferServiceImpl implements ScheduledTransferService {
+
+    private final TransferScheduler transferScheduler;
+
+    private final ScheduledTransfersRepository scheduledTransfersRepository;
+
+    private final long tickMs;
+
+    private final long transferTimeoutMs;
+
+    private final RateLimiter rateLimiter;
+
+    private final HierarchicalTimingWheel<String> timingWheel;
+
+    private final Map<String, ScheduledTransfer> scheduledTransfers = new ConcurrentHashMap<>();
+
+    /**
+     * Fired occurrences not handed over yet, by {@link #occurrenceKey}; guarded by the timing wheel.
+     */
+    private final Map<String, ScheduledTransfer> pendingDueTransfers = new LinkedHashMap<>();
+
+    /**
+     * Records not stored yet, oldest first; guarded by the timing wheel.
+     */
+    private final List<ScheduledTransferRecord> unstoredRecords = new ArrayList<>();
+
+    /**
+     * Keeps records stored in the order they were queued.
+     */
+    private final Object storeMonitor = new Object();
+
+    private final BlockingQueue<ScheduledTransfer> dueTransfers = new LinkedBlockingQueue<>();
+
+    private final ScheduledExecutorService ticker =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("scheduled-transfer-ticker-"));
+
+    private final ExecutorService dispatcher =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("scheduled-transfer-dispatcher-"));
+
+    @Autowired
+    public ScheduledTransferServiceImpl(TransferScheduler transferScheduler,
+                                        ScheduledTransfersRepository scheduledTransfersRepository,
+                                        @Value("${transfer.scheduled.tick-ms:10}") long tickMs,
+                                        @Value("${transfer.scheduled.wheel-size:64}") int wheelSize,
+                                        @Value("${transfer.scheduled.max-transfers-per-second:100}") double maxTransfersPerSecond,
+                                        @Value("${transfer.deadline.default-timeout-ms:5000}") long transferTimeoutMs) {
+        this.transferScheduler = transferScheduler;
+        this.scheduledTransfersRepository = scheduledTransfersRepository;
+        this.tickMs = tickMs;
+        this.transferTimeoutMs = transferTimeoutMs;
+        this.rateLimiter = new RateLimiter(maxTransfersPerSecond);
+        this.timingWheel = new HierarchicalTimingWheel<>(tickMs, wheelSize, System.currentTimeMillis());
+    }
+
+    @PostConstruct
+    public void start() {
+        List<ScheduledTransfer> due = scheduledTransfersRepository.loadDue();
+        synchronized (timingWheel) {
+            for (ScheduledTransfer scheduledTransfer : due) {
+                pendingDueTransfers.put(occurrenceKey(scheduledTransfer), scheduledTransfer);
+            }
+            dueTransfers.addAll(due);
+            for (ScheduledTransfer scheduledTransfer : scheduledTransfersRepository.loadAll()) {
+                scheduledTransfers.put(scheduledTransfer.getId(), scheduledTransfer);
+                addToWheel(scheduledTransfer);
+            }
+        }
+        try {
+            store();
+        } catch (RuntimeException e) {
+            log.error("Cannot store scheduled transfers fired at start, retrying on the next tick", e);
+        }
+        log.info("Loaded {} scheduled transfers and {} due occurrences", scheduledTransfers.size(),
+                pendingDueTransfers.size());
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        dispatcher.execute(this::dispatchDueTransfers);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdown();
+        dispatcher.shutdown();
+        try {
+            ticker.awaitTermination(transferTimeoutMs, TimeUnit.MILLISECONDS);
+            if (!dispatcher.awaitTermination(transferTimeoutMs, TimeUnit.MILLISECONDS)) {
+                log.warn("{} due scheduled transfers left for the next start", dueTransfers.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            ticker.shutdownNow();
+            dispatcher.shutdownNow();
+        }
+    }
+
+    @Override
+    public ScheduledTransfer register(ScheduledTransfer scheduledTransfer) throws WrongFormatException {
+        validate(scheduledTransfer);
+        ScheduledTransfer registered = scheduledTransfer.withId(UUID.randomUUID().toString());
+        synchronized (timingWheel) {
+            scheduledTransfers.put(registered.getId(), registered);
+            unstoredRecords.add(ScheduledTransferRecord.of(ScheduledTransferRecord.Type.SCHEDULED, registered));
+            addToWheel(registered);
+        }
+        store();
+        log.info("Registered scheduled transfer {}", registered);
+        return registered;
+    }
+
+    @Override
+    public boolean cancel(String scheduledTransferId) {
+        synchronized (timingWheel) {
+            if (scheduledTransfers.remove(scheduledTransferId) == null) {
+                return false;
+            }
+            pendingDueTransfers.values().removeIf(due -> due.getId().equals(scheduledTransferId));
+            unstoredRecords.add(ScheduledTransferRecord.cancelled(scheduledTransferId));
+        }
+        store();
+        log.info("Cancelled scheduled transfer {}", scheduledTransferId);
+        return true;
+    }
+
+    @Override
+    public List<ScheduledTransfer> getScheduledTransfers() {
+        return new ArrayList<>(scheduledTransfers.values());
+    }
+
+    private void tick() {
+        try {
+            synchronized (timingWheel) {
+                timingWheel.advance(System.currentTimeMillis(), this::fire);
+            }
+            store();
+        } catch (Exception e) {
+            log.error("Error while advancing scheduled transfers", e);
+        }
+    }
+
+    /**
+     * Called under the timing wheel lock.
+     */
+    private void addToWheel(ScheduledTransfer scheduledTransfer) {
+        if (!timingWheel.add(scheduledTransfer.getExecuteAt(), scheduledTransfer.getId())) {
+            fire(scheduledTransfer.getId());
+        }
+    }
+
+    /**
+     * Called under the timing wheel lock.
+     */
+    private void fire(String scheduledTransferId) {
+        ScheduledTransfer scheduledTransfer = scheduledTransfers.get(scheduledTransferId);
+        if (scheduledTransfer == null) {
+            return;
+        }
+        pendingDueTransfers.put(occurrenceKey(scheduledTransfer), scheduledTransfer);
+        unstoredRecords.add(ScheduledTransferRecord.of(ScheduledTransferRecord.Type.FIRED, scheduledTransfer));
+        if (scheduledTransfer.isRecurring()) {
+            ScheduledTransfer nextOccurrence = scheduledTransfer.nextOccurrenceAfter(System.currentTimeMillis());
+            scheduledTransfers.put(scheduledTransferId, nextOccurrence);
+            unstoredRecords.add(ScheduledTransferRecord.of(ScheduledTransferRecord.Type.SCHEDULED, nextOccurrence));
+            addToWheel(nextOccurrence);
+        } else {
+            scheduledTransfers.remove(scheduledTransferId);
+        }
+    }
+
+    /**
+     * Stores the queued records outside the timing wheel lock, then releases the occurrences they
+     * fired or handed over. On failure the records stay queued for the next call.
+     */
+    private void store() {
+        synchronized (storeMonitor) {
+            List<ScheduledTransferRecord> records;
+            synchronized (timingWheel) {
+                if (unstoredRecords.isEmpty()) {
+                    return;
+                }
+                records = new ArrayList<>(unstoredRecords);
+            }
+            scheduledTransfersRepository.append(records);
+            synchronized (timingWheel) {
+                unstoredRecords.subList(0, records.size()).clear();
+            }
+            for (ScheduledTransferRecord record : records) {
+                if (record.getType() == ScheduledTransferRecord.Type.FIRED) {
+                    dueTransfers.add(record.getScheduledTransfer());
+                } else if (record.getType() == ScheduledTransferRecord.Type.HANDED_OVER) {
+                    handOver(record.getScheduledTransfer());
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues the removal of the occurrence from the store; it is handed over once that is stored.
+     *
+     * @return false if it was cancelled meanwhile
+     */
+    private boolean takeDue(ScheduledTransfer scheduledTransfer) {
+        synchronized (timingWheel) {
+            if (pendingDueTransfers.remove(occurrenceKey(scheduledTransfer)) == null) {
+                return false;
+            }
+            unstoredRecords.add(ScheduledTransferRecord.of(ScheduledTransferRecord.Type.HANDED_OVER, scheduledTransfer));
+            return true;
+        }
+    }
+
+    private void handOver(ScheduledTransfer scheduledTransfer) {
+        try {
+            transferScheduler.schedule(scheduledTransfer.toTransfer(),
+                    Deadline.after(transferTimeoutMs, TimeUnit.MILLISECONDS))
+                    .whenComplete((result, e) -> {
+                        if (e != null) {
+                            log.error("Scheduled transfer " + scheduledTransfer.getId() + " failed: " + e.getMessage());
+                        } else {
+                            log.info("Scheduled transfer {} executed", scheduledTransfer.getId());
+                        }
+                    });
+        } catch (RuntimeException e) {
+            log.error("Scheduled transfer " + scheduledTransfer.getId() + " not accepted: " + e.getMessage());
+        }
+    }
+
+    private void dispatchDueTransfers() {
+        try {
+            while (!dispatcher.isShutdown() || !dueTransfers.isEmpty()) {
+                ScheduledTransfer scheduledTransfer = dueTransfers.poll(tickMs, TimeUnit.MILLISECONDS);
+                if (scheduledTransfer == null) {
+                    continue;
+                }
+                rateLimiter.acquire();
+                if (!takeDue(scheduledTransfer)) {
+                    continue;
+                }
+                try {
+                    store();
+                } catch (RuntimeException e) {
+                    log.error("Cannot store hand over of scheduled transfer " + scheduledTransfer.getId()
+                            + ", retrying on the next tick", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Scheduled transfer dispatcher stopped", e);
+        }
+    }
+
+    private static String occurrenceKey(ScheduledTransfer scheduledTransfer) {
+        return scheduledTransfer.getId() + "@" + scheduledTransfer.getExecuteAt();
+    }
+
+    private void validate(ScheduledTransfer scheduledTransfer) {
+        if (checkIfEmpty(scheduledTransfer.getAccountFromId()) || checkIfEmpty(scheduledTransfer.getAccountToId())) {
+            throw new WrongFormatException("Account is empty");
+        }
+        if (scheduledTransfer.getAccountFromId().equals(scheduledTransfer.getAccountToId())) {
+            throw new WrongFormatException("From and To accounts is the same " + scheduledTransfer.getAccountFromId());
+        }
+        if (scheduledTransfer.getAmount() == null || scheduledTransfer.getAmount().compareTo(BigDecimal.ZERO) < 0) {
+            throw new WrongFormatException("Amount is less then zero");
+        }
+        if (scheduledTransfer.getExecuteAt() == null) {
+            throw new WrongFormatException("Execution time is empty");
+        }
+        if (scheduledTransfer.isRecurring() && scheduledTransfer.getIntervalMs() < tickMs) {
+            throw new WrongFormatException("Interval is shorter than scheduler tick of " + tickMs + " ms");
+        }
+    }
+
+    private boolean checkIfEmpty(String data) {
+        return data == null || data.isEmpty();
+    }
+}
@@ -0,0 +1,16 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.StatementFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface StatementService {
+
+    /**
+     * Streams the movements of {@code accountId} with {@code from <= timestamp < to}, framed by the
+     * opening and closing balances.
+     */
+    void writeStatement(String accountId, long from, long to, StatementFormat format, OutputStream out) throws IOException;
+
+}
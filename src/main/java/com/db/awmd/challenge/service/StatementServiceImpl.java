@@ -0,0 +1,155 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.BalanceChange;
+import com.db.awmd.challenge.domain.StatementFormat;
+import com.db.awmd.challenge.exception.WrongFormatException;
+import com.db.awmd.challenge.repository.AccountHistoryRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes statements straight from the history segments to the response, one movement at a
+ * time, so memory use does not grow with the number of movements.
+ */
+@Service
+@Slf4j
+public class StatementServiceImpl implements StatementService {
+
+    private static final String CSV_HEADER = "record,sequence,timestamp,type,counterpartyId,amount,balance";
+
+    private final AccountsService accountsService;
+
+    private final AccountHistoryRepository accountHistoryRepository;
+
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public StatementServiceImpl(AccountsService accountsService, AccountHistoryRepository accountHistoryRepository,
+                                ObjectMapper objectMapper) {
+        this.accountsService = accountsService;
+        this.accountHistoryRepository = accountHistoryRepository;
+        this.objectMapper = objectMapper.copy().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    @Override
+    public void writeStatement(String accountId, long from, long to, StatementFormat format, OutputStream out) throws IOException {
+        if (from > to) {
+            throw new WrongFormatException("Statement range starts after it ends");
+        }
+        accountsService.findAccountById(accountId);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        AccountHistoryRepository.HistoryVisitor visitor = format == StatementFormat.CSV
+                ? new CsvStatementWriter(writer, from, to)
+                : new NdjsonStatementWriter(writer, accountId, from, to);
+        accountHistoryRepository.readRange(accountId, from, to, visitor);
+        writer.flush();
+    }
+
+    private class NdjsonStatementWriter implements AccountHistoryRepository.HistoryVisitor {
+        private final Writer writer;
+        private final String accountId;
+        private final long from;
+        private final long to;
+        private long movements;
+
+        private NdjsonStatementWriter(Writer writer, String accountId, long from, long to) {
+            this.writer = writer;
+            this.accountId = accountId;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void opening(BigDecimal balance) throws IOException {
+            Map<String, Object> opening = new LinkedHashMap<>();
+            opening.put("record", "OPENING");
+            opening.put("accountId", accountId);
+            opening.put("from", from);
+            opening.put("to", to);
+            opening.put("balance", balance);
+            writeLine(opening);
+        }
+
+        @Override
+        public void movement(BalanceChange change) throws IOException {
+            movements++;
+            writeLine(change);
+        }
+
+        @Override
+        public void closing(BigDecimal balance) throws IOException {
+            Map<String, Object> closing = new LinkedHashMap<>();
+            closing.put("record", "CLOSING");
+            closing.put("accountId", accountId);
+            closing.put("movements", movements);
+            closing.put("balance", balance);
+            writeLine(closing);
+        }
+
+        private void writeLine(Object value) throws IOException {
+            objectMapper.writeValue(writer, value);
+            writer.write('\n');
+        }
+    }
+
+    private static class CsvStatementWriter implements AccountHistoryRepository.HistoryVisitor {
+        private final Writer writer;
+        private final long from;
+        private final long to;
+
+        private CsvStatementWriter(Writer writer, long from, long to) {
+            this.writer = writer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void opening(BigDecimal balance) throws IOException {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+            writeRow("OPENING", "", String.valueOf(from), "", "", "", balance.toPlainString());
+        }
+
+        @Override
+        public void movement(BalanceChange change) throws IOException {
+            writeRow("MOVEMENT", String.valueOf(change.getSequence()), String.valueOf(change.getTimestamp()),
+                    change.getType().name(), change.getCounterpartyId() == null ? "" : change.getCounterpartyId(),
+                    change.getAmount().toPlainString(), change.getBalance().toPlainString());
+        }
+
+        @Override
+        public void closing(BigDecimal balance) throws IOException {
+            writeRow("CLOSING", "", String.valueOf(to), "", "", "", balance.toPlainString());
+        }
+
+        private void writeRow(String... values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(escape(values[i]));
+            }
+            writer.write('\n');
+        }
+
+        private static String escape(String value) {
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Deadline;
+import com.db.awmd.challenge.domain.Transfer;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface TransferScheduler {
+
+    CompletableFuture<Void> schedule(Transfer transfer, Deadline deadline);
+
+    int getPendingTransfers();
+
+}
@@ -1,12 +1,43 @@
 package com.db.awmd.challenge.service;
 
+import com.db.awmd.challenge.domain.Deadline;
+import com.db.awmd.challenge.domain.FanInTransfer;
+import com.db.awmd.challenge.domain.FanOutTransfer;
 import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferLegResult;
 import com.db.awmd.challenge.exception.*;
 
+import java.util.List;
+
 public interface TransferService {
 
     void transferMoneyLock(Transfer transfer) throws AccountNotProcessedExeption,
             TransferNotProcessException, OverDraftException,
-            AccountNotExistException, SameOperationalAccountException;
+            AccountNotExistException, SameOperationalAccountException, VelocityLimitExceededException;
+
+    void transferMoneyLock(Transfer transfer, Deadline deadline) throws AccountNotProcessedExeption,
+            TransferNotProcessException, OverDraftException,
+            AccountNotExistException, SameOperationalAccountException, TransferTimeoutException,
+            VelocityLimitExceededException;
+
+    List<TransferLegResult> transferFanOut(FanOutTransfer fanOutTransfer, Deadline deadline) throws AccountNotProcessedExeption,
+            TransferNullObjectException, TransferNotProcessException, OverDraftException,
+            AccountNotExistException, TransferTimeoutException, VelocityLimitExceededException;
+
+    List<TransferLegResult> transferFanIn(FanInTransfer fanInTransfer, Deadline deadline) throws AccountNotProcessedExeption,
+            TransferNullObjectException, TransferNotProcessException,
+            AccountNotExistException, TransferTimeoutException;
+
+    /**
+     * @return number of threads currently blocked waiting for an account lock
+     */
+    int getLockWaiters();
+
+    /**
+     * @return how long the longest current lock waiter has been waiting, 0 if none
+     */
+    long getLongestLockWaitNanos();
+
+    int getNotificationsInFlight();
 
 }
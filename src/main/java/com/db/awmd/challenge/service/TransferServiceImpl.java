@@ -1,25 +1,46 @@
 package com.db.awmd.challenge.service;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Deadline;
+import com.db.awmd.challenge.domain.FanInTransfer;
+import com.db.awmd.challenge.domain.FanOutTransfer;
 import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.domain.TransferLegResult;
 import com.db.awmd.challenge.exception.*;
+import com.db.awmd.challenge.fx.FxRateMatrix;
+import com.db.awmd.challenge.fx.FxRates;
+import com.db.awmd.challenge.jfr.FlightEvents;
+import com.db.awmd.challenge.limits.VelocityLimits;
+import com.db.awmd.challenge.tracing.Tracing;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 @Service
 @Slf4j
+@SuppressWarnings("try")
 public class TransferServiceImpl implements TransferService {
     private static final Integer FIRST_LOCK = 0;
     private static final Integer SECOND_LOCK = 1;
+    private static final Long DEFAULT_TIMEOUT_MS = 5000L;
 
     @Getter
     private final AccountsService accountsService;
@@ -27,11 +48,45 @@ public class TransferServiceImpl implements TransferService {
     @Getter
     private final NotificationService notificationService;
 
-    @Autowired
+    private final FxRates fxRates;
+
+    private final VelocityLimits velocityLimits;
+
+    private final long defaultTimeoutMs;
+
+    private final Map<Thread, Long> lockWaitStarts = new ConcurrentHashMap<>();
+
+    private final AtomicInteger notificationsInFlight = new AtomicInteger();
+
     public TransferServiceImpl(AccountsService accountsService,
                                NotificationService notificationService) {
+        this(accountsService, notificationService, DEFAULT_TIMEOUT_MS);
+    }
+
+    public TransferServiceImpl(AccountsService accountsService,
+                               NotificationService notificationService,
+                               long defaultTimeoutMs) {
+        this(accountsService, notificationService, new FxRates(), defaultTimeoutMs);
+    }
+
+    public TransferServiceImpl(AccountsService accountsService,
+                               NotificationService notificationService,
+                               FxRates fxRates,
+                               long defaultTimeoutMs) {
+        this(accountsService, notificationService, fxRates, new VelocityLimits(), defaultTimeoutMs);
+    }
+
+    @Autowired
+    public TransferServiceImpl(AccountsService accountsService,
+                               NotificationService notificationService,
+                               FxRates fxRates,
+                               VelocityLimits velocityLimits,
+                               @Value("${transfer.deadline.default-timeout-ms:5000}") long defaultTimeoutMs) {
         this.accountsService = accountsService;
         this.notificationService = notificationService;
+        this.fxRates = fxRates;
+        this.velocityLimits = velocityLimits;
+        this.defaultTimeoutMs = defaultTimeoutMs;
     }
 
     private Boolean checkIfEnoughtMonneyOnAccount(String accountId, BigDecimal amount) {
@@ -39,21 +94,60 @@ public class TransferServiceImpl implements TransferService {
     }
 
 
-    private void tryToSendMessageToRecipients(Transfer transfer) {
-        try {
+    private void tryToSendMessageToRecipients(Transfer transfer, Deadline deadline) {
+        try (Tracing.Span span = Tracing.span("service.notify")) {
             log.info("Starting to send mails to recipients");
             String debitMessageUser = "Monney was send from your account to " + transfer.getAccountToId() + " in amount " + transfer.getAmount();
             Account debitAccount = accountsService.findAccountById(transfer.getAccountFromId());
-            notificationService.notifyAboutTransfer(debitAccount, debitMessageUser);
+            if (deadline.isExpired()) {
+                log.warn("Deadline passed, notifications for transfer [{}] are not sent", transfer);
+                return;
+            }
+            notify(debitAccount, debitMessageUser);
 
             String creditMessageUser = "Your account was deposit from " + transfer.getAccountFromId() + " in amount " + transfer.getAmount();
             Account creditAccount = accountsService.findAccountById(transfer.getAccountToId());
-            notificationService.notifyAboutTransfer(creditAccount, creditMessageUser);
+            if (deadline.isExpired()) {
+                log.warn("Deadline passed, credit notification for transfer [{}] is not sent", transfer);
+                return;
+            }
+            notify(creditAccount, creditMessageUser);
         } catch (Exception e) {
             log.info("Error while sending mails to recipients from:" + transfer.getAccountFromId() + " and to" + transfer.getAccountToId(), e);
         }
     }
 
+    private void notify(Account account, String message) {
+        notificationsInFlight.incrementAndGet();
+        FlightEvents.Timed event = FlightEvents.begin(FlightEvents.Type.NOTIFICATION_SENT);
+        try {
+            notificationService.notifyAboutTransfer(account, message);
+            event.commit(account.getAccountId(), message);
+        } finally {
+            notificationsInFlight.decrementAndGet();
+        }
+    }
+
+    @Override
+    public int getLockWaiters() {
+        return lockWaitStarts.size();
+    }
+
+    @Override
+    public long getLongestLockWaitNanos() {
+        long now = System.nanoTime();
+        long longest = 0L;
+        for (Long start : lockWaitStarts.values()) {
+            longest = Math.max(longest, now - start);
+        }
+        return longest;
+    }
+
+    @Override
+    public int getNotificationsInFlight() {
+        return notificationsInFlight.get();
+    }
+
     private void checkPossibleTransferConditionsOrReturnException(Transfer transfer) throws
             AccountNotProcessedExeption, OverDraftException,
             AccountNotExistException, SameOperationalAccountException {
@@ -86,35 +180,397 @@ public class TransferServiceImpl implements TransferService {
     @Override
     public void transferMoneyLock(Transfer transfer) throws AccountNotProcessedExeption, TransferNullObjectException,
             TransferNotProcessException, OverDraftException, AccountNotExistException, SameOperationalAccountException {
+        transferMoneyLock(transfer, Deadline.after(defaultTimeoutMs, TimeUnit.MILLISECONDS));
+    }
+
+    @Override
+    public void transferMoneyLock(Transfer transfer, Deadline deadline) throws AccountNotProcessedExeption,
+            TransferNullObjectException, TransferNotProcessException, OverDraftException,
+            AccountNotExistException, SameOperationalAccountException, TransferTimeoutException {
+        FlightEvents.Timed transferEvent = FlightEvents.begin(FlightEvents.Type.TRANSFER);
+        String outcome = "failed";
         try {
             log.info("Requested money transfer [{}]", transfer.toString());
+            checkDeadline(deadline, deadlinePassedMessage(transfer));
             checkPossibleTransferConditionsOrReturnException(transfer);
+            velocityLimits.acquire(transfer.getAccountFromId(), transfer.getAmount());
 
-            Account accountFrom = accountsService.findAccountById(transfer.getAccountFromId());
-            Account accountTo = accountsService.findAccountById(transfer.getAccountToId());
-
-            List<Account> sortedAccountsForLocks = getSortedAccountsBySortedId(Arrays.asList(accountFrom,accountTo));
-            Account firstAccountLock = sortedAccountsForLocks.get(FIRST_LOCK);
-            Account secondAccountLock = sortedAccountsForLocks.get(SECOND_LOCK);
-
-            synchronized(firstAccountLock) {
-                log.info("Lock for accountId " + firstAccountLock.getAccountId() + " obtained");
-                synchronized(secondAccountLock) {
-                    log.info("Lock for accountId " + secondAccountLock.getAccountId() + " obtained");
-                    verifyFundsSufficiency(transfer);
-                    accountsService.makeTransfer(accountFrom, accountTo, transfer.getAmount());
-                  }
+            try (Tracing.Span span = Tracing.span("service.transfer")) {
+                while (!transferLocked(transfer, deadline)) {
+                    log.info("Account of transfer [{}] moved to the cold tier before it was locked, retrying", transfer);
+                }
             }
 
-            tryToSendMessageToRecipients(transfer);
+            outcome = "completed";
+            tryToSendMessageToRecipients(transfer, deadline);
+        } catch (TransferTimeoutException e) {
+            outcome = "timed out";
+            log.warn("Transfer [{}] timed out: {}", transfer, e.getMessage());
+            throw e;
+        } catch (VelocityLimitExceededException e) {
+            outcome = "over velocity limit";
+            log.warn("Transfer [{}] refused: {}", transfer, e.getMessage());
+            throw e;
         } catch (AccountNotProcessedExeption | TransferNullObjectException |
                 TransferNotProcessException | OverDraftException |
                 AccountNotExistException | SameOperationalAccountException e) {
             log.error("Cannot process transfer", e);
             throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while waiting for account locks", e);
+            throw new TransferNotProcessException("Cannot process transfer");
         } catch (Exception e) {
             log.error("Cannot process transfer", e);
             throw new TransferNotProcessException("Cannot process transfer");
+        } finally {
+            transferEvent.commit(transfer.getAccountFromId(), transfer.getAccountToId(), transfer.getAmount(), outcome);
+        }
+    }
+
+    /**
+     * @return false if an account was archived before it was locked, so a newer instance holds its balance
+     */
+    private boolean transferLocked(Transfer transfer, Deadline deadline) throws InterruptedException {
+        Account accountFrom = accountsService.findAccountById(transfer.getAccountFromId());
+        Account accountTo = accountsService.findAccountById(transfer.getAccountToId());
+        BigDecimal creditAmount = convert(transfer.getAmount(), accountFrom, accountTo);
+
+        List<Account> sortedAccountsForLocks = getSortedAccountsBySortedId(Arrays.asList(accountFrom,accountTo));
+        Account firstAccountLock = sortedAccountsForLocks.get(FIRST_LOCK);
+        Account secondAccountLock = sortedAccountsForLocks.get(SECOND_LOCK);
+
+        long lockStart = System.nanoTime();
+        lockBeforeDeadline(firstAccountLock, deadline);
+        try {
+            lockBeforeDeadline(secondAccountLock, deadline);
+            try {
+                Tracing.recordSince("service.locks", lockStart);
+                if (accountFrom.isArchived() || accountTo.isArchived()) {
+                    return false;
+                }
+                verifyFundsSufficiency(transfer);
+                checkDeadline(deadline, deadlinePassedMessage(transfer));
+                if (creditAmount == null) {
+                    accountsService.makeTransfer(accountFrom, accountTo, transfer.getAmount());
+                } else {
+                    accountsService.makeTransfer(accountFrom, accountTo, transfer.getAmount(), creditAmount);
+                }
+            } finally {
+                secondAccountLock.getLock().unlock();
+            }
+        } finally {
+            firstAccountLock.getLock().unlock();
+        }
+        return true;
+    }
+
+    @Override
+    public List<TransferLegResult> transferFanOut(FanOutTransfer fanOutTransfer, Deadline deadline) throws
+            AccountNotProcessedExeption, TransferNullObjectException, TransferNotProcessException, OverDraftException,
+            AccountNotExistException, TransferTimeoutException {
+        String accountFromId = fanOutTransfer.getAccountFromId();
+        try {
+            log.info("Requested fan-out transfer from {} to {} accounts", accountFromId, countLegs(fanOutTransfer.getLegs()));
+            checkDeadline(deadline, "Deadline passed for fan-out transfer from " + accountFromId);
+            accountsService.findAccountById(accountFromId);
+
+            List<TransferLeg> legs = fanOutTransfer.getLegs();
+            TransferLegResult[] results = new TransferLegResult[legs.size()];
+            List<TransferLeg> accepted = new ArrayList<>();
+            BigDecimal total = BigDecimal.ZERO;
+            for (int i = 0; i < legs.size(); i++) {
+                TransferLeg leg = legs.get(i);
+                String rejection = checkLeg(leg, accountFromId);
+                if (rejection != null) {
+                    results[i] = TransferLegResult.failed(leg, rejection);
+                    continue;
+                }
+                accepted.add(leg);
+                total = total.add(leg.getAmount());
+            }
+
+            velocityLimits.acquire(accountFromId, total);
+            if (!accepted.isEmpty()) {
+                while (!fanOutLocked(accountFromId, accepted, total, deadline)) {
+                    log.info("Account of fan-out transfer from {} moved to the cold tier before it was locked, retrying",
+                            accountFromId);
+                }
+            }
+
+            for (int i = 0; i < legs.size(); i++) {
+                if (results[i] == null) {
+                    results[i] = TransferLegResult.completed(legs.get(i));
+                    tryToSendMessageToRecipients(new Transfer(accountFromId, legs.get(i).getAccountId(), legs.get(i).getAmount()), deadline);
+                }
+            }
+            return Arrays.asList(results);
+        } catch (TransferTimeoutException e) {
+            log.warn("Fan-out transfer from {} timed out: {}", accountFromId, e.getMessage());
+            throw e;
+        } catch (VelocityLimitExceededException e) {
+            log.warn("Fan-out transfer from {} refused: {}", accountFromId, e.getMessage());
+            throw e;
+        } catch (AccountNotProcessedExeption | TransferNullObjectException |
+                TransferNotProcessException | OverDraftException | AccountNotExistException e) {
+            log.error("Cannot process fan-out transfer", e);
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while waiting for account lock", e);
+            throw new TransferNotProcessException("Cannot process transfer");
+        } catch (Exception e) {
+            log.error("Cannot process fan-out transfer", e);
+            throw new TransferNotProcessException("Cannot process transfer");
+        }
+    }
+
+    /**
+     * Locks the source and every leg account and moves the money as one journaled operation.
+     *
+     * @return false if an account was archived before it was locked, so a newer instance holds its balance
+     */
+    private boolean fanOutLocked(String accountFromId, List<TransferLeg> legs, BigDecimal total, Deadline deadline)
+            throws InterruptedException {
+        Account accountFrom = accountsService.findAccountById(accountFromId);
+        List<Account> locked = lockAllBeforeDeadline(accountFrom, legs, deadline);
+        try {
+            if (anyArchived(locked)) {
+                return false;
+            }
+            verifyFundsSufficiency(accountFromId, total);
+            checkDeadline(deadline, "Deadline passed for fan-out transfer from " + accountFromId);
+            accountsService.makeFanOutTransfer(accountFrom, legs);
+        } finally {
+            unlockAll(locked);
+        }
+        return true;
+    }
+
+    @Override
+    public List<TransferLegResult> transferFanIn(FanInTransfer fanInTransfer, Deadline deadline) throws
+            AccountNotProcessedExeption, TransferNullObjectException, TransferNotProcessException,
+            AccountNotExistException, TransferTimeoutException {
+        String accountToId = fanInTransfer.getAccountToId();
+        try {
+            log.info("Requested fan-in transfer to {} from {} accounts", accountToId, countLegs(fanInTransfer.getLegs()));
+            checkDeadline(deadline, "Deadline passed for fan-in transfer to " + accountToId);
+            accountsService.findAccountById(accountToId);
+
+            List<TransferLeg> legs = fanInTransfer.getLegs();
+            TransferLegResult[] results = new TransferLegResult[legs.size()];
+            List<TransferLeg> accepted = new ArrayList<>();
+            for (int i = 0; i < legs.size(); i++) {
+                TransferLeg leg = legs.get(i);
+                String rejection = checkLeg(leg, accountToId);
+                if (rejection == null) {
+                    rejection = acquireVelocity(leg);
+                }
+                if (rejection != null) {
+                    results[i] = TransferLegResult.failed(leg, rejection);
+                    continue;
+                }
+                accepted.add(leg);
+            }
+
+            Map<TransferLeg, String> overdrafts = new IdentityHashMap<>();
+            if (!accepted.isEmpty()) {
+                while (!fanInLocked(accountToId, accepted, overdrafts, deadline)) {
+                    log.info("Account of fan-in transfer to {} moved to the cold tier before it was locked, retrying",
+                            accountToId);
+                    overdrafts.clear();
+                }
+            }
+
+            for (int i = 0; i < legs.size(); i++) {
+                if (results[i] != null) {
+                    continue;
+                }
+                TransferLeg leg = legs.get(i);
+                String overdraft = overdrafts.get(leg);
+                if (overdraft != null) {
+                    results[i] = TransferLegResult.failed(leg, overdraft);
+                    continue;
+                }
+                results[i] = TransferLegResult.completed(leg);
+                tryToSendMessageToRecipients(new Transfer(leg.getAccountId(), accountToId, leg.getAmount()), deadline);
+            }
+            return Arrays.asList(results);
+        } catch (TransferTimeoutException e) {
+            log.warn("Fan-in transfer to {} timed out: {}", accountToId, e.getMessage());
+            throw e;
+        } catch (AccountNotProcessedExeption | TransferNullObjectException |
+                TransferNotProcessException | AccountNotExistException e) {
+            log.error("Cannot process fan-in transfer", e);
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while waiting for account lock", e);
+            throw new TransferNotProcessException("Cannot process transfer");
+        } catch (Exception e) {
+            log.error("Cannot process fan-in transfer", e);
+            throw new TransferNotProcessException("Cannot process transfer");
+        }
+    }
+
+    /**
+     * Locks the target and every leg account, leaves out the legs their accounts cannot cover,
+     * recorded in {@code overdrafts}, and moves the money of the rest as one journaled operation.
+     *
+     * @return false if an account was archived before it was locked, so a newer instance holds its balance
+     */
+    private boolean fanInLocked(String accountToId, List<TransferLeg> legs, Map<TransferLeg, String> overdrafts,
+                                Deadline deadline) throws InterruptedException {
+        Account accountTo = accountsService.findAccountById(accountToId);
+        List<Account> locked = lockAllBeforeDeadline(accountTo, legs, deadline);
+        try {
+            if (anyArchived(locked)) {
+                return false;
+            }
+            checkDeadline(deadline, "Deadline passed for fan-in transfer to " + accountToId);
+            Map<String, BigDecimal> debited = new HashMap<>();
+            List<TransferLeg> covered = new ArrayList<>();
+            for (TransferLeg leg : legs) {
+                BigDecimal debit = debited.getOrDefault(leg.getAccountId(), BigDecimal.ZERO).add(leg.getAmount());
+                if (accountsService.findAccountById(leg.getAccountId()).getBalance().compareTo(debit) < 0) {
+                    overdrafts.put(leg, "Account with id:" + leg.getAccountId() + " does not have enough monney for withdraw.");
+                    continue;
+                }
+                debited.put(leg.getAccountId(), debit);
+                covered.add(leg);
+            }
+            if (!covered.isEmpty()) {
+                accountsService.makeFanInTransfer(accountTo, covered);
+            }
+        } finally {
+            unlockAll(locked);
+        }
+        return true;
+    }
+
+    private String checkLeg(TransferLeg leg, String counterpartAccountId) {
+        if (leg.getAccountId() == null || leg.getAccountId().isEmpty()) {
+            return "Account is empty";
+        }
+        if (leg.getAmount() == null || BigDecimal.ZERO.compareTo(leg.getAmount()) > 0) {
+            return "Amount less zero.";
+        }
+        if (leg.getAccountId().equals(counterpartAccountId)) {
+            return "From and To accounts is the same " + counterpartAccountId;
+        }
+        Account account = accountsService.getAccount(leg.getAccountId());
+        if (account == null) {
+            return "Account with id " + leg.getAccountId() + " does not exists";
+        }
+        Account counterpart = accountsService.getAccount(counterpartAccountId);
+        if (counterpart != null && !fxRates.currencyOf(account).equals(fxRates.currencyOf(counterpart))) {
+            return "Account " + leg.getAccountId() + " is held in " + fxRates.currencyOf(account)
+                    + ", not in " + fxRates.currencyOf(counterpart);
+        }
+        return null;
+    }
+
+    /**
+     * Converts with the rates current when the transfer started, before any lock is taken; a rate
+     * update meanwhile does not affect it.
+     *
+     * @return {@code amount} in the currency of {@code accountTo}, or null if both accounts share a currency
+     */
+    private BigDecimal convert(BigDecimal amount, Account accountFrom, Account accountTo) {
+        String currencyFrom = fxRates.currencyOf(accountFrom);
+        String currencyTo = fxRates.currencyOf(accountTo);
+        if (currencyFrom.equals(currencyTo)) {
+            return null;
+        }
+        FxRateMatrix rates = fxRates.current();
+        BigDecimal converted = rates.convert(amount, currencyFrom, currencyTo);
+        if (converted == null) {
+            log.error("No exchange rate from " + currencyFrom + " to " + currencyTo);
+            throw new AccountNotProcessedExeption("No exchange rate from " + currencyFrom + " to " + currencyTo);
+        }
+        return converted;
+    }
+
+    private String acquireVelocity(TransferLeg leg) {
+        try {
+            velocityLimits.acquire(leg.getAccountId(), leg.getAmount());
+            return null;
+        } catch (VelocityLimitExceededException e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Locks {@code hub} and the accounts of {@code legs} in sort id order, the order every
+     * transfer locks in.
+     *
+     * @return the locked accounts
+     */
+    private List<Account> lockAllBeforeDeadline(Account hub, List<TransferLeg> legs, Deadline deadline)
+            throws InterruptedException {
+        Map<String, Account> accounts = new LinkedHashMap<>();
+        accounts.put(hub.getAccountId(), hub);
+        for (TransferLeg leg : legs) {
+            accounts.computeIfAbsent(leg.getAccountId(), accountsService::findAccountById);
+        }
+        List<Account> sorted = getSortedAccountsBySortedId(new ArrayList<>(accounts.values()));
+        List<Account> locked = new ArrayList<>();
+        long lockStart = System.nanoTime();
+        try {
+            for (Account account : sorted) {
+                lockBeforeDeadline(account, deadline);
+                locked.add(account);
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            unlockAll(locked);
+            throw e;
+        }
+        Tracing.recordSince("service.locks", lockStart);
+        return locked;
+    }
+
+    private static boolean anyArchived(List<Account> accounts) {
+        for (Account account : accounts) {
+            if (account.isArchived()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void unlockAll(List<Account> locked) {
+        for (int i = locked.size() - 1; i >= 0; i--) {
+            locked.get(i).getLock().unlock();
+        }
+    }
+
+    private int countLegs(List<TransferLeg> legs) {
+        if (legs == null || legs.isEmpty()) {
+            throw new TransferNullObjectException("Transfer legs are empty");
+        }
+        return legs.size();
+    }
+
+    private void lockBeforeDeadline(Account account, Deadline deadline) throws InterruptedException {
+        FlightEvents.Timed event = FlightEvents.begin(FlightEvents.Type.LOCK_ACQUIRED);
+        if (!account.getLock().tryLock()) {
+            Thread waiter = Thread.currentThread();
+            lockWaitStarts.put(waiter, System.nanoTime());
+            try {
+                if (!account.getLock().tryLock(deadline.remainingNanos(), TimeUnit.NANOSECONDS)) {
+                    throw new TransferTimeoutException("Lock for accountId " + account.getAccountId() + " not obtained before deadline");
+                }
+            } finally {
+                lockWaitStarts.remove(waiter);
+            }
+        }
+        event.commit(account.getAccountId());
+        log.info("Lock for accountId " + account.getAccountId() + " obtained");
+    }
+
+    private void checkDeadline(Deadline deadline, String message) {
+        if (deadline.isExpired()) {
+            throw new TransferTimeoutException(message);
         }
     }
 
@@ -128,11 +584,22 @@ public class TransferServiceImpl implements TransferService {
     }
 
     private void verifyFundsSufficiency(Transfer transfer) {
-        if (!checkIfEnoughtMonneyOnAccount(transfer.getAccountFromId(), transfer.getAmount())) {
-            log.error("Account with id:" + transfer.getAccountFromId() + " does not have enough monney.");
-            throw new OverDraftException("Account with id:" + transfer.getAccountFromId() + " does not have enough monney for withdraw.");
+        verifyFundsSufficiency(transfer.getAccountFromId(), transfer.getAmount());
+    }
+
+    private void verifyFundsSufficiency(String accountFromId, BigDecimal amount) {
+        if (!checkIfEnoughtMonneyOnAccount(accountFromId, amount)) {
+            if (FlightEvents.isEnabled(FlightEvents.Type.OVERDRAFT_REJECTED)) {
+                FlightEvents.instant(FlightEvents.Type.OVERDRAFT_REJECTED, accountFromId, amount,
+                        accountsService.findAccountById(accountFromId).getBalance());
+            }
+            log.error("Account with id:" + accountFromId + " does not have enough monney.");
+            throw new OverDraftException("Account with id:" + accountFromId + " does not have enough monney for withdraw.");
         }
     }
 
+    private String deadlinePassedMessage(Transfer transfer) {
+        return "Deadline passed for transfer from " + transfer.getAccountFromId() + " to " + transfer.getAccountToId();
+    }
 
 }
@@ -0,0 +1,169 @@
+package com.db.awmd.challenge.snapshot;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Epoch based multi-version view of committed balances. Writers enter the current epoch,
+ * publish new balance versions and leave; they never wait. A snapshot closes the current
+ * epoch, waits for the writers still inside it to leave, and then reads for every account
+ * the newest version from a closed epoch. Writers of the new epoch keep the replaced version
+ * next to their own while a snapshot is running, so at most one extra version per account is
+ * retained. Snapshots are taken one at a time.
+ * The system-wide total is versioned the same way: deposits and withdrawals add their delta
+ * in the writer section that publishes the balance, so the snapshot total always matches the
+ * snapshot balances without summing them.
+ */
+@Component
+public class BalanceSnapshots {
+
+    private final Map<String, BalanceVersion> versions = new ConcurrentHashMap<>();
+
+    private final AtomicReference<BalanceVersion> total =
+            new AtomicReference<>(new BalanceVersion(BigDecimal.ZERO, 0L, null));
+
+    private final AtomicLong[] activeWriters = {new AtomicLong(), new AtomicLong()};
+
+    private volatile long epoch;
+
+    private volatile boolean snapshotRunning;
+
+    /**
+     * @return the epoch to pass to {@link #record} and {@link #endWrite}
+     */
+    public long beginWrite() {
+        while (true) {
+            long writeEpoch = epoch;
+            AtomicLong writers = writersOf(writeEpoch);
+            writers.incrementAndGet();
+            if (epoch == writeEpoch) {
+                return writeEpoch;
+            }
+            writers.decrementAndGet();
+        }
+    }
+
+    public void endWrite(long writeEpoch) {
+        writersOf(writeEpoch).decrementAndGet();
+    }
+
+    /**
+     * Publishes the balance of {@code account} after a change of {@code delta}. A split account
+     * takes credits without its lock, so its balance may already include credits not published
+     * yet; its version moves by {@code delta} instead, in step with the total.
+     */
+    public void record(Account account, BigDecimal delta, long writeEpoch) {
+        boolean keepPrevious = snapshotRunning;
+        versions.compute(account.getAccountId(), (accountId, current) -> account.isSplit() && current != null
+                ? addDelta(current, delta, writeEpoch, keepPrevious)
+                : new BalanceVersion(account.getBalance(), writeEpoch, keepPrevious ? previousOf(current, writeEpoch) : null));
+    }
+
+    public void recordTotalDelta(BigDecimal delta, long writeEpoch) {
+        if (delta.signum() == 0) {
+            return;
+        }
+        boolean keepPrevious = snapshotRunning;
+        total.updateAndGet(current -> addDelta(current, delta, writeEpoch, keepPrevious));
+    }
+
+    public BigDecimal getTotal() {
+        return total.get().balance;
+    }
+
+    public void clear() {
+        versions.clear();
+        total.set(new BalanceVersion(BigDecimal.ZERO, 0L, null));
+    }
+
+    public BalanceSnapshot takeSnapshot() {
+        return takeSnapshot(null);
+    }
+
+    /**
+     * Takes a snapshot of only {@code accountIds}, or of every account if null. Accounts without
+     * a balance as of the snapshot are left out.
+     */
+    public synchronized BalanceSnapshot takeSnapshot(Collection<String> accountIds) {
+        snapshotRunning = true;
+        try {
+            long snapshotEpoch = epoch;
+            epoch = snapshotEpoch + 1;
+            AtomicLong writers = writersOf(snapshotEpoch);
+            while (writers.get() > 0) {
+                Thread.yield();
+            }
+            Map<String, BigDecimal> balances = new TreeMap<>();
+            if (accountIds == null) {
+                for (Map.Entry<String, BalanceVersion> entry : versions.entrySet()) {
+                    putAsOf(balances, entry.getKey(), entry.getValue(), snapshotEpoch);
+                }
+            } else {
+                for (String accountId : accountIds) {
+                    putAsOf(balances, accountId, versions.get(accountId), snapshotEpoch);
+                }
+            }
+            BalanceVersion totalVersion = total.get().asOf(snapshotEpoch);
+            return new BalanceSnapshot(snapshotEpoch, System.currentTimeMillis(), balances,
+                    totalVersion == null ? BigDecimal.ZERO : totalVersion.balance);
+        } finally {
+            snapshotRunning = false;
+        }
+    }
+
+    private static void putAsOf(Map<String, BigDecimal> balances, String accountId, BalanceVersion current, long snapshotEpoch) {
+        BalanceVersion version = current == null ? null : current.asOf(snapshotEpoch);
+        if (version != null) {
+            balances.put(accountId, version.balance);
+        }
+    }
+
+    private AtomicLong writersOf(long writeEpoch) {
+        return activeWriters[(int) (writeEpoch & 1)];
+    }
+
+    private static BalanceVersion addDelta(BalanceVersion current, BigDecimal delta, long writeEpoch, boolean keepPrevious) {
+        if (current.epoch > writeEpoch) {
+            BalanceVersion previous = current.previous == null ? null
+                    : new BalanceVersion(current.previous.balance.add(delta), current.previous.epoch, null);
+            return new BalanceVersion(current.balance.add(delta), current.epoch, previous);
+        }
+        return new BalanceVersion(current.balance.add(delta), writeEpoch,
+                keepPrevious ? previousOf(current, writeEpoch) : null);
+    }
+
+    private static BalanceVersion previousOf(BalanceVersion current, long writeEpoch) {
+        if (current == null) {
+            return null;
+        }
+        if (current.epoch == writeEpoch) {
+            return current.previous;
+        }
+        return new BalanceVersion(current.balance, current.epoch, null);
+    }
+
+    private static class BalanceVersion {
+        private final BigDecimal balance;
+        private final long epoch;
+        private final BalanceVersion previous;
+
+        private BalanceVersion(BigDecimal balance, long epoch, BalanceVersion previous) {
+            this.balance = balance;
+            this.epoch = epoch;
+            this.previous = previous;
+        }
+
+        private BalanceVersion asOf(long snapshotEpoch) {
+            return epoch <= snapshotEpoch ? this : previous;
+        }
+    }
+}
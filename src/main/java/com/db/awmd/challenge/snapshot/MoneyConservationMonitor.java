@@ -0,0 +1,134 @@
+package com.db.awmd.challenge.snapshot;
+
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.metrics.Histogram;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Periodically proves that money is conserved: the running total kept by deposits and
+ * withdrawals must equal the sum of all balances in the same snapshot. The sum is computed
+ * on a fork-join pool off the snapshot, so live transfers are never paused.
+ */
+@Component
+@Slf4j
+public class MoneyConservationMonitor {
+
+    private static final int SEQUENTIAL_THRESHOLD = 1024;
+
+    private final BalanceSnapshots balanceSnapshots;
+
+    private final long checkIntervalMs;
+
+    private final ForkJoinPool sumPool;
+
+    private final Histogram checkDurationHistogram;
+
+    private final AtomicReference<BigDecimal> lastDrift = new AtomicReference<>(BigDecimal.ZERO);
+
+    private final AtomicLong checks = new AtomicLong();
+
+    private final AtomicLong driftsDetected = new AtomicLong();
+
+    private final ScheduledExecutorService checker =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("conservation-check-"));
+
+    @Autowired
+    public MoneyConservationMonitor(BalanceSnapshots balanceSnapshots,
+                                    MetricsRegistry metricsRegistry,
+                                    @Value("${accounts.conservation.check-interval-ms:60000}") long checkIntervalMs,
+                                    @Value("${accounts.conservation.parallelism:4}") int parallelism) {
+        this.balanceSnapshots = balanceSnapshots;
+        this.checkIntervalMs = checkIntervalMs;
+        this.sumPool = new ForkJoinPool(parallelism);
+        this.checkDurationHistogram = metricsRegistry.histogram("conservation.check.duration.micros");
+        metricsRegistry.gauge("conservation.total", balanceSnapshots::getTotal);
+        metricsRegistry.gauge("conservation.drift", lastDrift::get);
+        metricsRegistry.gauge("conservation.checks", checks::get);
+        metricsRegistry.gauge("conservation.drifts.detected", driftsDetected::get);
+    }
+
+    @PostConstruct
+    public void start() {
+        checker.scheduleWithFixedDelay(this::checkSafely, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        checker.shutdownNow();
+        sumPool.shutdownNow();
+    }
+
+    /**
+     * @return the sum of balances minus the running total, zero when money is conserved
+     */
+    public BigDecimal check() {
+        long start = System.nanoTime();
+        BalanceSnapshot snapshot = balanceSnapshots.takeSnapshot();
+        BigDecimal[] balances = snapshot.getBalances().values().toArray(new BigDecimal[0]);
+        BigDecimal sum = sumPool.invoke(new SumTask(balances, 0, balances.length));
+        BigDecimal drift = sum.subtract(snapshot.getTotal());
+        checks.incrementAndGet();
+        lastDrift.set(drift);
+        checkDurationHistogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        if (drift.signum() != 0) {
+            driftsDetected.incrementAndGet();
+            log.error("Money conservation violated at epoch " + snapshot.getEpoch() + ": balances sum to " + sum
+                    + " but running total is " + snapshot.getTotal() + ", drift " + drift);
+        } else {
+            log.debug("Money conserved at epoch " + snapshot.getEpoch() + ", total " + sum);
+        }
+        return drift;
+    }
+
+    private void checkSafely() {
+        try {
+            check();
+        } catch (Exception e) {
+            log.error("Money conservation check failed", e);
+        }
+    }
+
+    private static class SumTask extends RecursiveTask<BigDecimal> {
+        private final BigDecimal[] balances;
+        private final int from;
+        private final int to;
+
+        private SumTask(BigDecimal[] balances, int from, int to) {
+            this.balances = balances;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected BigDecimal compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                BigDecimal sum = BigDecimal.ZERO;
+                for (int i = from; i < to; i++) {
+                    sum = sum.add(balances[i]);
+                }
+                return sum;
+            }
+            int middle = (from + to) >>> 1;
+            SumTask left = new SumTask(balances, from, middle);
+            left.fork();
+            BigDecimal right = new SumTask(balances, middle, to).compute();
+            return right.add(left.join());
+        }
+    }
+}
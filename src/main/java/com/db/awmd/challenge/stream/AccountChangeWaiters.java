@@ -0,0 +1,161 @@
+package com.db.awmd.challenge.stream;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceChange;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.BalanceChangeListener;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Long-poll reads of one account: a request parks without a thread until the account changes
+ * past what the client already has, or until its timeout, when it is answered with 304. A
+ * waiter is registered before the account is checked, so a change racing the registration
+ * either is seen by the check or completes the waiter.
+ */
+@Component
+@Slf4j
+public class AccountChangeWaiters implements BalanceChangeListener {
+
+    private final AccountsRepository accountsRepository;
+
+    private final long maxTimeoutMs;
+
+    private final int maxWaiters;
+
+    private final ConcurrentMap<String, Set<Waiter>> waitersByAccount = new ConcurrentHashMap<>();
+
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    @Autowired
+    public AccountChangeWaiters(AccountsRepository accountsRepository, MetricsRegistry metricsRegistry,
+                                @Value("${accounts.long-poll.max-timeout-ms:30000}") long maxTimeoutMs,
+                                @Value("${accounts.long-poll.max-waiters:10000}") int maxWaiters) {
+        this.accountsRepository = accountsRepository;
+        this.maxTimeoutMs = maxTimeoutMs;
+        this.maxWaiters = maxWaiters;
+        metricsRegistry.gauge("accounts.long-poll.waiters", waiters::get);
+    }
+
+    /**
+     * Waits until the change sequence of {@code account} passes {@code after}.
+     *
+     * @return null if the waiter limit is reached
+     */
+    public DeferredResult<ResponseEntity<Object>> awaitSequenceAfter(Account account, long after, long timeoutMs) {
+        return await(account, current -> current.getChangeSequence() > after, timeoutMs);
+    }
+
+    /**
+     * Waits until the entity tag of {@code account} differs from {@code entityTag}.
+     *
+     * @return null if the waiter limit is reached
+     */
+    public DeferredResult<ResponseEntity<Object>> awaitEntityTagChange(Account account, String entityTag, long timeoutMs) {
+        return await(account, current -> !current.getEntityTag().equals(entityTag), timeoutMs);
+    }
+
+    public int getWaiters() {
+        return waiters.get();
+    }
+
+    private DeferredResult<ResponseEntity<Object>> await(Account account, Predicate<Account> changed, long timeoutMs) {
+        if (waiters.incrementAndGet() > maxWaiters) {
+            waiters.decrementAndGet();
+            return null;
+        }
+        DeferredResult<ResponseEntity<Object>> result = new DeferredResult<>(Math.max(1L, Math.min(timeoutMs, maxTimeoutMs)));
+        Waiter waiter = new Waiter(account, changed, result);
+        result.onTimeout(waiter::expire);
+        result.onCompletion(waiter::remove);
+        waitersByAccount.compute(account.getAccountId(), (id, accountWaiters) -> {
+            Set<Waiter> updated = accountWaiters == null ? new CopyOnWriteArraySet<>() : accountWaiters;
+            updated.add(waiter);
+            return updated;
+        });
+        waiter.completeIfChanged();
+        return result;
+    }
+
+    @Override
+    public void onBalanceChange(BalanceChange change) {
+        Set<Waiter> accountWaiters = waitersByAccount.get(change.getAccountId());
+        if (accountWaiters == null) {
+            return;
+        }
+        for (Waiter waiter : accountWaiters) {
+            waiter.completeIfChanged();
+        }
+    }
+
+    @Override
+    public void onAccountsCleared() {
+        for (Set<Waiter> accountWaiters : waitersByAccount.values()) {
+            for (Waiter waiter : accountWaiters) {
+                waiter.complete(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+            }
+        }
+    }
+
+    private final class Waiter {
+        private final Account account;
+        private final Predicate<Account> changed;
+        private final DeferredResult<ResponseEntity<Object>> result;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private final AtomicBoolean removed = new AtomicBoolean();
+
+        private Waiter(Account account, Predicate<Account> changed, DeferredResult<ResponseEntity<Object>> result) {
+            this.account = account;
+            this.changed = changed;
+            this.result = result;
+        }
+
+        private void completeIfChanged() {
+            Account current = accountsRepository.getAccount(account.getAccountId());
+            if (current == null) {
+                complete(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+            } else if (current != account || changed.test(current)) {
+                complete(ResponseEntity.ok().eTag(current.getEntityTag()).body(current));
+            }
+        }
+
+        private void expire() {
+            // the tag the client still holds, read before the last check
+            String entityTag = account.getEntityTag();
+            completeIfChanged();
+            complete(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(entityTag).build());
+        }
+
+        private void complete(ResponseEntity<Object> response) {
+            if (done.compareAndSet(false, true)) {
+                remove();
+                result.setResult(response);
+            }
+        }
+
+        private void remove() {
+            if (!removed.compareAndSet(false, true)) {
+                return;
+            }
+            waitersByAccount.computeIfPresent(account.getAccountId(), (id, accountWaiters) -> {
+                accountWaiters.remove(this);
+                return accountWaiters.isEmpty() ? null : accountWaiters;
+            });
+            waiters.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.db.awmd.challenge.stream;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceChange;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.BalanceChangeListener;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes balance changes to server-sent event subscribers. The listener call on the transfer
+ * thread only stores the new balance in each interested subscriber's pending map, keyed by
+ * account, and schedules that subscriber on a small dedicated pool unless it is already
+ * scheduled. The pool drains the map and writes the events. A subscriber that reads slowly
+ * therefore holds at most one pending balance per account it follows: newer changes replace
+ * older ones instead of queueing behind them.
+ * <p>
+ * Writes block while the client does not read, so a check running every half
+ * {@code send-timeout-ms} closes a subscriber whose write takes longer than that and interrupts
+ * its sender, freeing the pool for the others. The same check sends a comment to subscribers
+ * idle for {@code heartbeat-ms}, which keeps proxies from dropping quiet streams and finds
+ * clients that went away without closing the connection.
+ */
+@Component
+@Slf4j
+public class BalanceStreamPublisher implements BalanceChangeListener {
+
+    public static final String EVENT_NAME = "balance";
+
+    private static final String HEARTBEAT_COMMENT = "heartbeat";
+
+    private final AccountsRepository accountsRepository;
+
+    private final long timeoutMs;
+
+    private final int maxSubscribers;
+
+    private final long sendTimeoutNanos;
+
+    private final long heartbeatNanos;
+
+    private final ExecutorService senders;
+
+    private final ScheduledExecutorService checker;
+
+    private final ConcurrentMap<String, Set<Subscription>> subscriptionsByAccount = new ConcurrentHashMap<>();
+
+    private final Set<Subscription> openSubscriptions = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger subscriptions = new AtomicInteger();
+
+    private final AtomicLong eventsSent = new AtomicLong();
+
+    private final AtomicLong eventsCoalesced = new AtomicLong();
+
+    public BalanceStreamPublisher(AccountsRepository accountsRepository, MetricsRegistry metricsRegistry,
+                                  int threads, long timeoutMs, int maxSubscribers) {
+        this(accountsRepository, metricsRegistry, threads, timeoutMs, maxSubscribers, 10000L, 15000L);
+    }
+
+    @Autowired
+    public BalanceStreamPublisher(AccountsRepository accountsRepository, MetricsRegistry metricsRegistry,
+                                  @Value("${stream.threads:2}") int threads,
+                                  @Value("${stream.timeout-ms:1800000}") long timeoutMs,
+                                  @Value("${stream.max-subscribers:1000}") int maxSubscribers,
+                                  @Value("${stream.send-timeout-ms:10000}") long sendTimeoutMs,
+                                  @Value("${stream.heartbeat-ms:15000}") long heartbeatMs) {
+        if (sendTimeoutMs < 1 || heartbeatMs < 1) {
+            throw new IllegalArgumentException("Send timeout and heartbeat interval must be positive");
+        }
+        this.accountsRepository = accountsRepository;
+        this.timeoutMs = timeoutMs;
+        this.maxSubscribers = maxSubscribers;
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        this.heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatMs);
+        this.senders = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("balance-stream-"));
+        this.checker = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("balance-stream-check-"));
+        long checkIntervalMs = Math.max(1L, Math.min(sendTimeoutMs, heartbeatMs) / 2);
+        checker.scheduleWithFixedDelay(this::checkSubscribers, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+        metricsRegistry.gauge("balance.stream.subscribers", subscriptions::get);
+        metricsRegistry.gauge("balance.stream.events.sent", eventsSent::get);
+        metricsRegistry.gauge("balance.stream.events.coalesced", eventsCoalesced::get);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        checker.shutdownNow();
+        senders.shutdownNow();
+        for (Subscription subscription : openSubscriptions) {
+            subscription.close();
+        }
+    }
+
+    /**
+     * Opens a stream of the balances of {@code accountIds}, starting with their current balances.
+     *
+     * @return null if the subscriber limit is reached
+     */
+    public SseEmitter subscribe(Set<String> accountIds) {
+        if (subscriptions.incrementAndGet() > maxSubscribers) {
+            subscriptions.decrementAndGet();
+            return null;
+        }
+        SseEmitter emitter = createEmitter(timeoutMs);
+        Subscription subscription = new Subscription(emitter, accountIds);
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        openSubscriptions.add(subscription);
+        for (String accountId : accountIds) {
+            subscriptionsByAccount.compute(accountId, (id, accountSubscriptions) -> {
+                Set<Subscription> updated = accountSubscriptions == null ? new CopyOnWriteArraySet<>() : accountSubscriptions;
+                updated.add(subscription);
+                return updated;
+            });
+        }
+        // registered first, so a change racing this read is either seen here or replaces it
+        for (String accountId : accountIds) {
+            Account account = accountsRepository.getAccount(accountId);
+            if (account != null) {
+                subscription.pending.putIfAbsent(accountId, new Account(accountId, account.getBalance()));
+            }
+        }
+        subscription.schedule();
+        return emitter;
+    }
+
+    protected SseEmitter createEmitter(long timeoutMs) {
+        return new SseEmitter(timeoutMs);
+    }
+
+    public int getSubscriptions() {
+        return subscriptions.get();
+    }
+
+    @Override
+    public void onBalanceChange(BalanceChange change) {
+        Set<Subscription> accountSubscriptions = subscriptionsByAccount.get(change.getAccountId());
+        if (accountSubscriptions == null) {
+            return;
+        }
+        Account latest = new Account(change.getAccountId(), change.getBalance());
+        for (Subscription subscription : accountSubscriptions) {
+            if (subscription.pending.put(change.getAccountId(), latest) != null) {
+                eventsCoalesced.incrementAndGet();
+            }
+            subscription.schedule();
+        }
+    }
+
+    private void checkSubscribers() {
+        long now = System.nanoTime();
+        for (Subscription subscription : openSubscriptions) {
+            long sendStarted = subscription.sendStartedNanos;
+            if (sendStarted != 0L && now - sendStarted > sendTimeoutNanos) {
+                log.info("Balance stream subscriber not writable for "
+                        + TimeUnit.NANOSECONDS.toMillis(now - sendStarted) + " ms, closing it");
+                subscription.abort();
+            } else if (now - subscription.lastSentNanos >= heartbeatNanos) {
+                subscription.heartbeatDue.set(true);
+                subscription.schedule();
+            }
+        }
+    }
+
+    private final class Subscription {
+        private final SseEmitter emitter;
+        private final Set<String> accountIds;
+        private final ConcurrentMap<String, Account> pending = new ConcurrentHashMap<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final AtomicBoolean heartbeatDue = new AtomicBoolean();
+        private volatile long lastSentNanos = System.nanoTime();
+        private volatile long sendStartedNanos;
+        private Thread sender;
+
+        private Subscription(SseEmitter emitter, Set<String> accountIds) {
+            this.emitter = emitter;
+            this.accountIds = accountIds;
+        }
+
+        private void schedule() {
+            if (!closed.get() && scheduled.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::drain);
+                } catch (RuntimeException e) {
+                    log.warn("Balance stream pool rejected a subscriber", e);
+                    close();
+                }
+            }
+        }
+
+        private void drain() {
+            do {
+                try {
+                    send();
+                } catch (IOException | RuntimeException e) {
+                    if (!closed.get()) {
+                        log.info("Balance stream subscriber disconnected: " + e.getMessage());
+                        emitter.completeWithError(e);
+                        close();
+                    }
+                    return;
+                } finally {
+                    scheduled.set(false);
+                }
+            } while ((!pending.isEmpty() || heartbeatDue.get()) && !closed.get() && scheduled.compareAndSet(false, true));
+        }
+
+        private void send() throws IOException {
+            Iterator<Map.Entry<String, Account>> entries = pending.entrySet().iterator();
+            while (entries.hasNext() && !closed.get()) {
+                Map.Entry<String, Account> entry = entries.next();
+                Account account = entry.getValue();
+                if (pending.remove(entry.getKey(), account)) {
+                    write(SseEmitter.event().name(EVENT_NAME).data(account, MediaType.APPLICATION_JSON));
+                    eventsSent.incrementAndGet();
+                }
+            }
+            if (heartbeatDue.getAndSet(false) && !closed.get()) {
+                write(SseEmitter.event().comment(HEARTBEAT_COMMENT));
+            }
+        }
+
+        private void write(SseEmitter.SseEventBuilder event) throws IOException {
+            synchronized (this) {
+                sender = Thread.currentThread();
+                sendStartedNanos = System.nanoTime();
+            }
+            try {
+                emitter.send(event);
+                lastSentNanos = System.nanoTime();
+            } finally {
+                synchronized (this) {
+                    sender = null;
+                    sendStartedNanos = 0L;
+                }
+                if (closed.get()) {
+                    // an abort may have interrupted this pool thread, do not carry it to the next subscriber
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        private void abort() {
+            close();
+            emitter.completeWithError(new IOException("Subscriber not writable"));
+            synchronized (this) {
+                if (sender != null) {
+                    sender.interrupt();
+                }
+            }
+        }
+
+        private void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            for (String accountId : accountIds) {
+                subscriptionsByAccount.computeIfPresent(accountId, (id, accountSubscriptions) -> {
+                    accountSubscriptions.remove(this);
+                    return accountSubscriptions.isEmpty() ? null : accountSubscriptions;
+                });
+            }
+            openSubscriptions.remove(this);
+            pending.clear();
+            subscriptions.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.db.awmd.challenge.tracing;
+
+import com.db.awmd.challenge.domain.TraceSpan;
+import com.db.awmd.challenge.domain.TracedRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spans of one sampled request. Spans may end on any thread the request was handed to, so they
+ * are collected in a synchronized list; at most {@code maxSpans} are kept.
+ */
+public class RequestTrace {
+
+    private final String requestId;
+
+    private final String method;
+
+    private final String uri;
+
+    private final long startedAt = System.currentTimeMillis();
+
+    private final long startNanos = System.nanoTime();
+
+    private final int maxSpans;
+
+    private final List<TraceSpan> spans = Collections.synchronizedList(new ArrayList<>());
+
+    public RequestTrace(String requestId, String method, String uri, int maxSpans) {
+        this.requestId = requestId;
+        this.method = method;
+        this.uri = uri;
+        this.maxSpans = maxSpans;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    void record(String name, int depth, long spanStartNanos, long endNanos) {
+        if (spans.size() >= maxSpans) {
+            return;
+        }
+        spans.add(new TraceSpan(name, Thread.currentThread().getName(), depth,
+                TimeUnit.NANOSECONDS.toMicros(spanStartNanos - startNanos),
+                TimeUnit.NANOSECONDS.toMicros(endNanos - spanStartNanos)));
+    }
+
+    public TracedRequest finish(int status) {
+        long durationMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        List<TraceSpan> recorded;
+        synchronized (spans) {
+            recorded = new ArrayList<>(spans);
+        }
+        recorded.sort((a, b) -> Long.compare(a.getStartMicros(), b.getStartMicros()));
+        return new TracedRequest(requestId, method, uri, status, startedAt, durationMicros, recorded);
+    }
+}
@@ -0,0 +1,75 @@
+package com.db.awmd.challenge.tracing;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Gives every request an id, taken from the {@code X-Request-Id} header when the caller sent a
+ * usable one, puts it in the logging MDC and returns it in the same response header. Sampled
+ * requests are traced and handed to the {@link SlowRequestRecorder} when the response is done.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@Slf4j
+@SuppressWarnings("try")
+public class RequestTraceFilter extends OncePerRequestFilter {
+
+    public static final String REQUEST_ID_HEADER = "X-Request-Id";
+
+    private static final Pattern USABLE_REQUEST_ID = Pattern.compile("[A-Za-z0-9._:-]{1,64}");
+
+    private final SlowRequestRecorder slowRequestRecorder;
+
+    private final int maxSpans;
+
+    @Autowired
+    public RequestTraceFilter(SlowRequestRecorder slowRequestRecorder,
+                              @Value("${tracing.max-spans:256}") int maxSpans) {
+        this.slowRequestRecorder = slowRequestRecorder;
+        this.maxSpans = maxSpans;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String requestId = request.getHeader(REQUEST_ID_HEADER);
+        if (requestId == null || !USABLE_REQUEST_ID.matcher(requestId).matches()) {
+            requestId = newRequestId();
+        }
+        response.setHeader(REQUEST_ID_HEADER, requestId);
+        RequestTrace trace = slowRequestRecorder.sample()
+                ? new RequestTrace(requestId, request.getMethod(), request.getRequestURI(), maxSpans) : null;
+        try (Tracing.Scope scope = Tracing.begin(requestId, trace)) {
+            try (Tracing.Span span = Tracing.span("controller")) {
+                filterChain.doFilter(request, response);
+            }
+        } finally {
+            if (trace != null) {
+                slowRequestRecorder.record(trace.finish(response.getStatus()));
+            }
+        }
+    }
+
+    /**
+     * Request ids only need to be unique, so they are drawn from the thread local generator
+     * instead of the shared secure one behind {@link UUID#randomUUID()}.
+     */
+    private static String newRequestId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new UUID(random.nextLong(), random.nextLong()).toString();
+    }
+}
@@ -0,0 +1,133 @@
+package com.db.awmd.challenge.tracing;
+
+import com.db.awmd.challenge.domain.TracedRequest;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the {@code per-minute} slowest sampled requests of each of the last {@code minutes}
+ * minutes, with their spans, in a ring with one slot per minute. A slot is reused once its
+ * minute is older than the ring, so memory stays at {@code per-minute * minutes} requests.
+ * A request faster than every kept one of a full slot is dropped without locking.
+ */
+@Component
+public class SlowRequestRecorder {
+
+    private static final Comparator<TracedRequest> BY_DURATION = Comparator.comparingLong(TracedRequest::getDurationMicros);
+
+    private final int perMinute;
+
+    private final MinuteSlot[] slots;
+
+    private final LongSupplier clockMillis;
+
+    private final AtomicLong sampled = new AtomicLong();
+
+    private volatile double sampleRate;
+
+    @Autowired
+    public SlowRequestRecorder(@Value("${tracing.sample-rate:0.1}") double sampleRate,
+                               @Value("${tracing.slowest.per-minute:10}") int perMinute,
+                               @Value("${tracing.slowest.minutes:15}") int minutes,
+                               MetricsRegistry metricsRegistry) {
+        this(sampleRate, perMinute, minutes, metricsRegistry, System::currentTimeMillis);
+    }
+
+    public SlowRequestRecorder(double sampleRate, int perMinute, int minutes, MetricsRegistry metricsRegistry,
+                               LongSupplier clockMillis) {
+        if (perMinute < 1 || minutes < 1) {
+            throw new IllegalArgumentException("Requests per minute and minutes kept must be positive");
+        }
+        setSampleRate(sampleRate);
+        this.perMinute = perMinute;
+        this.clockMillis = clockMillis;
+        this.slots = new MinuteSlot[minutes];
+        for (int i = 0; i < minutes; i++) {
+            slots[i] = new MinuteSlot();
+        }
+        metricsRegistry.gauge("tracing.requests.sampled", sampled::get);
+    }
+
+    public boolean sample() {
+        double rate = sampleRate;
+        return rate >= 1.0 || (rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(double sampleRate) {
+        if (sampleRate < 0.0 || sampleRate > 1.0 || Double.isNaN(sampleRate)) {
+            throw new IllegalArgumentException("Sample rate must be between 0 and 1: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    public void record(TracedRequest request) {
+        sampled.incrementAndGet();
+        long minute = TimeUnit.MILLISECONDS.toMinutes(request.getStartedAt());
+        MinuteSlot slot = slots[(int) (minute % slots.length)];
+        if (slot.minute == minute && request.getDurationMicros() <= slot.thresholdMicros) {
+            return;
+        }
+        synchronized (slot) {
+            if (slot.minute != minute) {
+                if (slot.minute > minute) {
+                    // a request that started before the slot moved on to a later minute
+                    return;
+                }
+                slot.slowest.clear();
+                slot.thresholdMicros = -1L;
+                slot.minute = minute;
+            }
+            slot.slowest.add(request);
+            if (slot.slowest.size() > perMinute) {
+                slot.slowest.poll();
+            }
+            if (slot.slowest.size() == perMinute) {
+                slot.thresholdMicros = slot.slowest.peek().getDurationMicros();
+            }
+        }
+    }
+
+    /**
+     * @return the kept requests of the last {@code minutes} minutes, latest minute first and
+     * slowest first within a minute
+     */
+    public List<TracedRequest> getSlowest(int minutes) {
+        long currentMinute = TimeUnit.MILLISECONDS.toMinutes(clockMillis.getAsLong());
+        List<TracedRequest> slowest = new ArrayList<>();
+        for (int i = 0; i < Math.min(minutes, slots.length); i++) {
+            long minute = currentMinute - i;
+            MinuteSlot slot = slots[(int) (minute % slots.length)];
+            List<TracedRequest> kept;
+            synchronized (slot) {
+                if (slot.minute != minute) {
+                    continue;
+                }
+                kept = new ArrayList<>(slot.slowest);
+            }
+            kept.sort(BY_DURATION.reversed());
+            slowest.addAll(kept);
+        }
+        return slowest;
+    }
+
+    private static class MinuteSlot {
+        private final PriorityQueue<TracedRequest> slowest = new PriorityQueue<>(BY_DURATION);
+        private volatile long minute = -1L;
+        private volatile long thresholdMicros = -1L;
+    }
+}
@@ -0,0 +1,125 @@
+package com.db.awmd.challenge.tracing;
+
+import org.slf4j.MDC;
+
+import java.util.Map;
+
+/**
+ * Request id and sampled trace of the request the current thread works for. The id lives in
+ * the logging MDC under {@link #REQUEST_ID}, so every log line of the request carries it; spans
+ * are recorded only for sampled requests and cost a thread local read otherwise.
+ * Work handed to another thread takes a {@link #capture} along and {@link Context#attach}es it.
+ * Spans and scopes are meant for try-with-resources without being referenced in the body, so
+ * classes opening them suppress the {@code try} lint once at class level.
+ */
+public final class Tracing {
+
+    public static final String REQUEST_ID = "requestId";
+
+    private static final ThreadLocal<Active> ACTIVE = new ThreadLocal<>();
+
+    private static final Span NOOP = () -> { };
+
+    private Tracing() {
+    }
+
+    /**
+     * Binds the request id and, if not null, the trace to the current thread until the returned scope closes.
+     */
+    public static Scope begin(String requestId, RequestTrace trace) {
+        return new Context(requestId, trace, 0).attach();
+    }
+
+    /**
+     * @return a span of {@code name} ending when closed, or a no-op if the request is not sampled
+     */
+    public static Span span(String name) {
+        Active active = ACTIVE.get();
+        if (active == null) {
+            return NOOP;
+        }
+        long start = System.nanoTime();
+        int depth = active.depth++;
+        return () -> {
+            active.depth = depth;
+            active.trace.record(name, depth, start, System.nanoTime());
+        };
+    }
+
+    /**
+     * Records a span of {@code name} that started at {@code startNanos} and ends now.
+     */
+    public static void recordSince(String name, long startNanos) {
+        Active active = ACTIVE.get();
+        if (active != null) {
+            active.trace.record(name, active.depth, startNanos, System.nanoTime());
+        }
+    }
+
+    public static Context capture() {
+        Active active = ACTIVE.get();
+        return new Context(MDC.get(REQUEST_ID), active == null ? null : active.trace, active == null ? 0 : active.depth);
+    }
+
+    public interface Span extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    public static final class Context {
+        private final String requestId;
+        private final RequestTrace trace;
+        private final int depth;
+
+        private Context(String requestId, RequestTrace trace, int depth) {
+            this.requestId = requestId;
+            this.trace = trace;
+            this.depth = depth;
+        }
+
+        /**
+         * Makes this the context of the current thread until the returned scope closes, then restores the previous one.
+         */
+        public Scope attach() {
+            Active previous = ACTIVE.get();
+            Map<String, String> previousMdc = MDC.getCopyOfContextMap();
+            if (trace != null) {
+                ACTIVE.set(new Active(trace, depth));
+            } else {
+                ACTIVE.remove();
+            }
+            if (requestId != null) {
+                MDC.put(REQUEST_ID, requestId);
+            } else {
+                MDC.remove(REQUEST_ID);
+            }
+            return () -> {
+                if (previous != null) {
+                    ACTIVE.set(previous);
+                } else {
+                    ACTIVE.remove();
+                }
+                if (previousMdc != null) {
+                    MDC.setContextMap(previousMdc);
+                } else {
+                    MDC.clear();
+                }
+            };
+        }
+    }
+
+    private static final class Active {
+        private final RequestTrace trace;
+        private int depth;
+
+        private Active(RequestTrace trace, int depth) {
+            this.trace = trace;
+            this.depth = depth;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.db.awmd.challenge.warmup;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.WarmupReport;
+import com.db.awmd.challenge.index.AccountIdTrie;
+import com.db.awmd.challenge.index.BalanceIndex;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.TransferJournal;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AccountsServiceImpl;
+import com.db.awmd.challenge.service.FairTransferScheduler;
+import com.db.awmd.challenge.service.ScheduledTransferService;
+import com.db.awmd.challenge.service.TransferService;
+import com.db.awmd.challenge.service.TransferServiceImpl;
+import com.db.awmd.challenge.snapshot.BalanceSnapshots;
+import com.db.awmd.challenge.web.AccountsController;
+import com.db.awmd.challenge.web.TransferController;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Runs synthetic traffic once the application has started so the JIT has compiled the hot
+ * paths before real traffic arrives. Transfers, deposits, withdrawals and balance reads go
+ * through the same controller, service, index and repository classes as production requests,
+ * wired to a scratch in-memory account set that is dropped afterwards, so neither stored
+ * balances nor the journal see any of it. Accounts and transfers are also round tripped
+ * through the application ObjectMapper. Readiness is reported once this has finished.
+ * Warm-up threads are named {@link #THREAD_NAME_PREFIX} so {@link WarmupLogFilter} can keep
+ * their INFO logging out of the console.
+ */
+@Component
+@Slf4j
+public class JitWarmup implements ApplicationListener<ApplicationReadyEvent> {
+
+    public static final String THREAD_NAME_PREFIX = "jit-warmup";
+
+    private static final String WARMUP_ACCOUNT_ID = "warmup-";
+
+    private static final BigDecimal WARMUP_BALANCE = new BigDecimal(1000000);
+
+    private static final int SCHEDULER_WORKERS = 2;
+
+    private final ObjectMapper objectMapper;
+
+    private final ScheduledTransferService scheduledTransferService;
+
+    private final boolean enabled;
+
+    private final int iterations;
+
+    private final int accounts;
+
+    private final long transferTimeoutMs;
+
+    private volatile WarmupReport.Status status = WarmupReport.Status.PENDING;
+
+    private volatile int iterationsCompleted;
+
+    private volatile Long startedAt;
+
+    private volatile Long finishedAt;
+
+    private volatile String message;
+
+    @Autowired
+    public JitWarmup(ObjectMapper objectMapper,
+                     ScheduledTransferService scheduledTransferService,
+                     @Value("${warmup.enabled:true}") boolean enabled,
+                     @Value("${warmup.iterations:20000}") int iterations,
+                     @Value("${warmup.accounts:64}") int accounts,
+                     @Value("${transfer.deadline.default-timeout-ms:5000}") long transferTimeoutMs) {
+        if (accounts < 2) {
+            throw new IllegalArgumentException("Warm-up needs at least two accounts: " + accounts);
+        }
+        this.objectMapper = objectMapper;
+        this.scheduledTransferService = scheduledTransferService;
+        this.enabled = enabled;
+        this.iterations = iterations;
+        this.accounts = accounts;
+        this.transferTimeoutMs = transferTimeoutMs;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (status != WarmupReport.Status.PENDING) {
+            return;
+        }
+        if (!enabled || iterations <= 0) {
+            status = WarmupReport.Status.SKIPPED;
+            return;
+        }
+        Thread warmup = new Thread(this::warmUp, THREAD_NAME_PREFIX);
+        warmup.setDaemon(true);
+        warmup.start();
+    }
+
+    public boolean isReady() {
+        WarmupReport.Status current = status;
+        return current == WarmupReport.Status.COMPLETED || current == WarmupReport.Status.SKIPPED
+                || current == WarmupReport.Status.FAILED;
+    }
+
+    public WarmupReport getReport() {
+        return new WarmupReport(status, isReady(), iterations, iterationsCompleted, startedAt, finishedAt, message);
+    }
+
+    public void warmUp() {
+        startedAt = System.currentTimeMillis();
+        status = WarmupReport.Status.RUNNING;
+        log.info("JIT warm-up started: " + iterations + " iterations over " + accounts + " scratch accounts");
+        AccountsRepository accountsRepository = new AccountsRepositoryInMemory();
+        BalanceIndex balanceIndex = new BalanceIndex(accountsRepository, new MetricsRegistry());
+        AccountIdTrie accountIdTrie = new AccountIdTrie(accountsRepository);
+        AccountsService accountsService = new AccountsServiceImpl(accountsRepository, TransferJournal.NONE,
+                new BalanceSnapshots(), Arrays.asList(balanceIndex, accountIdTrie));
+        TransferService transferService = new TransferServiceImpl(accountsService,
+                (account, description) -> { }, transferTimeoutMs);
+        FairTransferScheduler transferScheduler = new FairTransferScheduler(transferService, SCHEDULER_WORKERS,
+                THREAD_NAME_PREFIX + "-worker-");
+        AccountsController accountsController = new AccountsController(accountsService,
+                (accountId, from, to, format, out) -> { }, balanceIndex, accountIdTrie, objectMapper);
+        TransferController transferController = new TransferController(transferService, transferScheduler,
+                scheduledTransferService, transferTimeoutMs);
+        try {
+            for (int i = 0; i < accounts; i++) {
+                accountsController.createAccount(new Account(WARMUP_ACCOUNT_ID + i, WARMUP_BALANCE));
+            }
+            for (int i = 0; i < iterations; i++) {
+                runIteration(i, accountsController, transferController);
+                iterationsCompleted = i + 1;
+            }
+            finish(WarmupReport.Status.COMPLETED, null);
+        } catch (Exception e) {
+            log.error("JIT warm-up failed, reporting ready anyway", e);
+            finish(WarmupReport.Status.FAILED, e.getMessage());
+        } finally {
+            transferScheduler.shutdown();
+            accountsService.clearAccounts();
+        }
+    }
+
+    private void runIteration(int iteration, AccountsController accountsController,
+                              TransferController transferController) throws IOException {
+        String accountFromId = WARMUP_ACCOUNT_ID + iteration % accounts;
+        String accountToId = WARMUP_ACCOUNT_ID + (iteration * 7 + 1) % accounts;
+        if (accountFromId.equals(accountToId)) {
+            accountToId = WARMUP_ACCOUNT_ID + (iteration + 1) % accounts;
+        }
+        transferController.processTransfer(accountFromId, accountToId, "1.25", null);
+        accountsController.addBalance(accountFromId, "0.75");
+        accountsController.withdrawBalance(accountToId, "0.75");
+        accountsController.getBalance(accountToId, null);
+
+        Account account = objectMapper.readValue(
+                objectMapper.writeValueAsString(accountsController.getAccount(accountFromId, null).getBody()), Account.class);
+        Transfer transfer = objectMapper.readValue(
+                objectMapper.writeValueAsBytes(new Transfer(account.getAccountId(), accountToId, account.getBalance())),
+                Transfer.class);
+        objectMapper.writeValueAsBytes(accountsController.getTopAccounts(10).getBody());
+        objectMapper.writeValueAsBytes(accountsController.searchAccounts(WARMUP_ACCOUNT_ID + (iteration % 10),
+                null, 10).getBody());
+        if (transfer.getAmount().signum() < 0) {
+            throw new IllegalStateException("Warm-up account " + account.getAccountId() + " is overdrawn");
+        }
+    }
+
+    private void finish(WarmupReport.Status status, String message) {
+        this.finishedAt = System.currentTimeMillis();
+        this.message = message;
+        this.status = status;
+        log.info("JIT warm-up " + status + " after " + iterationsCompleted + " iterations in "
+                + (finishedAt - startedAt) + " ms");
+    }
+}
@@ -0,0 +1,23 @@
+package com.db.awmd.challenge.warmup;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+
+/**
+ * Drops below-WARN events logged by warm-up threads, which would otherwise repeat every
+ * synthetic request. Progress reported by {@link JitWarmup} itself is kept.
+ */
+public class WarmupLogFilter extends Filter<ILoggingEvent> {
+
+    @Override
+    public FilterReply decide(ILoggingEvent event) {
+        if (event.getThreadName().startsWith(JitWarmup.THREAD_NAME_PREFIX)
+                && !event.getLevel().isGreaterOrEqual(Level.WARN)
+                && !JitWarmup.class.getName().equals(event.getLoggerName())) {
+            return FilterReply.DENY;
+        }
+        return FilterReply.NEUTRAL;
+    }
+}
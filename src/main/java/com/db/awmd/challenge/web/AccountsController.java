@@ -1,41 +1,75 @@
 package com.db.awmd.challenge.web;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountSearchPage;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.domain.StatementFormat;
+import com.db.awmd.challenge.exception.AccountNotExistException;
+import com.db.awmd.challenge.exception.AccountNotProcessedExeption;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import com.db.awmd.challenge.exception.WrongFormatException;
+import com.db.awmd.challenge.index.AccountIdTrie;
+import com.db.awmd.challenge.index.BalanceIndex;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.StatementService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 @RestController
 @RequestMapping("/v1/accounts")
 @Slf4j
 public class AccountsController {
     private static final String NO_ACCOUNTS_EXISTS = "No account records exists";
+    private static final String ACCOUNT_NOT_FOUND = "No account with id ";
     private static final String ERROR_PROCESS_RESPONCE = "Error while processing data:";
     private static final String EMPTY_ACCOUNT_TO_VALUE = "Account is empty";
     private static final String EMPTY_AMOUNT_VALUE = "Amount is empty";
     private static final String NOT_BIGDECIMAL_FORMAT = "Amount is not big decimal format";
     private static final String AMOUNT_LESS_THEN_ZERO = "Amount is less then zero";
+    private static final String WRONG_STATEMENT_RANGE = "Statement range starts after it ends";
+    private static final String WRONG_BALANCE_RANGE = "Minimum balance is greater then maximum";
+    private static final String WRONG_LIMIT = "Limit must be between 1 and ";
+    private static final int MAX_LIMIT = 10000;
 
 
     private final AccountsService accountsService;
 
+    private final StatementService statementService;
+
+    private final BalanceIndex balanceIndex;
+
+    private final AccountIdTrie accountIdTrie;
+
+    private final ObjectMapper objectMapper;
+
     @Autowired
-    public AccountsController(AccountsService accountsService) {
+    public AccountsController(AccountsService accountsService, StatementService statementService,
+                              BalanceIndex balanceIndex, AccountIdTrie accountIdTrie, ObjectMapper objectMapper) {
         this.accountsService = accountsService;
+        this.statementService = statementService;
+        this.balanceIndex = balanceIndex;
+        this.accountIdTrie = accountIdTrie;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -54,12 +88,23 @@ public class AccountsController {
 
     @GetMapping(path = "/{accountId}")
     @Async("threadPoolTaskExecutor")
-    public Account getAccount(@PathVariable String accountId) {
-        log.info("Retrieving account for id {}", accountId);
-
+    @ApiOperation(value = "Get account by id, with its change sequence as ETag", response = Account.class,
+            produces = "application/json")
+    @ApiResponses(value = {@ApiResponse(code = 304, message = "Account unchanged since the ETag in If-None-Match"),
+            @ApiResponse(code = 404, message = "Account not found with ID")})
+    public ResponseEntity<Object> getAccount(
+            @ApiParam(value = "ID related to the account", required = true) @PathVariable String accountId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         log.info("Retrieving account for id {}", accountId);
-        return this.accountsService.getAccount(accountId);
-
+        Account account = this.accountsService.getAccount(accountId);
+        if (account == null) {
+            return new ResponseEntity<>(ACCOUNT_NOT_FOUND + accountId, HttpStatus.NOT_FOUND);
+        }
+        String entityTag = account.getEntityTag();
+        if (EntityTags.matches(ifNoneMatch, entityTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(entityTag).build();
+        }
+        return ResponseEntity.ok().eTag(entityTag).body(account);
     }
 
     @GetMapping(path = "/createAccount/{accountId}")
@@ -82,24 +127,166 @@ public class AccountsController {
     }
 
     @GetMapping("/{accountId}/balances")
-    @ApiOperation(value = "Get account balance by id", response = Account.class, produces = "application/json")
-    @ApiResponses(value = {@ApiResponse(code = 400, message = "Invalid ID supplied"),
+    @ApiOperation(value = "Get account balance by id, with its change sequence as ETag", response = BigDecimal.class,
+            produces = "application/json")
+    @ApiResponses(value = {@ApiResponse(code = 304, message = "Balance unchanged since the ETag in If-None-Match"),
             @ApiResponse(code = 404, message = "Account not found with ID")})
-    public BigDecimal getBalance(
+    public ResponseEntity<Object> getBalance(
+            @ApiParam(value = "ID related to the account", required = true) @PathVariable String accountId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Account account = accountsService.getAccount(accountId);
+        if (account == null) {
+            return new ResponseEntity<>(ACCOUNT_NOT_FOUND + accountId, HttpStatus.NOT_FOUND);
+        }
+        String entityTag = account.getEntityTag();
+        if (EntityTags.matches(ifNoneMatch, entityTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(entityTag).build();
+        }
+        return ResponseEntity.ok().eTag(entityTag).body(account.getBalance());
+    }
+
+    @PostMapping("/{accountId}/split")
+    @ApiOperation(value = "Spread a hot account's balance over stripes so credits do not contend", response = Account.class,
+            produces = "application/json")
+    @ApiResponses(value = {@ApiResponse(code = 400, message = "Invalid stripe count or store"),
+            @ApiResponse(code = 404, message = "Account not found with ID")})
+    public ResponseEntity<Object> splitAccount(
+            @ApiParam(value = "ID related to the account", required = true) @PathVariable String accountId,
+            @ApiParam(value = "Number of stripes, defaults to the number of processors") @RequestParam(required = false) Integer stripes) {
+        log.info("Splitting account {} into {} stripes", accountId, stripes);
+        try {
+            accountsService.splitAccount(accountId, stripes == null ? Runtime.getRuntime().availableProcessors() : stripes);
+            return new ResponseEntity<>(accountsService.findAccountById(accountId), HttpStatus.OK);
+        } catch (AccountNotExistException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+        } catch (AccountNotProcessedExeption e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @PostMapping("/{accountId}/merge")
+    @ApiOperation(value = "Fold a split account back into one balance", response = Account.class, produces = "application/json")
+    @ApiResponses(value = {@ApiResponse(code = 404, message = "Account not found with ID")})
+    public ResponseEntity<Object> mergeAccount(
             @ApiParam(value = "ID related to the account", required = true) @PathVariable String accountId) {
-        return accountsService.findAccountById(accountId).getBalance();
+        log.info("Merging account {}", accountId);
+        try {
+            accountsService.mergeAccount(accountId);
+            return new ResponseEntity<>(accountsService.findAccountById(accountId), HttpStatus.OK);
+        } catch (AccountNotExistException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+        }
     }
 
     @GetMapping("/all")
     @ApiOperation(value = "Get account balance by id", response = Account.class, produces = "application/json")
     @ApiResponses(value = {@ApiResponse(code = 400, message = "Invalid ID supplied"),
             @ApiResponse(code = 404, message = "Account not found with ID")})
-    public ResponseEntity<Object> getAllAccounts() {
+    public ResponseEntity<StreamingResponseBody> getAllAccounts() {
         log.info("Retrieving all accounts");
-        if (accountsService.getAllAccount().isEmpty()) {
-            return new ResponseEntity<>(NO_ACCOUNTS_EXISTS, HttpStatus.CREATED);
+        if (!accountsService.hasAccounts()) {
+            return messageResponse(NO_ACCOUNTS_EXISTS, HttpStatus.CREATED);
         }
-        return new ResponseEntity<>(accountsService.getAllAccount(), HttpStatus.CREATED);
+        // written while the accounts are visited, so cold accounts are never all on the heap at once
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .body(out -> {
+                    JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+                    generator.writeStartArray();
+                    accountsService.forEachAccount(account -> {
+                        try {
+                            generator.writeObject(account);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                    generator.writeEndArray();
+                    generator.flush();
+                });
+    }
+
+    @GetMapping("/top")
+    @ApiOperation(value = "Get accounts with the highest balances", response = Account.class, responseContainer = "List",
+            produces = "application/json")
+    @ApiResponses(value = {@ApiResponse(code = 400, message = "Invalid number of accounts")})
+    public ResponseEntity<Object> getTopAccounts(
+            @ApiParam(value = "Number of accounts") @RequestParam(defaultValue = "1000") int n) {
+        log.info("Retrieving top {} accounts by balance", n);
+        if (n < 1 || n > MAX_LIMIT) {
+            return new ResponseEntity<>(WRONG_LIMIT + MAX_LIMIT, HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(balanceIndex.top(n), HttpStatus.OK);
+    }
+
+    @GetMapping("/range")
+    @ApiOperation(value = "Get accounts with balance in range, lowest first", response = Account.class,
+            responseContainer = "List", produces = "application/json")
+    @ApiResponses(value = {@ApiResponse(code = 400, message = "Invalid range supplied")})
+    public ResponseEntity<Object> getAccountsInRange(
+            @ApiParam(value = "Minimum balance, inclusive") @RequestParam(required = false) BigDecimal min,
+            @ApiParam(value = "Maximum balance, inclusive") @RequestParam(required = false) BigDecimal max,
+            @ApiParam(value = "Maximum number of accounts") @RequestParam(defaultValue = "1000") int limit) {
+        log.info("Retrieving accounts with balance between {} and {}", min, max);
+        if (min != null && max != null && min.compareTo(max) > 0) {
+            return new ResponseEntity<>(WRONG_BALANCE_RANGE, HttpStatus.BAD_REQUEST);
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            return new ResponseEntity<>(WRONG_LIMIT + MAX_LIMIT, HttpStatus.BAD_REQUEST);
+        }
+        List<Account> accounts = balanceIndex.range(min, max, limit);
+        return new ResponseEntity<>(accounts, HttpStatus.OK);
+    }
+
+    @GetMapping("/search")
+    @ApiOperation(value = "Search account ids by prefix, one page at a time", response = AccountSearchPage.class,
+            produces = "application/json")
+    @ApiResponses(value = {@ApiResponse(code = 400, message = "Invalid limit supplied")})
+    public ResponseEntity<Object> searchAccounts(
+            @ApiParam(value = "Account id prefix") @RequestParam(defaultValue = "") String prefix,
+            @ApiParam(value = "Cursor returned as next by the previous page") @RequestParam(required = false) String after,
+            @ApiParam(value = "Maximum number of account ids") @RequestParam(defaultValue = "100") int limit) {
+        log.info("Searching accounts with prefix {} after {}", prefix, after);
+        if (limit < 1 || limit > MAX_LIMIT) {
+            return new ResponseEntity<>(WRONG_LIMIT + MAX_LIMIT, HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(accountIdTrie.search(prefix, after, limit), HttpStatus.OK);
+    }
+
+    @GetMapping("/{accountId}/statement")
+    @ApiOperation(value = "Stream account movements in a time range with opening and closing balances",
+            produces = "application/x-ndjson,text/csv")
+    @ApiResponses(value = {@ApiResponse(code = 400, message = "Invalid range supplied"),
+            @ApiResponse(code = 404, message = "Account not found with ID")})
+    public ResponseEntity<StreamingResponseBody> getStatement(
+            @ApiParam(value = "ID related to the account", required = true) @PathVariable String accountId,
+            @ApiParam(value = "Range start, epoch millis inclusive") @RequestParam(defaultValue = "0") long from,
+            @ApiParam(value = "Range end, epoch millis exclusive") @RequestParam(defaultValue = "" + Long.MAX_VALUE) long to,
+            @ApiParam(value = "ndjson or csv") @RequestParam(defaultValue = "ndjson") String format) {
+        log.info("Streaming statement of account {} from {} to {}", accountId, from, to);
+        StatementFormat statementFormat;
+        try {
+            statementFormat = StatementFormat.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return messageResponse("Unknown statement format " + format, HttpStatus.BAD_REQUEST);
+        }
+        if (from > to) {
+            return messageResponse(WRONG_STATEMENT_RANGE, HttpStatus.BAD_REQUEST);
+        }
+        try {
+            accountsService.findAccountById(accountId);
+        } catch (AccountNotExistException e) {
+            return messageResponse(e.getMessage(), HttpStatus.NOT_FOUND);
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(statementFormat.getContentType()))
+                .body(out -> statementService.writeStatement(accountId, from, to, statementFormat, out));
+    }
+
+    @GetMapping("/snapshot")
+    @ApiOperation(value = "Get balances of all accounts as of one instant", response = BalanceSnapshot.class, produces = "application/json")
+    public BalanceSnapshot getBalanceSnapshot() {
+        log.info("Taking balance snapshot");
+        return accountsService.getBalanceSnapshot();
     }
 
     @GetMapping("/clear")
@@ -158,6 +345,12 @@ public class AccountsController {
         }
     }
 
+    private ResponseEntity<StreamingResponseBody> messageResponse(String message, HttpStatus status) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(out -> out.write(message.getBytes(StandardCharsets.UTF_8)));
+    }
+
     private void validateIncomeAmount(String incomeAmount) {
         if (checkIfEmpty(incomeAmount)) {
             throw new WrongFormatException(EMPTY_AMOUNT_VALUE);
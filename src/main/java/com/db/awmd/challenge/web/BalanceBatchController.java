@@ -0,0 +1,83 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.BalanceLookupService;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+@RestController
+@RequestMapping("/v1/accounts")
+@Slf4j
+public class BalanceBatchController {
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String SNAPSHOT_EPOCH_HEADER = "X-Snapshot-Epoch";
+    private static final String EMPTY_ACCOUNT_ID = "Account ids must not be empty";
+    private static final String TOO_MANY_ACCOUNT_IDS = "At most %d account ids per request";
+
+    private final AccountsService accountsService;
+
+    private final BalanceLookupService balanceLookupService;
+
+    private final int maxIds;
+
+    @Autowired
+    public BalanceBatchController(AccountsService accountsService, BalanceLookupService balanceLookupService,
+                                  @Value("${accounts.batch-get.max-ids:100000}") int maxIds) {
+        this.accountsService = accountsService;
+        this.balanceLookupService = balanceLookupService;
+        this.maxIds = maxIds;
+    }
+
+    @PostMapping(path = "/balances:batchGet", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Stream the balances of many accounts, one JSON line per requested id in request order, "
+            + "with missing accounts marked inline", produces = NDJSON)
+    @ApiResponses(value = {@ApiResponse(code = 400, message = "Empty id or too many ids")})
+    public ResponseEntity<StreamingResponseBody> batchGetBalances(
+            @ApiParam(value = "Account ids", required = true) @RequestBody List<String> accountIds,
+            @ApiParam(value = "Read all balances as of one instant, reported in " + SNAPSHOT_EPOCH_HEADER)
+            @RequestParam(defaultValue = "false") boolean consistent) {
+        log.info("Looking up balances of {} accounts, consistent {}", accountIds.size(), consistent);
+        if (accountIds.size() > maxIds) {
+            return messageResponse(String.format(TOO_MANY_ACCOUNT_IDS, maxIds));
+        }
+        for (String accountId : accountIds) {
+            if (accountId == null || accountId.isEmpty()) {
+                return messageResponse(EMPTY_ACCOUNT_ID);
+            }
+        }
+        if (!consistent) {
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType(NDJSON))
+                    .body(out -> balanceLookupService.writeBalances(accountIds, out));
+        }
+        BalanceSnapshot snapshot = accountsService.getBalanceSnapshot(accountIds);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .header(SNAPSHOT_EPOCH_HEADER, String.valueOf(snapshot.getEpoch()))
+                .body(out -> balanceLookupService.writeBalances(accountIds, snapshot, out));
+    }
+
+    private ResponseEntity<StreamingResponseBody> messageResponse(String message) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(out -> out.write(message.getBytes(StandardCharsets.UTF_8)));
+    }
+}
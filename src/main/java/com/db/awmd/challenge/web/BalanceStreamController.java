@@ -0,0 +1,117 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.stream.AccountChangeWaiters;
+import com.db.awmd.challenge.stream.BalanceStreamPublisher;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+@RestController
+@RequestMapping("/v1/accounts")
+@Slf4j
+public class BalanceStreamController {
+
+    private final BalanceStreamPublisher balanceStreamPublisher;
+
+    private final AccountChangeWaiters accountChangeWaiters;
+
+    private final AccountsService accountsService;
+
+    private final int maxAccountsPerSubscriber;
+
+    @Autowired
+    public BalanceStreamController(BalanceStreamPublisher balanceStreamPublisher,
+                                   AccountChangeWaiters accountChangeWaiters,
+                                   AccountsService accountsService,
+                                   @Value("${stream.max-accounts-per-subscriber:5000}") int maxAccountsPerSubscriber) {
+        this.balanceStreamPublisher = balanceStreamPublisher;
+        this.accountChangeWaiters = accountChangeWaiters;
+        this.accountsService = accountsService;
+        this.maxAccountsPerSubscriber = maxAccountsPerSubscriber;
+    }
+
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ApiOperation(value = "Stream balance changes of the given accounts as server-sent events, latest value per account "
+            + "when the client falls behind", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ApiResponses(value = {@ApiResponse(code = 400, message = "No or too many account ids"),
+            @ApiResponse(code = 503, message = "Too many subscribers")})
+    public ResponseEntity<SseEmitter> streamBalances(
+            @ApiParam(value = "Comma separated account ids", required = true) @RequestParam List<String> ids) {
+        Set<String> accountIds = new LinkedHashSet<>();
+        for (String id : ids) {
+            if (!id.trim().isEmpty()) {
+                accountIds.add(id.trim());
+            }
+        }
+        if (accountIds.isEmpty() || accountIds.size() > maxAccountsPerSubscriber) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        SseEmitter emitter = balanceStreamPublisher.subscribe(accountIds);
+        if (emitter == null) {
+            log.warn("Balance stream subscriber limit reached");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        log.info("Streaming balances of {} accounts", accountIds.size());
+        return ResponseEntity.ok(emitter);
+    }
+
+    @GetMapping(path = "/{accountId}/changes")
+    @ApiOperation(value = "Long-poll an account: answers once its change sequence passes after, or its ETag differs "
+            + "from If-None-Match, and with 304 when the timeout passes first", response = Account.class,
+            produces = "application/json")
+    @ApiResponses(value = {@ApiResponse(code = 304, message = "Account unchanged before the timeout"),
+            @ApiResponse(code = 400, message = "Neither after nor If-None-Match given"),
+            @ApiResponse(code = 404, message = "Account not found with ID"),
+            @ApiResponse(code = 503, message = "Too many waiting requests")})
+    public DeferredResult<ResponseEntity<Object>> awaitChange(
+            @ApiParam(value = "ID related to the account", required = true) @PathVariable String accountId,
+            @ApiParam(value = "Change sequence the client already has") @RequestParam(required = false) Long after,
+            @ApiParam(value = "Longest wait, capped by accounts.long-poll.max-timeout-ms") @RequestParam(defaultValue = "30000") long timeoutMs,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Account account = accountsService.getAccount(accountId);
+        if (account == null) {
+            return immediately(new ResponseEntity<>("No account with id " + accountId, HttpStatus.NOT_FOUND));
+        }
+        DeferredResult<ResponseEntity<Object>> result;
+        if (after != null) {
+            result = accountChangeWaiters.awaitSequenceAfter(account, after, timeoutMs);
+        } else if (ifNoneMatch != null) {
+            result = accountChangeWaiters.awaitEntityTagChange(account, ifNoneMatch.trim().replaceFirst("^W/", ""), timeoutMs);
+        } else {
+            return immediately(new ResponseEntity<>("Give after or If-None-Match", HttpStatus.BAD_REQUEST));
+        }
+        if (result == null) {
+            log.warn("Long-poll waiter limit reached");
+            return immediately(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        }
+        return result;
+    }
+
+    private static DeferredResult<ResponseEntity<Object>> immediately(ResponseEntity<Object> response) {
+        DeferredResult<ResponseEntity<Object>> result = new DeferredResult<>();
+        result.setResult(response);
+        return result;
+    }
+}
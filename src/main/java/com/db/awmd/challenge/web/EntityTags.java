@@ -0,0 +1,29 @@
+package com.db.awmd.challenge.web;
+
+/**
+ * Matching of {@code If-None-Match} request headers against entity tags.
+ */
+final class EntityTags {
+
+    private EntityTags() {
+    }
+
+    /**
+     * @return true if {@code ifNoneMatch} lists {@code entityTag}, weakly compared, or is {@code *}
+     */
+    static boolean matches(String ifNoneMatch, String entityTag) {
+        if (ifNoneMatch == null || ifNoneMatch.isEmpty()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(entityTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,60 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.ExchangeRates;
+import com.db.awmd.challenge.fx.FxRates;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/v1/fx/rates")
+@Slf4j
+public class FxController {
+    private static final String EMPTY_RATES = "Rates are empty";
+
+    private final FxRates fxRates;
+
+    @Autowired
+    public FxController(FxRates fxRates) {
+        this.fxRates = fxRates;
+    }
+
+    @GetMapping
+    @ApiOperation(value = "Current exchange rates against the base currency", response = ExchangeRates.class,
+            produces = "application/json")
+    public ResponseEntity<Object> getRates() {
+        return new ResponseEntity<>(fxRates.getExchangeRates(), HttpStatus.OK);
+    }
+
+    @PutMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Replace all exchange rates, given as units of each currency per unit of the base currency",
+            response = ExchangeRates.class, produces = "application/json")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Rates replaced"),
+            @ApiResponse(code = 400, message = "Rates are empty or not positive")})
+    public ResponseEntity<Object> updateRates(@RequestBody Map<String, BigDecimal> rates) {
+        log.info("Updating exchange rates {}", rates);
+        if (rates == null || rates.isEmpty()) {
+            return new ResponseEntity<>(EMPTY_RATES, HttpStatus.BAD_REQUEST);
+        }
+        try {
+            fxRates.update(rates);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(fxRates.getExchangeRates(), HttpStatus.OK);
+    }
+}
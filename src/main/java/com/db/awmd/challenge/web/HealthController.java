@@ -0,0 +1,34 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.SaturationReport;
+import com.db.awmd.challenge.health.SaturationMonitor;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/v1/health")
+public class HealthController {
+
+    private final SaturationMonitor saturationMonitor;
+
+    @Autowired
+    public HealthController(SaturationMonitor saturationMonitor) {
+        this.saturationMonitor = saturationMonitor;
+    }
+
+    @GetMapping("/saturation")
+    @ApiOperation(value = "Queue depths, lock waits, pool usage and heap headroom", response = SaturationReport.class,
+            produces = "application/json")
+    @ApiResponses(value = {@ApiResponse(code = 503, message = "Instance is overloaded")})
+    public ResponseEntity<Object> getSaturation() {
+        SaturationReport report = saturationMonitor.check();
+        return new ResponseEntity<>(report, report.isOverloaded() ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.OK);
+    }
+}
@@ -0,0 +1,31 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import io.swagger.annotations.ApiOperation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+@RestController
+@RequestMapping("/v1/metrics")
+public class MetricsController {
+
+    private final MetricsRegistry metricsRegistry;
+
+    @Autowired
+    public MetricsController(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    @GetMapping
+    @ApiOperation(value = "Histograms and gauges recorded by the service")
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new TreeMap<>(metricsRegistry.snapshot());
+        metrics.putAll(metricsRegistry.gaugeValues());
+        return metrics;
+    }
+}
@@ -0,0 +1,34 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.WarmupReport;
+import com.db.awmd.challenge.warmup.JitWarmup;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/v1/readiness")
+public class ReadinessController {
+
+    private final JitWarmup jitWarmup;
+
+    @Autowired
+    public ReadinessController(JitWarmup jitWarmup) {
+        this.jitWarmup = jitWarmup;
+    }
+
+    @GetMapping
+    @ApiOperation(value = "Ready once the startup warm-up has finished", response = WarmupReport.class,
+            produces = "application/json")
+    @ApiResponses(value = {@ApiResponse(code = 503, message = "Warm-up still running")})
+    public ResponseEntity<Object> getReadiness() {
+        WarmupReport report = jitWarmup.getReport();
+        return new ResponseEntity<>(report, report.isReady() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE);
+    }
+}
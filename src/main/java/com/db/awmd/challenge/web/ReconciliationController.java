@@ -0,0 +1,46 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.ReconciliationReport;
+import com.db.awmd.challenge.service.ReconciliationService;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/v1/reconciliation")
+@Slf4j
+public class ReconciliationController {
+    private static final String NO_RECONCILIATION = "No reconciliation has been started";
+
+    private final ReconciliationService reconciliationService;
+
+    @Autowired
+    public ReconciliationController(ReconciliationService reconciliationService) {
+        this.reconciliationService = reconciliationService;
+    }
+
+    @PostMapping
+    @ApiOperation(value = "Start replaying the journal against stored balances", response = ReconciliationReport.class,
+            produces = "application/json")
+    public ResponseEntity<Object> startReconciliation() {
+        log.info("Starting reconciliation");
+        return new ResponseEntity<>(reconciliationService.startReconciliation(), HttpStatus.CREATED);
+    }
+
+    @GetMapping
+    @ApiOperation(value = "Progress and diff report of the latest reconciliation", response = ReconciliationReport.class,
+            produces = "application/json")
+    public ResponseEntity<Object> getReport() {
+        ReconciliationReport report = reconciliationService.getReport();
+        if (report == null) {
+            return new ResponseEntity<>(NO_RECONCILIATION, HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(report, HttpStatus.OK);
+    }
+}
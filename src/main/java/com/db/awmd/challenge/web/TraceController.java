@@ -0,0 +1,60 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.TracedRequest;
+import com.db.awmd.challenge.tracing.SlowRequestRecorder;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/v1/traces")
+@Slf4j
+public class TraceController {
+
+    private final SlowRequestRecorder slowRequestRecorder;
+
+    @Autowired
+    public TraceController(SlowRequestRecorder slowRequestRecorder) {
+        this.slowRequestRecorder = slowRequestRecorder;
+    }
+
+    @GetMapping("/slowest")
+    @ApiOperation(value = "Slowest sampled requests per minute with their spans", response = TracedRequest.class,
+            responseContainer = "List", produces = "application/json")
+    public List<TracedRequest> getSlowest(
+            @ApiParam(value = "Number of latest minutes to return") @RequestParam(defaultValue = "15") int minutes) {
+        return slowRequestRecorder.getSlowest(minutes);
+    }
+
+    @GetMapping("/sample-rate")
+    @ApiOperation(value = "Share of requests traced")
+    public double getSampleRate() {
+        return slowRequestRecorder.getSampleRate();
+    }
+
+    @PutMapping("/sample-rate")
+    @ApiOperation(value = "Set the share of requests traced")
+    @ApiResponses(value = {@ApiResponse(code = 400, message = "Sample rate not between 0 and 1")})
+    public ResponseEntity<Object> setSampleRate(@ApiParam(value = "Share between 0 and 1", required = true)
+                                                @RequestParam double rate) {
+        try {
+            slowRequestRecorder.setSampleRate(rate);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+        log.info("Trace sample rate set to " + rate);
+        return new ResponseEntity<>(rate, HttpStatus.OK);
+    }
+}
@@ -1,7 +1,14 @@
 package com.db.awmd.challenge.web;
 
+import com.db.awmd.challenge.domain.Deadline;
+import com.db.awmd.challenge.domain.FanInTransfer;
+import com.db.awmd.challenge.domain.FanOutTransfer;
+import com.db.awmd.challenge.domain.ScheduledTransfer;
 import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferLegResult;
 import com.db.awmd.challenge.exception.*;
+import com.db.awmd.challenge.service.ScheduledTransferService;
+import com.db.awmd.challenge.service.TransferScheduler;
 import com.db.awmd.challenge.service.TransferService;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
@@ -9,14 +16,26 @@ import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.validation.Valid;
 import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/v1/transfers")
@@ -27,22 +46,55 @@ public class TransferController {
     private static final String NOT_BIGDECIMAL_FORMAT = "Amount is not big decimal format";
     private static final String AMOUNT_LESS_THEN_ZERO = "Amount is less then zero";
     private static final String CANNOT_PROCESS_PAYMENTS = "Cannot process payment";
+    private static final String DEADLINE_EXCEEDED = "Transfer deadline exceeded";
+    private static final String REQUEST_DEADLINE_HEADER = "X-Request-Deadline";
+    private static final Long DEADLINE_GRACE_MS = 200L;
+
+    private static final String SCHEDULED_TRANSFER_NOT_FOUND = "Scheduled transfer not found";
+    private static final String SCHEDULED_TRANSFER_CANCELLED = "Scheduled transfer cancelled";
 
     private final TransferService transferService;
 
+    private final TransferScheduler transferScheduler;
+
+    private final ScheduledTransferService scheduledTransferService;
+
+    private final long defaultTimeoutMs;
+
+    private final long maxTimeoutMs;
+
+    public TransferController(TransferService transferService,
+                              TransferScheduler transferScheduler,
+                              ScheduledTransferService scheduledTransferService,
+                              long defaultTimeoutMs) {
+        this(transferService, transferScheduler, scheduledTransferService, defaultTimeoutMs, defaultTimeoutMs);
+    }
+
     @Autowired
-    public TransferController(TransferService transferService) {
+    public TransferController(TransferService transferService,
+                              TransferScheduler transferScheduler,
+                              ScheduledTransferService scheduledTransferService,
+                              @Value("${transfer.deadline.default-timeout-ms:5000}") long defaultTimeoutMs,
+                              @Value("${transfer.deadline.max-timeout-ms:30000}") long maxTimeoutMs) {
         this.transferService = transferService;
+        this.transferScheduler = transferScheduler;
+        this.scheduledTransferService = scheduledTransferService;
+        this.defaultTimeoutMs = defaultTimeoutMs;
+        this.maxTimeoutMs = Math.max(defaultTimeoutMs, maxTimeoutMs);
     }
 
     @GetMapping("/process/{accountIdFrom}/{accountIdTo}/{amount}")
     @ApiOperation(value = "Transfer balance", response = Transfer.class, produces = "application/json")
     @ApiResponses(value = {@ApiResponse(code = 400, message = "Transfer not processed"),
-            @ApiResponse(code = 404, message = "Transfer not processed")})
+            @ApiResponse(code = 404, message = "Transfer not processed"),
+            @ApiResponse(code = 429, message = "Transfer limit of the account reached"),
+            @ApiResponse(code = 503, message = "Transfer not applied: deadline exceeded or too many transfers queued")})
     public ResponseEntity<Object> processTransfer(
             @ApiParam(value = "ID related From  account", required = true) @PathVariable String accountIdFrom,
             @ApiParam(value = "ID related To account", required = true) @PathVariable String accountIdTo,
-            @ApiParam(value = "Amount", required = true) @PathVariable String amount) {
+            @ApiParam(value = "Amount", required = true) @PathVariable String amount,
+            @ApiParam(value = "Epoch millis after which the transfer is abandoned")
+            @RequestHeader(value = REQUEST_DEADLINE_HEADER, required = false) Long requestDeadline) {
         log.info("Try to start transfer from accountIdFrom");
 
         validateIncomeAccountId(accountIdFrom);
@@ -53,8 +105,17 @@ public class TransferController {
 
         try {
             Transfer transfer = new Transfer(accountIdFrom, accountIdTo, new BigDecimal(amount));
-            transferService.transferMoneyLock(transfer);
+            Deadline deadline = toDeadline(requestDeadline);
+            awaitTransfer(transferScheduler.schedule(transfer, deadline), deadline);
             return new ResponseEntity<>("Success", HttpStatus.CREATED);
+        } catch (TransferTimeoutException | TimeoutException e) {
+            log.warn("Transfer from " + accountIdFrom + " to " + accountIdTo + " amount " + amount + " timed out");
+            return new ResponseEntity<>(DEADLINE_EXCEEDED, HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (TransferQueueFullException e) {
+            log.warn("Transfer from " + accountIdFrom + " to " + accountIdTo + " refused: " + e.getMessage());
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (VelocityLimitExceededException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.TOO_MANY_REQUESTS);
         } catch (AccountNotProcessedExeption | TransferNullObjectException |
                 OverDraftException | AccountNotExistException | SameOperationalAccountException daie) {
             log.error("Cannot make transfer payment from " + accountIdFrom + " to " + accountIdTo + " amount " + amount);
@@ -65,6 +126,129 @@ public class TransferController {
         }
     }
 
+    @PostMapping(path = "/fan-out", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Transfer from one account to many", response = TransferLegResult.class,
+            responseContainer = "List", produces = "application/json")
+    @ApiResponses(value = {@ApiResponse(code = 400, message = "Transfer not processed"),
+            @ApiResponse(code = 429, message = "Transfer limit of the account reached"),
+            @ApiResponse(code = 503, message = "Transfer deadline exceeded")})
+    public ResponseEntity<Object> processFanOutTransfer(
+            @RequestBody @Valid FanOutTransfer fanOutTransfer,
+            @ApiParam(value = "Epoch millis after which the transfer is abandoned")
+            @RequestHeader(value = REQUEST_DEADLINE_HEADER, required = false) Long requestDeadline) {
+        log.info("Try to start fan-out transfer from {}", fanOutTransfer.getAccountFromId());
+        try {
+            List<TransferLegResult> results = transferService.transferFanOut(fanOutTransfer, toDeadline(requestDeadline));
+            return new ResponseEntity<>(results, HttpStatus.CREATED);
+        } catch (TransferTimeoutException e) {
+            log.warn("Fan-out transfer from " + fanOutTransfer.getAccountFromId() + " timed out");
+            return new ResponseEntity<>(DEADLINE_EXCEEDED, HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (VelocityLimitExceededException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.TOO_MANY_REQUESTS);
+        } catch (AccountNotProcessedExeption | TransferNullObjectException |
+                OverDraftException | AccountNotExistException daie) {
+            log.error("Cannot make fan-out transfer from " + fanOutTransfer.getAccountFromId());
+            return new ResponseEntity<>(daie.getMessage(), HttpStatus.CREATED);
+        } catch (Exception daie) {
+            log.error("Cannot make fan-out transfer from " + fanOutTransfer.getAccountFromId(), daie);
+            return new ResponseEntity<>(CANNOT_PROCESS_PAYMENTS, HttpStatus.CREATED);
+        }
+    }
+
+    @PostMapping(path = "/fan-in", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Transfer from many accounts to one", response = TransferLegResult.class,
+            responseContainer = "List", produces = "application/json")
+    @ApiResponses(value = {@ApiResponse(code = 400, message = "Transfer not processed"),
+            @ApiResponse(code = 503, message = "Transfer deadline exceeded")})
+    public ResponseEntity<Object> processFanInTransfer(
+            @RequestBody @Valid FanInTransfer fanInTransfer,
+            @ApiParam(value = "Epoch millis after which the transfer is abandoned")
+            @RequestHeader(value = REQUEST_DEADLINE_HEADER, required = false) Long requestDeadline) {
+        log.info("Try to start fan-in transfer to {}", fanInTransfer.getAccountToId());
+        try {
+            List<TransferLegResult> results = transferService.transferFanIn(fanInTransfer, toDeadline(requestDeadline));
+            return new ResponseEntity<>(results, HttpStatus.CREATED);
+        } catch (TransferTimeoutException e) {
+            log.warn("Fan-in transfer to " + fanInTransfer.getAccountToId() + " timed out");
+            return new ResponseEntity<>(DEADLINE_EXCEEDED, HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (AccountNotProcessedExeption | TransferNullObjectException | AccountNotExistException daie) {
+            log.error("Cannot make fan-in transfer to " + fanInTransfer.getAccountToId());
+            return new ResponseEntity<>(daie.getMessage(), HttpStatus.CREATED);
+        } catch (Exception daie) {
+            log.error("Cannot make fan-in transfer to " + fanInTransfer.getAccountToId(), daie);
+            return new ResponseEntity<>(CANNOT_PROCESS_PAYMENTS, HttpStatus.CREATED);
+        }
+    }
+
+    @PostMapping(path = "/scheduled", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Register future-dated or recurring transfer", response = ScheduledTransfer.class, produces = "application/json")
+    @ApiResponses(value = {@ApiResponse(code = 400, message = "Scheduled transfer not registered")})
+    public ResponseEntity<Object> scheduleTransfer(@RequestBody @Valid ScheduledTransfer scheduledTransfer) {
+        log.info("Scheduling transfer {}", scheduledTransfer);
+        try {
+            return new ResponseEntity<>(scheduledTransferService.register(scheduledTransfer), HttpStatus.CREATED);
+        } catch (WrongFormatException e) {
+            log.error("Cannot register scheduled transfer " + scheduledTransfer + ": " + e.getMessage());
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @GetMapping("/scheduled")
+    @ApiOperation(value = "Get registered scheduled transfers", response = ScheduledTransfer.class, produces = "application/json")
+    public List<ScheduledTransfer> getScheduledTransfers() {
+        return scheduledTransferService.getScheduledTransfers();
+    }
+
+    @DeleteMapping("/scheduled/{scheduledTransferId}")
+    @ApiOperation(value = "Cancel scheduled transfer", produces = "application/json")
+    @ApiResponses(value = {@ApiResponse(code = 404, message = "Scheduled transfer not found")})
+    public ResponseEntity<Object> cancelScheduledTransfer(
+            @ApiParam(value = "ID of the scheduled transfer", required = true) @PathVariable String scheduledTransferId) {
+        log.info("Cancel scheduled transfer {}", scheduledTransferId);
+        if (!scheduledTransferService.cancel(scheduledTransferId)) {
+            return new ResponseEntity<>(SCHEDULED_TRANSFER_NOT_FOUND, HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(SCHEDULED_TRANSFER_CANCELLED, HttpStatus.OK);
+    }
+
+    /**
+     * A deadline from the client header is kept between now and {@code max-timeout-ms} from now.
+     */
+    private Deadline toDeadline(Long requestDeadline) {
+        if (requestDeadline == null) {
+            return Deadline.after(defaultTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+        long nowMillis = System.currentTimeMillis();
+        long timeoutMs = requestDeadline <= nowMillis ? 0L : Math.min(requestDeadline - nowMillis, maxTimeoutMs);
+        return Deadline.after(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits for the transfer until shortly after its deadline and then cancels it, so a timeout
+     * always means it was not applied. One already started cannot be cancelled; it checks the
+     * deadline under its locks, so its outcome follows shortly and is waited for.
+     */
+    private void awaitTransfer(CompletableFuture<Void> transferResult, Deadline deadline) throws Exception {
+        long remainingNanos = deadline.remainingNanos();
+        long graceNanos = TimeUnit.MILLISECONDS.toNanos(DEADLINE_GRACE_MS);
+        try {
+            try {
+                transferResult.get(remainingNanos > Long.MAX_VALUE - graceNanos ? Long.MAX_VALUE : remainingNanos + graceNanos,
+                        TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                if (transferResult.cancel(false)) {
+                    throw e;
+                }
+                transferResult.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     private void validateIncomeAmount(String incomeAmount) {
         if (checkIfEmpty(incomeAmount)) {
             throw new WrongFormatException(EMPTY_AMOUNT_VALUE);
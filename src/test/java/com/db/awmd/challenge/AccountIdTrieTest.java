@@ -0,0 +1,113 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.AccountSearchPage;
+import com.db.awmd.challenge.index.AccountIdTrie;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AccountIdTrieTest {
+    private static final Integer NUMBER_OF_IDS = 5000;
+    private static final Integer NUMBER_OF_QUERIES = 500;
+    private static final String[] BRANCHES = {"DE-", "DE-BER-", "DE-FRA-", "GB-", "GB-LON-", "PL-"};
+
+    private AccountIdTrie trie;
+
+    @Before
+    public void before() {
+        trie = new AccountIdTrie(new AccountsRepositoryInMemory());
+    }
+
+    @Test
+    public void shouldSplitEdgesAndFindIdsByPrefix() {
+        for (String accountId : Arrays.asList("acc-10", "acc-1", "acc", "acc-2", "b", "acc-1")) {
+            trie.add(accountId);
+        }
+
+        assertEquals(5, trie.size());
+        assertEquals(Arrays.asList("acc", "acc-1", "acc-10", "acc-2"), trie.search("acc", null, 10).getAccountIds());
+        assertEquals(Arrays.asList("acc-1", "acc-10"), trie.search("acc-1", null, 10).getAccountIds());
+        assertEquals(Arrays.asList("acc-1", "acc-10", "acc-2"), trie.search("ac", "acc", 10).getAccountIds());
+        assertEquals(Arrays.asList("acc", "acc-1", "acc-10", "acc-2", "b"), trie.search("", null, 10).getAccountIds());
+        assertTrue(trie.search("acc-3", null, 10).getAccountIds().isEmpty());
+        assertTrue(trie.search("acc-100", null, 10).getAccountIds().isEmpty());
+    }
+
+    @Test
+    public void shouldPageThroughMatchesInIdOrder() {
+        TreeSet<String> expected = new TreeSet<>();
+        Random random = new Random(7);
+        for (int i = 0; i < NUMBER_OF_IDS; i++) {
+            String accountId = BRANCHES[random.nextInt(BRANCHES.length)] + random.nextInt(100000);
+            trie.add(accountId);
+            expected.add(accountId);
+        }
+
+        List<String> paged = new ArrayList<>();
+        AccountSearchPage page = trie.search("DE-", null, 97);
+        paged.addAll(page.getAccountIds());
+        while (page.getNext() != null) {
+            page = trie.search("DE-", page.getNext(), 97);
+            paged.addAll(page.getAccountIds());
+        }
+
+        assertEquals(expected.stream().filter(id -> id.startsWith("DE-")).collect(Collectors.toList()), paged);
+        for (int i = 0; i < NUMBER_OF_QUERIES; i++) {
+            String prefix = BRANCHES[random.nextInt(BRANCHES.length)] + random.nextInt(10);
+            String after = prefix + random.nextInt(10000);
+            List<String> matches = expected.tailSet(after, false).stream()
+                    .filter(id -> id.startsWith(prefix)).limit(20).collect(Collectors.toList());
+            assertEquals(matches, trie.search(prefix, after, 20).getAccountIds());
+        }
+        assertEquals(expected.size(), trie.size());
+    }
+
+    @Test
+    public void shouldReturnNoCursorOnLastPage() {
+        trie.add("acc-1");
+        trie.add("acc-2");
+
+        assertEquals("acc-1", trie.search("acc", null, 1).getNext());
+        assertNull(trie.search("acc", null, 2).getNext());
+        assertNull(trie.search("acc", "acc-1", 1).getNext());
+    }
+
+    @Test
+    public void shouldIterateInOrderWhileIdsAreAdded() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> writer = executor.submit(() -> {
+            for (int i = 0; i < NUMBER_OF_IDS; i++) {
+                trie.add("acc-" + i);
+            }
+        });
+        while (!writer.isDone()) {
+            Iterator<String> ids = trie.iterate("acc-", null);
+            String previous = "";
+            while (ids.hasNext()) {
+                String accountId = ids.next();
+                assertTrue(accountId.compareTo(previous) > 0);
+                previous = accountId;
+            }
+        }
+        writer.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        assertEquals(NUMBER_OF_IDS.intValue(), trie.size());
+    }
+}
@@ -8,12 +8,18 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.web.context.WebApplicationContext;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import java.math.BigDecimal;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
@@ -99,4 +105,194 @@ public class AccountsControllerTest {
                 .andExpect(
                         content().string("{\"accountId\":\"" + uniqueAccountId + "\",\"balance\":123.45}"));
     }
+
+    @Test
+    public void getAccountNotModified() throws Exception {
+        this.accountsService.createAccount(new Account("Id-123", new BigDecimal(1000)));
+        String entityTag = this.mockMvc.perform(get("/v1/accounts/Id-123"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        this.mockMvc.perform(get("/v1/accounts/Id-123").header("If-None-Match", entityTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        this.mockMvc.perform(get("/v1/accounts/Id-123/balances").header("If-None-Match", entityTag))
+                .andExpect(status().isNotModified());
+
+        this.accountsService.creditBalanceAccount(this.accountsService.getAccount("Id-123"), BigDecimal.TEN);
+
+        MvcResult changed = this.mockMvc.perform(get("/v1/accounts/Id-123/balances").header("If-None-Match", entityTag))
+                .andExpect(status().isOk())
+                .andExpect(content().string("1010"))
+                .andReturn();
+        assertThat(changed.getResponse().getHeader("ETag")).isNotEqualTo(entityTag);
+    }
+
+    @Test
+    public void getUnknownAccount() throws Exception {
+        this.mockMvc.perform(get("/v1/accounts/Id-404")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void awaitAccountChange() throws Exception {
+        this.accountsService.createAccount(new Account("Id-123", new BigDecimal(1000)));
+        Account account = this.accountsService.getAccount("Id-123");
+        MvcResult result = this.mockMvc.perform(get("/v1/accounts/Id-123/changes?after="
+                + account.getChangeSequence() + "&timeoutMs=5000"))
+                .andReturn();
+        assertThat(result.getRequest().isAsyncStarted()).isTrue();
+
+        this.accountsService.creditBalanceAccount(account, new BigDecimal(5));
+
+        this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"accountId\":\"Id-123\",\"balance\":1005}"));
+    }
+
+    @Test
+    public void awaitAccountChangeTimesOut() throws Exception {
+        this.accountsService.createAccount(new Account("Id-123", new BigDecimal(1000)));
+        String entityTag = this.accountsService.getAccount("Id-123").getEntityTag();
+        MvcResult result = this.mockMvc.perform(get("/v1/accounts/Id-123/changes?timeoutMs=50")
+                .header("If-None-Match", entityTag))
+                .andReturn();
+
+        // the servlet container times async requests out, MockMvc has to be told to
+        MockAsyncContext asyncContext = (MockAsyncContext) result.getRequest().getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onTimeout(new AsyncEvent(asyncContext));
+        }
+        this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    public void streamBalances() throws Exception {
+        this.accountsService.createAccount(new Account("Id-123", new BigDecimal(1000)));
+        MvcResult result = this.mockMvc.perform(get("/v1/accounts/stream?ids=Id-123"))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertThat(result.getRequest().isAsyncStarted()).isTrue();
+
+        this.accountsService.creditBalanceAccount(this.accountsService.getAccount("Id-123"), new BigDecimal(5));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!result.getResponse().getContentAsString().contains("1005") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(result.getResponse().getContentType()).startsWith(MediaType.TEXT_EVENT_STREAM_VALUE);
+        assertThat(result.getResponse().getContentAsString())
+                .contains("event:balance\ndata:{\"accountId\":\"Id-123\",\"balance\":1000}")
+                .contains("event:balance\ndata:{\"accountId\":\"Id-123\",\"balance\":1005}");
+    }
+
+    @Test
+    public void streamBalancesWithoutIds() throws Exception {
+        this.mockMvc.perform(get("/v1/accounts/stream?ids=")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void batchGetBalances() throws Exception {
+        this.accountsService.createAccount(new Account("Id-123", new BigDecimal(1000)));
+        this.accountsService.createAccount(new Account("Id-124", new BigDecimal("12.5")));
+        MvcResult result = this.mockMvc.perform(post("/v1/accounts/balances:batchGet").contentType(MediaType.APPLICATION_JSON)
+                .content("[\"Id-124\",\"Id-404\",\"Id-123\"]"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn();
+
+        this.mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+        assertThat(result.getResponse().getContentAsString()).isEqualTo(
+                "{\"accountId\":\"Id-124\",\"balance\":12.5}\n"
+                        + "{\"accountId\":\"Id-404\",\"missing\":true}\n"
+                        + "{\"accountId\":\"Id-123\",\"balance\":1000}\n");
+    }
+
+    @Test
+    public void batchGetBalancesFromSnapshot() throws Exception {
+        this.accountsService.createAccount(new Account("Id-123", new BigDecimal(1000)));
+        MvcResult result = this.mockMvc.perform(post("/v1/accounts/balances:batchGet?consistent=true")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[\"Id-123\",\"Id-404\"]"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        this.mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+        assertThat(result.getResponse().getHeader("X-Snapshot-Epoch")).isNotNull();
+        assertThat(result.getResponse().getContentAsString()).isEqualTo(
+                "{\"accountId\":\"Id-123\",\"balance\":1000}\n"
+                        + "{\"accountId\":\"Id-404\",\"missing\":true}\n");
+    }
+
+    @Test
+    public void batchGetBalancesWithEmptyId() throws Exception {
+        this.mockMvc.perform(post("/v1/accounts/balances:batchGet").contentType(MediaType.APPLICATION_JSON)
+                .content("[\"Id-123\",\"\"]"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getStatementAsCsv() throws Exception {
+        this.accountsService.createAccount(new Account("Id-123", new BigDecimal(1000)));
+        MvcResult result = this.mockMvc.perform(get("/v1/accounts/Id-123/statement?format=csv"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv"))
+                .andReturn();
+
+        this.mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+        String[] lines = result.getResponse().getContentAsString().split("\n");
+        assertThat(lines).hasSize(4);
+        assertThat(lines[2]).contains(",OPEN,,1000,1000");
+        assertThat(lines[3]).endsWith(",1000");
+    }
+
+    @Test
+    public void getAllAccountsStreamed() throws Exception {
+        this.accountsService.createAccount(new Account("Id-123", new BigDecimal(1000)));
+        this.accountsService.createAccount(new Account("Id-456", new BigDecimal(5)));
+        MvcResult result = this.mockMvc.perform(get("/v1/accounts/all"))
+                .andExpect(status().isCreated())
+                .andReturn();
+
+        this.mockMvc.perform(asyncDispatch(result));
+        String accounts = result.getResponse().getContentAsString();
+        assertThat(accounts).startsWith("[").endsWith("]");
+        assertThat(accounts).contains("{\"accountId\":\"Id-123\",\"balance\":1000}");
+        assertThat(accounts).contains("{\"accountId\":\"Id-456\",\"balance\":5}");
+    }
+
+    @Test
+    public void getAllAccountsWhenNoneExist() throws Exception {
+        MvcResult result = this.mockMvc.perform(get("/v1/accounts/all"))
+                .andExpect(status().isCreated())
+                .andReturn();
+
+        this.mockMvc.perform(asyncDispatch(result));
+        assertThat(result.getResponse().getContentAsString()).isEqualTo("No account records exists");
+    }
+
+    @Test
+    public void getStatementOfUnknownAccount() throws Exception {
+        this.mockMvc.perform(get("/v1/accounts/Id-unknown/statement")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void getStatementWithReversedRange() throws Exception {
+        this.accountsService.createAccount(new Account("Id-123", new BigDecimal(1000)));
+        this.mockMvc.perform(get("/v1/accounts/Id-123/statement?from=10&to=5")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void searchAccountsByPrefix() throws Exception {
+        this.accountsService.createAccount(new Account("Id-123", new BigDecimal(1000)));
+        this.accountsService.createAccount(new Account("Id-124", new BigDecimal(1000)));
+        this.accountsService.createAccount(new Account("Other", new BigDecimal(1000)));
+
+        this.mockMvc.perform(get("/v1/accounts/search?prefix=Id-&limit=1"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"accountIds\":[\"Id-123\"],\"next\":\"Id-123\"}"));
+        this.mockMvc.perform(get("/v1/accounts/search?prefix=Id-&after=Id-123"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"accountIds\":[\"Id-124\"],\"next\":null}"));
+    }
 }
@@ -0,0 +1,157 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.AccountsRepositoryJdbc;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AccountsServiceImpl;
+import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.TransferService;
+import com.db.awmd.challenge.service.TransferServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "accounts.store=jdbc",
+        "accounts.jdbc.url=jdbc:h2:mem:accounts-test;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000"})
+@Slf4j
+public class AccountsRepositoryJdbcTest {
+    private static final String ACCOUNT_FROM_ID = "acc-1";
+    private static final String ACCOUNT_TO_ID = "acc-2";
+    private static final BigDecimal BALANCE_100 = new BigDecimal(100);
+    private static final BigDecimal AMOUNT_10 = new BigDecimal(10);
+    private static final Integer NUMBER_OF_TRANSFERS = 200;
+    private static final Integer NUMBER_OF_BENCHMARK_ACCOUNTS = 64;
+    private static final Integer NUMBER_OF_BENCHMARK_TRANSFERS = 50000;
+
+    @Autowired
+    private AccountsService accountsService;
+
+    @Autowired
+    private AccountsRepository accountsRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private NotificationService notificationService;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void before() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        accountsService.clearAccounts();
+        accountsService.createAccount(new Account(ACCOUNT_FROM_ID, BALANCE_100));
+        accountsService.createAccount(new Account(ACCOUNT_TO_ID, BigDecimal.ZERO));
+    }
+
+    @Test
+    public void shouldStoreTransferInDatabase() throws Exception {
+        assertTrue(accountsRepository instanceof AccountsRepositoryJdbc);
+
+        accountsService.makeTransfer(accountsService.getAccount(ACCOUNT_FROM_ID), accountsService.getAccount(ACCOUNT_TO_ID), AMOUNT_10);
+
+        assertEquals(new BigDecimal(90), storedBalance(ACCOUNT_FROM_ID));
+        assertEquals(AMOUNT_10, storedBalance(ACCOUNT_TO_ID));
+    }
+
+    @Test
+    public void shouldReloadAccountsFromDatabase() throws Exception {
+        accountsService.makeTransfer(accountsService.getAccount(ACCOUNT_FROM_ID), accountsService.getAccount(ACCOUNT_TO_ID), AMOUNT_10);
+
+        AccountsRepositoryJdbc restarted = new AccountsRepositoryJdbc(dataSource, transactionManager);
+        restarted.load();
+
+        assertEquals(new Account(ACCOUNT_FROM_ID, new BigDecimal(90)), restarted.getAccount(ACCOUNT_FROM_ID));
+        assertEquals(new Account(ACCOUNT_TO_ID, AMOUNT_10), restarted.getAccount(ACCOUNT_TO_ID));
+    }
+
+    @Test(expected = DuplicateAccountIdException.class)
+    public void shouldRejectDuplicateAccount() {
+        accountsService.createAccount(new Account(ACCOUNT_FROM_ID, BALANCE_100));
+    }
+
+    @Test
+    public void shouldConserveMoneyThenTransfersRunConcurrently() throws Exception {
+        TransferService transferService = new TransferServiceImpl(accountsService, notificationService);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Callable<Object>> tasks = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_TRANSFERS; i++) {
+            tasks.add(Executors.callable(() -> transferService.transferMoneyLock(new Transfer(ACCOUNT_FROM_ID, ACCOUNT_TO_ID, BigDecimal.ONE))));
+            tasks.add(Executors.callable(() -> transferService.transferMoneyLock(new Transfer(ACCOUNT_TO_ID, ACCOUNT_FROM_ID, BigDecimal.ONE))));
+        }
+        executor.invokeAll(tasks);
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertEquals(BALANCE_100, storedBalance(ACCOUNT_FROM_ID).add(storedBalance(ACCOUNT_TO_ID)));
+        assertEquals(accountsService.getAccount(ACCOUNT_FROM_ID).getBalance(), storedBalance(ACCOUNT_FROM_ID));
+    }
+
+    /**
+     * Run with -Dbenchmark=true.
+     */
+    @Test
+    public void benchmarkAgainstInMemoryStore() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+
+        long inMemoryNanos = runTransfers(new AccountsServiceImpl(new AccountsRepositoryInMemory()));
+        long jdbcNanos = runTransfers(accountsService);
+
+        log.info("In-memory store: " + NUMBER_OF_BENCHMARK_TRANSFERS * TimeUnit.SECONDS.toNanos(1) / inMemoryNanos + " transfers/s");
+        log.info("JDBC store: " + NUMBER_OF_BENCHMARK_TRANSFERS * TimeUnit.SECONDS.toNanos(1) / jdbcNanos + " transfers/s");
+    }
+
+    private long runTransfers(AccountsService accountsService) throws Exception {
+        accountsService.clearAccounts();
+        for (int i = 0; i < NUMBER_OF_BENCHMARK_ACCOUNTS; i++) {
+            accountsService.createAccount(new Account("bench-" + i, new BigDecimal(NUMBER_OF_BENCHMARK_TRANSFERS)));
+        }
+        TransferService transferService = new TransferServiceImpl(accountsService, notificationService);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Callable<Object>> tasks = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_BENCHMARK_TRANSFERS; i++) {
+            Transfer transfer = new Transfer("bench-" + i % NUMBER_OF_BENCHMARK_ACCOUNTS,
+                    "bench-" + (i + 1) % NUMBER_OF_BENCHMARK_ACCOUNTS, BigDecimal.ONE);
+            tasks.add(Executors.callable(() -> transferService.transferMoneyLock(transfer)));
+        }
+        long start = System.nanoTime();
+        executor.invokeAll(tasks);
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        return elapsed;
+    }
+
+    private BigDecimal storedBalance(String accountId) {
+        return jdbcTemplate.queryForObject("SELECT balance FROM account WHERE account_id = ?", BigDecimal.class, accountId);
+    }
+}
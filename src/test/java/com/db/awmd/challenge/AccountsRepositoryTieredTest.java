@@ -0,0 +1,243 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.AccountNotExistException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.index.MembershipFilter;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.AccountsRepositoryTiered;
+import com.db.awmd.challenge.repository.ColdAccountStore;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AccountsServiceImpl;
+import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.TransferServiceImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+public class AccountsRepositoryTieredTest {
+    private static final String ACCOUNT_ID = "acc-";
+    private static final Integer NUMBER_OF_ACCOUNTS = 10;
+    private static final Long IDLE_MS = 50L;
+    private static final Long NEVER_MS = TimeUnit.HOURS.toMillis(1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MetricsRegistry metricsRegistry;
+
+    private AccountsRepositoryTiered repository;
+
+    private AccountsService accountsService;
+
+    @Before
+    public void before() throws Exception {
+        metricsRegistry = new MetricsRegistry();
+        repository = new AccountsRepositoryTiered(new AccountsRepositoryInMemory(),
+                new ColdAccountStore(folder.newFolder("cold").toPath(), 4), metricsRegistry, IDLE_MS, NEVER_MS, 1000);
+        accountsService = new AccountsServiceImpl(repository);
+        for (int i = 0; i < NUMBER_OF_ACCOUNTS; i++) {
+            accountsService.createAccount(new Account(ACCOUNT_ID + i, new BigDecimal(i)));
+        }
+    }
+
+    @After
+    public void after() {
+        repository.shutdown();
+    }
+
+    @Test
+    public void shouldArchiveIdleAccountsAndFaultThemIn() throws Exception {
+        Account archived = repository.getAccount(ACCOUNT_ID + 3);
+        Thread.sleep(IDLE_MS * 2);
+        repository.getAccount(ACCOUNT_ID + 0);
+
+        assertEquals(NUMBER_OF_ACCOUNTS - 1, repository.sweep());
+        assertEquals(1, repository.getHotSize());
+        assertEquals(NUMBER_OF_ACCOUNTS - 1, repository.getColdSize());
+        assertTrue(archived.isArchived());
+        assertEquals(NUMBER_OF_ACCOUNTS.intValue(), repository.getAllAccount().size());
+
+        Account faulted = repository.getAccount(ACCOUNT_ID + 3);
+
+        assertNotSame(archived, faulted);
+        assertFalse(faulted.isArchived());
+        assertEquals(0, new BigDecimal(3).compareTo(faulted.getBalance()));
+        assertEquals(2, repository.getHotSize());
+        assertEquals(1L, metricsRegistry.gaugeValues().get("accounts.tier.promotions").longValue());
+        assertEquals(1L, metricsRegistry.snapshot().get("accounts.tier.fault-in.micros").getCount());
+    }
+
+    @Test
+    public void shouldAnswerUnknownIdsWithoutFaultIn() throws Exception {
+        Thread.sleep(IDLE_MS * 2);
+        repository.sweep();
+
+        for (int i = 0; i < 1000; i++) {
+            assertNull(repository.getAccount("unknown-" + i));
+        }
+
+        assertEquals(0L, metricsRegistry.gaugeValues().get("accounts.tier.promotions").longValue());
+        assertTrue(metricsRegistry.gaugeValues().get("accounts.tier.filter.false-positives").longValue() < 100);
+    }
+
+    @Test
+    public void shouldApplyChangesThroughStaleReferences() throws Exception {
+        Account stale = repository.getAccount(ACCOUNT_ID + 1);
+        Thread.sleep(IDLE_MS * 2);
+        repository.sweep();
+
+        accountsService.creditBalanceAccount(stale, BigDecimal.TEN);
+        new TransferServiceImpl(accountsService, mock(NotificationService.class))
+                .transferMoneyLock(new Transfer(ACCOUNT_ID + 2, ACCOUNT_ID + 1, BigDecimal.ONE));
+
+        assertEquals(0, new BigDecimal(12).compareTo(repository.getAccount(ACCOUNT_ID + 1).getBalance()));
+        assertEquals(0, BigDecimal.ONE.compareTo(repository.getAccount(ACCOUNT_ID + 2).getBalance()));
+    }
+
+    @Test(expected = AccountNotExistException.class)
+    public void shouldRejectUpdateOfArchivedInstance() throws Exception {
+        Account stale = repository.getAccount(ACCOUNT_ID + 1);
+        Thread.sleep(IDLE_MS * 2);
+        repository.sweep();
+
+        repository.updateAccount(stale);
+    }
+
+    @Test(expected = DuplicateAccountIdException.class)
+    public void shouldRejectDuplicateOfArchivedAccount() throws Exception {
+        Thread.sleep(IDLE_MS * 2);
+        repository.sweep();
+
+        repository.createAccount(new Account(ACCOUNT_ID + 5));
+    }
+
+    @Test
+    public void shouldKeepSplitAccountsHot() throws Exception {
+        accountsService.splitAccount(ACCOUNT_ID + 4, 4);
+        Thread.sleep(IDLE_MS * 2);
+
+        assertEquals(NUMBER_OF_ACCOUNTS - 1, repository.sweep());
+        assertEquals(1, repository.getHotSize());
+    }
+
+    @Test
+    public void shouldVisitColdAccountsWithoutFaultingThemIn() throws Exception {
+        Thread.sleep(IDLE_MS * 2);
+        repository.getAccount(ACCOUNT_ID + 0);
+        repository.sweep();
+        List<Account> visited = new ArrayList<>();
+
+        repository.forEachAccount(visited::add);
+
+        assertEquals(NUMBER_OF_ACCOUNTS.intValue(), visited.size());
+        assertEquals(NUMBER_OF_ACCOUNTS - 1, visited.stream().filter(Account::isArchived).count());
+        assertEquals(1, repository.getHotSize());
+        assertTrue(repository.hasAccounts());
+        assertEquals(0L, metricsRegistry.gaugeValues().get("accounts.tier.promotions").longValue());
+    }
+
+    @Test
+    public void shouldClearBothTiers() throws Exception {
+        Thread.sleep(IDLE_MS * 2);
+        repository.sweep();
+
+        repository.clearAccounts();
+
+        assertNull(repository.getAccount(ACCOUNT_ID + 1));
+        assertEquals(0, repository.getAllAccount().size());
+        assertEquals(0L, repository.getColdSize());
+    }
+
+    @Test
+    public void shouldDeleteOnlyBucketFilesOfColdTier() throws Exception {
+        Path directory = folder.newFolder("shared").toPath();
+        Path foreign = Files.write(directory.resolve("accounts.mv.db"), new byte[]{1});
+        ColdAccountStore cold = new ColdAccountStore(directory, 4);
+        cold.write(new Account(ACCOUNT_ID + 1, BigDecimal.ONE));
+
+        cold.clear();
+
+        assertTrue(Files.exists(foreign));
+        assertNull(cold.read(ACCOUNT_ID + 1));
+    }
+
+    @Test
+    public void shouldKeepAccountColdWhenRemovalFails() throws Exception {
+        repository.shutdown();
+        FailingColdAccountStore cold = new FailingColdAccountStore(folder.newFolder("failing"));
+        repository = new AccountsRepositoryTiered(new AccountsRepositoryInMemory(), cold, metricsRegistry, IDLE_MS, NEVER_MS, 1000);
+        repository.createAccount(new Account(ACCOUNT_ID + 1, BigDecimal.TEN));
+        Thread.sleep(IDLE_MS * 2);
+        repository.sweep();
+        cold.failing = true;
+
+        try {
+            repository.getAccount(ACCOUNT_ID + 1);
+            fail("Fault-in should fail with the cold tier");
+        } catch (UncheckedIOException expected) {
+            // the account must stay in the cold tier only
+        }
+
+        assertEquals(0, repository.getHotSize());
+        assertEquals(1, repository.getAllAccount().size());
+        cold.failing = false;
+        assertEquals(0, BigDecimal.TEN.compareTo(repository.getAccount(ACCOUNT_ID + 1).getBalance()));
+        assertEquals(1, repository.getAllAccount().size());
+    }
+
+    @Test
+    public void membershipFilterShouldNeverMissAddedIds() {
+        MembershipFilter filter = new MembershipFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add(ACCOUNT_ID + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain(ACCOUNT_ID + i));
+            if (filter.mightContain("other-" + i)) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue("False positives: " + falsePositives, falsePositives < 300);
+    }
+
+    private static class FailingColdAccountStore extends ColdAccountStore {
+        private volatile boolean failing;
+
+        private FailingColdAccountStore(File directory) {
+            super(directory.toPath(), 4);
+        }
+
+        @Override
+        public void remove(String accountId) {
+            if (failing) {
+                throw new UncheckedIOException(new IOException("Disk full"));
+            }
+            super.remove(accountId);
+        }
+    }
+}
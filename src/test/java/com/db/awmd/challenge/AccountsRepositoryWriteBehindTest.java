@@ -0,0 +1,332 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.config.JdbcAccountsConfiguration;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.AccountNotExistException;
+import com.db.awmd.challenge.metrics.HistogramSnapshot;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.AccountsRepositoryJdbc;
+import com.db.awmd.challenge.repository.AccountsRepositoryWriteBehind;
+import com.db.awmd.challenge.repository.TransferJournalFile;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AccountsServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.math.BigDecimal;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AccountsRepositoryWriteBehindTest {
+    private static final String ACCOUNT_ID = "acc-";
+    private static final Integer NUMBER_OF_ACCOUNTS = 10;
+    private static final Long NEVER_MS = TimeUnit.HOURS.toMillis(1);
+    private static final String JOURNAL_FILE = "build/test-data/write-behind.journal";
+    private static final String JDBC_URL = "jdbc:h2:mem:write-behind-recovery;DB_CLOSE_DELAY=-1";
+
+    private StoreRecorder store;
+
+    private MetricsRegistry metricsRegistry;
+
+    private AccountsRepositoryWriteBehind repository;
+
+    @Before
+    public void before() {
+        store = new StoreRecorder();
+        metricsRegistry = new MetricsRegistry();
+    }
+
+    @After
+    public void after() {
+        if (repository != null) {
+            repository.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldCoalesceUpdatesUntilFlush() {
+        repository = new AccountsRepositoryWriteBehind(store, metricsRegistry, NEVER_MS, 256, 1000, 1000L);
+        AccountsService accountsService = new AccountsServiceImpl(repository);
+        createAccounts(accountsService);
+
+        for (int i = 0; i < 100; i++) {
+            accountsService.creditBalanceAccount(repository.getAccount(ACCOUNT_ID + i % NUMBER_OF_ACCOUNTS), BigDecimal.ONE);
+        }
+
+        assertEquals(0, store.writes.get());
+        assertEquals(NUMBER_OF_ACCOUNTS.intValue(), repository.getDirtyCount());
+
+        repository.flush();
+
+        assertEquals(NUMBER_OF_ACCOUNTS.intValue(), store.writes.get());
+        assertEquals(1, store.batches.get());
+        assertEquals(0, new BigDecimal(10).compareTo(store.persisted.get(ACCOUNT_ID + 0)));
+        HistogramSnapshot batchSizes = metricsRegistry.snapshot().get("accounts.write-behind.flush.batch.size");
+        assertEquals(1L, batchSizes.getCount());
+        assertEquals(1L, metricsRegistry.snapshot().get("accounts.write-behind.flush.lag.nanos").getCount());
+    }
+
+    @Test
+    public void shouldFlushOnTimerAndWhenBatchFills() throws Exception {
+        repository = new AccountsRepositoryWriteBehind(store, metricsRegistry, 20L, 4, 1000, 1000L);
+        AccountsService accountsService = new AccountsServiceImpl(repository);
+        createAccounts(accountsService);
+
+        for (int i = 0; i < NUMBER_OF_ACCOUNTS; i++) {
+            accountsService.creditBalanceAccount(repository.getAccount(ACCOUNT_ID + i), BigDecimal.TEN);
+        }
+        awaitClean();
+
+        for (int i = 0; i < NUMBER_OF_ACCOUNTS; i++) {
+            assertEquals(0, repository.getAccount(ACCOUNT_ID + i).getBalance().compareTo(store.persisted.get(ACCOUNT_ID + i)));
+        }
+        assertTrue(store.batches.get() >= 3);
+    }
+
+    @Test
+    public void shouldWriteThroughWhenDirtySetStaysFull() throws Exception {
+        repository = new AccountsRepositoryWriteBehind(store, metricsRegistry, NEVER_MS, 256, 2, 50L);
+        AccountsService accountsService = new AccountsServiceImpl(repository);
+        createAccounts(accountsService);
+        store.blocked = new CountDownLatch(1);
+
+        accountsService.creditBalanceAccount(repository.getAccount(ACCOUNT_ID + 0), BigDecimal.ONE);
+        accountsService.creditBalanceAccount(repository.getAccount(ACCOUNT_ID + 1), BigDecimal.ONE);
+        accountsService.creditBalanceAccount(repository.getAccount(ACCOUNT_ID + 2), BigDecimal.ONE);
+
+        assertEquals(0, BigDecimal.ONE.compareTo(store.persisted.get(ACCOUNT_ID + 2)));
+        assertEquals(1L, metricsRegistry.gaugeValues().get("accounts.write-behind.writes-through").longValue());
+        store.blocked.countDown();
+    }
+
+    @Test
+    public void shouldFlushEverythingOnShutdown() {
+        repository = new AccountsRepositoryWriteBehind(store, metricsRegistry, NEVER_MS, 256, 1000, 1000L);
+        AccountsService accountsService = new AccountsServiceImpl(repository);
+        createAccounts(accountsService);
+        accountsService.debitBalanceAccount(repository.getAccount(ACCOUNT_ID + 3), BigDecimal.ONE);
+
+        repository.shutdown();
+        repository = null;
+
+        assertEquals(0, BigDecimal.ZERO.compareTo(store.persisted.get(ACCOUNT_ID + 3)));
+        assertEquals(1, store.writes.get());
+    }
+
+    @Test
+    public void shouldRetryFailedFlush() {
+        repository = new AccountsRepositoryWriteBehind(store, metricsRegistry, NEVER_MS, 256, 1000, 1000L);
+        AccountsService accountsService = new AccountsServiceImpl(repository);
+        createAccounts(accountsService);
+        accountsService.creditBalanceAccount(repository.getAccount(ACCOUNT_ID + 0), BigDecimal.ONE);
+        store.failing = true;
+
+        repository.flush();
+
+        assertEquals(1, repository.getDirtyCount());
+        assertNull(store.persisted.get(ACCOUNT_ID + 0));
+        store.failing = false;
+        repository.flush();
+        assertEquals(0, BigDecimal.ONE.compareTo(store.persisted.get(ACCOUNT_ID + 0)));
+    }
+
+    @Test
+    public void shouldFlushAccountsOfOneTransferInOneBatch() {
+        repository = new AccountsRepositoryWriteBehind(store, metricsRegistry, NEVER_MS, 2, 1000, 1000L);
+        AccountsService accountsService = new AccountsServiceImpl(repository);
+        createAccounts(accountsService);
+        accountsService.creditBalanceAccount(repository.getAccount(ACCOUNT_ID + 5), BigDecimal.ONE);
+        accountsService.makeTransfer(repository.getAccount(ACCOUNT_ID + 3), repository.getAccount(ACCOUNT_ID + 1), BigDecimal.ONE);
+        accountsService.makeTransfer(repository.getAccount(ACCOUNT_ID + 1), repository.getAccount(ACCOUNT_ID + 2), BigDecimal.ONE);
+
+        repository.flush();
+
+        assertEquals(0, repository.getDirtyCount());
+        assertTrue(store.batchContents.contains(new HashSet<>(Arrays.asList(ACCOUNT_ID + 1, ACCOUNT_ID + 2, ACCOUNT_ID + 3))));
+        assertEquals(0, BigDecimal.ONE.compareTo(store.persisted.get(ACCOUNT_ID + 2)));
+    }
+
+    @Test
+    public void shouldLeaveLockedAccountsDirtyForNextFlush() throws Exception {
+        repository = new AccountsRepositoryWriteBehind(store, metricsRegistry, NEVER_MS, 256, 1000, 1000L);
+        AccountsService accountsService = new AccountsServiceImpl(repository);
+        createAccounts(accountsService);
+        accountsService.makeTransfer(repository.getAccount(ACCOUNT_ID + 3), repository.getAccount(ACCOUNT_ID + 0), BigDecimal.ONE);
+        accountsService.creditBalanceAccount(repository.getAccount(ACCOUNT_ID + 5), BigDecimal.ONE);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            Account busy = repository.getAccount(ACCOUNT_ID + 0);
+            busy.getLock().lock();
+            try {
+                locked.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                busy.getLock().unlock();
+            }
+        });
+        holder.start();
+        locked.await(5, TimeUnit.SECONDS);
+
+        repository.flush();
+
+        assertEquals(2, repository.getDirtyCount());
+        assertEquals(0, BigDecimal.ONE.compareTo(store.persisted.get(ACCOUNT_ID + 5)));
+        assertNull(store.persisted.get(ACCOUNT_ID + 3));
+        release.countDown();
+        holder.join(5000);
+        repository.flush();
+        assertEquals(0, repository.getDirtyCount());
+        assertEquals(0, BigDecimal.ZERO.compareTo(store.persisted.get(ACCOUNT_ID + 3)));
+    }
+
+    @Test
+    public void shouldRecoverUnflushedBalancesFromJournalAfterCrash() throws Exception {
+        Path journalFile = Paths.get(JOURNAL_FILE);
+        Files.createDirectories(journalFile.toAbsolutePath().getParent());
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(journalFile.toAbsolutePath().getParent(),
+                journalFile.getFileName() + "*")) {
+            for (Path segment : segments) {
+                Files.delete(segment);
+            }
+        }
+        DataSource dataSource = JdbcAccountsConfiguration.createDataSource(JDBC_URL, 2, 8);
+        TransferJournalFile journal = openJournal();
+        AccountsRepositoryJdbc crashed = openJdbc(dataSource);
+        crashed.clearAccounts();
+        AccountsRepositoryWriteBehind beforeCrash =
+                new AccountsRepositoryWriteBehind(crashed, journal, metricsRegistry, NEVER_MS, 256, 1000, 1000L);
+        beforeCrash.start();
+        AccountsService accountsService = new AccountsServiceImpl(beforeCrash, journal);
+        createAccounts(accountsService);
+        accountsService.creditBalanceAccount(beforeCrash.getAccount(ACCOUNT_ID + 0), BigDecimal.TEN);
+        beforeCrash.flush();
+        accountsService.makeTransfer(beforeCrash.getAccount(ACCOUNT_ID + 0), beforeCrash.getAccount(ACCOUNT_ID + 1),
+                BigDecimal.ONE);
+        // written through, so its row no longer tells which journal entries it includes
+        crashed.updateAccount(beforeCrash.getAccount(ACCOUNT_ID + 1));
+        accountsService.makeTransfer(beforeCrash.getAccount(ACCOUNT_ID + 1), beforeCrash.getAccount(ACCOUNT_ID + 2),
+                BigDecimal.ONE);
+        accountsService.debitBalanceAccount(beforeCrash.getAccount(ACCOUNT_ID + 3), BigDecimal.ONE);
+        journal.shutdown();
+        Map<String, BigDecimal> expected = new ConcurrentHashMap<>();
+        for (int i = 0; i < NUMBER_OF_ACCOUNTS; i++) {
+            expected.put(ACCOUNT_ID + i, beforeCrash.getAccount(ACCOUNT_ID + i).getBalance());
+        }
+
+        journal = openJournal();
+        AccountsRepositoryJdbc restarted = openJdbc(dataSource);
+        repository = new AccountsRepositoryWriteBehind(restarted, journal, metricsRegistry, NEVER_MS, 256, 1000, 1000L);
+        repository.start();
+        AccountsRepositoryJdbc reloaded = openJdbc(dataSource);
+
+        try {
+            for (int i = 0; i < NUMBER_OF_ACCOUNTS; i++) {
+                BigDecimal balance = expected.get(ACCOUNT_ID + i);
+                assertEquals(0, balance.compareTo(repository.getAccount(ACCOUNT_ID + i).getBalance()));
+                assertEquals(0, balance.compareTo(reloaded.getAccount(ACCOUNT_ID + i).getBalance()));
+            }
+            assertEquals(journal.getLastSequence(), reloaded.getAccount(ACCOUNT_ID + 3).getJournalSequence());
+        } finally {
+            journal.shutdown();
+            dataSource.close();
+        }
+    }
+
+    @Test(expected = AccountNotExistException.class)
+    public void shouldRejectUpdateOfUnknownAccount() {
+        repository = new AccountsRepositoryWriteBehind(store, metricsRegistry, NEVER_MS, 256, 1000, 1000L);
+
+        repository.updateAccount(new Account("missing"));
+    }
+
+    private void createAccounts(AccountsService accountsService) {
+        for (int i = 0; i < NUMBER_OF_ACCOUNTS; i++) {
+            accountsService.createAccount(new Account(ACCOUNT_ID + i, i == 3 ? BigDecimal.ONE : BigDecimal.ZERO));
+        }
+    }
+
+    private TransferJournalFile openJournal() throws Exception {
+        TransferJournalFile journal = new TransferJournalFile(new ObjectMapper(), metricsRegistry, JOURNAL_FILE, 200L, 64);
+        journal.start();
+        return journal;
+    }
+
+    private AccountsRepositoryJdbc openJdbc(DataSource dataSource) {
+        AccountsRepositoryJdbc jdbc = new AccountsRepositoryJdbc(dataSource, new DataSourceTransactionManager(dataSource));
+        jdbc.load();
+        return jdbc;
+    }
+
+    private void awaitClean() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((repository.getDirtyCount() > 0 || store.writes.get() < NUMBER_OF_ACCOUNTS)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * In-memory store that records what was written to it.
+     */
+    private static class StoreRecorder extends AccountsRepositoryInMemory {
+        private final Map<String, BigDecimal> persisted = new ConcurrentHashMap<>();
+        private final AtomicInteger writes = new AtomicInteger();
+        private final AtomicInteger batches = new AtomicInteger();
+        private final List<Set<String>> batchContents = new CopyOnWriteArrayList<>();
+        private volatile boolean failing;
+        private volatile CountDownLatch blocked;
+
+        @Override
+        public void updateAccount(Account account) {
+            super.updateAccount(account);
+            persisted.put(account.getAccountId(), account.getBalance());
+            writes.incrementAndGet();
+        }
+
+        @Override
+        public void updateAccounts(List<Account> accounts) {
+            CountDownLatch latch = blocked;
+            if (latch != null) {
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failing) {
+                throw new IllegalStateException("Store unavailable");
+            }
+            batches.incrementAndGet();
+            Set<String> accountIds = new HashSet<>();
+            for (Account account : accounts) {
+                updateAccount(account);
+                accountIds.add(account.getAccountId());
+            }
+            batchContents.add(accountIds);
+        }
+    }
+}
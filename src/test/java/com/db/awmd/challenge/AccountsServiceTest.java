@@ -64,6 +64,19 @@ public class AccountsServiceTest {
         this.accountsService.clearAccounts();
     }
 
+    @Test
+    public void shouldNotRepeatEntityTagOfRecreatedAccount() throws Exception {
+        this.accountsService.clearAccounts();
+        this.accountsService.createAccount(new Account(ACCOUNT_FROM_ID, INITIAL_BALANCE_10));
+        String entityTag = accountsService.findAccountById(ACCOUNT_FROM_ID).getEntityTag();
+        this.accountsService.clearAccounts();
+
+        this.accountsService.createAccount(new Account(ACCOUNT_FROM_ID, INITIAL_BALANCE_10));
+
+        assertThat(accountsService.findAccountById(ACCOUNT_FROM_ID).getEntityTag()).isNotEqualTo(entityTag);
+        this.accountsService.clearAccounts();
+    }
+
     @Test(expected = AccountNotExistException.class)
     public void shouldReturnErrorAccountNotExists() throws Exception {
         this.accountsService.clearAccounts();
@@ -0,0 +1,186 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.index.BalanceIndex;
+import com.db.awmd.challenge.metrics.HistogramSnapshot;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.TransferJournal;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AccountsServiceImpl;
+import com.db.awmd.challenge.service.BalanceChangeListener;
+import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.TransferService;
+import com.db.awmd.challenge.service.TransferServiceImpl;
+import com.db.awmd.challenge.snapshot.BalanceSnapshots;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@Slf4j
+public class BalanceIndexTest {
+    private static final String ACCOUNT_ID = "acc-";
+    private static final Integer NUMBER_OF_ACCOUNTS = 200;
+    private static final Integer NUMBER_OF_TRANSFERS = 2000;
+    private static final Integer NUMBER_OF_BENCHMARK_ACCOUNTS = 10000;
+    private static final Integer NUMBER_OF_BENCHMARK_TRANSFERS = 200000;
+
+    private MetricsRegistry metricsRegistry;
+
+    private AccountsRepository accountsRepository;
+
+    private BalanceIndex balanceIndex;
+
+    private AccountsService accountsService;
+
+    @Before
+    public void before() {
+        metricsRegistry = new MetricsRegistry();
+        accountsRepository = new AccountsRepositoryInMemory();
+        balanceIndex = new BalanceIndex(accountsRepository, metricsRegistry);
+        accountsService = newAccountsService(accountsRepository, Collections.singletonList(balanceIndex));
+        for (int i = 0; i < NUMBER_OF_ACCOUNTS; i++) {
+            accountsService.createAccount(new Account(ACCOUNT_ID + i, new BigDecimal(i)));
+        }
+    }
+
+    @Test
+    public void shouldReturnTopAccountsHighestFirst() {
+        List<Account> top = balanceIndex.top(3);
+
+        assertEquals(3, top.size());
+        assertEquals(new Account(ACCOUNT_ID + 199, new BigDecimal(199)), top.get(0));
+        assertEquals(new Account(ACCOUNT_ID + 197, new BigDecimal(197)), top.get(2));
+    }
+
+    @Test
+    public void shouldKeepLatestBalanceOfSplitAccountAfterConcurrentCredits() throws Exception {
+        String hotAccountId = ACCOUNT_ID + 0;
+        accountsService.splitAccount(hotAccountId, 4);
+        Account hot = accountsService.getAccount(hotAccountId);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Callable<Void>> credits = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_TRANSFERS; i++) {
+            credits.add(() -> {
+                accountsService.creditBalanceAccount(hot, BigDecimal.ONE);
+                return null;
+            });
+        }
+        executor.invokeAll(credits);
+        executor.shutdown();
+
+        List<Account> top = balanceIndex.top(1);
+        assertEquals(hotAccountId, top.get(0).getAccountId());
+        assertEquals(0, new BigDecimal(NUMBER_OF_TRANSFERS).compareTo(top.get(0).getBalance()));
+        assertEquals(1, balanceIndex.range(new BigDecimal(NUMBER_OF_TRANSFERS), null, 10).size());
+    }
+
+    @Test
+    public void shouldReturnAccountsInInclusiveRangeLowestFirst() {
+        List<Account> range = balanceIndex.range(new BigDecimal(10), new BigDecimal("19.0"), 100);
+
+        assertEquals(10, range.size());
+        assertEquals(ACCOUNT_ID + 10, range.get(0).getAccountId());
+        assertEquals(ACCOUNT_ID + 19, range.get(9).getAccountId());
+        assertEquals(5, balanceIndex.range(null, new BigDecimal("4.5"), 100).size());
+        assertEquals(3, balanceIndex.range(new BigDecimal(197), null, 100).size());
+        assertEquals(7, balanceIndex.range(null, null, 7).size());
+    }
+
+    @Test
+    public void shouldFollowBalancesChangedByConcurrentTransfers() throws Exception {
+        TransferService transferService = new TransferServiceImpl(accountsService, Mockito.mock(NotificationService.class));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Callable<Object>> tasks = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_TRANSFERS; i++) {
+            Transfer transfer = new Transfer(ACCOUNT_ID + (i * 7 + 150) % NUMBER_OF_ACCOUNTS,
+                    ACCOUNT_ID + i % NUMBER_OF_ACCOUNTS, BigDecimal.ONE);
+            tasks.add(Executors.callable(() -> transferService.transferMoneyLock(transfer)));
+        }
+        executor.invokeAll(tasks);
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        List<Account> expected = accountsRepository.getAllAccount().stream()
+                .sorted(Comparator.comparing(Account::getBalance).thenComparing(Account::getAccountId))
+                .map(account -> new Account(account.getAccountId(), account.getBalance()))
+                .collect(Collectors.toList());
+        assertEquals(expected, balanceIndex.range(null, null, NUMBER_OF_ACCOUNTS));
+        HistogramSnapshot updates = metricsRegistry.snapshot().get("balance.index.update.nanos");
+        assertTrue(updates.getCount() > NUMBER_OF_ACCOUNTS);
+    }
+
+    @Test
+    public void shouldLoadStoredAccountsAndForgetThemOnClear() {
+        BalanceIndex reloaded = new BalanceIndex(accountsRepository, new MetricsRegistry());
+        reloaded.load();
+        assertEquals(balanceIndex.top(NUMBER_OF_ACCOUNTS), reloaded.top(NUMBER_OF_ACCOUNTS));
+
+        accountsService.clearAccounts();
+        assertEquals(0, balanceIndex.top(1).size());
+    }
+
+    /**
+     * Cost of maintaining the index on the transfer path. Run with -Dbenchmark=true.
+     */
+    @Test
+    public void benchmarkTransfersWithAndWithoutIndex() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+
+        for (int round = 0; round < 3; round++) {
+            AccountsRepository plainRepository = new AccountsRepositoryInMemory();
+            long plainNanos = runTransfers(newAccountsService(plainRepository, Collections.emptyList()));
+            AccountsRepository indexedRepository = new AccountsRepositoryInMemory();
+            MetricsRegistry indexedMetrics = new MetricsRegistry();
+            BalanceIndex index = new BalanceIndex(indexedRepository, indexedMetrics);
+            long indexedNanos = runTransfers(newAccountsService(indexedRepository, Collections.singletonList(index)));
+
+            HistogramSnapshot updates = indexedMetrics.snapshot().get("balance.index.update.nanos");
+            log.info("Without index: " + NUMBER_OF_BENCHMARK_TRANSFERS * TimeUnit.SECONDS.toNanos(1) / plainNanos
+                    + " transfers/s, with index: " + NUMBER_OF_BENCHMARK_TRANSFERS * TimeUnit.SECONDS.toNanos(1) / indexedNanos
+                    + " transfers/s, index update p50=" + updates.getP50() + "ns p99=" + updates.getP99() + "ns");
+        }
+    }
+
+    private long runTransfers(AccountsService accountsService) throws Exception {
+        for (int i = 0; i < NUMBER_OF_BENCHMARK_ACCOUNTS; i++) {
+            accountsService.createAccount(new Account("bench-" + i, new BigDecimal(NUMBER_OF_BENCHMARK_TRANSFERS)));
+        }
+        TransferService transferService = new TransferServiceImpl(accountsService, Mockito.mock(NotificationService.class));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Callable<Object>> tasks = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_BENCHMARK_TRANSFERS; i++) {
+            Transfer transfer = new Transfer("bench-" + i % NUMBER_OF_BENCHMARK_ACCOUNTS,
+                    "bench-" + (i * 31 + 1) % NUMBER_OF_BENCHMARK_ACCOUNTS, BigDecimal.ONE);
+            tasks.add(Executors.callable(() -> transferService.transferMoneyLock(transfer)));
+        }
+        long start = System.nanoTime();
+        executor.invokeAll(tasks);
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        return elapsed;
+    }
+
+    private static AccountsService newAccountsService(AccountsRepository accountsRepository,
+                                                      List<BalanceChangeListener> listeners) {
+        return new AccountsServiceImpl(accountsRepository, TransferJournal.NONE, new BalanceSnapshots(), listeners);
+    }
+}
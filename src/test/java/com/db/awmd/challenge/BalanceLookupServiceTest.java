@@ -0,0 +1,115 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AccountsServiceImpl;
+import com.db.awmd.challenge.service.BalanceLookupServiceImpl;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BalanceLookupServiceTest {
+    private static final String ACCOUNT_ID = "acc-";
+    private static final Integer NUMBER_OF_ACCOUNTS = 1000;
+    private static final Integer CHUNK_SIZE = 7;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private AccountsService accountsService;
+
+    private BalanceLookupServiceImpl balanceLookupService;
+
+    @Before
+    public void before() {
+        AccountsRepository accountsRepository = new AccountsRepositoryInMemory();
+        accountsService = new AccountsServiceImpl(accountsRepository);
+        balanceLookupService = new BalanceLookupServiceImpl(accountsRepository, objectMapper, 3, CHUNK_SIZE);
+        for (int i = 0; i < NUMBER_OF_ACCOUNTS; i++) {
+            accountsService.createAccount(new Account(ACCOUNT_ID + i, new BigDecimal(i)));
+        }
+    }
+
+    @After
+    public void after() {
+        balanceLookupService.shutdown();
+    }
+
+    @Test
+    public void shouldKeepRequestOrderAcrossChunks() throws Exception {
+        List<String> accountIds = new ArrayList<>();
+        for (int i = NUMBER_OF_ACCOUNTS + 10; i >= 0; i--) {
+            accountIds.add(ACCOUNT_ID + i);
+        }
+        accountIds.add(ACCOUNT_ID + 5);
+
+        List<JsonNode> lines = readLines(out -> balanceLookupService.writeBalances(accountIds, out));
+
+        assertEquals(accountIds.size(), lines.size());
+        for (int i = 0; i < accountIds.size(); i++) {
+            JsonNode line = lines.get(i);
+            assertEquals(accountIds.get(i), line.get("accountId").asText());
+            int number = Integer.parseInt(accountIds.get(i).substring(ACCOUNT_ID.length()));
+            if (number < NUMBER_OF_ACCOUNTS) {
+                assertEquals(number, line.get("balance").asInt());
+            } else {
+                assertTrue(line.get("missing").asBoolean());
+            }
+        }
+    }
+
+    @Test
+    public void shouldReadBalancesAsOfSnapshot() throws Exception {
+        List<String> accountIds = new ArrayList<>();
+        accountIds.add(ACCOUNT_ID + 1);
+        accountIds.add(ACCOUNT_ID + 2);
+        accountIds.add("unknown");
+        Account account = accountsService.getAccount(ACCOUNT_ID + 1);
+        BalanceSnapshot snapshot = accountsService.getBalanceSnapshot(accountIds);
+        accountsService.creditBalanceAccount(account, BigDecimal.TEN);
+
+        List<JsonNode> lines = readLines(out -> balanceLookupService.writeBalances(accountIds, snapshot, out));
+
+        assertEquals(2, snapshot.getBalances().size());
+        assertEquals(1, lines.get(0).get("balance").asInt());
+        assertEquals(2, lines.get(1).get("balance").asInt());
+        assertTrue(lines.get(2).get("missing").asBoolean());
+    }
+
+    @Test
+    public void shouldWriteNothingForNoIds() throws Exception {
+        assertEquals(0, readLines(out -> balanceLookupService.writeBalances(Collections.emptyList(), out)).size());
+    }
+
+    private List<JsonNode> readLines(Writer writer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(out);
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(objectMapper.readTree(line));
+            }
+        }
+        return lines;
+    }
+
+    private interface Writer {
+        void write(OutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,110 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.TransferJournal;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AccountsServiceImpl;
+import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.TransferService;
+import com.db.awmd.challenge.service.TransferServiceImpl;
+import com.db.awmd.challenge.snapshot.BalanceSnapshots;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class BalanceSnapshotsTest {
+    private static final String ACCOUNT_ID = "acc-";
+    private static final BigDecimal BALANCE_1000 = new BigDecimal(1000);
+    private static final BigDecimal BALANCE_5 = new BigDecimal(5);
+    private static final Integer NUMBER_OF_ACCOUNTS = 16;
+    private static final Integer NUMBER_OF_THREADS = 8;
+    private static final Integer NUMBER_OF_TRANSFERS = 2000;
+    private static final Integer NUMBER_OF_SNAPSHOTS = 200;
+
+    private BalanceSnapshots balanceSnapshots;
+
+    private AccountsService accountsService;
+
+    @Before
+    public void before() {
+        balanceSnapshots = new BalanceSnapshots();
+        accountsService = new AccountsServiceImpl(new AccountsRepositoryInMemory(), TransferJournal.NONE, balanceSnapshots);
+        for (int i = 0; i < NUMBER_OF_ACCOUNTS; i++) {
+            accountsService.createAccount(new Account(ACCOUNT_ID + i, BALANCE_1000));
+        }
+    }
+
+    @Test
+    public void shouldKeepTotalConstantInEverySnapshotTakenDuringTransfers() throws Exception {
+        TransferService transferService = new TransferServiceImpl(accountsService, Mockito.mock(NotificationService.class));
+        ExecutorService executor = Executors.newFixedThreadPool(NUMBER_OF_THREADS);
+        List<Future<?>> transfers = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_TRANSFERS; i++) {
+            Transfer transfer = new Transfer(ACCOUNT_ID + i % NUMBER_OF_ACCOUNTS,
+                    ACCOUNT_ID + (i * 7 + 1) % NUMBER_OF_ACCOUNTS, BigDecimal.ONE);
+            transfers.add(executor.submit(() -> transferService.transferMoneyLock(transfer)));
+        }
+
+        BigDecimal expectedTotal = BALANCE_1000.multiply(new BigDecimal(NUMBER_OF_ACCOUNTS));
+        for (int i = 0; i < NUMBER_OF_SNAPSHOTS; i++) {
+            BalanceSnapshot snapshot = accountsService.getBalanceSnapshot();
+            assertEquals(NUMBER_OF_ACCOUNTS.intValue(), snapshot.getBalances().size());
+            assertEquals(expectedTotal, snapshot.getTotal());
+        }
+        for (Future<?> transfer : transfers) {
+            transfer.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertEquals(expectedTotal, accountsService.getBalanceSnapshot().getTotal());
+    }
+
+    @Test
+    public void shouldWaitForWritersOfClosedEpochOnly() throws Exception {
+        Account account = accountsService.getAccount(ACCOUNT_ID + 0);
+        long epoch = balanceSnapshots.beginWrite();
+        BigDecimal opening = account.getBalance();
+        account.setBalance(BALANCE_5);
+        balanceSnapshots.record(account, BALANCE_5.subtract(opening), epoch);
+
+        CompletableFuture<BalanceSnapshot> snapshot = CompletableFuture.supplyAsync(balanceSnapshots::takeSnapshot);
+        Thread.sleep(50);
+        assertFalse(snapshot.isDone());
+
+        long nextEpoch = balanceSnapshots.beginWrite();
+        account.setBalance(BigDecimal.ZERO);
+        balanceSnapshots.record(account, BALANCE_5.negate(), nextEpoch);
+        balanceSnapshots.endWrite(nextEpoch);
+        balanceSnapshots.endWrite(epoch);
+
+        assertEquals(BALANCE_5, snapshot.get(1, TimeUnit.SECONDS).getBalances().get(ACCOUNT_ID + 0));
+        assertEquals(BigDecimal.ZERO, balanceSnapshots.takeSnapshot().getBalances().get(ACCOUNT_ID + 0));
+    }
+
+    @Test
+    public void shouldLeaveOutAccountsCreatedAfterSnapshotEpoch() throws Exception {
+        long epoch = balanceSnapshots.beginWrite();
+        CompletableFuture<BalanceSnapshot> snapshot = CompletableFuture.supplyAsync(balanceSnapshots::takeSnapshot);
+        Thread.sleep(50);
+
+        accountsService.createAccount(new Account(ACCOUNT_ID + "late", BALANCE_5));
+        balanceSnapshots.endWrite(epoch);
+
+        assertEquals(NUMBER_OF_ACCOUNTS.intValue(), snapshot.get(1, TimeUnit.SECONDS).getBalances().size());
+        assertEquals(NUMBER_OF_ACCOUNTS + 1, balanceSnapshots.takeSnapshot().getBalances().size());
+    }
+}
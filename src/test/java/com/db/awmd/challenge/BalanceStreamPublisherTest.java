@@ -0,0 +1,211 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.TransferJournal;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AccountsServiceImpl;
+import com.db.awmd.challenge.snapshot.BalanceSnapshots;
+import com.db.awmd.challenge.stream.BalanceStreamPublisher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BalanceStreamPublisherTest {
+    private static final String ACCOUNT_ID = "acc-1";
+    private static final String OTHER_ACCOUNT_ID = "acc-2";
+    private static final Long WAIT_MS = 5000L;
+    private static final Long SEND_TIMEOUT_MS = 100L;
+    private static final Long HEARTBEAT_MS = 50L;
+
+    private final List<Account> received = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger heartbeats = new AtomicInteger();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private volatile boolean slow;
+
+    private volatile boolean failing;
+
+    private MetricsRegistry metricsRegistry;
+
+    private BalanceStreamPublisher publisher;
+
+    private AccountsService accountsService;
+
+    @Before
+    public void before() {
+        start(60000L, 60000L);
+    }
+
+    private void start(long sendTimeoutMs, long heartbeatMs) {
+        AccountsRepository accountsRepository = new AccountsRepositoryInMemory();
+        metricsRegistry = new MetricsRegistry();
+        publisher = new BalanceStreamPublisher(accountsRepository, metricsRegistry, 1, 60000L, 2,
+                sendTimeoutMs, heartbeatMs) {
+            @Override
+            protected SseEmitter createEmitter(long timeoutMs) {
+                return new RecordingEmitter(timeoutMs);
+            }
+        };
+        accountsService = new AccountsServiceImpl(accountsRepository, TransferJournal.NONE, new BalanceSnapshots(),
+                Collections.singletonList(publisher));
+        accountsService.createAccount(new Account(ACCOUNT_ID, new BigDecimal(100)));
+        accountsService.createAccount(new Account(OTHER_ACCOUNT_ID, new BigDecimal(200)));
+    }
+
+    @After
+    public void after() {
+        release.countDown();
+        publisher.shutdown();
+    }
+
+    @Test
+    public void shouldSendCurrentBalanceThenChanges() throws Exception {
+        publisher.subscribe(Collections.singleton(ACCOUNT_ID));
+        awaitReceived(1);
+
+        accountsService.creditBalanceAccount(accountsService.getAccount(ACCOUNT_ID), BigDecimal.TEN);
+        accountsService.creditBalanceAccount(accountsService.getAccount(OTHER_ACCOUNT_ID), BigDecimal.TEN);
+        awaitLastBalance(new BigDecimal(110));
+
+        assertEquals(Arrays.asList(new Account(ACCOUNT_ID, new BigDecimal(100)), new Account(ACCOUNT_ID, new BigDecimal(110))),
+                received);
+    }
+
+    @Test
+    public void shouldCoalesceChangesForSlowSubscriber() throws Exception {
+        slow = true;
+        publisher.subscribe(Collections.singleton(ACCOUNT_ID));
+        awaitReceived(1);
+        for (int i = 0; i < 100; i++) {
+            accountsService.creditBalanceAccount(accountsService.getAccount(ACCOUNT_ID), BigDecimal.ONE);
+        }
+
+        release.countDown();
+        awaitLastBalance(new BigDecimal(200));
+
+        assertTrue("Expected coalesced updates but got " + received.size(), received.size() <= 3);
+        assertTrue(metricsRegistry.gaugeValues().get("balance.stream.events.coalesced").longValue() >= 97);
+    }
+
+    @Test
+    public void shouldRefuseSubscribersOverLimit() {
+        publisher.subscribe(Collections.singleton(ACCOUNT_ID));
+        publisher.subscribe(Collections.singleton(OTHER_ACCOUNT_ID));
+
+        assertNull(publisher.subscribe(new HashSet<>(Arrays.asList(ACCOUNT_ID, OTHER_ACCOUNT_ID))));
+    }
+
+    @Test
+    public void shouldDropSubscriberWhenSendFails() throws Exception {
+        failing = true;
+        publisher.subscribe(Collections.singleton(ACCOUNT_ID));
+
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (publisher.getSubscriptions() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(0, publisher.getSubscriptions());
+        accountsService.creditBalanceAccount(accountsService.getAccount(ACCOUNT_ID), BigDecimal.TEN);
+    }
+
+    @Test
+    public void shouldCloseSubscriberThatStaysUnwritable() throws Exception {
+        publisher.shutdown();
+        start(SEND_TIMEOUT_MS, WAIT_MS);
+        slow = true;
+        publisher.subscribe(Collections.singleton(ACCOUNT_ID));
+        awaitReceived(1);
+        slow = false;
+
+        publisher.subscribe(Collections.singleton(OTHER_ACCOUNT_ID));
+        awaitLastBalance(new BigDecimal(200));
+
+        assertEquals(1, publisher.getSubscriptions());
+        assertEquals(1, release.getCount());
+    }
+
+    @Test
+    public void shouldSendHeartbeatToIdleSubscriber() throws Exception {
+        publisher.shutdown();
+        start(WAIT_MS, HEARTBEAT_MS);
+        publisher.subscribe(Collections.singleton(ACCOUNT_ID));
+
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (heartbeats.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(heartbeats.get() >= 2);
+        assertEquals(1, received.size());
+    }
+
+    private void awaitReceived(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (received.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue("Received " + received, received.size() >= count);
+    }
+
+    private void awaitLastBalance(BigDecimal balance) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (!lastBalanceIs(balance) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue("Received " + received, lastBalanceIs(balance));
+    }
+
+    private boolean lastBalanceIs(BigDecimal balance) {
+        return !received.isEmpty() && received.get(received.size() - 1).getBalance().compareTo(balance) == 0;
+    }
+
+    private class RecordingEmitter extends SseEmitter {
+        private RecordingEmitter(long timeoutMs) {
+            super(timeoutMs);
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (failing) {
+                throw new IOException("Broken pipe");
+            }
+            for (ResponseBodyEmitter.DataWithMediaType data : builder.build()) {
+                if (data.getData() instanceof Account) {
+                    received.add((Account) data.getData());
+                } else if (data.getData().toString().startsWith(":heartbeat")) {
+                    heartbeats.incrementAndGet();
+                }
+            }
+            if (slow) {
+                try {
+                    release.await(WAIT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Deadline;
+import com.db.awmd.challenge.domain.FanInTransfer;
+import com.db.awmd.challenge.domain.FanOutTransfer;
+import com.db.awmd.challenge.domain.JournalEntry;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.domain.TransferLegResult;
+import com.db.awmd.challenge.exception.OverDraftException;
+import com.db.awmd.challenge.repository.TransferJournal;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.TransferService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@WebAppConfiguration
+public class FanTransferServiceTest {
+    private static final String EMPLOYER = "acc-employer";
+    private static final String EMPLOYEE_1 = "acc-employee-1";
+    private static final String EMPLOYEE_2 = "acc-employee-2";
+    private static final String MISSING_ACCOUNT = "acc-missing";
+    private static final BigDecimal BALANCE_100 = new BigDecimal(100);
+    private static final BigDecimal AMOUNT_10 = new BigDecimal(10);
+    private static final BigDecimal AMOUNT_30 = new BigDecimal(30);
+    private static final BigDecimal AMOUNT_200 = new BigDecimal(200);
+    private static final Long DEADLINE_MS = 5000L;
+    private static final Integer NUMBER_OF_PAYROLLS = 50;
+
+    @Autowired
+    private AccountsService accountsService;
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private TransferJournal transferJournal;
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void before() {
+        this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
+        accountsService.clearAccounts();
+        accountsService.createAccount(new Account(EMPLOYER, BALANCE_100));
+        accountsService.createAccount(new Account(EMPLOYEE_1, BigDecimal.ZERO));
+        accountsService.createAccount(new Account(EMPLOYEE_2, BigDecimal.ZERO));
+    }
+
+    @Test
+    public void shouldDebitSourceOnceAndReportEveryLeg() {
+        List<TransferLegResult> results = transferService.transferFanOut(new FanOutTransfer(EMPLOYER, Arrays.asList(
+                new TransferLeg(EMPLOYEE_1, AMOUNT_10),
+                new TransferLeg(MISSING_ACCOUNT, AMOUNT_10),
+                new TransferLeg(EMPLOYEE_2, AMOUNT_30))), deadline());
+
+        assertEquals(TransferLegResult.Status.COMPLETED, results.get(0).getStatus());
+        assertEquals(TransferLegResult.Status.FAILED, results.get(1).getStatus());
+        assertEquals("Account with id acc-missing does not exists", results.get(1).getMessage());
+        assertEquals(TransferLegResult.Status.COMPLETED, results.get(2).getStatus());
+        assertEquals(new BigDecimal(60), accountsService.getAccount(EMPLOYER).getBalance());
+        assertEquals(AMOUNT_10, accountsService.getAccount(EMPLOYEE_1).getBalance());
+        assertEquals(AMOUNT_30, accountsService.getAccount(EMPLOYEE_2).getBalance());
+    }
+
+    @Test
+    public void shouldJournalFanOutAndFanInAsOneEntryEach() {
+        transferService.transferFanOut(new FanOutTransfer(EMPLOYER, Arrays.asList(
+                new TransferLeg(EMPLOYEE_1, AMOUNT_10),
+                new TransferLeg(EMPLOYEE_2, AMOUNT_30))), deadline());
+
+        JournalEntry fanOut = journaledEntry(JournalEntry.Type.FAN_OUT);
+        assertEquals(EMPLOYER, fanOut.getAccountFromId());
+        assertEquals(new BigDecimal(-40), fanOut.deltaFor(EMPLOYER));
+        assertEquals(AMOUNT_10, fanOut.deltaFor(EMPLOYEE_1));
+        assertEquals(AMOUNT_30, fanOut.deltaFor(EMPLOYEE_2));
+
+        transferService.transferFanIn(new FanInTransfer(EMPLOYER, Arrays.asList(
+                new TransferLeg(EMPLOYEE_1, AMOUNT_10),
+                new TransferLeg(EMPLOYEE_2, AMOUNT_10))), deadline());
+
+        JournalEntry fanIn = journaledEntry(JournalEntry.Type.FAN_IN);
+        assertEquals(EMPLOYER, fanIn.getAccountToId());
+        assertEquals(new BigDecimal(20), fanIn.deltaFor(EMPLOYER));
+        assertEquals(AMOUNT_10.negate(), fanIn.deltaFor(EMPLOYEE_2));
+    }
+
+    @Test(expected = OverDraftException.class)
+    public void shouldRejectWholeFanOutThenTotalExceedsBalance() {
+        try {
+            transferService.transferFanOut(new FanOutTransfer(EMPLOYER, Arrays.asList(
+                    new TransferLeg(EMPLOYEE_1, AMOUNT_30),
+                    new TransferLeg(EMPLOYEE_2, AMOUNT_200))), deadline());
+        } finally {
+            assertEquals(BALANCE_100, accountsService.getAccount(EMPLOYER).getBalance());
+            assertEquals(BigDecimal.ZERO, accountsService.getAccount(EMPLOYEE_1).getBalance());
+        }
+    }
+
+    @Test
+    public void shouldAggregateFanInAndFailOverdraftLegOnly() {
+        accountsService.creditBalanceAccount(accountsService.getAccount(EMPLOYEE_1), AMOUNT_30);
+
+        List<TransferLegResult> results = transferService.transferFanIn(new FanInTransfer(EMPLOYER, Arrays.asList(
+                new TransferLeg(EMPLOYEE_1, AMOUNT_30),
+                new TransferLeg(EMPLOYEE_2, AMOUNT_10))), deadline());
+
+        assertEquals(TransferLegResult.Status.COMPLETED, results.get(0).getStatus());
+        assertEquals(TransferLegResult.Status.FAILED, results.get(1).getStatus());
+        assertEquals(new BigDecimal(130), accountsService.getAccount(EMPLOYER).getBalance());
+        assertEquals(BigDecimal.ZERO, accountsService.getAccount(EMPLOYEE_1).getBalance());
+        assertEquals(BigDecimal.ZERO, accountsService.getAccount(EMPLOYEE_2).getBalance());
+    }
+
+    @Test
+    public void shouldConserveMoneyThenFanOutRunsConcurrentlyWithTransfers() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Callable<Object>> tasks = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_PAYROLLS; i++) {
+            tasks.add(() -> transferService.transferFanOut(new FanOutTransfer(EMPLOYER, Arrays.asList(
+                    new TransferLeg(EMPLOYEE_1, BigDecimal.ONE),
+                    new TransferLeg(EMPLOYEE_2, BigDecimal.ONE))), deadline()));
+            tasks.add(() -> {
+                transferService.transferMoneyLock(new Transfer(EMPLOYEE_1, EMPLOYER, BigDecimal.ONE));
+                return null;
+            });
+        }
+        executor.invokeAll(tasks);
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        BigDecimal total = accountsService.getAccount(EMPLOYER).getBalance()
+                .add(accountsService.getAccount(EMPLOYEE_1).getBalance())
+                .add(accountsService.getAccount(EMPLOYEE_2).getBalance());
+        assertEquals(BALANCE_100, total);
+    }
+
+    @Test
+    public void processFanOutTransferThroughController() throws Exception {
+        this.mockMvc.perform(post("/v1/transfers/fan-out").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"accountFromId\":\"acc-employer\",\"legs\":[{\"accountId\":\"acc-employee-1\",\"amount\":10}]}"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$[0].accountId").value(EMPLOYEE_1))
+                .andExpect(jsonPath("$[0].status").value("COMPLETED"));
+
+        assertEquals(AMOUNT_10, accountsService.getAccount(EMPLOYEE_1).getBalance());
+    }
+
+    /**
+     * @return the one entry that last changed all three accounts
+     */
+    private JournalEntry journaledEntry(JournalEntry.Type type) {
+        long sequence = accountsService.getAccount(EMPLOYER).getJournalSequence();
+        assertEquals(sequence, accountsService.getAccount(EMPLOYEE_1).getJournalSequence());
+        assertEquals(sequence, accountsService.getAccount(EMPLOYEE_2).getJournalSequence());
+        List<JournalEntry> entries = new ArrayList<>();
+        transferJournal.forEachEntry(sequence - 1, entry -> {
+            if (entry.getSequence() == sequence && entry.getType() == type && entry.getAccountIds().contains(EMPLOYER)) {
+                entries.add(entry);
+            }
+        });
+        assertEquals(1, entries.size());
+        return entries.get(0);
+    }
+
+    private Deadline deadline() {
+        return Deadline.after(DEADLINE_MS, TimeUnit.MILLISECONDS);
+    }
+}
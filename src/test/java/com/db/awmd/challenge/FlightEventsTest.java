@@ -0,0 +1,109 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.OverDraftException;
+import com.db.awmd.challenge.jfr.FlightEvents;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AccountsServiceImpl;
+import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.TransferService;
+import com.db.awmd.challenge.service.TransferServiceImpl;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Records through the jdk.jfr API by reflection, as the sources target Java 8.
+ */
+public class FlightEventsTest {
+    private static final String EVENT_PREFIX = "com.db.awmd.challenge.";
+
+    private TransferService transferService;
+
+    @Before
+    public void before() {
+        AccountsService accountsService = new AccountsServiceImpl(new AccountsRepositoryInMemory());
+        accountsService.createAccount(new Account("acc-1", new BigDecimal(100)));
+        accountsService.createAccount(new Account("acc-2"));
+        transferService = new TransferServiceImpl(accountsService, Mockito.mock(NotificationService.class));
+    }
+
+    @After
+    public void after() {
+        FlightEvents.disable();
+    }
+
+    @Test
+    public void shouldEmitNothingUntilEnabled() {
+        transferService.transferMoneyLock(new Transfer("acc-1", "acc-2", BigDecimal.ONE));
+
+        assertFalse(FlightEvents.isEnabled(FlightEvents.Type.TRANSFER));
+    }
+
+    @Test
+    public void shouldRecordTransferLifecycle() throws Exception {
+        Assume.assumeTrue("Flight Recorder not available", FlightEvents.enable());
+        assertFalse(FlightEvents.isEnabled(FlightEvents.Type.TRANSFER));
+        Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        Object recording = recordingClass.getConstructor().newInstance();
+        for (FlightEvents.Type type : FlightEvents.Type.values()) {
+            recordingClass.getMethod("enable", String.class).invoke(recording, EVENT_PREFIX + eventName(type));
+        }
+        recordingClass.getMethod("start").invoke(recording);
+        assertTrue(FlightEvents.isEnabled(FlightEvents.Type.TRANSFER));
+
+        transferService.transferMoneyLock(new Transfer("acc-1", "acc-2", BigDecimal.TEN));
+        try {
+            transferService.transferMoneyLock(new Transfer("acc-2", "acc-1", new BigDecimal(1000)));
+        } catch (OverDraftException e) {
+            // recorded
+        }
+
+        recordingClass.getMethod("stop").invoke(recording);
+        Path file = Files.createTempFile("transfers", ".jfr");
+        recordingClass.getMethod("dump", Path.class).invoke(recording, file);
+        recordingClass.getMethod("close").invoke(recording);
+        List<String> recorded = new ArrayList<>();
+        Class<?> recordingFile = Class.forName("jdk.jfr.consumer.RecordingFile");
+        for (Object event : (List<?>) recordingFile.getMethod("readAllEvents", Path.class).invoke(null, file)) {
+            Object eventType = event.getClass().getMethod("getEventType").invoke(event);
+            String name = (String) eventType.getClass().getMethod("getName").invoke(eventType);
+            if (name.startsWith(EVENT_PREFIX)) {
+                Method getString = event.getClass().getMethod("getString", String.class);
+                String fields = name.equals(EVENT_PREFIX + "Transfer")
+                        ? getString.invoke(event, "accountFromId") + ":" + getString.invoke(event, "amount") + ":"
+                        + getString.invoke(event, "outcome")
+                        : name.equals(EVENT_PREFIX + "OverdraftRejected") ? (String) getString.invoke(event, "accountId") : "";
+                recorded.add(name.substring(EVENT_PREFIX.length()) + (fields.isEmpty() ? "" : "(" + fields + ")"));
+            }
+        }
+        Files.delete(file);
+
+        assertTrue(recorded.toString(), recorded.contains("Transfer(acc-1:10:completed)"));
+        assertTrue(recorded.toString(), recorded.contains("Transfer(acc-2:1000:failed)"));
+        assertTrue(recorded.toString(), recorded.contains("OverdraftRejected(acc-2)"));
+        assertTrue(recorded.toString(), recorded.contains("LockAcquired"));
+    }
+
+    private static String eventName(FlightEvents.Type type) {
+        StringBuilder name = new StringBuilder();
+        for (String word : type.name().split("_")) {
+            name.append(word.charAt(0)).append(word.substring(1).toLowerCase());
+        }
+        return name.toString();
+    }
+}
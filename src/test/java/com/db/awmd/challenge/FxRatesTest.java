@@ -0,0 +1,157 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.JournalEntry;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.AccountNotProcessedExeption;
+import com.db.awmd.challenge.exception.TransferNotProcessException;
+import com.db.awmd.challenge.fx.FxRateMatrix;
+import com.db.awmd.challenge.fx.FxRates;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.TransferJournal;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AccountsServiceImpl;
+import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.TransferService;
+import com.db.awmd.challenge.service.TransferServiceImpl;
+import com.db.awmd.challenge.snapshot.BalanceSnapshots;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class FxRatesTest {
+    private static final String EUR_ACCOUNT_ID = "eur-1";
+    private static final String USD_ACCOUNT_ID = "usd-1";
+    private static final String GBP_ACCOUNT_ID = "gbp-1";
+
+    private FxRates fxRates;
+
+    private AccountsService accountsService;
+
+    private TransferService transferService;
+
+    private List<JournalEntry> journal;
+
+    @Before
+    public void before() {
+        fxRates = new FxRates("EUR", 2, "USD=1.08,GBP=0.85");
+        journal = new ArrayList<>();
+        accountsService = new AccountsServiceImpl(new AccountsRepositoryInMemory(), new RecordingJournal(),
+                new BalanceSnapshots(), Collections.emptyList());
+        transferService = new TransferServiceImpl(accountsService, Mockito.mock(NotificationService.class), fxRates, 5000L);
+        accountsService.createAccount(new Account(EUR_ACCOUNT_ID, new BigDecimal(1000)));
+        accountsService.createAccount(new Account(USD_ACCOUNT_ID, new BigDecimal(1000), "USD"));
+        accountsService.createAccount(new Account(GBP_ACCOUNT_ID, new BigDecimal(1000), "GBP"));
+    }
+
+    @Test
+    public void shouldDeriveCrossRatesFromBaseRates() {
+        FxRateMatrix matrix = fxRates.current();
+
+        assertEquals(0, new BigDecimal("108.00").compareTo(matrix.convert(new BigDecimal(100), "EUR", "USD")));
+        assertEquals(0, new BigDecimal("92.59").compareTo(matrix.convert(new BigDecimal(100), "USD", "EUR")));
+        assertEquals(0, new BigDecimal("78.70").compareTo(matrix.convert(new BigDecimal(100), "USD", "GBP")));
+        assertEquals(BigDecimal.ONE, matrix.rate("GBP", "GBP"));
+        assertNull(matrix.convert(BigDecimal.ONE, "EUR", "JPY"));
+    }
+
+    @Test
+    public void shouldConvertCrossCurrencyTransfer() {
+        transferService.transferMoneyLock(new Transfer(USD_ACCOUNT_ID, GBP_ACCOUNT_ID, new BigDecimal(100)));
+
+        assertEquals(0, new BigDecimal(900).compareTo(accountsService.getAccount(USD_ACCOUNT_ID).getBalance()));
+        assertEquals(0, new BigDecimal("1078.70").compareTo(accountsService.getAccount(GBP_ACCOUNT_ID).getBalance()));
+        JournalEntry entry = journal.get(journal.size() - 1);
+        assertEquals(0, new BigDecimal(-100).compareTo(entry.deltaFor(USD_ACCOUNT_ID)));
+        assertEquals(0, new BigDecimal("78.70").compareTo(entry.deltaFor(GBP_ACCOUNT_ID)));
+        assertEquals(0, new BigDecimal("2978.70").compareTo(accountsService.getBalanceSnapshot().getTotal()));
+    }
+
+    @Test
+    public void shouldTransferWithinCurrencyWithoutConversion() {
+        accountsService.createAccount(new Account("usd-2", BigDecimal.ZERO, "USD"));
+
+        transferService.transferMoneyLock(new Transfer(USD_ACCOUNT_ID, "usd-2", new BigDecimal("0.005")));
+
+        assertEquals(0, new BigDecimal("0.005").compareTo(accountsService.getAccount("usd-2").getBalance()));
+        assertNull(journal.get(journal.size() - 1).getCreditAmount());
+    }
+
+    @Test
+    public void shouldUseSwappedRatesForLaterTransfers() {
+        FxRateMatrix before = fxRates.current();
+        Map<String, BigDecimal> rates = new HashMap<>();
+        rates.put("USD", new BigDecimal("1.10"));
+        rates.put("GBP", new BigDecimal("0.85"));
+
+        FxRateMatrix after = fxRates.update(rates);
+        transferService.transferMoneyLock(new Transfer(EUR_ACCOUNT_ID, USD_ACCOUNT_ID, new BigDecimal(100)));
+
+        assertSame(after, fxRates.current());
+        assertEquals(before.getVersion() + 1, after.getVersion());
+        assertEquals(0, new BigDecimal("108.00").compareTo(before.convert(new BigDecimal(100), "EUR", "USD")));
+        assertEquals(0, new BigDecimal(1110).compareTo(accountsService.getAccount(USD_ACCOUNT_ID).getBalance()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveRate() {
+        fxRates.update(Collections.singletonMap("USD", BigDecimal.ZERO));
+    }
+
+    @Test
+    public void shouldRejectTransferWithoutRate() {
+        accountsService.createAccount(new Account("jpy-1", BigDecimal.ZERO, "JPY"));
+
+        try {
+            transferService.transferMoneyLock(new Transfer(EUR_ACCOUNT_ID, "jpy-1", BigDecimal.TEN));
+            throw new AssertionError("Transfer without exchange rate accepted");
+        } catch (AccountNotProcessedExeption | TransferNotProcessException e) {
+            assertEquals(0, new BigDecimal(1000).compareTo(accountsService.getAccount(EUR_ACCOUNT_ID).getBalance()));
+        }
+    }
+
+    @Test
+    public void shouldOmitBaseCurrencyFromJson() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        assertEquals("{\"accountId\":\"eur-1\",\"balance\":1000}",
+                objectMapper.writeValueAsString(accountsService.getAccount(EUR_ACCOUNT_ID)));
+        assertEquals("{\"accountId\":\"usd-1\",\"balance\":1000,\"currency\":\"USD\"}",
+                objectMapper.writeValueAsString(accountsService.getAccount(USD_ACCOUNT_ID)));
+        assertEquals("USD", objectMapper.readValue("{\"accountId\":\"a\",\"balance\":1,\"currency\":\"USD\"}",
+                Account.class).getCurrency());
+    }
+
+    private class RecordingJournal implements TransferJournal {
+        @Override
+        public JournalEntry append(JournalEntry.Type type, String accountFromId, String accountToId, BigDecimal amount,
+                                   BigDecimal creditAmount) {
+            JournalEntry entry = new JournalEntry(journal.size() + 1, System.currentTimeMillis(), type, accountFromId,
+                    accountToId, amount, creditAmount);
+            journal.add(entry);
+            return entry;
+        }
+
+        @Override
+        public List<JournalEntry> readEntries() {
+            return new ArrayList<>(journal);
+        }
+
+        @Override
+        public long getLastSequence() {
+            return journal.size();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.scheduling.HierarchicalTimingWheel;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HierarchicalTimingWheelTest {
+    private static final Long START_MS = 1000000L;
+    private static final Long TICK_MS = 10L;
+    private static final Integer WHEEL_SIZE = 8;
+
+    @Test
+    public void shouldRejectAlreadyDueItem() {
+        HierarchicalTimingWheel<String> timingWheel = new HierarchicalTimingWheel<>(TICK_MS, WHEEL_SIZE, START_MS);
+
+        assertFalse(timingWheel.add(START_MS - 1, "past"));
+        assertFalse(timingWheel.add(START_MS + TICK_MS - 1, "current-tick"));
+        assertEquals(0, timingWheel.size());
+    }
+
+    @Test
+    public void shouldExpireItemsInOrderAcrossLevels() {
+        HierarchicalTimingWheel<String> timingWheel = new HierarchicalTimingWheel<>(TICK_MS, WHEEL_SIZE, START_MS);
+        assertTrue(timingWheel.add(START_MS + 25, "level-0"));
+        assertTrue(timingWheel.add(START_MS + 500, "level-1"));
+        assertTrue(timingWheel.add(START_MS + 5000, "level-2"));
+        assertEquals(3, timingWheel.size());
+
+        List<String> expired = new ArrayList<>();
+        timingWheel.advance(START_MS + 19, expired::add);
+        assertTrue(expired.isEmpty());
+
+        timingWheel.advance(START_MS + 30, expired::add);
+        assertEquals(Arrays.asList("level-0"), expired);
+
+        timingWheel.advance(START_MS + 499, expired::add);
+        assertEquals(Arrays.asList("level-0"), expired);
+
+        timingWheel.advance(START_MS + 500, expired::add);
+        assertEquals(Arrays.asList("level-0", "level-1"), expired);
+
+        timingWheel.advance(START_MS + 4990, expired::add);
+        assertEquals(2, expired.size());
+
+        timingWheel.advance(START_MS + 5000, expired::add);
+        assertEquals(Arrays.asList("level-0", "level-1", "level-2"), expired);
+        assertEquals(0, timingWheel.size());
+    }
+
+    @Test
+    public void shouldExpireEveryItemExactlyOnceThenClockJumps() {
+        HierarchicalTimingWheel<Integer> timingWheel = new HierarchicalTimingWheel<>(TICK_MS, WHEEL_SIZE, START_MS);
+        for (int i = 0; i < 1000; i++) {
+            timingWheel.add(START_MS + TICK_MS + i * 7, i);
+        }
+
+        List<Integer> expired = new ArrayList<>();
+        timingWheel.advance(START_MS + 3500, expired::add);
+        timingWheel.advance(START_MS + 10000, expired::add);
+
+        assertEquals(1000, expired.size());
+        assertEquals(1000, expired.stream().distinct().count());
+        assertEquals(0, timingWheel.size());
+    }
+}
@@ -0,0 +1,43 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.metrics.Histogram;
+import com.db.awmd.challenge.metrics.HistogramSnapshot;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+    @Test
+    public void shouldReportExactSmallValues() {
+        Histogram histogram = new Histogram();
+        for (long value = 1; value <= 4; value++) {
+            histogram.record(value);
+        }
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(4, snapshot.getCount());
+        assertEquals(2.5, snapshot.getMean(), 0.0);
+        assertEquals(2, snapshot.getP50());
+        assertEquals(4, snapshot.getMax());
+    }
+
+    @Test
+    public void shouldKeepPercentilesWithinBucketPrecision() {
+        Histogram histogram = new Histogram();
+        for (long value = 1; value <= 100000; value++) {
+            histogram.record(value);
+        }
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertWithinPrecision(50000, snapshot.getP50());
+        assertWithinPrecision(90000, snapshot.getP90());
+        assertWithinPrecision(99000, snapshot.getP99());
+        assertEquals(100000, snapshot.getMax());
+    }
+
+    private void assertWithinPrecision(long expected, long actual) {
+        assertTrue(actual + " is not close to " + expected, Math.abs(actual - expected) <= expected / 8);
+    }
+}
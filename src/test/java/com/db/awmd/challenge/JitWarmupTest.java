@@ -0,0 +1,50 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.WarmupReport;
+import com.db.awmd.challenge.service.ScheduledTransferService;
+import com.db.awmd.challenge.warmup.JitWarmup;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JitWarmupTest {
+    private static final Integer ITERATIONS = 300;
+    private static final Integer ACCOUNTS = 8;
+    private static final Long TRANSFER_TIMEOUT_MS = 5000L;
+
+    @Test
+    public void shouldReportReadyOnlyAfterAllIterationsRan() {
+        JitWarmup jitWarmup = newWarmup(true);
+        assertEquals(WarmupReport.Status.PENDING, jitWarmup.getReport().getStatus());
+        assertFalse(jitWarmup.isReady());
+
+        jitWarmup.warmUp();
+
+        WarmupReport report = jitWarmup.getReport();
+        assertEquals(WarmupReport.Status.COMPLETED, report.getStatus());
+        assertEquals(ITERATIONS.intValue(), report.getIterationsCompleted());
+        assertNull(report.getMessage());
+        assertTrue(report.isReady());
+    }
+
+    @Test
+    public void shouldBeReadyAtOnceWhenDisabled() {
+        JitWarmup jitWarmup = newWarmup(false);
+
+        jitWarmup.onApplicationEvent(Mockito.mock(ApplicationReadyEvent.class));
+
+        assertEquals(WarmupReport.Status.SKIPPED, jitWarmup.getReport().getStatus());
+        assertTrue(jitWarmup.isReady());
+    }
+
+    private JitWarmup newWarmup(boolean enabled) {
+        return new JitWarmup(new ObjectMapper(), Mockito.mock(ScheduledTransferService.class), enabled, ITERATIONS,
+                ACCOUNTS, TRANSFER_TIMEOUT_MS);
+    }
+}
@@ -0,0 +1,185 @@
+package com.db.awmd.challenge;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Checks a recorded concurrent history of account operations against a sequential bank model,
+ * in the style of Wing and Gong: it searches for an order of the operations that respects
+ * real time, where an operation that returned before another was invoked comes first, and in
+ * which every operation returns what the model returns. Visited (linearized set, model state)
+ * pairs are memoized, which keeps histories of a few dozen operations cheap to check.
+ */
+public class LinearizabilityChecker {
+    public static final String OK = "OK";
+    public static final String OVERDRAFT = "OVERDRAFT";
+    public static final String NO_ACCOUNT = "NO_ACCOUNT";
+    public static final String MISSING = "null";
+
+    private static final int MAX_OPERATIONS = 63;
+
+    public enum Type {
+        TRANSFER, CREDIT, DEBIT, CLEAR, READ
+    }
+
+    public static class Operation {
+        private final int thread;
+        private final Type type;
+        private final String accountId;
+        private final String counterpartyId;
+        private final BigDecimal amount;
+        private long invokedAt;
+        private long returnedAt;
+        private String result;
+
+        public Operation(int thread, Type type, String accountId, String counterpartyId, BigDecimal amount) {
+            this.thread = thread;
+            this.type = type;
+            this.accountId = accountId;
+            this.counterpartyId = counterpartyId;
+            this.amount = amount;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public String getAccountId() {
+            return accountId;
+        }
+
+        public String getCounterpartyId() {
+            return counterpartyId;
+        }
+
+        public BigDecimal getAmount() {
+            return amount;
+        }
+
+        public Operation record(long invokedAt, long returnedAt, String result) {
+            this.invokedAt = invokedAt;
+            this.returnedAt = returnedAt;
+            this.result = result;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + invokedAt + ".." + returnedAt + "] thread " + thread + " " + type
+                    + (accountId == null ? "" : " " + accountId)
+                    + (counterpartyId == null ? "" : "->" + counterpartyId)
+                    + (amount == null ? "" : " " + amount.toPlainString()) + " = " + result;
+        }
+    }
+
+    private final List<Operation> operations;
+
+    private final Set<String> visited = new HashSet<>();
+
+    private LinearizabilityChecker(List<Operation> operations) {
+        if (operations.size() > MAX_OPERATIONS) {
+            throw new IllegalArgumentException("At most " + MAX_OPERATIONS + " operations can be checked");
+        }
+        this.operations = operations;
+    }
+
+    public static boolean isLinearizable(Map<String, BigDecimal> initialBalances, List<Operation> operations) {
+        return new LinearizabilityChecker(operations).search(0L, normalize(initialBalances));
+    }
+
+    public static String describe(List<Operation> operations) {
+        List<Operation> sorted = new ArrayList<>(operations);
+        sorted.sort((left, right) -> Long.compare(left.invokedAt, right.invokedAt));
+        StringBuilder description = new StringBuilder();
+        long origin = sorted.isEmpty() ? 0L : sorted.get(0).invokedAt;
+        for (Operation operation : sorted) {
+            description.append('\n').append(operation.toString().replace(
+                    "[" + operation.invokedAt + ".." + operation.returnedAt + "]",
+                    "[" + (operation.invokedAt - origin) + ".." + (operation.returnedAt - origin) + "]"));
+        }
+        return description.toString();
+    }
+
+    public static String formatBalance(BigDecimal balance) {
+        return balance.signum() == 0 ? "0" : balance.stripTrailingZeros().toPlainString();
+    }
+
+    private boolean search(long linearized, TreeMap<String, BigDecimal> balances) {
+        if (Long.bitCount(linearized) == operations.size()) {
+            return true;
+        }
+        if (!visited.add(linearized + ":" + balances)) {
+            return false;
+        }
+        long firstReturn = Long.MAX_VALUE;
+        for (int i = 0; i < operations.size(); i++) {
+            if ((linearized & 1L << i) == 0) {
+                firstReturn = Math.min(firstReturn, operations.get(i).returnedAt);
+            }
+        }
+        for (int i = 0; i < operations.size(); i++) {
+            Operation operation = operations.get(i);
+            if ((linearized & 1L << i) != 0 || operation.invokedAt > firstReturn) {
+                continue;
+            }
+            TreeMap<String, BigDecimal> next = new TreeMap<>(balances);
+            if (apply(operation, next).equals(operation.result) && search(linearized | 1L << i, next)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sequential specification of the transfer engine.
+     */
+    private static String apply(Operation operation, TreeMap<String, BigDecimal> balances) {
+        BigDecimal balance = operation.accountId == null ? null : balances.get(operation.accountId);
+        switch (operation.type) {
+            case CLEAR:
+                balances.clear();
+                return OK;
+            case READ:
+                return balance == null ? MISSING : formatBalance(balance);
+            case CREDIT:
+                if (balance == null) {
+                    return NO_ACCOUNT;
+                }
+                balances.put(operation.accountId, balance.add(operation.amount));
+                return OK;
+            case DEBIT:
+                if (balance == null) {
+                    return NO_ACCOUNT;
+                }
+                if (balance.compareTo(operation.amount) < 0) {
+                    return OVERDRAFT;
+                }
+                balances.put(operation.accountId, balance.subtract(operation.amount));
+                return OK;
+            case TRANSFER:
+                BigDecimal counterpartyBalance = balances.get(operation.counterpartyId);
+                if (balance == null || counterpartyBalance == null) {
+                    return NO_ACCOUNT;
+                }
+                if (balance.compareTo(operation.amount) < 0) {
+                    return OVERDRAFT;
+                }
+                balances.put(operation.accountId, balance.subtract(operation.amount));
+                balances.put(operation.counterpartyId, counterpartyBalance.add(operation.amount));
+                return OK;
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation.type);
+        }
+    }
+
+    private static TreeMap<String, BigDecimal> normalize(Map<String, BigDecimal> balances) {
+        TreeMap<String, BigDecimal> normalized = new TreeMap<>();
+        balances.forEach((accountId, balance) -> normalized.put(accountId, new BigDecimal(formatBalance(balance))));
+        return normalized;
+    }
+}
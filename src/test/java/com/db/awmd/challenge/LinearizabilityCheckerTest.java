@@ -0,0 +1,101 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.LinearizabilityChecker.Operation;
+import com.db.awmd.challenge.LinearizabilityChecker.Type;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.db.awmd.challenge.LinearizabilityChecker.MISSING;
+import static com.db.awmd.challenge.LinearizabilityChecker.NO_ACCOUNT;
+import static com.db.awmd.challenge.LinearizabilityChecker.OK;
+import static com.db.awmd.challenge.LinearizabilityChecker.OVERDRAFT;
+import static com.db.awmd.challenge.LinearizabilityChecker.isLinearizable;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LinearizabilityCheckerTest {
+    private static final String ACCOUNT_A = "A";
+    private static final String ACCOUNT_B = "B";
+    private static final Map<String, BigDecimal> BALANCES = balances();
+
+    @Test
+    public void shouldAcceptReadOfEitherValueDuringOverlappingCredit() {
+        assertTrue(isLinearizable(BALANCES, Arrays.asList(
+                credit(0, ACCOUNT_A).record(0, 10, OK),
+                read(1, ACCOUNT_A).record(2, 4, "5"))));
+        assertTrue(isLinearizable(BALANCES, Arrays.asList(
+                credit(0, ACCOUNT_A).record(0, 10, OK),
+                read(1, ACCOUNT_A).record(2, 4, "6"))));
+    }
+
+    @Test
+    public void shouldRejectStaleReadAfterCreditReturned() {
+        assertFalse(isLinearizable(BALANCES, Arrays.asList(
+                credit(0, ACCOUNT_A).record(0, 10, OK),
+                read(1, ACCOUNT_A).record(20, 30, "5"))));
+    }
+
+    @Test
+    public void shouldRejectLostUpdate() {
+        assertFalse(isLinearizable(BALANCES, Arrays.asList(
+                credit(0, ACCOUNT_A).record(0, 10, OK),
+                credit(1, ACCOUNT_A).record(1, 11, OK),
+                read(0, ACCOUNT_A).record(20, 21, "6"))));
+    }
+
+    @Test
+    public void shouldRequireOverdraftToMatchSomeOrder() {
+        assertTrue(isLinearizable(BALANCES, Arrays.asList(
+                transfer(0, ACCOUNT_B, ACCOUNT_A, BigDecimal.ONE).record(0, 10, OVERDRAFT),
+                transfer(1, ACCOUNT_A, ACCOUNT_B, BigDecimal.ONE).record(1, 11, OK))));
+        assertFalse(isLinearizable(BALANCES, Arrays.asList(
+                transfer(1, ACCOUNT_A, ACCOUNT_B, BigDecimal.ONE).record(0, 5, OK),
+                transfer(0, ACCOUNT_B, ACCOUNT_A, BigDecimal.ONE).record(10, 20, OVERDRAFT))));
+    }
+
+    @Test
+    public void shouldRejectAccountSeenAfterClearReturned() {
+        assertTrue(isLinearizable(BALANCES, Arrays.asList(
+                transfer(0, ACCOUNT_A, ACCOUNT_B, BigDecimal.ONE).record(0, 10, OK),
+                clear(1).record(2, 8, OK),
+                read(1, ACCOUNT_B).record(12, 14, MISSING),
+                credit(0, ACCOUNT_A).record(15, 16, NO_ACCOUNT))));
+        assertFalse(isLinearizable(BALANCES, Arrays.asList(
+                transfer(0, ACCOUNT_A, ACCOUNT_B, BigDecimal.ONE).record(0, 10, OK),
+                clear(1).record(2, 8, OK),
+                read(1, ACCOUNT_B).record(12, 14, "1"))));
+    }
+
+    @Test
+    public void shouldAcceptEmptyHistory() {
+        assertTrue(isLinearizable(BALANCES, Collections.emptyList()));
+    }
+
+    private static Operation credit(int thread, String accountId) {
+        return new Operation(thread, Type.CREDIT, accountId, null, BigDecimal.ONE);
+    }
+
+    private static Operation read(int thread, String accountId) {
+        return new Operation(thread, Type.READ, accountId, null, null);
+    }
+
+    private static Operation transfer(int thread, String accountFromId, String accountToId, BigDecimal amount) {
+        return new Operation(thread, Type.TRANSFER, accountFromId, accountToId, amount);
+    }
+
+    private static Operation clear(int thread) {
+        return new Operation(thread, Type.CLEAR, null, null, null);
+    }
+
+    private static Map<String, BigDecimal> balances() {
+        Map<String, BigDecimal> balances = new TreeMap<>();
+        balances.put(ACCOUNT_A, new BigDecimal(5));
+        balances.put(ACCOUNT_B, BigDecimal.ZERO);
+        return balances;
+    }
+}
@@ -0,0 +1,102 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.TransferJournal;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AccountsServiceImpl;
+import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.TransferService;
+import com.db.awmd.challenge.service.TransferServiceImpl;
+import com.db.awmd.challenge.snapshot.BalanceSnapshots;
+import com.db.awmd.challenge.snapshot.MoneyConservationMonitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class MoneyConservationMonitorTest {
+    private static final String ACCOUNT_ID = "acc-";
+    private static final BigDecimal BALANCE_100 = new BigDecimal(100);
+    private static final BigDecimal AMOUNT_5 = new BigDecimal(5);
+    private static final Integer NUMBER_OF_ACCOUNTS = 3000;
+    private static final Integer NUMBER_OF_OPERATIONS = 3000;
+    private static final Integer NUMBER_OF_CHECKS = 20;
+    private static final Long CHECK_INTERVAL_MS = 3600000L;
+
+    private MetricsRegistry metricsRegistry;
+
+    private AccountsService accountsService;
+
+    private MoneyConservationMonitor monitor;
+
+    @Before
+    public void before() {
+        BalanceSnapshots balanceSnapshots = new BalanceSnapshots();
+        metricsRegistry = new MetricsRegistry();
+        accountsService = new AccountsServiceImpl(new AccountsRepositoryInMemory(), TransferJournal.NONE, balanceSnapshots);
+        monitor = new MoneyConservationMonitor(balanceSnapshots, metricsRegistry, CHECK_INTERVAL_MS, 4);
+        for (int i = 0; i < NUMBER_OF_ACCOUNTS; i++) {
+            accountsService.createAccount(new Account(ACCOUNT_ID + i, BALANCE_100));
+        }
+    }
+
+    @After
+    public void after() {
+        monitor.shutdown();
+    }
+
+    @Test
+    public void shouldReportNoDriftWhileDepositsWithdrawalsAndTransfersRun() throws Exception {
+        TransferService transferService = new TransferServiceImpl(accountsService, Mockito.mock(NotificationService.class));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> operations = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_OPERATIONS; i++) {
+            Account account = accountsService.getAccount(ACCOUNT_ID + i % NUMBER_OF_ACCOUNTS);
+            Transfer transfer = new Transfer(ACCOUNT_ID + (i + 1) % NUMBER_OF_ACCOUNTS,
+                    ACCOUNT_ID + (i + 2) % NUMBER_OF_ACCOUNTS, BigDecimal.ONE);
+            if (i % 3 == 0) {
+                operations.add(executor.submit(() -> accountsService.creditBalanceAccount(account, AMOUNT_5)));
+            } else if (i % 3 == 1) {
+                operations.add(executor.submit(() -> accountsService.debitBalanceAccount(account, AMOUNT_5)));
+            } else {
+                operations.add(executor.submit(() -> transferService.transferMoneyLock(transfer)));
+            }
+        }
+
+        for (int i = 0; i < NUMBER_OF_CHECKS; i++) {
+            assertEquals(BigDecimal.ZERO, monitor.check());
+        }
+        for (Future<?> operation : operations) {
+            operation.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(BigDecimal.ZERO, monitor.check());
+        assertEquals(BALANCE_100.multiply(new BigDecimal(NUMBER_OF_ACCOUNTS)), metricsRegistry.gaugeValues().get("conservation.total"));
+        assertEquals(0L, metricsRegistry.gaugeValues().get("conservation.drifts.detected"));
+    }
+
+    @Test
+    public void shouldReportDriftThenBalanceIsChangedOutsideDepositOrWithdrawal() {
+        Account account = accountsService.getAccount(ACCOUNT_ID + 0);
+        account.setBalance(BALANCE_100.add(AMOUNT_5));
+        accountsService.updateAccount(account);
+
+        assertEquals(AMOUNT_5, monitor.check());
+        assertEquals(AMOUNT_5, metricsRegistry.gaugeValues().get("conservation.drift"));
+        assertEquals(1L, metricsRegistry.gaugeValues().get("conservation.drifts.detected"));
+    }
+}
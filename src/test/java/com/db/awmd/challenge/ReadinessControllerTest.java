@@ -0,0 +1,48 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.service.AccountsService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@WebAppConfiguration
+public class ReadinessControllerTest {
+
+    @Autowired
+    private AccountsService accountsService;
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @Test
+    public void shouldBecomeReadyAfterWarmupWithoutLeavingScratchAccounts() throws Exception {
+        MockMvc mockMvc = webAppContextSetup(this.webApplicationContext).build();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(60);
+        while (mockMvc.perform(get("/v1/readiness")).andReturn().getResponse().getStatus() != 200
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        mockMvc.perform(get("/v1/readiness"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("COMPLETED"))
+                .andExpect(jsonPath("$.ready").value(true));
+        assertThat(accountsService.getAllAccount().stream()
+                .anyMatch(account -> account.getAccountId().startsWith("warmup-"))).isFalse();
+    }
+}
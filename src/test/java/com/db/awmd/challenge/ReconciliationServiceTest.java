@@ -0,0 +1,185 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Deadline;
+import com.db.awmd.challenge.domain.FanOutTransfer;
+import com.db.awmd.challenge.domain.ReconciliationDiff;
+import com.db.awmd.challenge.domain.ReconciliationReport;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.TransferJournalFile;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AccountsServiceImpl;
+import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.ReconciliationServiceImpl;
+import com.db.awmd.challenge.service.TransferService;
+import com.db.awmd.challenge.service.TransferServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReconciliationServiceTest {
+    private static final String JOURNAL_FILE = "build/test-data/reconciliation.journal";
+    private static final String ACCOUNT_ID = "acc-";
+    private static final BigDecimal BALANCE_100 = new BigDecimal(100);
+    private static final BigDecimal AMOUNT_5 = new BigDecimal(5);
+    private static final Integer NUMBER_OF_ACCOUNTS = 40;
+    private static final Integer NUMBER_OF_TRANSFERS = 400;
+    private static final Integer PARALLELISM = 4;
+    private static final Double MAX_ACCOUNTS_PER_SECOND = 2000.0;
+
+    private TransferJournalFile transferJournal;
+
+    private AccountsRepository accountsRepository;
+
+    private AccountsService accountsService;
+
+    private TransferService transferService;
+
+    private ReconciliationServiceImpl reconciliationService;
+
+    @Before
+    public void before() throws Exception {
+        Files.deleteIfExists(Paths.get(JOURNAL_FILE));
+        transferJournal = new TransferJournalFile(new ObjectMapper(), new MetricsRegistry(), JOURNAL_FILE, 200L, 256);
+        transferJournal.start();
+        accountsRepository = new AccountsRepositoryInMemory();
+        accountsService = new AccountsServiceImpl(accountsRepository, transferJournal);
+        transferService = new TransferServiceImpl(accountsService, Mockito.mock(NotificationService.class));
+        reconciliationService = new ReconciliationServiceImpl(accountsRepository, transferJournal, PARALLELISM, MAX_ACCOUNTS_PER_SECOND);
+        for (int i = 0; i < NUMBER_OF_ACCOUNTS; i++) {
+            accountsService.createAccount(new Account(ACCOUNT_ID + i, BALANCE_100));
+        }
+    }
+
+    @After
+    public void after() throws Exception {
+        reconciliationService.shutdown();
+        transferJournal.shutdown();
+    }
+
+    @Test
+    public void shouldFindNoMismatchWhileTrafficContinues() throws Exception {
+        accountsService.creditBalanceAccount(accountsService.getAccount(ACCOUNT_ID + 0), AMOUNT_5);
+        accountsService.debitBalanceAccount(accountsService.getAccount(ACCOUNT_ID + 1), AMOUNT_5);
+        transferService.transferFanOut(new FanOutTransfer(ACCOUNT_ID + 2, Arrays.asList(
+                new TransferLeg(ACCOUNT_ID + 3, AMOUNT_5), new TransferLeg(ACCOUNT_ID + 4, AMOUNT_5))),
+                Deadline.after(5, TimeUnit.SECONDS));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> transfers = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_TRANSFERS; i++) {
+            Transfer transfer = new Transfer(ACCOUNT_ID + i % NUMBER_OF_ACCOUNTS,
+                    ACCOUNT_ID + (i * 3 + 1) % NUMBER_OF_ACCOUNTS, BigDecimal.ONE);
+            transfers.add(executor.submit(() -> transferService.transferMoneyLock(transfer)));
+        }
+        ReconciliationReport report = awaitReport(reconciliationService.startReconciliation());
+        for (Future<?> transfer : transfers) {
+            transfer.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(ReconciliationReport.Status.COMPLETED, report.getStatus());
+        assertEquals(NUMBER_OF_ACCOUNTS.longValue(), report.getAccountsTotal());
+        assertEquals(NUMBER_OF_ACCOUNTS.longValue(), report.getAccountsChecked());
+        assertEquals(report.getPartitionsTotal(), report.getPartitionsCompleted());
+        assertTrue(report.getMismatches().isEmpty());
+    }
+
+    @Test
+    public void shouldFindNoMismatchWhileSplitAccountTakesCredits() throws Exception {
+        accountsService.splitAccount(ACCOUNT_ID + 0, PARALLELISM);
+        Account split = accountsService.getAccount(ACCOUNT_ID + 0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> credits = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_TRANSFERS; i++) {
+            credits.add(executor.submit(() -> accountsService.creditBalanceAccount(split, BigDecimal.ONE)));
+        }
+        ReconciliationReport report = awaitReport(reconciliationService.startReconciliation());
+        for (Future<?> credit : credits) {
+            credit.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(ReconciliationReport.Status.COMPLETED, report.getStatus());
+        assertTrue(report.getMismatches().isEmpty());
+        assertEquals(BALANCE_100.add(new BigDecimal(NUMBER_OF_TRANSFERS)), split.getBalance());
+    }
+
+    @Test
+    public void shouldReportBalanceChangedOutsideJournal() throws Exception {
+        transferService.transferMoneyLock(new Transfer(ACCOUNT_ID + 0, ACCOUNT_ID + 1, AMOUNT_5));
+        Account tampered = accountsRepository.getAccount(ACCOUNT_ID + 1);
+        tampered.setBalance(BALANCE_100);
+
+        ReconciliationReport report = awaitReport(reconciliationService.startReconciliation());
+
+        assertEquals(1, report.getMismatches().size());
+        ReconciliationDiff diff = report.getMismatches().get(0);
+        assertEquals(ACCOUNT_ID + 1, diff.getAccountId());
+        assertEquals(new BigDecimal(105), diff.getJournalBalance());
+        assertEquals(BALANCE_100, diff.getStoredBalance());
+    }
+
+    @Test
+    public void shouldNotReplayHistoryFromBeforeRestart() throws Exception {
+        transferService.transferMoneyLock(new Transfer(ACCOUNT_ID + 0, ACCOUNT_ID + 1, AMOUNT_5));
+        reconciliationService.shutdown();
+
+        accountsRepository = new AccountsRepositoryInMemory();
+        AccountsServiceImpl restartedAccountsService = new AccountsServiceImpl(accountsRepository, transferJournal);
+        restartedAccountsService.start();
+        restartedAccountsService.createAccount(new Account(ACCOUNT_ID + 1, BALANCE_100));
+        reconciliationService = new ReconciliationServiceImpl(accountsRepository, transferJournal, PARALLELISM, MAX_ACCOUNTS_PER_SECOND);
+
+        ReconciliationReport report = awaitReport(reconciliationService.startReconciliation());
+
+        assertEquals(1L, report.getAccountsTotal());
+        assertTrue(report.getMismatches().isEmpty());
+    }
+
+    @Test
+    public void shouldPaceReplayLikeCapture() throws Exception {
+        reconciliationService.shutdown();
+        double accountsPerSecond = NUMBER_OF_ACCOUNTS;
+        reconciliationService = new ReconciliationServiceImpl(accountsRepository, transferJournal, PARALLELISM, accountsPerSecond);
+
+        long startedAt = System.nanoTime();
+        ReconciliationReport report = awaitReport(reconciliationService.startReconciliation());
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        assertEquals(ReconciliationReport.Status.COMPLETED, report.getStatus());
+        // one permit per account captured and one per account replayed
+        assertTrue(elapsedMillis >= 1900L);
+    }
+
+    private ReconciliationReport awaitReport(ReconciliationReport started) throws InterruptedException {
+        ReconciliationReport report = started;
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (report.getStatus() == ReconciliationReport.Status.RUNNING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            report = reconciliationService.getReport();
+        }
+        return report;
+    }
+}
@@ -0,0 +1,124 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.SaturationReport;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.health.RequestLoadMonitor;
+import com.db.awmd.challenge.health.SaturationMonitor;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AccountsServiceImpl;
+import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.TransferScheduler;
+import com.db.awmd.challenge.service.TransferServiceImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SaturationMonitorTest {
+    private static final String ACCOUNT_FROM_ID = "acc-1";
+    private static final String ACCOUNT_TO_ID = "acc-2";
+    private static final BigDecimal BALANCE_100 = new BigDecimal(100);
+    private static final Long MAX_LOCK_WAIT_MS = 50L;
+
+    private AccountsService accountsService;
+
+    private TransferScheduler transferScheduler;
+
+    private CountDownLatch notificationsReleased;
+
+    private TransferServiceImpl transferService;
+
+    private SaturationMonitor saturationMonitor;
+
+    @Before
+    public void before() {
+        accountsService = new AccountsServiceImpl(new AccountsRepositoryInMemory());
+        accountsService.createAccount(new Account(ACCOUNT_FROM_ID, BALANCE_100));
+        accountsService.createAccount(new Account(ACCOUNT_TO_ID, BALANCE_100));
+        notificationsReleased = new CountDownLatch(1);
+        NotificationService notificationService = (account, description) -> {
+            try {
+                notificationsReleased.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        transferService = new TransferServiceImpl(accountsService, notificationService);
+        transferScheduler = Mockito.mock(TransferScheduler.class);
+        saturationMonitor = new SaturationMonitor(new RequestLoadMonitor(), transferScheduler, transferService,
+                0.9, 50, 1000, MAX_LOCK_WAIT_MS, 0, 0.0);
+    }
+
+    @Test
+    public void shouldNotBeOverloadedWhenIdle() {
+        SaturationReport report = saturationMonitor.check();
+
+        assertFalse(report.isOverloaded());
+        assertEquals(-1, report.getRequestThreadsActive());
+        assertEquals(0, report.getLockWaiters());
+        assertTrue(report.getHeapMaxBytes() > 0);
+    }
+
+    @Test
+    public void shouldReportLockWaitAndNotificationBacklog() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Account accountFrom = accountsService.getAccount(ACCOUNT_FROM_ID);
+        Future<?> transfer;
+        accountFrom.getLock().lock();
+        try {
+            transfer = executor.submit(() -> transferService.transferMoneyLock(
+                    new Transfer(ACCOUNT_FROM_ID, ACCOUNT_TO_ID, BigDecimal.ONE)));
+            awaitUntil(() -> transferService.getLockWaiters() == 1);
+            Thread.sleep(MAX_LOCK_WAIT_MS * 2);
+
+            SaturationReport report = saturationMonitor.check();
+            assertTrue(report.isOverloaded());
+            assertEquals(1, report.getLockWaiters());
+            assertTrue(report.getLongestLockWaitMs() > MAX_LOCK_WAIT_MS);
+        } finally {
+            accountFrom.getLock().unlock();
+        }
+
+        awaitUntil(() -> transferService.getNotificationsInFlight() == 1);
+        SaturationReport report = saturationMonitor.check();
+        assertEquals(0, report.getLockWaiters());
+        assertEquals(1, report.getNotificationsInFlight());
+        assertTrue(report.getOverloadReasons().contains("1 notifications in flight"));
+
+        notificationsReleased.countDown();
+        transfer.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertFalse(saturationMonitor.check().isOverloaded());
+    }
+
+    @Test
+    public void shouldReportTransferBacklog() {
+        Mockito.when(transferScheduler.getPendingTransfers()).thenReturn(1001);
+
+        SaturationReport report = saturationMonitor.check();
+
+        assertTrue(report.isOverloaded());
+        assertEquals(1001, report.getTransfersInFlight());
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
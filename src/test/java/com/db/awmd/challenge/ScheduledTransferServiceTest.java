@@ -0,0 +1,233 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.domain.ScheduledTransferRecord;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.WrongFormatException;
+import com.db.awmd.challenge.repository.ScheduledTransfersRepository;
+import com.db.awmd.challenge.repository.ScheduledTransfersRepositoryFile;
+import com.db.awmd.challenge.service.ScheduledTransferServiceImpl;
+import com.db.awmd.challenge.service.TransferScheduler;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "transfer.scheduled.store-file=build/test-data/scheduled-transfers.json")
+public class ScheduledTransferServiceTest {
+    private static final String ACCOUNT_FROM = "acc-1";
+    private static final String ACCOUNT_TO = "acc-2";
+    private static final BigDecimal AMOUNT_10 = new BigDecimal(10);
+    private static final Long TICK_MS = 10L;
+    private static final Integer WHEEL_SIZE = 16;
+    private static final Double MAX_TRANSFERS_PER_SECOND = 1000.0;
+    private static final Long TRANSFER_TIMEOUT_MS = 5000L;
+    private static final Long VERIFY_TIMEOUT_MS = 2000L;
+
+    @Mock
+    private TransferScheduler transferScheduler;
+
+    @Autowired
+    private ScheduledTransfersRepository scheduledTransfersRepository;
+
+    private ScheduledTransferServiceImpl scheduledTransferService;
+
+    @Before
+    public void before() {
+        scheduledTransfersRepository.saveAll(Collections.emptyList(), Collections.emptyList());
+        Mockito.when(transferScheduler.schedule(Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        scheduledTransferService = createService();
+        scheduledTransferService.start();
+    }
+
+    @After
+    public void after() {
+        for (ScheduledTransfer scheduledTransfer : scheduledTransferService.getScheduledTransfers()) {
+            scheduledTransferService.cancel(scheduledTransfer.getId());
+        }
+        scheduledTransferService.shutdown();
+    }
+
+    @Test
+    public void shouldExecuteFutureDatedTransferOnceAndForgetIt() {
+        long executeAt = System.currentTimeMillis() + 200;
+        ScheduledTransfer registered = scheduledTransferService.register(
+                new ScheduledTransfer(null, ACCOUNT_FROM, ACCOUNT_TO, AMOUNT_10, executeAt, null));
+
+        assertFalse(registered.getId() == null);
+        ArgumentCaptor<Transfer> transfer = ArgumentCaptor.forClass(Transfer.class);
+        Mockito.verify(transferScheduler, Mockito.timeout(VERIFY_TIMEOUT_MS)).schedule(transfer.capture(), Mockito.any());
+        assertTrue(System.currentTimeMillis() >= executeAt);
+        assertEquals(new Transfer(ACCOUNT_FROM, ACCOUNT_TO, AMOUNT_10), transfer.getValue());
+        assertTrue(scheduledTransferService.getScheduledTransfers().isEmpty());
+    }
+
+    @Test
+    public void shouldExecuteRecurringTransferRepeatedly() {
+        scheduledTransferService.register(new ScheduledTransfer(null, ACCOUNT_FROM, ACCOUNT_TO, AMOUNT_10,
+                System.currentTimeMillis() + 50, 50L));
+
+        Mockito.verify(transferScheduler, Mockito.timeout(VERIFY_TIMEOUT_MS).atLeast(3)).schedule(Mockito.any(), Mockito.any());
+        assertEquals(1, scheduledTransferService.getScheduledTransfers().size());
+    }
+
+    @Test
+    public void shouldNotExecuteCancelledTransfer() throws Exception {
+        ScheduledTransfer registered = scheduledTransferService.register(new ScheduledTransfer(null, ACCOUNT_FROM,
+                ACCOUNT_TO, AMOUNT_10, System.currentTimeMillis() + 100, null));
+
+        assertTrue(scheduledTransferService.cancel(registered.getId()));
+        assertFalse(scheduledTransferService.cancel(registered.getId()));
+        Thread.sleep(300);
+        Mockito.verify(transferScheduler, Mockito.never()).schedule(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void shouldRestoreScheduledTransfersAfterRestart() {
+        ScheduledTransfer registered = scheduledTransferService.register(new ScheduledTransfer(null, ACCOUNT_FROM,
+                ACCOUNT_TO, AMOUNT_10, System.currentTimeMillis() + 60000, 60000L));
+        scheduledTransferService.shutdown();
+
+        scheduledTransferService = createService();
+        scheduledTransferService.start();
+
+        List<ScheduledTransfer> restored = scheduledTransferService.getScheduledTransfers();
+        assertEquals(1, restored.size());
+        assertEquals(registered, restored.get(0));
+    }
+
+    @Test
+    public void shouldHandOverDueOccurrencesLeftBeforeRestart() {
+        scheduledTransferService.shutdown();
+        ScheduledTransfer fired = new ScheduledTransfer("scheduled-1", ACCOUNT_FROM, ACCOUNT_TO, AMOUNT_10,
+                System.currentTimeMillis() - 1000, null);
+        scheduledTransfersRepository.saveAll(Collections.emptyList(), Collections.singletonList(fired));
+
+        scheduledTransferService = createService();
+        scheduledTransferService.start();
+
+        Mockito.verify(transferScheduler, Mockito.timeout(VERIFY_TIMEOUT_MS)).schedule(
+                Mockito.eq(new Transfer(ACCOUNT_FROM, ACCOUNT_TO, AMOUNT_10)), Mockito.any());
+        scheduledTransferService.shutdown();
+        assertTrue(scheduledTransfersRepository.loadDue().isEmpty());
+    }
+
+    @Test
+    public void shouldStopRecurringTransferCancelledWhileFiring() throws Exception {
+        ScheduledTransfer registered = scheduledTransferService.register(new ScheduledTransfer(null, ACCOUNT_FROM,
+                ACCOUNT_TO, AMOUNT_10, System.currentTimeMillis() + TICK_MS, TICK_MS));
+        Mockito.verify(transferScheduler, Mockito.timeout(VERIFY_TIMEOUT_MS).atLeastOnce()).schedule(Mockito.any(), Mockito.any());
+
+        assertTrue(scheduledTransferService.cancel(registered.getId()));
+        Thread.sleep(5 * TICK_MS);
+        Mockito.reset(transferScheduler);
+        Thread.sleep(10 * TICK_MS);
+
+        Mockito.verify(transferScheduler, Mockito.never()).schedule(Mockito.any(), Mockito.any());
+        assertTrue(scheduledTransferService.getScheduledTransfers().isEmpty());
+    }
+
+    @Test
+    public void shouldHandOverOccurrenceFiredWhileStoreFails() {
+        scheduledTransferService.shutdown();
+        AtomicInteger failures = new AtomicInteger(3);
+        ScheduledTransfersRepository failingRepository = new ScheduledTransfersRepository() {
+            @Override
+            public List<ScheduledTransfer> loadAll() {
+                return scheduledTransfersRepository.loadAll();
+            }
+
+            @Override
+            public List<ScheduledTransfer> loadDue() {
+                return scheduledTransfersRepository.loadDue();
+            }
+
+            @Override
+            public void append(List<ScheduledTransferRecord> records) {
+                boolean fired = records.stream().anyMatch(record -> record.getType() == ScheduledTransferRecord.Type.FIRED);
+                if (fired && failures.getAndDecrement() > 0) {
+                    throw new UncheckedIOException(new IOException("disk full"));
+                }
+                scheduledTransfersRepository.append(records);
+            }
+
+            @Override
+            public void saveAll(Collection<ScheduledTransfer> scheduledTransfers, Collection<ScheduledTransfer> dueTransfers) {
+                scheduledTransfersRepository.saveAll(scheduledTransfers, dueTransfers);
+            }
+        };
+        scheduledTransferService = new ScheduledTransferServiceImpl(transferScheduler, failingRepository,
+                TICK_MS, WHEEL_SIZE, MAX_TRANSFERS_PER_SECOND, TRANSFER_TIMEOUT_MS);
+        scheduledTransferService.start();
+
+        scheduledTransferService.register(new ScheduledTransfer(null, ACCOUNT_FROM, ACCOUNT_TO, AMOUNT_10,
+                System.currentTimeMillis() + 2 * TICK_MS, null));
+
+        Mockito.verify(transferScheduler, Mockito.timeout(VERIFY_TIMEOUT_MS)).schedule(
+                Mockito.eq(new Transfer(ACCOUNT_FROM, ACCOUNT_TO, AMOUNT_10)), Mockito.any());
+        assertTrue(failures.get() < 0);
+        scheduledTransferService.shutdown();
+        assertTrue(scheduledTransfersRepository.loadAll().isEmpty());
+        assertTrue(scheduledTransfersRepository.loadDue().isEmpty());
+    }
+
+    @Test
+    public void shouldReplayCompactedLogOfRecords() throws Exception {
+        String storeFile = "build/test-data/scheduled-transfers-compaction.log";
+        Files.deleteIfExists(Paths.get(storeFile));
+        ScheduledTransfersRepositoryFile repository = new ScheduledTransfersRepositoryFile(new ObjectMapper(), storeFile, 8L);
+        ScheduledTransfer kept = new ScheduledTransfer("kept", ACCOUNT_FROM, ACCOUNT_TO, AMOUNT_10, 1000L, 60000L);
+        ScheduledTransfer fired = new ScheduledTransfer("fired", ACCOUNT_FROM, ACCOUNT_TO, AMOUNT_10, 2000L, null);
+        repository.append(Arrays.asList(ScheduledTransferRecord.of(ScheduledTransferRecord.Type.SCHEDULED, kept),
+                ScheduledTransferRecord.of(ScheduledTransferRecord.Type.SCHEDULED, fired),
+                ScheduledTransferRecord.of(ScheduledTransferRecord.Type.FIRED, fired)));
+        for (int i = 0; i < 50; i++) {
+            ScheduledTransfer cancelled = new ScheduledTransfer("cancelled-" + i, ACCOUNT_FROM, ACCOUNT_TO, AMOUNT_10, 1000L, null);
+            repository.append(Collections.singletonList(ScheduledTransferRecord.of(ScheduledTransferRecord.Type.SCHEDULED, cancelled)));
+            repository.append(Collections.singletonList(ScheduledTransferRecord.cancelled(cancelled.getId())));
+        }
+        repository.close();
+
+        assertTrue(Files.readAllLines(Paths.get(storeFile)).size() <= 10);
+        ScheduledTransfersRepositoryFile reopened = new ScheduledTransfersRepositoryFile(new ObjectMapper(), storeFile, 8L);
+        assertEquals(Collections.singletonList(kept), reopened.loadAll());
+        assertEquals(Collections.singletonList(fired), reopened.loadDue());
+        reopened.close();
+    }
+
+    @Test(expected = WrongFormatException.class)
+    public void shouldRejectIntervalShorterThanTick() {
+        scheduledTransferService.register(new ScheduledTransfer(null, ACCOUNT_FROM, ACCOUNT_TO, AMOUNT_10,
+                System.currentTimeMillis(), TICK_MS - 1));
+    }
+
+    private ScheduledTransferServiceImpl createService() {
+        return new ScheduledTransferServiceImpl(transferScheduler, scheduledTransfersRepository,
+                TICK_MS, WHEEL_SIZE, MAX_TRANSFERS_PER_SECOND, TRANSFER_TIMEOUT_MS);
+    }
+}
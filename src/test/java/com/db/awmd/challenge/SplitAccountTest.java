@@ -0,0 +1,289 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.domain.JournalEntry;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.AccountNotProcessedExeption;
+import com.db.awmd.challenge.exception.OverDraftException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.TransferJournal;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AccountsServiceImpl;
+import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.TransferService;
+import com.db.awmd.challenge.service.TransferServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@Slf4j
+public class SplitAccountTest {
+    private static final String HOT_ACCOUNT_ID = "merchant";
+    private static final String PAYER_ACCOUNT_ID = "payer";
+    private static final Integer STRIPES = 8;
+    private static final Integer THREADS = 8;
+    private static final Integer CREDITS_PER_THREAD = 2000;
+    private static final Integer BENCHMARK_CREDITS = 100000;
+    private static final Long BENCHMARK_JOURNAL_LATENCY_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private AccountsService accountsService;
+
+    private ExecutorService executor;
+
+    @Before
+    public void before() {
+        accountsService = new AccountsServiceImpl(new AccountsRepositoryInMemory());
+        accountsService.createAccount(new Account(HOT_ACCOUNT_ID, new BigDecimal(100)));
+        accountsService.createAccount(new Account(PAYER_ACCOUNT_ID, new BigDecimal(1000000)));
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldKeepEveryConcurrentCreditOfSplitAccount() throws Exception {
+        accountsService.splitAccount(HOT_ACCOUNT_ID, STRIPES);
+
+        runConcurrently(i -> accountsService.creditBalanceAccount(accountsService.getAccount(HOT_ACCOUNT_ID), BigDecimal.ONE));
+
+        Account account = accountsService.getAccount(HOT_ACCOUNT_ID);
+        assertTrue(account.isSplit());
+        assertEquals(0, new BigDecimal(100 + THREADS * CREDITS_PER_THREAD).compareTo(account.getBalance()));
+    }
+
+    @Test
+    public void shouldDrawDebitsFromStripesAndRejectOverdraft() {
+        accountsService.splitAccount(HOT_ACCOUNT_ID, STRIPES);
+        Account account = accountsService.getAccount(HOT_ACCOUNT_ID);
+        for (int i = 0; i < 10; i++) {
+            accountsService.creditBalanceAccount(account, BigDecimal.TEN);
+        }
+
+        accountsService.debitBalanceAccount(account, new BigDecimal(150));
+
+        assertEquals(0, new BigDecimal(50).compareTo(account.getBalance()));
+        try {
+            accountsService.debitBalanceAccount(account, new BigDecimal(51));
+            throw new AssertionError("Overdraft of split account accepted");
+        } catch (OverDraftException e) {
+            assertEquals(0, new BigDecimal(50).compareTo(account.getBalance()));
+        }
+    }
+
+    @Test
+    public void shouldConserveMoneyWhenTransfersAndCreditsRace() throws Exception {
+        accountsService.splitAccount(HOT_ACCOUNT_ID, STRIPES);
+        TransferService transferService = new TransferServiceImpl(accountsService, Mockito.mock(NotificationService.class));
+
+        runConcurrently(i -> {
+            if (i % 3 == 0) {
+                transferService.transferMoneyLock(new Transfer(HOT_ACCOUNT_ID, PAYER_ACCOUNT_ID, BigDecimal.ONE));
+            } else {
+                transferService.transferMoneyLock(new Transfer(PAYER_ACCOUNT_ID, HOT_ACCOUNT_ID, BigDecimal.ONE));
+            }
+        });
+
+        BigDecimal total = accountsService.getAccount(HOT_ACCOUNT_ID).getBalance()
+                .add(accountsService.getAccount(PAYER_ACCOUNT_ID).getBalance());
+        assertEquals(0, new BigDecimal(1000100).compareTo(total));
+        assertEquals(0, new BigDecimal(1000100).compareTo(accountsService.getBalanceSnapshot().getTotal()));
+    }
+
+    @Test
+    public void shouldKeepSnapshotBalancesInStepWithTotalWhileCreditsRace() throws Exception {
+        accountsService = new AccountsServiceImpl(new AccountsRepositoryInMemory(), new SlowJournal());
+        accountsService.createAccount(new Account(HOT_ACCOUNT_ID, new BigDecimal(100)));
+        accountsService.createAccount(new Account(PAYER_ACCOUNT_ID, new BigDecimal(1000000)));
+        accountsService.splitAccount(HOT_ACCOUNT_ID, STRIPES);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Future<Integer> snapshots = executor.submit(() -> {
+            int taken = 0;
+            while (running.get()) {
+                BalanceSnapshot snapshot = accountsService.getBalanceSnapshot();
+                BigDecimal sum = snapshot.getBalances().values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+                assertEquals(0, snapshot.getTotal().compareTo(sum));
+                taken++;
+            }
+            return taken;
+        });
+
+        try {
+            runConcurrently(i -> {
+                if (i % 5 == 0) {
+                    accountsService.debitBalanceAccount(accountsService.getAccount(HOT_ACCOUNT_ID), BigDecimal.ONE);
+                } else {
+                    accountsService.creditBalanceAccount(accountsService.getAccount(HOT_ACCOUNT_ID), BigDecimal.ONE);
+                }
+            });
+        } finally {
+            running.set(false);
+        }
+
+        assertTrue(snapshots.get(10, TimeUnit.SECONDS) > 0);
+        BalanceSnapshot last = accountsService.getBalanceSnapshot();
+        assertEquals(0, accountsService.getAccount(HOT_ACCOUNT_ID).getBalance().compareTo(last.getBalances().get(HOT_ACCOUNT_ID)));
+    }
+
+    @Test
+    public void shouldNotLoseCreditsWhenMergedConcurrently() throws Exception {
+        accountsService.splitAccount(HOT_ACCOUNT_ID, STRIPES);
+        Future<?> merge = executor.submit(() -> {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+            accountsService.mergeAccount(HOT_ACCOUNT_ID);
+        });
+
+        runConcurrently(i -> accountsService.creditBalanceAccount(accountsService.getAccount(HOT_ACCOUNT_ID), BigDecimal.ONE));
+        merge.get(10, TimeUnit.SECONDS);
+
+        Account account = accountsService.getAccount(HOT_ACCOUNT_ID);
+        assertFalse(account.isSplit());
+        assertEquals(0, new BigDecimal(100 + THREADS * CREDITS_PER_THREAD).compareTo(account.getBalance()));
+    }
+
+    @Test
+    public void shouldSerializeSplitAccountLikeAnyOther() throws Exception {
+        accountsService.splitAccount(HOT_ACCOUNT_ID, STRIPES);
+        accountsService.creditBalanceAccount(accountsService.getAccount(HOT_ACCOUNT_ID), BigDecimal.TEN);
+
+        String json = new ObjectMapper().writeValueAsString(accountsService.getAccount(HOT_ACCOUNT_ID));
+
+        assertEquals("{\"accountId\":\"merchant\",\"balance\":110}", json);
+    }
+
+    @Test(expected = AccountNotProcessedExeption.class)
+    public void shouldRefuseSplitWithoutInMemoryStore() {
+        AccountsRepository persistentRepository = Mockito.mock(AccountsRepository.class);
+        Mockito.when(persistentRepository.getAccount(HOT_ACCOUNT_ID)).thenReturn(new Account(HOT_ACCOUNT_ID));
+
+        new AccountsServiceImpl(persistentRepository).splitAccount(HOT_ACCOUNT_ID, STRIPES);
+    }
+
+    @Test(expected = AccountNotProcessedExeption.class)
+    public void shouldRefuseSingleStripe() {
+        accountsService.splitAccount(HOT_ACCOUNT_ID, 1);
+    }
+
+    /**
+     * Credit throughput to one hot account, locked and split, as threads are added. The durable
+     * journal is modelled by a fixed append latency. Run with -Dbenchmark=true.
+     */
+    @Test
+    public void benchmarkHotAccountCredits() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= Math.max(processors, 8); threads *= 2) {
+            for (TransferJournal journal : new TransferJournal[]{TransferJournal.NONE, new SlowJournal()}) {
+                long lockedPerSecond = benchmarkCredits(journal, threads, false);
+                long splitPerSecond = benchmarkCredits(journal, threads, true);
+                log.info(threads + " threads on " + processors + " processors, "
+                        + (journal == TransferJournal.NONE ? "no journal" : "journal latency " + BENCHMARK_JOURNAL_LATENCY_NANOS + "ns")
+                        + ": locked " + lockedPerSecond + " credits/s, split " + splitPerSecond + " credits/s");
+            }
+        }
+    }
+
+    private long benchmarkCredits(TransferJournal journal, int threads, boolean split) throws Exception {
+        AccountsService service = new AccountsServiceImpl(new AccountsRepositoryInMemory(), journal);
+        service.createAccount(new Account(HOT_ACCOUNT_ID, BigDecimal.ZERO));
+        if (split) {
+            service.splitAccount(HOT_ACCOUNT_ID, Math.max(2, threads));
+        }
+        Account account = service.getAccount(HOT_ACCOUNT_ID);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        int creditsPerThread = BENCHMARK_CREDITS / threads / (journal == TransferJournal.NONE ? 1 : 20);
+        for (int t = 0; t < threads; t++) {
+            workers.add(pool.submit((Callable<Void>) () -> {
+                start.await();
+                for (int i = 0; i < creditsPerThread; i++) {
+                    service.creditBalanceAccount(account, BigDecimal.ONE);
+                }
+                return null;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        long elapsed = System.nanoTime() - begin;
+        pool.shutdown();
+        assertEquals(0, new BigDecimal(creditsPerThread * threads).compareTo(account.getBalance()));
+        return creditsPerThread * threads * TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    private void runConcurrently(Operation operation) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS - 1; t++) {
+            workers.add(executor.submit((Callable<Void>) () -> {
+                start.await();
+                for (int i = 0; i < CREDITS_PER_THREAD; i++) {
+                    operation.run(i);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (int i = 0; i < CREDITS_PER_THREAD; i++) {
+            operation.run(i);
+        }
+        for (Future<?> worker : workers) {
+            worker.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private interface Operation {
+        void run(int i) throws Exception;
+    }
+
+    private static class SlowJournal implements TransferJournal {
+        private final AtomicLong sequence = new AtomicLong();
+
+        @Override
+        public JournalEntry append(JournalEntry.Type type, String accountFromId, String accountToId, BigDecimal amount,
+                                   BigDecimal creditAmount) {
+            LockSupport.parkNanos(BENCHMARK_JOURNAL_LATENCY_NANOS);
+            return new JournalEntry(sequence.incrementAndGet(), System.currentTimeMillis(), type, accountFromId, accountToId,
+                    amount, creditAmount);
+        }
+
+        @Override
+        public List<JournalEntry> readEntries() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public long getLastSequence() {
+            return sequence.get();
+        }
+    }
+}
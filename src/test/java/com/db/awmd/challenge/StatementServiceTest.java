@@ -0,0 +1,207 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceChange;
+import com.db.awmd.challenge.domain.JournalEntry;
+import com.db.awmd.challenge.domain.StatementFormat;
+import com.db.awmd.challenge.exception.AccountNotExistException;
+import com.db.awmd.challenge.repository.AccountHistoryRepository;
+import com.db.awmd.challenge.repository.AccountHistoryRepositoryFile;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.TransferJournal;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AccountsServiceImpl;
+import com.db.awmd.challenge.service.StatementService;
+import com.db.awmd.challenge.service.StatementServiceImpl;
+import com.db.awmd.challenge.snapshot.BalanceSnapshots;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class StatementServiceTest {
+    private static final String HISTORY_DIRECTORY = "build/test-data/history";
+    private static final String ACCOUNT_ID = "acc-1";
+    private static final String COUNTERPARTY_ID = "acc-2";
+    private static final BigDecimal BALANCE_100 = new BigDecimal(100);
+    private static final BigDecimal AMOUNT_5 = new BigDecimal(5);
+    private static final BigDecimal AMOUNT_3 = new BigDecimal(3);
+    private static final Long SEGMENT_MS = 1000L;
+    private static final Integer INDEX_INTERVAL = 4;
+    private static final Integer NUMBER_OF_CHANGES = 1000;
+    private static final Long MILLIS_BETWEEN_CHANGES = 10L;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private AccountHistoryRepositoryFile accountHistoryRepository;
+
+    private AccountsService accountsService;
+
+    private StatementService statementService;
+
+    @Before
+    public void before() {
+        FileSystemUtils.deleteRecursively(new File(HISTORY_DIRECTORY));
+        accountHistoryRepository = open();
+        accountsService = new AccountsServiceImpl(new AccountsRepositoryInMemory(), TransferJournal.NONE,
+                new BalanceSnapshots(), Collections.singletonList(accountHistoryRepository));
+        statementService = new StatementServiceImpl(accountsService, accountHistoryRepository, objectMapper);
+    }
+
+    @After
+    public void after() throws Exception {
+        accountHistoryRepository.shutdown();
+    }
+
+    @Test
+    public void shouldReadRangeAcrossSegmentsWithOpeningAndClosingBalances() throws Exception {
+        appendChanges();
+
+        CollectingVisitor statement = readRange(accountHistoryRepository, 2005L, 5005L);
+
+        assertEquals(new BigDecimal(200), statement.opening);
+        assertEquals(300, statement.movements.size());
+        assertEquals(2010L, statement.movements.get(0).getTimestamp());
+        assertEquals(5000L, statement.movements.get(299).getTimestamp());
+        assertEquals(new BigDecimal(500), statement.closing);
+    }
+
+    @Test
+    public void shouldRebuildIndexAfterRestart() throws Exception {
+        appendChanges();
+        accountHistoryRepository.shutdown();
+
+        accountHistoryRepository = open();
+        CollectingVisitor statement = readRange(accountHistoryRepository, 7000L, Long.MAX_VALUE);
+
+        assertEquals(new BigDecimal(699), statement.opening);
+        assertEquals(301, statement.movements.size());
+        assertEquals(new BigDecimal(NUMBER_OF_CHANGES), statement.closing);
+    }
+
+    @Test
+    public void shouldReportUnchangedBalanceForRangeWithoutMovements() throws Exception {
+        appendChanges();
+
+        CollectingVisitor statement = readRange(accountHistoryRepository, 20001L, 30000L);
+
+        assertEquals(new BigDecimal(NUMBER_OF_CHANGES), statement.opening);
+        assertEquals(0, statement.movements.size());
+        assertEquals(new BigDecimal(NUMBER_OF_CHANGES), statement.closing);
+    }
+
+    @Test
+    public void shouldStreamNdjsonStatementOfAccountOperations() throws Exception {
+        accountsService.createAccount(new Account(ACCOUNT_ID, BALANCE_100));
+        accountsService.creditBalanceAccount(accountsService.getAccount(ACCOUNT_ID), AMOUNT_5);
+        accountsService.debitBalanceAccount(accountsService.getAccount(ACCOUNT_ID), AMOUNT_3);
+
+        String[] lines = writeStatement(StatementFormat.NDJSON).split("\n");
+
+        assertEquals(5, lines.length);
+        JsonNode opening = objectMapper.readTree(lines[0]);
+        assertEquals("OPENING", opening.get("record").asText());
+        assertEquals(0, opening.get("balance").decimalValue().signum());
+        BalanceChange debit = objectMapper.readValue(lines[3], BalanceChange.class);
+        assertEquals(JournalEntry.Type.DEBIT, debit.getType());
+        assertEquals(AMOUNT_3.negate(), debit.getAmount());
+        assertEquals(new BigDecimal(102), debit.getBalance());
+        JsonNode closing = objectMapper.readTree(lines[4]);
+        assertEquals("CLOSING", closing.get("record").asText());
+        assertEquals(3, closing.get("movements").asInt());
+        assertEquals(new BigDecimal(102), closing.get("balance").decimalValue());
+    }
+
+    @Test
+    public void shouldStreamCsvStatementOfAccountOperations() throws Exception {
+        accountsService.createAccount(new Account(ACCOUNT_ID, BALANCE_100));
+        accountsService.createAccount(new Account(COUNTERPARTY_ID, BALANCE_100));
+        accountsService.makeTransfer(accountsService.getAccount(COUNTERPARTY_ID), accountsService.getAccount(ACCOUNT_ID), AMOUNT_5);
+
+        String[] lines = writeStatement(StatementFormat.CSV).split("\n");
+
+        assertEquals(5, lines.length);
+        assertEquals("record,sequence,timestamp,type,counterpartyId,amount,balance", lines[0]);
+        assertEquals(true, lines[1].startsWith("OPENING,,0,"));
+        assertEquals(true, lines[2].contains(",OPEN,,100,100"));
+        assertEquals(true, lines[3].contains(",TRANSFER," + COUNTERPARTY_ID + ",5,105"));
+        assertEquals(true, lines[4].startsWith("CLOSING,") && lines[4].endsWith(",105"));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailRangeReadOfHistoryWithGaps() throws Exception {
+        Files.createDirectories(Paths.get(HISTORY_DIRECTORY));
+        Files.write(Paths.get(HISTORY_DIRECTORY, "a-" + ACCOUNT_ID), new byte[0]);
+
+        appendChanges();
+
+        readRange(accountHistoryRepository, 0L, Long.MAX_VALUE);
+    }
+
+    @Test(expected = AccountNotExistException.class)
+    public void shouldRejectStatementOfUnknownAccount() throws Exception {
+        writeStatement(StatementFormat.NDJSON);
+    }
+
+    private void appendChanges() {
+        for (int i = 1; i <= NUMBER_OF_CHANGES; i++) {
+            accountHistoryRepository.append(new BalanceChange(ACCOUNT_ID, i, i * MILLIS_BETWEEN_CHANGES,
+                    JournalEntry.Type.CREDIT, null, BigDecimal.ONE, new BigDecimal(i)));
+        }
+    }
+
+    private AccountHistoryRepositoryFile open() {
+        AccountHistoryRepositoryFile repository = new AccountHistoryRepositoryFile(objectMapper, HISTORY_DIRECTORY,
+                SEGMENT_MS, INDEX_INTERVAL);
+        repository.start();
+        return repository;
+    }
+
+    private String writeStatement(StatementFormat format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        statementService.writeStatement(ACCOUNT_ID, 0L, Long.MAX_VALUE, format, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private CollectingVisitor readRange(AccountHistoryRepository repository, long from, long to) throws Exception {
+        CollectingVisitor visitor = new CollectingVisitor();
+        repository.readRange(ACCOUNT_ID, from, to, visitor);
+        return visitor;
+    }
+
+    private static class CollectingVisitor implements AccountHistoryRepository.HistoryVisitor {
+        private BigDecimal opening;
+        private final List<BalanceChange> movements = new ArrayList<>();
+        private BigDecimal closing;
+
+        @Override
+        public void opening(BigDecimal balance) {
+            opening = balance;
+        }
+
+        @Override
+        public void movement(BalanceChange change) {
+            movements.add(change);
+        }
+
+        @Override
+        public void closing(BigDecimal balance) {
+            closing = balance;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Deadline;
+import com.db.awmd.challenge.domain.TraceSpan;
+import com.db.awmd.challenge.domain.TracedRequest;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AccountsServiceImpl;
+import com.db.awmd.challenge.service.FairTransferScheduler;
+import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.TransferServiceImpl;
+import com.db.awmd.challenge.tracing.RequestTraceFilter;
+import com.db.awmd.challenge.tracing.SlowRequestRecorder;
+import com.db.awmd.challenge.tracing.Tracing;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.MDC;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TracingTest {
+    private static final String REQUEST_ID = "req-1";
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.MINUTES.toMillis(1000));
+
+    private SlowRequestRecorder recorder;
+
+    @Before
+    public void before() {
+        recorder = new SlowRequestRecorder(1.0, 2, 3, new MetricsRegistry(), clock::get);
+    }
+
+    @Test
+    public void shouldPropagateRequestIdAndRecordSpansOfEachLayer() throws Exception {
+        AccountsService accountsService = new AccountsServiceImpl(new AccountsRepositoryInMemory());
+        accountsService.createAccount(new Account("acc-1", new BigDecimal(100)));
+        accountsService.createAccount(new Account("acc-2"));
+        String[] workerRequestId = new String[1];
+        NotificationService notificationService = (account, message) -> workerRequestId[0] = MDC.get(Tracing.REQUEST_ID);
+        FairTransferScheduler scheduler = new FairTransferScheduler(
+                new TransferServiceImpl(accountsService, notificationService), 1, "trace-test-");
+        recorder = new SlowRequestRecorder(1.0, 2, 3, new MetricsRegistry(), System::currentTimeMillis);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/v1/transfers/process/acc-1/acc-2/10");
+        request.addHeader(RequestTraceFilter.REQUEST_ID_HEADER, REQUEST_ID);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        new RequestTraceFilter(recorder, 256).doFilter(request, response, new MockFilterChain() {
+            @Override
+            public void doFilter(ServletRequest req, ServletResponse res) {
+                try {
+                    scheduler.schedule(new Transfer("acc-1", "acc-2", BigDecimal.TEN), Deadline.after(5, TimeUnit.SECONDS))
+                            .get(5, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        scheduler.shutdown();
+
+        assertEquals(REQUEST_ID, response.getHeader(RequestTraceFilter.REQUEST_ID_HEADER));
+        assertEquals(REQUEST_ID, workerRequestId[0]);
+        assertNull(MDC.get(Tracing.REQUEST_ID));
+        List<TracedRequest> slowest = recorder.getSlowest(1);
+        assertEquals(1, slowest.size());
+        assertEquals(REQUEST_ID, slowest.get(0).getRequestId());
+        Set<String> spans = slowest.get(0).getSpans().stream().map(TraceSpan::getName).collect(Collectors.toCollection(TreeSet::new));
+        assertTrue(spans.toString(), spans.containsAll(Arrays.asList("controller", "scheduler.queued",
+                "service.transfer", "service.locks", "service.makeTransfer", "repository.updateAccounts", "journal.append")));
+    }
+
+    @Test
+    public void shouldGenerateRequestIdWhenMissingOrUnusable() throws Exception {
+        recorder.setSampleRate(0.0);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/v1/accounts");
+        request.addHeader(RequestTraceFilter.REQUEST_ID_HEADER, "bad id\nwith newline");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        new RequestTraceFilter(recorder, 256).doFilter(request, response, new MockFilterChain());
+
+        String requestId = response.getHeader(RequestTraceFilter.REQUEST_ID_HEADER);
+        assertNotNull(requestId);
+        assertEquals(36, requestId.length());
+        assertEquals(Collections.emptyList(), recorder.getSlowest(3));
+    }
+
+    @Test
+    public void shouldKeepSlowestRequestsPerMinute() {
+        long minute = clock.get();
+        recorder.record(traced("a", minute, 10));
+        recorder.record(traced("b", minute, 30));
+        recorder.record(traced("c", minute, 20));
+        recorder.record(traced("d", minute, 5));
+        recorder.record(traced("e", minute + TimeUnit.MINUTES.toMillis(1), 1));
+        clock.addAndGet(TimeUnit.MINUTES.toMillis(1));
+
+        assertEquals(Arrays.asList("e", "b", "c"), ids(recorder.getSlowest(3)));
+        assertEquals(Arrays.asList("e"), ids(recorder.getSlowest(1)));
+
+        clock.addAndGet(TimeUnit.MINUTES.toMillis(3));
+        recorder.record(traced("f", clock.get(), 1));
+        assertEquals(Arrays.asList("f"), ids(recorder.getSlowest(3)));
+    }
+
+    private static TracedRequest traced(String requestId, long startedAt, long durationMicros) {
+        return new TracedRequest(requestId, "GET", "/", 200, startedAt, durationMicros, Collections.emptyList());
+    }
+
+    private static List<String> ids(List<TracedRequest> requests) {
+        return requests.stream().map(TracedRequest::getRequestId).collect(Collectors.toList());
+    }
+}
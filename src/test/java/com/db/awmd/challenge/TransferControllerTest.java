@@ -36,6 +36,7 @@ public class TransferControllerTest {
     private static final String OVERDRADF_MESSAGE = "Account with id:acc-1 does not have enough monney for withdraw.";
     private static final String ACCOUNT_1_NOT_EXISTS = "Account with id acc-1 does not exists";
     private static final String ACCOUNT_2_NOT_EXISTS = "Account with id acc-2 does not exists";
+    private static final String DEADLINE_EXCEEDED_MESSAGE = "Transfer deadline exceeded";
 
     @Autowired
     private AccountsService accountsService;
@@ -166,4 +167,53 @@ public class TransferControllerTest {
         assertThat(this.accountsService.getAccount(ACCOUNT_FROM).getBalance()).isEqualTo(TRANSFER_VALUE_10);
     }
 
+    @Test
+    public void processTransferAndReturnServiceUnavailableThenDeadlinePassed() throws Exception {
+        Account account1 = new Account(ACCOUNT_FROM);
+        Account account2 = new Account(ACCOUNT_TO);
+        accountsService.createAccount(account1);
+        accountsService.createAccount(account2);
+        accountsService.creditBalanceAccount(account1, BALANCE_10);
+
+        this.mockMvc.perform(get("/v1/transfers/process/" + ACCOUNT_FROM + "/" + ACCOUNT_TO + "/" + TRANSFER_VALUE_10)
+                .header("X-Request-Deadline", System.currentTimeMillis() - 1))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(content().string(DEADLINE_EXCEEDED_MESSAGE));
+
+        assertThat(this.accountsService.getAccount(ACCOUNT_FROM).getBalance()).isEqualTo(BALANCE_10);
+        assertThat(this.accountsService.getAccount(ACCOUNT_TO).getBalance()).isEqualTo(INITIAL_BALANCE_0);
+    }
+
+    @Test
+    public void processTransferWithFarFutureDeadline() throws Exception {
+        Account account1 = new Account(ACCOUNT_FROM);
+        Account account2 = new Account(ACCOUNT_TO);
+        accountsService.createAccount(account1);
+        accountsService.createAccount(account2);
+        accountsService.creditBalanceAccount(account1, BALANCE_10);
+
+        this.mockMvc.perform(get("/v1/transfers/process/" + ACCOUNT_FROM + "/" + ACCOUNT_TO + "/" + TRANSFER_VALUE_10)
+                .header("X-Request-Deadline", Long.MAX_VALUE))
+                .andExpect(status().isCreated())
+                .andExpect(content().string("Success"));
+
+        assertThat(this.accountsService.getAccount(ACCOUNT_TO).getBalance()).isEqualTo(BALANCE_10);
+    }
+
+    @Test
+    public void processTransferAndReturnServiceUnavailableThenDeadlineFarInPast() throws Exception {
+        Account account1 = new Account(ACCOUNT_FROM);
+        Account account2 = new Account(ACCOUNT_TO);
+        accountsService.createAccount(account1);
+        accountsService.createAccount(account2);
+        accountsService.creditBalanceAccount(account1, BALANCE_10);
+
+        this.mockMvc.perform(get("/v1/transfers/process/" + ACCOUNT_FROM + "/" + ACCOUNT_TO + "/" + TRANSFER_VALUE_10)
+                .header("X-Request-Deadline", Long.MIN_VALUE))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(content().string(DEADLINE_EXCEEDED_MESSAGE));
+
+        assertThat(this.accountsService.getAccount(ACCOUNT_TO).getBalance()).isEqualTo(INITIAL_BALANCE_0);
+    }
+
 }
@@ -0,0 +1,205 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.JournalEntry;
+import com.db.awmd.challenge.metrics.HistogramSnapshot;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.TransferJournalFile;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AccountsServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TransferJournalFileTest {
+    private static final String JOURNAL_FILE = "build/test-data/transfers.journal";
+    private static final String ACCOUNT_FROM_ID = "acc-1";
+    private static final String ACCOUNT_TO_ID = "acc-2";
+    private static final BigDecimal AMOUNT_10 = new BigDecimal(10);
+    private static final Long MAX_GROUP_WAIT_MICROS = 2000L;
+    private static final Integer MAX_GROUP_SIZE = 64;
+    private static final Integer NUMBER_OF_THREADS = 16;
+    private static final Integer NUMBER_OF_ENTRIES = 800;
+    private static final Integer NUMBER_OF_SEGMENTED_ENTRIES = 40;
+    private static final Long SMALL_SEGMENT_BYTES = 1024L;
+
+    private MetricsRegistry metricsRegistry;
+
+    private TransferJournalFile transferJournal;
+
+    @Before
+    public void before() throws Exception {
+        Path journalFile = Paths.get(JOURNAL_FILE);
+        Files.createDirectories(journalFile.toAbsolutePath().getParent());
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(journalFile.toAbsolutePath().getParent(),
+                journalFile.getFileName() + "*")) {
+            for (Path segment : segments) {
+                Files.delete(segment);
+            }
+        }
+        metricsRegistry = new MetricsRegistry();
+        transferJournal = open();
+    }
+
+    @After
+    public void after() throws Exception {
+        transferJournal.shutdown();
+    }
+
+    @Test
+    public void shouldCoverConcurrentAppendsWithFewerFsyncs() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(NUMBER_OF_THREADS);
+        List<Callable<JournalEntry>> tasks = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_ENTRIES; i++) {
+            tasks.add(() -> transferJournal.append(JournalEntry.Type.TRANSFER, ACCOUNT_FROM_ID, ACCOUNT_TO_ID, AMOUNT_10));
+        }
+        executor.invokeAll(tasks);
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        List<JournalEntry> entries = transferJournal.readEntries();
+        assertEquals(NUMBER_OF_ENTRIES.intValue(), entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(i + 1, entries.get(i).getSequence());
+        }
+        HistogramSnapshot groupSize = metricsRegistry.snapshot().get("journal.commit.group.size");
+        assertTrue(groupSize.getCount() < NUMBER_OF_ENTRIES);
+        assertTrue(groupSize.getMax() > 1);
+        assertTrue(groupSize.getMax() <= MAX_GROUP_SIZE);
+        assertEquals(groupSize.getCount(), metricsRegistry.snapshot().get("journal.fsync.latency.micros").getCount());
+    }
+
+    @Test
+    public void shouldContinueSequenceAfterRestart() throws Exception {
+        transferJournal.append(JournalEntry.Type.TRANSFER, ACCOUNT_FROM_ID, ACCOUNT_TO_ID, AMOUNT_10);
+        transferJournal.shutdown();
+
+        transferJournal = open();
+        JournalEntry entry = transferJournal.append(JournalEntry.Type.TRANSFER, ACCOUNT_TO_ID, ACCOUNT_FROM_ID, AMOUNT_10);
+
+        assertEquals(2, entry.getSequence());
+        assertEquals(2, transferJournal.readEntries().size());
+    }
+
+    @Test
+    public void shouldCutIncompleteLastRecordAfterCrash() throws Exception {
+        transferJournal.append(JournalEntry.Type.TRANSFER, ACCOUNT_FROM_ID, ACCOUNT_TO_ID, AMOUNT_10);
+        transferJournal.shutdown();
+        Files.write(Paths.get(JOURNAL_FILE), "{\"sequence\":2,\"times".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        transferJournal = open();
+        JournalEntry entry = transferJournal.append(JournalEntry.Type.TRANSFER, ACCOUNT_TO_ID, ACCOUNT_FROM_ID, AMOUNT_10);
+
+        assertEquals(2, entry.getSequence());
+        List<JournalEntry> entries = transferJournal.readEntries();
+        assertEquals(2, entries.size());
+        assertEquals(ACCOUNT_TO_ID, entries.get(1).getAccountFromId());
+    }
+
+    @Test
+    public void shouldContinueInNewSegmentAndReadAcrossSegments() throws Exception {
+        transferJournal.shutdown();
+        transferJournal = open(SMALL_SEGMENT_BYTES);
+        for (int i = 0; i < NUMBER_OF_SEGMENTED_ENTRIES; i++) {
+            transferJournal.append(JournalEntry.Type.TRANSFER, ACCOUNT_FROM_ID, ACCOUNT_TO_ID, AMOUNT_10);
+        }
+        transferJournal.shutdown();
+
+        transferJournal = open(SMALL_SEGMENT_BYTES);
+        JournalEntry entry = transferJournal.append(JournalEntry.Type.TRANSFER, ACCOUNT_TO_ID, ACCOUNT_FROM_ID, AMOUNT_10);
+
+        assertEquals(NUMBER_OF_SEGMENTED_ENTRIES + 1, entry.getSequence());
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(Paths.get(JOURNAL_FILE).toAbsolutePath().getParent(),
+                Paths.get(JOURNAL_FILE).getFileName() + ".*")) {
+            assertTrue(segments.iterator().hasNext());
+        }
+        List<JournalEntry> entries = transferJournal.readEntries();
+        assertEquals(NUMBER_OF_SEGMENTED_ENTRIES + 1, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(i + 1, entries.get(i).getSequence());
+        }
+        List<JournalEntry> tail = new ArrayList<>();
+        transferJournal.forEachEntry(NUMBER_OF_SEGMENTED_ENTRIES - 5, tail::add);
+        assertEquals(6, tail.size());
+        assertEquals(NUMBER_OF_SEGMENTED_ENTRIES - 4, tail.get(0).getSequence());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRefuseAppendAfterShutdown() throws Exception {
+        transferJournal.shutdown();
+        try {
+            transferJournal.append(JournalEntry.Type.TRANSFER, ACCOUNT_FROM_ID, ACCOUNT_TO_ID, AMOUNT_10);
+        } finally {
+            transferJournal = open();
+        }
+    }
+
+    @Test
+    public void shouldKeepWritingAfterWriterIsInterrupted() throws Exception {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("transfer-journal-writer".equals(thread.getName())) {
+                thread.interrupt();
+            }
+        }
+
+        for (int i = 0; i < 3; i++) {
+            transferJournal.append(JournalEntry.Type.TRANSFER, ACCOUNT_FROM_ID, ACCOUNT_TO_ID, AMOUNT_10);
+        }
+
+        assertEquals(3, transferJournal.readEntries().size());
+    }
+
+    @Test
+    public void shouldJournalTransferBeforeMakeTransferReturns() throws Exception {
+        AccountsService accountsService = new AccountsServiceImpl(new AccountsRepositoryInMemory(), transferJournal);
+        Account accountFrom = new Account(ACCOUNT_FROM_ID, AMOUNT_10);
+        Account accountTo = new Account(ACCOUNT_TO_ID, BigDecimal.ZERO);
+        accountsService.createAccount(accountFrom);
+        accountsService.createAccount(accountTo);
+
+        accountsService.makeTransfer(accountFrom, accountTo, AMOUNT_10);
+
+        List<JournalEntry> entries = transferJournal.readEntries();
+        assertEquals(3, entries.size());
+        assertEquals(JournalEntry.Type.OPEN, entries.get(0).getType());
+        entries = entries.subList(2, 3);
+        assertEquals(JournalEntry.Type.TRANSFER, entries.get(0).getType());
+        assertEquals(ACCOUNT_FROM_ID, entries.get(0).getAccountFromId());
+        assertEquals(ACCOUNT_TO_ID, entries.get(0).getAccountToId());
+        assertEquals(AMOUNT_10, entries.get(0).getAmount());
+    }
+
+    private TransferJournalFile open() throws Exception {
+        TransferJournalFile journal = new TransferJournalFile(new ObjectMapper(), metricsRegistry, JOURNAL_FILE,
+                MAX_GROUP_WAIT_MICROS, MAX_GROUP_SIZE);
+        journal.start();
+        return journal;
+    }
+
+    private TransferJournalFile open(long maxSegmentBytes) throws Exception {
+        TransferJournalFile journal = new TransferJournalFile(new ObjectMapper(), metricsRegistry, JOURNAL_FILE,
+                MAX_GROUP_WAIT_MICROS, MAX_GROUP_SIZE, maxSegmentBytes);
+        journal.start();
+        return journal;
+    }
+}
@@ -0,0 +1,192 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.LinearizabilityChecker.Operation;
+import com.db.awmd.challenge.LinearizabilityChecker.Type;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.AccountNotExistException;
+import com.db.awmd.challenge.exception.OverDraftException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AccountsServiceImpl;
+import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.TransferService;
+import com.db.awmd.challenge.service.TransferServiceImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs many short rounds of random transfers, credits, debits, balance reads and clears
+ * from several threads against a fresh engine, records when every call started and returned
+ * and what it returned, and requires each round's history to be linearizable. Final balances
+ * are read after every round so lost updates show up as well. Balance reads take the account
+ * lock: an unlocked read of two accounts may still see a transfer half applied.
+ * Use -Dstress.rounds to run longer.
+ */
+public class TransferLinearizabilityStressTest {
+    private static final String[] ACCOUNT_IDS = {"acc-1", "acc-2", "acc-3"};
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal(3);
+    private static final Integer ROUNDS = Integer.getInteger("stress.rounds", 500);
+    private static final Integer THREADS = 3;
+    private static final Integer OPERATIONS_PER_THREAD = 4;
+    private static final Integer CLEAR_EVERY_ROUNDS = 4;
+
+    private final Random random = new Random(42);
+
+    private ExecutorService executor;
+
+    @Before
+    public void before() {
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldProduceOnlyLinearizableHistories() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            AccountsService accountsService = new AccountsServiceImpl(new AccountsRepositoryInMemory());
+            TransferService transferService = new TransferServiceImpl(accountsService, Mockito.mock(NotificationService.class));
+            Map<String, BigDecimal> initialBalances = new TreeMap<>();
+            for (String accountId : ACCOUNT_IDS) {
+                accountsService.createAccount(new Account(accountId, INITIAL_BALANCE));
+                initialBalances.put(accountId, INITIAL_BALANCE);
+            }
+            List<List<Operation>> plans = plan(round % CLEAR_EVERY_ROUNDS == 0);
+
+            List<Operation> history = run(plans, accountsService, transferService);
+
+            assertTrue("Round " + round + " is not linearizable:" + LinearizabilityChecker.describe(history),
+                    LinearizabilityChecker.isLinearizable(initialBalances, history));
+        }
+    }
+
+    private List<List<Operation>> plan(boolean withClear) {
+        List<List<Operation>> plans = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            List<Operation> plan = new ArrayList<>();
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                plan.add(randomOperation(thread));
+            }
+            plans.add(plan);
+        }
+        if (withClear) {
+            int thread = random.nextInt(THREADS);
+            plans.get(thread).set(random.nextInt(OPERATIONS_PER_THREAD), new Operation(thread, Type.CLEAR, null, null, null));
+        }
+        return plans;
+    }
+
+    private Operation randomOperation(int thread) {
+        String accountId = ACCOUNT_IDS[random.nextInt(ACCOUNT_IDS.length)];
+        BigDecimal amount = new BigDecimal(1 + random.nextInt(2));
+        switch (random.nextInt(5)) {
+            case 0:
+                return new Operation(thread, Type.CREDIT, accountId, null, amount);
+            case 1:
+                return new Operation(thread, Type.DEBIT, accountId, null, amount);
+            case 2:
+                return new Operation(thread, Type.READ, accountId, null, null);
+            default:
+                String counterpartyId = ACCOUNT_IDS[(indexOf(accountId) + 1 + random.nextInt(ACCOUNT_IDS.length - 1)) % ACCOUNT_IDS.length];
+                return new Operation(thread, Type.TRANSFER, accountId, counterpartyId, amount);
+        }
+    }
+
+    private List<Operation> run(List<List<Operation>> plans, AccountsService accountsService,
+                                TransferService transferService) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> threads = new ArrayList<>();
+        for (List<Operation> plan : plans) {
+            threads.add(executor.submit(() -> {
+                start.await();
+                for (Operation operation : plan) {
+                    long invokedAt = System.nanoTime();
+                    String result = execute(operation, accountsService, transferService);
+                    operation.record(invokedAt, System.nanoTime(), result);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        List<Operation> history = new ArrayList<>();
+        for (int i = 0; i < threads.size(); i++) {
+            threads.get(i).get(10, TimeUnit.SECONDS);
+            history.addAll(plans.get(i));
+        }
+        for (String accountId : ACCOUNT_IDS) {
+            Operation read = new Operation(THREADS, Type.READ, accountId, null, null);
+            long invokedAt = System.nanoTime();
+            history.add(read.record(invokedAt, System.nanoTime(), execute(read, accountsService, transferService)));
+        }
+        return history;
+    }
+
+    private static String execute(Operation operation, AccountsService accountsService, TransferService transferService) {
+        try {
+            switch (operation.getType()) {
+                case TRANSFER:
+                    transferService.transferMoneyLock(new Transfer(operation.getAccountId(), operation.getCounterpartyId(),
+                            operation.getAmount()));
+                    return LinearizabilityChecker.OK;
+                case CREDIT:
+                    accountsService.creditBalanceAccount(accountsService.findAccountById(operation.getAccountId()),
+                            operation.getAmount());
+                    return LinearizabilityChecker.OK;
+                case DEBIT:
+                    accountsService.debitBalanceAccount(accountsService.findAccountById(operation.getAccountId()),
+                            operation.getAmount());
+                    return LinearizabilityChecker.OK;
+                case CLEAR:
+                    accountsService.clearAccounts();
+                    return LinearizabilityChecker.OK;
+                case READ:
+                    return lockedBalance(accountsService.getAccount(operation.getAccountId()));
+                default:
+                    throw new IllegalArgumentException("Unknown operation " + operation.getType());
+            }
+        } catch (AccountNotExistException e) {
+            return LinearizabilityChecker.NO_ACCOUNT;
+        } catch (OverDraftException e) {
+            return LinearizabilityChecker.OVERDRAFT;
+        } catch (RuntimeException e) {
+            return e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+    }
+
+    private static String lockedBalance(Account account) {
+        if (account == null) {
+            return LinearizabilityChecker.MISSING;
+        }
+        account.getLock().lock();
+        try {
+            return LinearizabilityChecker.formatBalance(account.getBalance());
+        } finally {
+            account.getLock().unlock();
+        }
+    }
+
+    private static int indexOf(String accountId) {
+        return Arrays.asList(ACCOUNT_IDS).indexOf(accountId);
+    }
+}
@@ -0,0 +1,225 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Deadline;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.OverDraftException;
+import com.db.awmd.challenge.exception.TransferQueueFullException;
+import com.db.awmd.challenge.exception.TransferTimeoutException;
+import com.db.awmd.challenge.service.FairTransferScheduler;
+import com.db.awmd.challenge.service.TransferService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class TransferSchedulerTest {
+    private static final String HOT_ACCOUNT = "acc-hot";
+    private static final String HOT_ACCOUNT_PEER = "acc-peer";
+    private static final String COLD_ACCOUNT_FROM = "acc-cold-1";
+    private static final String COLD_ACCOUNT_TO = "acc-cold-2";
+    private static final BigDecimal AMOUNT_10 = new BigDecimal(10);
+    private static final Integer NUMBER_OF_WORKERS = 4;
+    private static final Integer NUMBER_OF_HOT_TRANSFERS = 50;
+    private static final Long HOT_TRANSFER_DURATION_MS = 20L;
+    private static final Long DEADLINE_MS = 10000L;
+
+    @Mock
+    private TransferService transferService;
+
+    private FairTransferScheduler transferScheduler;
+
+    @Before
+    public void before() {
+        transferScheduler = new FairTransferScheduler(transferService, NUMBER_OF_WORKERS);
+    }
+
+    @After
+    public void after() {
+        transferScheduler.shutdown();
+    }
+
+    @Test
+    public void shouldRunColdAccountTransferWhileHotAccountBacklogIsPending() throws Exception {
+        Mockito.doAnswer(invocation -> {
+            Transfer transfer = invocation.getArgument(0);
+            if (HOT_ACCOUNT.equals(transfer.getAccountFromId())) {
+                Thread.sleep(HOT_TRANSFER_DURATION_MS);
+            }
+            return null;
+        }).when(transferService).transferMoneyLock(Mockito.any(), Mockito.any());
+
+        List<CompletableFuture<Void>> hotTransfers = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_HOT_TRANSFERS; i++) {
+            hotTransfers.add(transferScheduler.schedule(new Transfer(HOT_ACCOUNT, HOT_ACCOUNT_PEER, AMOUNT_10), deadline()));
+        }
+        transferScheduler.schedule(new Transfer(COLD_ACCOUNT_FROM, COLD_ACCOUNT_TO, AMOUNT_10), deadline()).get(1, TimeUnit.SECONDS);
+
+        assertFalse(hotTransfers.get(NUMBER_OF_HOT_TRANSFERS - 1).isDone());
+        CompletableFuture.allOf(hotTransfers.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+        assertEquals(0, transferScheduler.getPendingTransfers());
+    }
+
+    @Test
+    public void shouldSerializeTransfersOfSameAccount() throws Exception {
+        AtomicInteger inFlightOnHotAccount = new AtomicInteger();
+        AtomicInteger maxInFlightOnHotAccount = new AtomicInteger();
+        Mockito.doAnswer(invocation -> {
+            int inFlight = inFlightOnHotAccount.incrementAndGet();
+            maxInFlightOnHotAccount.accumulateAndGet(inFlight, Math::max);
+            Thread.sleep(1);
+            inFlightOnHotAccount.decrementAndGet();
+            return null;
+        }).when(transferService).transferMoneyLock(Mockito.any(), Mockito.any());
+
+        List<CompletableFuture<Void>> transfers = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_HOT_TRANSFERS; i++) {
+            transfers.add(transferScheduler.schedule(new Transfer(HOT_ACCOUNT, HOT_ACCOUNT_PEER + i, AMOUNT_10), deadline()));
+            transfers.add(transferScheduler.schedule(new Transfer(HOT_ACCOUNT_PEER + i, HOT_ACCOUNT, AMOUNT_10), deadline()));
+        }
+        CompletableFuture.allOf(transfers.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+        assertEquals(1, maxInFlightOnHotAccount.get());
+        Mockito.verify(transferService, Mockito.times(2 * NUMBER_OF_HOT_TRANSFERS)).transferMoneyLock(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void shouldCompleteExceptionallyAndReleaseQueueThenTransferFails() throws Exception {
+        Transfer failingTransfer = new Transfer(HOT_ACCOUNT, HOT_ACCOUNT_PEER, AMOUNT_10);
+        Mockito.doThrow(new OverDraftException("not enough money")).when(transferService).transferMoneyLock(Mockito.eq(failingTransfer), Mockito.any());
+
+        try {
+            transferScheduler.schedule(failingTransfer, deadline()).get(1, TimeUnit.SECONDS);
+            fail("Should have failed with overdraft");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof OverDraftException);
+        }
+
+        transferScheduler.schedule(new Transfer(HOT_ACCOUNT_PEER, HOT_ACCOUNT, AMOUNT_10), deadline()).get(1, TimeUnit.SECONDS);
+        assertEquals(0, transferScheduler.getPendingTransfers());
+    }
+
+    @Test
+    public void shouldFailQueuedTransferWithoutRunningItThenDeadlinePassed() throws Exception {
+        Mockito.doAnswer(invocation -> {
+            Thread.sleep(HOT_TRANSFER_DURATION_MS);
+            return null;
+        }).when(transferService).transferMoneyLock(Mockito.any(), Mockito.any());
+
+        CompletableFuture<Void> running = transferScheduler.schedule(new Transfer(HOT_ACCOUNT, HOT_ACCOUNT_PEER, AMOUNT_10), deadline());
+        CompletableFuture<Void> expired = transferScheduler.schedule(new Transfer(HOT_ACCOUNT, HOT_ACCOUNT_PEER, AMOUNT_10),
+                Deadline.after(1, TimeUnit.MILLISECONDS));
+
+        try {
+            expired.get(1, TimeUnit.SECONDS);
+            fail("Should have failed with timeout");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TransferTimeoutException);
+        }
+        running.get(1, TimeUnit.SECONDS);
+        Mockito.verify(transferService, Mockito.times(1)).transferMoneyLock(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void shouldNotRunCancelledQueuedTransferNorCancelStartedOne() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return null;
+        }).when(transferService).transferMoneyLock(Mockito.any(), Mockito.any());
+
+        CompletableFuture<Void> running = transferScheduler.schedule(new Transfer(HOT_ACCOUNT, HOT_ACCOUNT_PEER, AMOUNT_10), deadline());
+        CompletableFuture<Void> queued = transferScheduler.schedule(new Transfer(HOT_ACCOUNT, HOT_ACCOUNT_PEER, AMOUNT_10), deadline());
+        started.await(1, TimeUnit.SECONDS);
+
+        assertFalse(running.cancel(false));
+        assertTrue(queued.cancel(false));
+        release.countDown();
+
+        running.get(1, TimeUnit.SECONDS);
+        transferScheduler.schedule(new Transfer(HOT_ACCOUNT_PEER, HOT_ACCOUNT, AMOUNT_10), deadline()).get(1, TimeUnit.SECONDS);
+        Mockito.verify(transferService, Mockito.times(2)).transferMoneyLock(Mockito.any(), Mockito.any());
+        assertEquals(0, transferScheduler.getPendingTransfers());
+    }
+
+    @Test
+    public void shouldRefuseTransfersOverAccountQueueBound() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(transferService).transferMoneyLock(Mockito.any(), Mockito.any());
+        FairTransferScheduler boundedScheduler = new FairTransferScheduler(transferService, NUMBER_OF_WORKERS, 2,
+                "bounded-worker-");
+        try {
+            boundedScheduler.schedule(new Transfer(HOT_ACCOUNT, HOT_ACCOUNT_PEER, AMOUNT_10), deadline());
+            boundedScheduler.schedule(new Transfer(HOT_ACCOUNT_PEER, HOT_ACCOUNT, AMOUNT_10), deadline());
+            try {
+                boundedScheduler.schedule(new Transfer(HOT_ACCOUNT, COLD_ACCOUNT_TO, AMOUNT_10), deadline());
+                fail("Should have refused a third transfer of the hot account");
+            } catch (TransferQueueFullException e) {
+                assertEquals(2, boundedScheduler.getPendingTransfers());
+            }
+            boundedScheduler.schedule(new Transfer(COLD_ACCOUNT_FROM, COLD_ACCOUNT_TO, AMOUNT_10), deadline());
+        } finally {
+            release.countDown();
+            boundedScheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldFailQueuedSuccessorsThenWorkersAreShutDown() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return null;
+        }).when(transferService).transferMoneyLock(Mockito.any(), Mockito.any());
+
+        CompletableFuture<Void> running = transferScheduler.schedule(new Transfer(HOT_ACCOUNT, HOT_ACCOUNT_PEER, AMOUNT_10), deadline());
+        CompletableFuture<Void> successor = transferScheduler.schedule(new Transfer(HOT_ACCOUNT, HOT_ACCOUNT_PEER, AMOUNT_10), deadline());
+        CompletableFuture<Void> peerSuccessor = transferScheduler.schedule(new Transfer(HOT_ACCOUNT_PEER, COLD_ACCOUNT_TO, AMOUNT_10), deadline());
+        started.await(1, TimeUnit.SECONDS);
+        transferScheduler.shutdown();
+        release.countDown();
+
+        running.get(1, TimeUnit.SECONDS);
+        for (CompletableFuture<Void> rejected : Arrays.asList(successor, peerSuccessor)) {
+            try {
+                rejected.get(1, TimeUnit.SECONDS);
+                fail("Should have been rejected");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+        assertEquals(0, transferScheduler.getPendingTransfers());
+    }
+
+    private Deadline deadline() {
+        return Deadline.after(DEADLINE_MS, TimeUnit.MILLISECONDS);
+    }
+}
@@ -1,7 +1,9 @@
 package com.db.awmd.challenge;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Deadline;
 import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.TransferTimeoutException;
 import com.db.awmd.challenge.service.AccountsService;
 import com.db.awmd.challenge.service.NotificationService;
 import com.db.awmd.challenge.service.TransferServiceImpl;
@@ -18,9 +20,14 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 
 
@@ -177,5 +184,41 @@ public class TransferServiceImplLockTest {
         orderVerifier.verify(notificationService,times(2)).notifyAboutTransfer(Mockito.any(), Mockito.any());
 
     }
-}
 
+    @Test
+    public void shouldGiveUpThenLockIsNotObtainedBeforeDeadline() throws Exception {
+        Account accountFrom = new Account(ACCOUNT_ONE, AMOUNT_10);
+        Account accountTo = new Account(ACCOUNT_TWO, INITIAL_BALANCE_0);
+        Mockito.when(accountsService.findAccountById(ACCOUNT_ONE)).thenReturn(accountFrom);
+        Mockito.when(accountsService.findAccountById(ACCOUNT_TWO)).thenReturn(accountTo);
+
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            accountTo.getLock().lock();
+            try {
+                locked.countDown();
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                accountTo.getLock().unlock();
+            }
+        });
+        holder.start();
+        locked.await();
+
+        try {
+            transferService.transferMoneyLock(new Transfer(ACCOUNT_ONE, ACCOUNT_TWO, AMOUNT_10),
+                    Deadline.after(50, TimeUnit.MILLISECONDS));
+            fail("Should have timed out waiting for lock");
+        } catch (TransferTimeoutException e) {
+            assertFalse(accountFrom.getLock().isLocked());
+        } finally {
+            release.countDown();
+            holder.join();
+        }
+        Mockito.verify(accountsService, never()).makeTransfer(Mockito.any(), Mockito.any(), Mockito.any());
+        Mockito.verify(notificationService, never()).notifyAboutTransfer(Mockito.any(), Mockito.any());
+    }
+}
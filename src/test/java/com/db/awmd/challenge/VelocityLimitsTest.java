@@ -0,0 +1,146 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.VelocityLimitExceededException;
+import com.db.awmd.challenge.fx.FxRates;
+import com.db.awmd.challenge.limits.VelocityLimits;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AccountsServiceImpl;
+import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.TransferService;
+import com.db.awmd.challenge.service.TransferServiceImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class VelocityLimitsTest {
+    private static final String ACCOUNT_ID = "acc-1";
+    private static final String CORPORATE_ACCOUNT_ID = "corp-1";
+    private static final String LIMITS = "default.minute=3/100,default.day=10/*,corporate.minute=*/1000";
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.DAYS.toMillis(100));
+
+    private MetricsRegistry metricsRegistry;
+
+    private VelocityLimits velocityLimits;
+
+    @Before
+    public void before() {
+        metricsRegistry = new MetricsRegistry();
+        velocityLimits = new VelocityLimits(true, "corp-=corporate", LIMITS, 2, 0L, metricsRegistry, clock::get);
+    }
+
+    @Test
+    public void shouldLimitTransfersPerMinuteAndSlide() {
+        for (int i = 0; i < 3; i++) {
+            velocityLimits.acquire(ACCOUNT_ID, BigDecimal.ONE);
+        }
+        assertRefused(ACCOUNT_ID, BigDecimal.ONE);
+
+        clock.addAndGet(TimeUnit.SECONDS.toMillis(30));
+        assertRefused(ACCOUNT_ID, BigDecimal.ONE);
+
+        clock.addAndGet(TimeUnit.SECONDS.toMillis(36));
+        velocityLimits.acquire(ACCOUNT_ID, BigDecimal.ONE);
+        assertEquals(1L, velocityLimits.getCount(ACCOUNT_ID, VelocityLimits.Window.MINUTE));
+        assertEquals(4L, velocityLimits.getCount(ACCOUNT_ID, VelocityLimits.Window.DAY));
+        assertEquals(2L, metricsRegistry.gaugeValues().get("transfer.velocity.rejections").longValue());
+    }
+
+    @Test
+    public void shouldLimitAmountWithoutCountingRefusedTransfers() {
+        velocityLimits.acquire(ACCOUNT_ID, new BigDecimal("60.00"));
+        assertRefused(ACCOUNT_ID, new BigDecimal("40.01"));
+        velocityLimits.acquire(ACCOUNT_ID, new BigDecimal("40"));
+
+        assertEquals(2L, velocityLimits.getCount(ACCOUNT_ID, VelocityLimits.Window.MINUTE));
+        assertEquals(2L, velocityLimits.getCount(ACCOUNT_ID, VelocityLimits.Window.DAY));
+    }
+
+    @Test
+    public void shouldApplyLimitsOfAccountClass() {
+        for (int i = 0; i < 100; i++) {
+            velocityLimits.acquire(CORPORATE_ACCOUNT_ID, BigDecimal.TEN);
+        }
+        assertRefused(CORPORATE_ACCOUNT_ID, BigDecimal.TEN);
+    }
+
+    @Test
+    public void shouldNeverAdmitConcurrentTransfersPastLimit() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger admitted = new AtomicInteger();
+        for (int i = 0; i < 200; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    velocityLimits.acquire(ACCOUNT_ID, BigDecimal.ONE);
+                    admitted.incrementAndGet();
+                } catch (VelocityLimitExceededException | InterruptedException e) {
+                    // refused
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertEquals(3, admitted.get());
+        assertEquals(3L, velocityLimits.getCount(ACCOUNT_ID, VelocityLimits.Window.DAY));
+    }
+
+    @Test
+    public void shouldDropCountersOfIdleAccounts() {
+        velocityLimits.acquire(ACCOUNT_ID, BigDecimal.ONE);
+        velocityLimits.acquire(CORPORATE_ACCOUNT_ID, BigDecimal.ONE);
+        clock.addAndGet(TimeUnit.HOURS.toMillis(12));
+        velocityLimits.acquire(CORPORATE_ACCOUNT_ID, BigDecimal.ONE);
+
+        assertEquals(0, velocityLimits.sweep());
+        clock.addAndGet(TimeUnit.HOURS.toMillis(14));
+
+        assertEquals(1, velocityLimits.sweep());
+        assertEquals(1, velocityLimits.getTrackedAccounts());
+        assertEquals(0L, velocityLimits.getCount(ACCOUNT_ID, VelocityLimits.Window.DAY));
+    }
+
+    @Test
+    public void transferShouldBeRefusedBeforeBalancesChange() {
+        AccountsService accountsService = new AccountsServiceImpl(new AccountsRepositoryInMemory());
+        accountsService.createAccount(new Account(ACCOUNT_ID, new BigDecimal(1000)));
+        accountsService.createAccount(new Account(CORPORATE_ACCOUNT_ID));
+        TransferService transferService = new TransferServiceImpl(accountsService, Mockito.mock(NotificationService.class),
+                new FxRates(), velocityLimits, 5000L);
+
+        transferService.transferMoneyLock(new Transfer(ACCOUNT_ID, CORPORATE_ACCOUNT_ID, new BigDecimal(90)));
+        try {
+            transferService.transferMoneyLock(new Transfer(ACCOUNT_ID, CORPORATE_ACCOUNT_ID, new BigDecimal(20)));
+            fail("Transfer over the minute amount limit was processed");
+        } catch (VelocityLimitExceededException e) {
+            assertEquals(0, new BigDecimal(910).compareTo(accountsService.getAccount(ACCOUNT_ID).getBalance()));
+        }
+    }
+
+    private void assertRefused(String accountId, BigDecimal amount) {
+        try {
+            velocityLimits.acquire(accountId, amount);
+            fail("Transfer of " + amount + " from " + accountId + " was admitted");
+        } catch (VelocityLimitExceededException e) {
+            // expected
+        }
+    }
+}